@@ -0,0 +1,41 @@
+plugins {
+    java
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+version = "0.1"
+group = "chat.app.server"
+
+repositories { mavenCentral() }
+
+val micronautVersion: String by project
+
+dependencies {
+    jmhImplementation(project(":ws-server"))
+    jmhImplementation(platform("io.micronaut.platform:micronaut-platform:$micronautVersion"))
+    jmhImplementation("io.micronaut:micronaut-websocket")
+    jmhImplementation("io.micronaut.reactor:micronaut-reactor")
+    jmhImplementation("io.micronaut.serde:micronaut-serde-jackson")
+    jmhImplementation("io.micrometer:micrometer-core")
+    jmhImplementation("io.netty:netty-buffer")
+    jmhImplementation("io.netty:netty-codec-http")
+}
+
+java {
+    sourceCompatibility = JavaVersion.toVersion("17")
+    targetCompatibility = JavaVersion.toVersion("17")
+}
+
+// Sources and tests hold non-ASCII literals, which the platform charset may not read.
+tasks.withType<JavaCompile> { options.encoding = "UTF-8" }
+
+// Results are written as JSON under build/results/jmh, named after the version so runs of
+// two releases can be diffed. Pass -Pjmh.includes=<regex> to run a subset.
+jmh {
+    jmhVersion.set("1.37")
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results-$version.json"))
+    humanOutputFile.set(layout.buildDirectory.file("results/jmh/human-$version.txt"))
+    (findProperty("jmh.includes") as String?)?.let { includes.set(listOf(it)) }
+}
@@ -0,0 +1,179 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.TextContent;
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CompressionBenchmark
+ *
+ * <p>Bandwidth saved against time added by each way of compressing chat traffic. {@code history}
+ * compresses a {@value #BATCH_SIZE}-message history frame with the {@link HistoryCompressor}, and
+ * {@code message} sends one message through the {@code permessage-deflate} encoder negotiated by
+ * {@link WebSocketCompression}. The {@code raw} and {@code sent} counters give the bytes before and
+ * after compression, so {@code sent / raw} is the ratio achieved.
+ *
+ * <p>{@code mode} is {@code none} for the uncompressed baseline, {@code deflate}, or {@code
+ * dictionary}: history with a dictionary trained on other conversations, messages with the context
+ * kept across a connection (context takeover), which is what a dictionary brings to history.
+ * Messages are a few words from a small vocabulary, so compression fares about as on real chat.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+  private static final int BATCH_SIZE = 100;
+
+  private static final int TEXTS = 1024;
+
+  private static final User USER = new User("Alice");
+
+  private static final String[] WORDS = {
+    "hey", "hi", "are", "we", "still", "on", "for", "lunch", "tomorrow", "sure", "see", "you",
+    "at", "noon", "thanks", "great", "meeting", "later", "ok", "sounds", "good", "the", "a",
+    "call", "today", "can", "I", "send", "it", "now", "what", "about", "this", "weekend", "haha"
+  };
+
+  @Param({"none", "deflate", "dictionary"})
+  String mode;
+
+  private final ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+
+  private String[] texts;
+
+  private ByteBuf batch;
+
+  private HistoryCompressor compressor;
+
+  private EmbeddedChannel channel;
+
+  private int next;
+
+  /** Bytes offered to and written by the codec under test. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Bytes {
+
+    public long raw;
+
+    public long sent;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      raw = 0;
+      sent = 0;
+    }
+  }
+
+  @Setup
+  public void setup() {
+    var random = new SplittableRandom(42);
+    texts = new String[TEXTS];
+    for (int i = 0; i < TEXTS; i++) {
+      var text = new StringBuilder();
+      for (int w = 3 + random.nextInt(10); w > 0; w--) {
+        text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      }
+      texts[i] = text.toString();
+    }
+
+    batch = frame(0);
+    var samples = new ArrayList<byte[]>();
+    for (int i = 1; i <= 200; i++) {
+      var sample = frame(i * BATCH_SIZE);
+      samples.add(ByteBufUtil.getBytes(sample));
+      sample.release();
+    }
+
+    var dictionary =
+        "dictionary".equals(mode) ? HistoryCompressor.train(samples, 16 * 1024) : null;
+    compressor =
+        new HistoryCompressor(!"none".equals(mode), 6, 0, dictionary, new SimpleMeterRegistry());
+
+    channel = new EmbeddedChannel();
+    if (!"none".equals(mode)) {
+      var offer =
+          "dictionary".equals(mode)
+              ? Map.<String, String>of()
+              : Map.of("server_no_context_takeover", "");
+      var extension =
+          new PerMessageDeflateServerExtensionHandshaker(6, false, 15, true, false)
+              .handshakeExtension(new WebSocketExtensionData("permessage-deflate", offer));
+      channel.pipeline().addLast(extension.newExtensionEncoder());
+    }
+  }
+
+  /** A history frame of consecutive texts starting at {@code first}. */
+  private ByteBuf frame(int first) {
+    var messages = new ArrayList<Message>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      messages.add(new Message(first + i, USER, TextContent.of(texts[(first + i) % TEXTS])));
+    }
+    return BinaryFrames.encode(allocator, messages);
+  }
+
+  @TearDown
+  public void tearDown() {
+    batch.release();
+    channel.finishAndReleaseAll();
+  }
+
+  @Benchmark
+  public int history(Bytes bytes) {
+    var raw = batch.readableBytes();
+    var sent =
+        "none".equals(mode)
+            ? batch.retainedDuplicate()
+            : compressor.compress(allocator, batch.retainedDuplicate());
+    bytes.raw += raw;
+    bytes.sent += sent.readableBytes();
+    sent.release();
+    return raw;
+  }
+
+  @Benchmark
+  public int message(Bytes bytes) {
+    var text = texts[next++ & (TEXTS - 1)];
+    var frame = new TextWebSocketFrame(Unpooled.copiedBuffer(text, StandardCharsets.UTF_8));
+    var raw = frame.content().readableBytes();
+    channel.writeOutbound(frame);
+    WebSocketFrame sent = channel.readOutbound();
+    bytes.raw += raw;
+    bytes.sent += sent.content().readableBytes();
+    sent.release();
+    return raw;
+  }
+}
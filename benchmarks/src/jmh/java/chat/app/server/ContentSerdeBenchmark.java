@@ -0,0 +1,129 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.User;
+import io.micronaut.serde.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ContentSerdeBenchmark
+ *
+ * <p>Writes and reads {@link Content} as the JSON clients send and as {@link BinaryFrames}, for a
+ * short text and a 4 KB image, from one thread and from four.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ContentSerdeBenchmark {
+
+  @Param({"text/plain", "image/png"})
+  String mediaType;
+
+  private final ObjectMapper mapper = ObjectMapper.getDefault();
+
+  private Content content;
+
+  private Message message;
+
+  private byte[] json;
+
+  private ByteBuf frame;
+
+  @Setup
+  public void setup() throws IOException {
+    if (Message.TextContent.MEDIA_TYPE.equals(mediaType)) {
+      content = Message.TextContent.of("Hello Bob! Are we still on for lunch tomorrow?");
+    } else {
+      var data = new byte[4096];
+      new Random(42).nextBytes(data);
+      content = Content.of(mediaType, data);
+    }
+
+    message = new Message(0, new User("alice"), content);
+    json = mapper.writeValueAsBytes(content);
+    frame = BinaryFrames.encode(ByteBufAllocator.DEFAULT, message);
+  }
+
+  @TearDown
+  public void tearDown() {
+    frame.release();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public byte[] writeJson() throws IOException {
+    return mapper.writeValueAsBytes(content);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public byte[] writeJsonContended() throws IOException {
+    return mapper.writeValueAsBytes(content);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Content readJson() throws IOException {
+    return mapper.readValue(json, Content.class);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Content readJsonContended() throws IOException {
+    return mapper.readValue(json, Content.class);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public int writeBinary() {
+    return writeBinaryFrame();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public int writeBinaryContended() {
+    return writeBinaryFrame();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Content readBinary() {
+    return BinaryFrames.decode(frame.duplicate());
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Content readBinaryContended() {
+    return BinaryFrames.decode(frame.duplicate());
+  }
+
+  private int writeBinaryFrame() {
+    var encoded = BinaryFrames.encode(ByteBufAllocator.DEFAULT, message);
+    try {
+      return encoded.readableBytes();
+    } finally {
+      encoded.release();
+    }
+  }
+}
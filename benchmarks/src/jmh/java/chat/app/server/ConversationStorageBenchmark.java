@@ -0,0 +1,84 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.User;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ConversationStorageBenchmark
+ *
+ * <p>Appends to and reads a conversation of {@link ConversationStorageImpl} already holding {@code
+ * size} messages, from one thread and from four threads sharing the conversation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ConversationStorageBenchmark {
+
+  private static final String ID = "AB";
+
+  @Param({"100", "100000"})
+  int size;
+
+  private final Message message =
+      new Message(new User("alice"), Message.TextContent.of("Hello Bob!"));
+
+  private ConversationStorageImpl storage;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    var messages = new ArrayList<Message>(size);
+    for (int i = 0; i < size; i++) {
+      messages.add(message);
+    }
+
+    storage = new ConversationStorageImpl();
+    storage
+        .createConversation(
+            new Conversation(ID, List.of(new User("alice"), new User("bob")), messages))
+        .block();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Message pushMessage() {
+    return storage.pushMessage(ID, message).block();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Message pushMessageContended() {
+    return storage.pushMessage(ID, message).block();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Conversation getConversation() {
+    return storage.getConversation(ID).block();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Conversation getConversationContended() {
+    return storage.getConversation(ID).block();
+  }
+}
@@ -0,0 +1,113 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.User;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * ExecutionModeBenchmark
+ *
+ * <p>Handles bursts of {@value #REQUESTS} concurrent sends arriving on four event loop threads,
+ * against a storage whose appends block for {@code blockMillis}, in each {@link
+ * ExecutionScheduler.Mode}. The {@code virtual_threads} mode needs Java 21 and fails on older
+ * runtimes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+  private static final int REQUESTS = 256;
+
+  private static final String ID = "AB";
+
+  @Param({"event_loop", "bounded_elastic", "virtual_threads"})
+  String mode;
+
+  @Param({"1"})
+  int blockMillis;
+
+  private final Message message =
+      new Message(new User("alice"), Message.TextContent.of("Hello Bob!"));
+
+  private Scheduler eventLoops;
+
+  private ExecutorService virtualThreads;
+
+  private ExecutionScheduler execution;
+
+  private ConversationStorage storage;
+
+  @Setup
+  public void setup() throws Exception {
+    var executionMode = ExecutionScheduler.Mode.valueOf(mode.toUpperCase());
+    if (executionMode == ExecutionScheduler.Mode.VIRTUAL_THREADS) {
+      virtualThreads =
+          (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+
+    eventLoops = Schedulers.newParallel("event-loop", 4);
+    execution = new ExecutionScheduler(executionMode, virtualThreads);
+    storage =
+        new ConversationStorageImpl() {
+          @Override
+          public Mono<Message> pushMessage(String conversationId, Message message) {
+            return Mono.fromCallable(
+                    () -> {
+                      Thread.sleep(blockMillis);
+                      return conversationId;
+                    })
+                .flatMap(id -> super.pushMessage(id, message));
+          }
+        };
+    storage
+        .createConversation(
+            new Conversation(ID, List.of(new User("alice"), new User("bob")), List.of()))
+        .block();
+  }
+
+  @TearDown
+  public void tearDown() {
+    eventLoops.dispose();
+    if (virtualThreads != null) {
+      virtualThreads.shutdown();
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(REQUESTS)
+  public Message send() {
+    return Flux.range(0, REQUESTS)
+        .flatMap(
+            i ->
+                execution
+                    .offload(Mono.defer(() -> storage.pushMessage(ID, message)))
+                    .subscribeOn(eventLoops),
+            REQUESTS)
+        .blockLast();
+  }
+}
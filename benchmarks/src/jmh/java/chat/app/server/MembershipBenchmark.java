@@ -0,0 +1,75 @@
+package chat.app.server;
+
+import chat.app.server.models.Members;
+import chat.app.server.models.User;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MembershipBenchmark
+ *
+ * <p>Checks membership of the last member of a room, the worst case for a scan, and of a
+ * non-member, using {@code List.indexOf} and {@link Members}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MembershipBenchmark {
+
+  @Param({"2", "100", "1000", "10000"})
+  int size;
+
+  private List<User> list;
+
+  private Members members;
+
+  private User last;
+
+  private final User stranger = new User("mallory");
+
+  @Setup
+  public void setup() {
+    list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(new User("user-" + i));
+    }
+    members = Members.of(list);
+    // A fresh instance, as a user looked up per request would be.
+    last = new User("user-" + (size - 1));
+  }
+
+  @Benchmark
+  public boolean listMember() {
+    return list.indexOf(last) != -1;
+  }
+
+  @Benchmark
+  public boolean listStranger() {
+    return list.indexOf(stranger) != -1;
+  }
+
+  @Benchmark
+  public boolean membersMember() {
+    return members.contains(last);
+  }
+
+  @Benchmark
+  public boolean membersStranger() {
+    return members.contains(stranger);
+  }
+}
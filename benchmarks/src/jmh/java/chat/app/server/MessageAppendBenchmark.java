@@ -0,0 +1,83 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.User;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MessageAppendBenchmark
+ *
+ * <p>Appends a batch of messages to a conversation already holding {@code size} messages, using
+ * the previous copy-on-write list and {@link MessageLog}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, batchSize = 1_000)
+@Measurement(iterations = 10, batchSize = 1_000)
+@Fork(1)
+public class MessageAppendBenchmark {
+
+  @Param({"10", "10000", "1000000"})
+  int size;
+
+  private final Message message =
+      new Message(new User("alice"), Message.TextContent.of("Hello Bob!"));
+
+  private AtomicReference<List<Message>> copyOnWrite;
+
+  private MessageLog log;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    var messages = new ArrayList<Message>(size);
+    log = new MessageLog();
+
+    for (int i = 0; i < size; i++) {
+      messages.add(message);
+      log.append(message);
+    }
+
+    copyOnWrite = new AtomicReference<>(List.copyOf(messages));
+  }
+
+  @Benchmark
+  public List<Message> copyOnWrite() {
+    return copyOnWrite.updateAndGet(
+        messages -> Stream.concat(messages.stream(), Stream.of(message)).toList());
+  }
+
+  @Benchmark
+  public Message messageLog() {
+    return log.append(message);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public List<Message> copyOnWriteContended() {
+    return copyOnWrite();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Message messageLogContended() {
+    return messageLog();
+  }
+}
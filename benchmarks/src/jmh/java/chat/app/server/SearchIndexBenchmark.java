@@ -0,0 +1,134 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Members;
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SearchIndexBenchmark
+ *
+ * <p>Builds a {@link SearchIndex} of {@code messages} messages and queries it. Messages are eight
+ * words drawn with a skew towards the start of a 50,000 word vocabulary, so {@code w0} is in most
+ * messages and {@code w40000} in few; they are spread over 10,000 conversations of ten members
+ * picked among 2,000 users, about fifty conversations each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class SearchIndexBenchmark {
+
+  private static final int VOCABULARY = 50_000;
+
+  private static final int WORDS_PER_MESSAGE = 8;
+
+  private static final int CONVERSATIONS = 10_000;
+
+  private static final int MEMBERS = 10;
+
+  private static final int USERS = 2_000;
+
+  /** Distinct texts, reused in turn so generating them does not dominate the build. */
+  private static final int TEXTS = 1 << 16;
+
+  @Param({"1000000", "10000000"})
+  int messages;
+
+  private Message[] texts;
+
+  private Members[] rooms;
+
+  private SearchIndex index;
+
+  private int next;
+
+  @Setup
+  public void setup() {
+    var random = new SplittableRandom(42);
+
+    texts = new Message[TEXTS];
+    for (int i = 0; i < TEXTS; i++) {
+      var text = new StringBuilder();
+      for (int w = 0; w < WORDS_PER_MESSAGE; w++) {
+        text.append('w').append((int) (VOCABULARY * Math.pow(random.nextDouble(), 3))).append(' ');
+      }
+      texts[i] = new Message(i, new User("user-0"), Message.TextContent.of(text.toString()));
+    }
+
+    rooms = new Members[CONVERSATIONS];
+    for (int r = 0; r < CONVERSATIONS; r++) {
+      var members = new ArrayList<User>(MEMBERS);
+      while (members.size() < MEMBERS) {
+        var user = new User("user-" + random.nextInt(USERS));
+        if (!members.contains(user)) {
+          members.add(user);
+        }
+      }
+      rooms[r] = Members.of(members);
+    }
+
+    index = build();
+  }
+
+  /** Indexes all messages into an empty index. */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 3)
+  public SearchIndex build() {
+    var built = new SearchIndex(new SimpleMeterRegistry());
+    for (int i = 0; i < messages; i++) {
+      var room = i % CONVERSATIONS;
+      built.add("conversation-" + room, rooms[room], texts[i & (TEXTS - 1)]);
+    }
+    return built;
+  }
+
+  /** Indexes one more message into the full index. */
+  @Benchmark
+  public int add() {
+    var i = next++;
+    var room = i % CONVERSATIONS;
+    index.add("conversation-" + room, rooms[room], texts[i & (TEXTS - 1)]);
+    return i;
+  }
+
+  @Benchmark
+  public SearchIndex.Result commonTerm() {
+    return index.search("user-1", "w0", Integer.MAX_VALUE, 20);
+  }
+
+  @Benchmark
+  public SearchIndex.Result commonAndRareTerms() {
+    return index.search("user-1", "w0 w40000", Integer.MAX_VALUE, 20);
+  }
+
+  @Benchmark
+  public SearchIndex.Result twoCommonTerms() {
+    return index.search("user-1", "w1 w2", Integer.MAX_VALUE, 20);
+  }
+
+  /** A user in no conversation, so every candidate is checked and none kept. */
+  @Benchmark
+  public SearchIndex.Result stranger() {
+    return index.search("mallory", "w1 w2", Integer.MAX_VALUE, 20);
+  }
+}
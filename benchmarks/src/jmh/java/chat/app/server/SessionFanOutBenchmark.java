@@ -0,0 +1,132 @@
+package chat.app.server;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.core.convert.value.ConvertibleValues;
+import io.micronaut.websocket.WebSocketSession;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SessionFanOutBenchmark
+ *
+ * <p>Selects the sessions of one conversation out of {@code sessions} open sessions spread over
+ * 100 conversations, using the broadcaster predicate {@link PrivateChatHandler} used to filter
+ * every open session by its {@code id} URI variable, and the {@link ConversationSessions} index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SessionFanOutBenchmark {
+
+  private static final int CONVERSATIONS = 100;
+
+  private static final String ID = "conversation-7";
+
+  @Param({"1000", "100000"})
+  int sessions;
+
+  private List<WebSocketSession> open;
+
+  private ConversationSessions index;
+
+  private final Predicate<WebSocketSession> predicate =
+      s -> s.getUriVariables().get("id", String.class).get().equals(ID);
+
+  @Setup
+  public void setup() {
+    open = new ArrayList<>(sessions);
+    var registry = new SimpleMeterRegistry();
+    index =
+        new ConversationSessions(
+            new OutboundQueues(
+                registry, 256, 64, OutboundQueues.OverflowPolicy.DROP_OLDEST, Duration.ofSeconds(5)),
+            registry);
+
+    for (int i = 0; i < sessions; i++) {
+      var id = "conversation-" + (i % CONVERSATIONS);
+      var session = session(id);
+      open.add(session);
+      index.add(id, session);
+    }
+  }
+
+  private static WebSocketSession session(String id) {
+    var uriVariables = ConvertibleValues.<Object>of(Map.of("id", id));
+    return (WebSocketSession)
+        Proxy.newProxyInstance(
+            WebSocketSession.class.getClassLoader(),
+            new Class<?>[] {WebSocketSession.class},
+            (proxy, method, args) ->
+                switch (method.getName()) {
+                  case "getUriVariables" -> uriVariables;
+                  case "isOpen" -> true;
+                  case "hashCode" -> System.identityHashCode(proxy);
+                  case "equals" -> proxy == args[0];
+                  default -> null;
+                });
+  }
+
+  @Benchmark
+  @Threads(1)
+  public int predicate() {
+    return selectByPredicate();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public int predicateContended() {
+    return selectByPredicate();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public int index() {
+    return selectFromIndex();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public int indexContended() {
+    return selectFromIndex();
+  }
+
+  private int selectByPredicate() {
+    var selected = 0;
+    for (var session : open) {
+      if (session.isOpen() && predicate.test(session)) {
+        selected++;
+      }
+    }
+    return selected;
+  }
+
+  private int selectFromIndex() {
+    var selected = 0;
+    for (var session : index.get(ID)) {
+      if (session.isOpen()) {
+        selected++;
+      }
+    }
+    return selected;
+  }
+}
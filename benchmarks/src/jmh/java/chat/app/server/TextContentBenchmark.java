@@ -0,0 +1,92 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.Conversation.Message.TextContent;
+import chat.app.server.models.User;
+import io.micronaut.serde.ObjectMapper;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TextContentBenchmark
+ *
+ * <p>Encodes, decodes and serializes short chat messages, comparing {@link TextContent} with the
+ * previous platform-charset round trips.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TextContentBenchmark {
+
+  @Param({"Hello Bob!", "Olá! Are we still on for lunch tomorrow at 12:30? 🍜"})
+  String text;
+
+  private final ObjectMapper mapper = ObjectMapper.getDefault();
+
+  private byte[] utf8;
+
+  private Content content;
+
+  private Message message;
+
+  @Setup
+  public void setup() {
+    utf8 = text.getBytes(StandardCharsets.UTF_8);
+    content = TextContent.of(text);
+    message = new Message(0, new User("alice"), content);
+  }
+
+  @Benchmark
+  public byte[] encodeDefaultCharset() {
+    return Charset.defaultCharset().encode(text).array();
+  }
+
+  @Benchmark
+  public Content encode() {
+    return TextContent.of(text);
+  }
+
+  @Benchmark
+  public String decodeDefaultCharset() {
+    return Charset.defaultCharset().decode(ByteBuffer.wrap(utf8)).toString();
+  }
+
+  @Benchmark
+  public String decode() {
+    return TextContent.ofUtf8(utf8).text();
+  }
+
+  @Benchmark
+  public byte[] serializeJson() throws IOException {
+    return mapper.writeValueAsBytes(content);
+  }
+
+  @Benchmark
+  public int serializeBinary() {
+    var frame = BinaryFrames.encode(ByteBufAllocator.DEFAULT, message);
+    try {
+      return frame.readableBytes();
+    } finally {
+      frame.release();
+    }
+  }
+}
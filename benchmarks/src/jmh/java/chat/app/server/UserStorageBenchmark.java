@@ -0,0 +1,63 @@
+package chat.app.server;
+
+import chat.app.server.models.User;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * UserStorageBenchmark
+ *
+ * <p>Looks up a known and an unknown user in {@link UserStorageImpl}, from one thread and from
+ * four. Unknown users are reported as errors, so that path includes building the exception.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class UserStorageBenchmark {
+
+  private final UserStorageImpl storage = new UserStorageImpl();
+
+  @Setup
+  public void setup() {
+    for (int i = 0; i < 10_000; i++) {
+      storage.addUser("user-" + i).block();
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public User getUser() {
+    return storage.getUser("user-42").block();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public User getUserContended() {
+    return storage.getUser("user-42").block();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public User getMissingUser() {
+    return storage.getUser("mallory").onErrorReturn(new User("mallory")).block();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public User getMissingUserContended() {
+    return storage.getUser("mallory").onErrorReturn(new User("mallory")).block();
+  }
+}
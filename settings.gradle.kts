@@ -6,4 +6,5 @@ plugins {
 rootProject.name = "chat-app-server"
 
 include("ws-server")
+include("benchmarks")
 
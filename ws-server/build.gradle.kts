@@ -27,6 +27,10 @@ dependencies {
     implementation("io.micronaut.security:micronaut-security-oauth2")
     implementation("jakarta.validation:jakarta.validation-api")
     implementation("io.micronaut.redis:micronaut-redis-lettuce")
+    implementation("io.micronaut.micrometer:micronaut-micrometer-core")
+    implementation("io.micronaut.micrometer:micronaut-micrometer-registry-prometheus")
+    implementation("io.micronaut:micronaut-management")
+    implementation("com.github.ben-manes.caffeine:caffeine")
 
     // Test
     testAnnotationProcessor("io.micronaut:micronaut-inject-java")
@@ -41,6 +45,7 @@ dependencies {
     testImplementation("org.testcontainers:testcontainers")
     testImplementation("com.redis:testcontainers-redis:2.2.2")
     testImplementation("org.awaitility:awaitility:4.2.0")
+    testImplementation("org.hdrhistogram:HdrHistogram:2.1.12")
 }
 
 application { mainClass.set("chat.app.server.Application") }
@@ -50,9 +55,26 @@ java {
     targetCompatibility = JavaVersion.toVersion("17")
 }
 
+// Sources and tests hold non-ASCII literals, which the platform charset may not read.
+tasks.withType<JavaCompile> { options.encoding = "UTF-8" }
+
 tasks.named<Test>("test") {
     // Use JUnit Platform for unit tests.
-    useJUnitPlatform()
+    useJUnitPlatform { excludeTags("load") }
+}
+
+// Runs ChatLoadTest; -Pload.connections=20000 and the other load.* properties configure it.
+tasks.register<Test>("loadTest") {
+    description = "Drives the embedded server with many WebSocket clients and reports latency."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform { includeTags("load") }
+    maxHeapSize = "4g"
+    systemProperties(project.properties.filterKeys { it.startsWith("load.") })
+    systemProperty("load.report-directory", layout.buildDirectory.dir("load-test").get().asFile.path)
+    outputs.upToDateWhen { false }
+    testLogging.showStandardStreams = true
 }
 
 graalvmNative.toolchainDetection.set(false)
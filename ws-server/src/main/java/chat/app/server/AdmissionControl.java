@@ -0,0 +1,460 @@
+package chat.app.server;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.websocket.WebSocketSession;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * AdmissionControl
+ *
+ * <p>Caps what clients may cost a node. Under {@code chat.admission}:
+ *
+ * <ul>
+ *   <li>{@code max-connections} and {@code max-connections-per-user}: concurrent WebSocket
+ *       sessions of the node and of each user on it.
+ *   <li>{@code handshake-rate} and {@code handshake-burst}: handshakes the node accepts a second,
+ *       so a reconnect storm after a deploy is spread out rather than authenticated at once.
+ *   <li>{@code message-rate} and {@code message-burst}: messages a second each session may send,
+ *       and {@code user-message-rate} and {@code user-message-burst} across the sessions of a user.
+ *       Messages over either rate are dropped.
+ *   <li>{@code retry-after}: the least a rejected handshake is told to wait, jittered up to twice
+ *       as long so rejected clients do not all come back together.
+ * </ul>
+ *
+ * <p>Once {@linkplain #drain draining}, the node admits no more sessions.
+ *
+ * <p>Handshakes are checked by the {@link AdmissionFilter} before authentication, as far as the
+ * node can tell without a Redis lookup; sessions take their place under the caps once open. Limits
+ * are held in atomics, and rates as token buckets taken with a single compare-and-set.
+ *
+ * <p>With {@code chat.admission.shared}, connections per user are also counted and user message
+ * rates enforced across the cluster in Redis, once the local limits pass. Shared counts of a node
+ * that went away expire after {@code chat.admission.shared-ttl} without new connections of the
+ * user. Scripts are run by their digest, and sent again only when Redis does not have them cached.
+ * When Redis fails, only the local limits apply.
+ */
+@Singleton
+public class AdmissionControl implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AdmissionControl.class);
+
+  /** Session attribute holding the admission of an open session. */
+  static final String ADMISSION_ATTRIBUTE = "chat.admission";
+
+  static final String KEY_PREFIX = "chat:admission:";
+
+  private static final RedisScript<Long> ACQUIRE_SCRIPT =
+      new RedisScript<>(
+          """
+          local count = redis.call('INCR', KEYS[1])
+          if count > tonumber(ARGV[1]) then
+            redis.call('DECR', KEYS[1])
+            return 0
+          end
+          redis.call('EXPIRE', KEYS[1], ARGV[2])
+          return 1
+          """,
+          ScriptOutputType.INTEGER);
+
+  private static final RedisScript<Long> RELEASE_SCRIPT =
+      new RedisScript<>(
+          """
+          if redis.call('DECR', KEYS[1]) <= 0 then
+            redis.call('DEL', KEYS[1])
+          end
+          return 0
+          """,
+          ScriptOutputType.INTEGER);
+
+  private static final RedisScript<Long> WINDOW_SCRIPT =
+      new RedisScript<>(
+          """
+          local count = redis.call('INCR', KEYS[1])
+          if count == 1 then
+            redis.call('PEXPIRE', KEYS[1], ARGV[2])
+          end
+          if count > tonumber(ARGV[1]) then
+            return 0
+          end
+          return 1
+          """,
+          ScriptOutputType.INTEGER);
+
+  private static final Mono<Boolean> ALLOWED = Mono.just(true);
+
+  private static final Mono<Boolean> REJECTED = Mono.just(false);
+
+  /** Why a handshake, session or message was turned away. */
+  public enum Reason {
+    DRAINING,
+    NODE_CONNECTIONS,
+    USER_CONNECTIONS,
+    HANDSHAKE_RATE,
+    SESSION_RATE,
+    USER_RATE
+  }
+
+  private final ConcurrentHashMap<String, UserLimits> users = new ConcurrentHashMap<>();
+
+  private final AtomicInteger connections = new AtomicInteger();
+
+  private volatile boolean draining;
+
+  private final int maxConnections;
+
+  private final int maxConnectionsPerUser;
+
+  private final RateLimiter handshakes;
+
+  private final double messageRate;
+
+  private final int messageBurst;
+
+  private final double userMessageRate;
+
+  private final int userMessageBurst;
+
+  private final long retryAfterSeconds;
+
+  @Nullable private final StatefulRedisConnection<String, String> shared;
+
+  private final long sharedTtlSeconds;
+
+  private final long windowMillis;
+
+  private final Scheduler scheduler;
+
+  private final EnumMap<Reason, Counter> rejected = new EnumMap<>(Reason.class);
+
+  @Inject
+  public AdmissionControl(
+      RedisClient client,
+      MeterRegistry registry,
+      @Value("${chat.admission.max-connections:10000}") int maxConnections,
+      @Value("${chat.admission.max-connections-per-user:16}") int maxConnectionsPerUser,
+      @Value("${chat.admission.handshake-rate:200}") double handshakeRate,
+      @Value("${chat.admission.handshake-burst:400}") int handshakeBurst,
+      @Value("${chat.admission.message-rate:10}") double messageRate,
+      @Value("${chat.admission.message-burst:20}") int messageBurst,
+      @Value("${chat.admission.user-message-rate:20}") double userMessageRate,
+      @Value("${chat.admission.user-message-burst:40}") int userMessageBurst,
+      @Value("${chat.admission.retry-after:5s}") Duration retryAfter,
+      @Value("${chat.admission.shared:false}") boolean shared,
+      @Value("${chat.admission.shared-ttl:10m}") Duration sharedTtl) {
+    this(
+        registry,
+        maxConnections,
+        maxConnectionsPerUser,
+        handshakeRate,
+        handshakeBurst,
+        messageRate,
+        messageBurst,
+        userMessageRate,
+        userMessageBurst,
+        retryAfter,
+        shared ? client.connect() : null,
+        sharedTtl,
+        Schedulers.parallel());
+  }
+
+  AdmissionControl(
+      MeterRegistry registry,
+      int maxConnections,
+      int maxConnectionsPerUser,
+      double handshakeRate,
+      int handshakeBurst,
+      double messageRate,
+      int messageBurst,
+      double userMessageRate,
+      int userMessageBurst,
+      Duration retryAfter,
+      @Nullable StatefulRedisConnection<String, String> shared,
+      Duration sharedTtl,
+      Scheduler scheduler) {
+    this.maxConnections = maxConnections;
+    this.maxConnectionsPerUser = maxConnectionsPerUser;
+    this.messageRate = messageRate;
+    this.messageBurst = messageBurst;
+    this.userMessageRate = userMessageRate;
+    this.userMessageBurst = userMessageBurst;
+    this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+    this.shared = shared;
+    this.sharedTtlSeconds = Math.max(1, sharedTtl.toSeconds());
+    // The shared user rate is a fixed window holding the burst, refilled at the same rate.
+    this.windowMillis = Math.max(1, (long) (userMessageBurst * 1000 / userMessageRate));
+    this.scheduler = scheduler;
+    this.handshakes = new RateLimiter(handshakeRate, handshakeBurst, now());
+
+    for (var reason : Reason.values()) {
+      rejected.put(
+          reason,
+          Counter.builder("chat.admission.rejected")
+              .description("Handshakes, sessions and messages turned away by admission control")
+              .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+              .register(registry));
+    }
+    Gauge.builder("chat.admission.connections", connections, AtomicInteger::get)
+        .description("WebSocket sessions admitted on this node")
+        .register(registry);
+  }
+
+  /**
+   * Checks a handshake before authentication: the node must be under its connection cap and
+   * handshake rate, and the user, when already known from {@code session}, under theirs. Nothing
+   * is held; the session takes its place once open.
+   *
+   * @return why the handshake is rejected, or null to let it through
+   */
+  @Nullable
+  public Reason checkHandshake(@Nullable SessionCache.Entry session) {
+    if (draining) {
+      return reject(Reason.DRAINING);
+    }
+    if (connections.get() >= maxConnections) {
+      return reject(Reason.NODE_CONNECTIONS);
+    }
+    if (session != null) {
+      var limits = users.get(session.username());
+      if (limits != null && limits.connections >= maxConnectionsPerUser) {
+        return reject(Reason.USER_CONNECTIONS);
+      }
+    }
+    if (!handshakes.tryAcquire(now())) {
+      return reject(Reason.HANDSHAKE_RATE);
+    }
+    return null;
+  }
+
+  /** Seconds a rejected client is told to wait before trying again. */
+  public long retryAfterSeconds() {
+    return retryAfterSeconds + ThreadLocalRandom.current().nextLong(retryAfterSeconds + 1);
+  }
+
+  /**
+   * Takes the place of an open session under the connection caps, to be given back by {@link
+   * #release}.
+   *
+   * @return whether the session is admitted; it should be closed otherwise
+   */
+  public Mono<Boolean> admit(String username, WebSocketSession session) {
+    if (draining) {
+      reject(Reason.DRAINING);
+      return REJECTED;
+    }
+    if (shared == null) {
+      return acquire(username, false, session) ? ALLOWED : REJECTED;
+    }
+
+    return eval(
+            ACQUIRE_SCRIPT,
+            connectionKey(username),
+            maxConnectionsPerUser,
+            sharedTtlSeconds)
+        .flatMap(
+            admitted -> {
+              if (!admitted) {
+                reject(Reason.USER_CONNECTIONS);
+                return REJECTED;
+              }
+              return acquire(username, true, session) ? ALLOWED : REJECTED;
+            })
+        .onErrorResume(
+            e -> {
+              LOG.debug("Could not count the connections of {} in Redis", username, e);
+              return Mono.fromSupplier(() -> acquire(username, false, session));
+            });
+  }
+
+  private boolean acquire(String username, boolean counted, WebSocketSession session) {
+    if (!tryIncrement(connections, maxConnections)) {
+      reject(Reason.NODE_CONNECTIONS);
+      releaseShared(username, counted);
+      return false;
+    }
+
+    var admitted = new boolean[1];
+    users.compute(
+        username,
+        (name, limits) -> {
+          if (limits == null) {
+            limits = new UserLimits(new RateLimiter(userMessageRate, userMessageBurst, now()));
+          }
+          if (limits.connections < maxConnectionsPerUser) {
+            limits.connections++;
+            admitted[0] = true;
+          }
+          return limits.connections > 0 ? limits : null;
+        });
+    if (!admitted[0]) {
+      connections.decrementAndGet();
+      reject(Reason.USER_CONNECTIONS);
+      releaseShared(username, counted);
+      return false;
+    }
+
+    var admission =
+        new Admission(username, counted, new RateLimiter(messageRate, messageBurst, now()));
+    session.put(ADMISSION_ATTRIBUTE, admission);
+    // A session closed while it was being admitted was not released by its close.
+    if (!session.isOpen()) {
+      release(session);
+    }
+    return true;
+  }
+
+  /** Stops admitting sessions, for good. */
+  public void drain() {
+    draining = true;
+  }
+
+  /** Gives back the place of a session, if it was admitted and not released yet. */
+  public void release(WebSocketSession session) {
+    var admission = session.get(ADMISSION_ATTRIBUTE, Admission.class).orElse(null);
+    if (admission == null || !admission.released.compareAndSet(false, true)) {
+      return;
+    }
+
+    connections.decrementAndGet();
+    users.computeIfPresent(
+        admission.username,
+        (name, limits) -> --limits.connections > 0 ? limits : null);
+    releaseShared(admission.username, admission.counted);
+  }
+
+  /**
+   * Takes a message of an admitted session from its rate and that of its user.
+   *
+   * @return whether the message may be handled; it is to be dropped otherwise
+   */
+  public Mono<Boolean> tryMessage(WebSocketSession session) {
+    var admission = session.get(ADMISSION_ATTRIBUTE, Admission.class).orElse(null);
+    if (admission == null) {
+      return ALLOWED;
+    }
+
+    var now = now();
+    if (!admission.messages.tryAcquire(now)) {
+      reject(Reason.SESSION_RATE);
+      return REJECTED;
+    }
+    var limits = users.get(admission.username);
+    if (limits != null && !limits.messages.tryAcquire(now)) {
+      reject(Reason.USER_RATE);
+      return REJECTED;
+    }
+    if (shared == null) {
+      return ALLOWED;
+    }
+
+    var window = TimeUnit.NANOSECONDS.toMillis(now) / windowMillis;
+    return eval(
+            WINDOW_SCRIPT,
+            KEY_PREFIX + "messages:" + admission.username + ":" + window,
+            userMessageBurst,
+            windowMillis)
+        .doOnNext(
+            allowed -> {
+              if (!allowed) {
+                reject(Reason.USER_RATE);
+              }
+            })
+        .onErrorResume(
+            e -> {
+              LOG.debug("Could not count the messages of {} in Redis", admission.username, e);
+              return ALLOWED;
+            });
+  }
+
+  @Override
+  @PreDestroy
+  public void close() {
+    if (shared != null) {
+      shared.close();
+    }
+  }
+
+  private Reason reject(Reason reason) {
+    rejected.get(reason).increment();
+    return reason;
+  }
+
+  private void releaseShared(String username, boolean counted) {
+    if (counted) {
+      RELEASE_SCRIPT
+          .run(shared.reactive(), new String[] {connectionKey(username)})
+          .subscribe(
+              result -> {},
+              e -> LOG.debug("Could not release a connection of {} in Redis", username, e));
+    }
+  }
+
+  private Mono<Boolean> eval(RedisScript<Long> script, String key, long limit, long ttl) {
+    return script
+        .run(shared.reactive(), new String[] {key}, Long.toString(limit), Long.toString(ttl))
+        .map(result -> result == 1L);
+  }
+
+  private static String connectionKey(String username) {
+    return KEY_PREFIX + "connections:" + username;
+  }
+
+  private static boolean tryIncrement(AtomicInteger counter, int max) {
+    while (true) {
+      var current = counter.get();
+      if (current >= max) {
+        return false;
+      }
+      if (counter.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private long now() {
+    return scheduler.now(TimeUnit.NANOSECONDS);
+  }
+
+  /** The place of an open session under the caps. */
+  private record Admission(
+      String username, boolean counted, RateLimiter messages, AtomicBoolean released) {
+
+    Admission(String username, boolean counted, RateLimiter messages) {
+      this(username, counted, messages, new AtomicBoolean());
+    }
+  }
+
+  /** Sessions and message rate of a user with sessions on this node. */
+  private static final class UserLimits {
+
+    final RateLimiter messages;
+
+    /** Changed within map updates only. */
+    volatile int connections;
+
+    UserLimits(RateLimiter messages) {
+      this.messages = messages;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package chat.app.server;
+
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.Filter;
+import io.micronaut.http.filter.HttpServerFilter;
+import io.micronaut.http.filter.ServerFilterChain;
+import io.micronaut.http.filter.ServerFilterPhase;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+
+/**
+ * AdmissionFilter
+ *
+ * <p>Turns WebSocket handshakes away before authentication, when {@link AdmissionControl} says the
+ * node is draining, full or handshaking too fast ({@code 503}), or the session cookie resolves,
+ * without a Redis lookup, to a user at their connection cap ({@code 429}). Both carry a jittered
+ * {@code Retry-After}.
+ */
+@Filter("/ws/chat/**")
+public class AdmissionFilter implements HttpServerFilter {
+
+  private final AdmissionControl admission;
+
+  private final SessionCache sessionCache;
+
+  public AdmissionFilter(AdmissionControl admission, SessionCache sessionCache) {
+    this.admission = admission;
+    this.sessionCache = sessionCache;
+  }
+
+  @Override
+  public int getOrder() {
+    return ServerFilterPhase.SECURITY.before();
+  }
+
+  @Override
+  public Publisher<MutableHttpResponse<?>> doFilter(
+      HttpRequest<?> request, ServerFilterChain chain) {
+    var cookie = request.getCookies().get(SessionAuthenticationProvider.COOKIE_KEY);
+    var session = cookie == null ? null : sessionCache.peek(cookie.getValue());
+
+    var reason = admission.checkHandshake(session);
+    if (reason == null) {
+      return chain.proceed(request);
+    }
+
+    var status =
+        reason == AdmissionControl.Reason.USER_CONNECTIONS
+            ? HttpStatus.TOO_MANY_REQUESTS
+            : HttpStatus.SERVICE_UNAVAILABLE;
+    return Mono.just(
+        HttpResponse.status(status)
+            .header(HttpHeaders.RETRY_AFTER, Long.toString(admission.retryAfterSeconds())));
+  }
+}
@@ -0,0 +1,212 @@
+package chat.app.server;
+
+import chat.app.server.AttachmentStore.AttachmentTooLargeException;
+import chat.app.server.models.Attachment;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.User;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.annotation.Body;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.Header;
+import io.micronaut.http.annotation.Post;
+import io.micronaut.http.annotation.QueryValue;
+import io.micronaut.http.exceptions.HttpStatusException;
+import io.micronaut.security.annotation.Secured;
+import io.micronaut.security.rules.SecurityRule;
+import io.micronaut.serde.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.Principal;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+
+/**
+ * AttachmentController
+ *
+ * <p>Uploads and downloads files shared in a conversation, for its members only. An upload is
+ * streamed to the {@link AttachmentStore} as it arrives, then announced with a message whose
+ * {@value #MEDIA_TYPE} content holds the {@link Attachment} reference rather than the file, so
+ * conversations and broadcasts stay small.
+ *
+ * <p>Downloads honour single {@code Range} requests and are sent by the {@link FileRegionHandler}
+ * straight from the file.
+ */
+@Controller("/conversations/{id}/attachments")
+@Secured(SecurityRule.IS_AUTHENTICATED)
+public class AttachmentController {
+
+  public static final String MEDIA_TYPE = "application/vnd.chat.attachment+json";
+
+  private final ObjectMapper mapper = ObjectMapper.getDefault();
+
+  private final AttachmentStore store;
+
+  private final ConversationStorage conversationStorage;
+
+  private final UserStorage userStorage;
+
+  private final ConversationSessions sessions;
+
+  private final ConversationRelay relay;
+
+  public AttachmentController(
+      AttachmentStore store,
+      ConversationStorage conversationStorage,
+      UserStorage userStorage,
+      ConversationSessions sessions,
+      ConversationRelay relay) {
+    this.store = store;
+    this.conversationStorage = conversationStorage;
+    this.userStorage = userStorage;
+    this.sessions = sessions;
+    this.relay = relay;
+  }
+
+  /** Stores the request body as an attachment named {@code name} and announces it. */
+  @Post(consumes = MediaType.ALL)
+  public Mono<HttpResponse<Attachment>> upload(
+      String id,
+      Principal principal,
+      @QueryValue String name,
+      @Nullable @Header(HttpHeaders.CONTENT_TYPE) String contentType,
+      @Nullable @Header(HttpHeaders.CONTENT_LENGTH) Long contentLength,
+      @Body Publisher<byte[]> body) {
+    if (contentLength != null && contentLength > store.maxSize()) {
+      return Mono.error(tooLarge(new AttachmentTooLargeException(store.maxSize())));
+    }
+
+    var mediaType = contentType == null ? MediaType.APPLICATION_OCTET_STREAM : contentType;
+    return checkMember(id, principal)
+        .then(userStorage.getUser(principal.getName()))
+        .flatMap(
+            user ->
+                store
+                    .store(id, name, mediaType, body)
+                    .onErrorMap(AttachmentTooLargeException.class, AttachmentController::tooLarge)
+                    .flatMap(attachment -> announce(id, user, attachment)))
+        .<HttpResponse<Attachment>>map(HttpResponse::created);
+  }
+
+  /** Sends an attachment, or the byte range of it asked for. */
+  @Get("/{attachmentId}")
+  public Mono<HttpResponse<?>> download(
+      String id,
+      String attachmentId,
+      Principal principal,
+      @Nullable @Header(HttpHeaders.RANGE) String range) {
+    return checkMember(id, principal)
+        .then(store.get(attachmentId))
+        .filter(attachment -> attachment.conversationId().equals(id))
+        .switchIfEmpty(
+            Mono.error(() -> new HttpStatusException(HttpStatus.NOT_FOUND, "No such attachment")))
+        .map(attachment -> respond(attachment, range));
+  }
+
+  private Mono<Void> checkMember(String id, Principal principal) {
+    return conversationStorage
+        .getMembers(id)
+        .filter(members -> members.contains(principal.getName()))
+        .switchIfEmpty(
+            Mono.error(
+                () -> new HttpStatusException(HttpStatus.FORBIDDEN, "Not a conversation member")))
+        .then();
+  }
+
+  private Mono<Attachment> announce(String id, User user, Attachment attachment) {
+    byte[] reference;
+    try {
+      reference = mapper.writeValueAsBytes(attachment);
+    } catch (IOException e) {
+      return Mono.error(new UncheckedIOException(e));
+    }
+
+    return conversationStorage
+        .pushMessage(id, new Message(user, Content.of(MEDIA_TYPE, reference)))
+        .flatMap(stored -> Mono.when(sessions.deliver(id, stored), relay.publish(id, stored)))
+        .thenReturn(attachment);
+  }
+
+  private HttpResponse<?> respond(Attachment attachment, @Nullable String header) {
+    var size = attachment.size();
+    var range = ByteRange.parse(header, size);
+    if (range == null) {
+      return HttpResponse.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+          .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+    }
+
+    var response =
+        range.length() == size
+            ? HttpResponse.ok()
+            : HttpResponse.status(HttpStatus.PARTIAL_CONTENT)
+                .header(HttpHeaders.CONTENT_RANGE, range.contentRange(size));
+    response
+        .contentType(attachment.mediaType())
+        .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+        .header(HttpHeaders.ETAG, '"' + attachment.id() + '"')
+        .header(HttpHeaders.CACHE_CONTROL, "private, max-age=31536000, immutable");
+    return FileRegionHandler.mark(
+        response, store.path(attachment), range.start(), range.length());
+  }
+
+  private static HttpStatusException tooLarge(AttachmentTooLargeException e) {
+    return new HttpStatusException(HttpStatus.REQUEST_ENTITY_TOO_LARGE, e.getMessage());
+  }
+
+  /**
+   * A byte range of a file of known size. Only single ranges are served: syntactically invalid
+   * and multiple ranges are ignored, as HTTP allows, and get the whole file.
+   */
+  record ByteRange(long start, long length) {
+
+    private static final String UNIT = "bytes=";
+
+    /** The range of {@code header}, or null when it starts past the end of the file. */
+    @Nullable
+    static ByteRange parse(@Nullable String header, long size) {
+      var all = new ByteRange(0, size);
+      if (header == null || !header.startsWith(UNIT) || header.indexOf(',') >= 0) {
+        return all;
+      }
+
+      var spec = header.substring(UNIT.length()).trim();
+      var dash = spec.indexOf('-');
+      if (dash < 0) {
+        return all;
+      }
+
+      try {
+        if (dash == 0) {
+          var suffix = Long.parseLong(spec.substring(1));
+          if (suffix == 0) {
+            return size == 0 ? all : null;
+          }
+          var length = Math.min(suffix, size);
+          return new ByteRange(size - length, length);
+        }
+
+        var first = Long.parseLong(spec.substring(0, dash));
+        var last =
+            dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+        if (first > last) {
+          return all;
+        }
+        if (first >= size) {
+          return null;
+        }
+        return new ByteRange(first, Math.min(last, size - 1) - first + 1);
+      } catch (NumberFormatException e) {
+        return all;
+      }
+    }
+
+    String contentRange(long size) {
+      return "bytes " + start + "-" + (start + length - 1) + "/" + size;
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package chat.app.server;
+
+import chat.app.server.models.Attachment;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.convert.format.ReadableBytes;
+import io.micronaut.serde.ObjectMapper;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.UUID;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * AttachmentStore
+ *
+ * <p>Keeps attachments as files in {@code chat.attachments.directory}, named by a random id, next
+ * to a JSON file holding their {@link Attachment} metadata. Uploads are written chunk by chunk as
+ * they arrive, so no more than a few chunks are held in memory whatever the size of the file, and
+ * only become visible once complete. Files larger than {@code chat.attachments.max-size} are
+ * rejected.
+ */
+@Singleton
+public class AttachmentStore {
+
+  private static final String METADATA_SUFFIX = ".json";
+
+  private static final String PARTIAL_SUFFIX = ".part";
+
+  /** Chunks buffered between the request and the disk. */
+  private static final int PREFETCH = 8;
+
+  private final ObjectMapper mapper = ObjectMapper.getDefault();
+
+  private final Path directory;
+
+  private final long maxSize;
+
+  private final DistributionSummary sizes;
+
+  @Inject
+  public AttachmentStore(
+      @Value("${chat.attachments.directory:data/attachments}") String directory,
+      @ReadableBytes @Value("${chat.attachments.max-size:64MB}") long maxSize,
+      MeterRegistry registry)
+      throws IOException {
+    this(Path.of(directory), maxSize, registry);
+  }
+
+  AttachmentStore(Path directory, long maxSize, MeterRegistry registry) throws IOException {
+    this.directory = Files.createDirectories(directory);
+    this.maxSize = maxSize;
+    this.sizes =
+        DistributionSummary.builder("chat.attachments.size")
+            .description("Size of stored attachments")
+            .baseUnit("bytes")
+            .register(registry);
+  }
+
+  public long maxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Writes an upload to disk as its chunks arrive, on a blocking-friendly thread, requesting more
+   * only once the previous ones are written.
+   *
+   * @return the stored attachment, or an {@link AttachmentTooLargeException} once more than {@code
+   *     chat.attachments.max-size} bytes have been received
+   */
+  public Mono<Attachment> store(
+      String conversationId, String name, String mediaType, Publisher<byte[]> chunks) {
+    return Mono.defer(
+        () -> {
+          var id = UUID.randomUUID().toString();
+          var partial = directory.resolve(id + PARTIAL_SUFFIX);
+
+          return Mono.using(
+                  () ->
+                      FileChannel.open(
+                          partial, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE),
+                  channel ->
+                      Flux.from(chunks)
+                          .publishOn(Schedulers.boundedElastic(), PREFETCH)
+                          .reduce(0L, (size, chunk) -> write(channel, size, chunk))
+                          .map(
+                              size ->
+                                  publish(
+                                      partial,
+                                      new Attachment(id, conversationId, name, mediaType, size))),
+                  AttachmentStore::close)
+              // Before the error reaches the caller, which may look for the file right away.
+              .doOnError(error -> deleteQuietly(partial))
+              .doOnCancel(() -> deleteQuietly(partial))
+              .subscribeOn(Schedulers.boundedElastic());
+        });
+  }
+
+  /** Looks up an attachment by the id of a stored one; unknown or malformed ids are empty. */
+  public Mono<Attachment> get(String id) {
+    return Mono.fromCallable(() -> metadata(id).orElse(null))
+        .subscribeOn(Schedulers.boundedElastic());
+  }
+
+  /** The file holding the contents of a stored attachment. */
+  public Path path(Attachment attachment) {
+    return directory.resolve(attachment.id());
+  }
+
+  private long write(FileChannel channel, long size, byte[] chunk) {
+    if (size + chunk.length > maxSize) {
+      throw new AttachmentTooLargeException(maxSize);
+    }
+
+    try {
+      var buffer = ByteBuffer.wrap(chunk);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return size + chunk.length;
+  }
+
+  /** Moves a complete upload into place, then its metadata, which makes it visible. */
+  private Attachment publish(Path partial, Attachment attachment) {
+    try {
+      Files.move(partial, path(attachment), StandardCopyOption.ATOMIC_MOVE);
+
+      var metadata = directory.resolve(attachment.id() + METADATA_SUFFIX + PARTIAL_SUFFIX);
+      Files.write(metadata, mapper.writeValueAsBytes(attachment));
+      Files.move(
+          metadata,
+          directory.resolve(attachment.id() + METADATA_SUFFIX),
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    sizes.record(attachment.size());
+    return attachment;
+  }
+
+  private Optional<Attachment> metadata(String id) throws IOException {
+    if (!isId(id)) {
+      return Optional.empty();
+    }
+
+    try {
+      var bytes = Files.readAllBytes(directory.resolve(id + METADATA_SUFFIX));
+      return Optional.of(mapper.readValue(bytes, Attachment.class));
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    }
+  }
+
+  /** Whether {@code id} is one this store generates, so it can never name another file. */
+  private static boolean isId(String id) {
+    try {
+      return UUID.fromString(id).toString().equals(id);
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  private static void close(FileChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void deleteQuietly(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      // Left for the operator; it is never served.
+    }
+  }
+
+  /** Raised while storing an upload larger than {@code chat.attachments.max-size}. */
+  public static class AttachmentTooLargeException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public AttachmentTooLargeException(long maxSize) {
+      super(String.format("Attachment exceeds %d bytes", maxSize));
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message.Content;
+import io.micronaut.core.convert.ConversionContext;
+import io.micronaut.core.convert.TypeConverter;
+import io.netty.buffer.ByteBuf;
+import jakarta.inject.Singleton;
+import java.util.Optional;
+
+/**
+ * BinaryContentConverter
+ *
+ * <p>Binds binary frames to the {@link Content} argument of {@code @OnMessage} handlers. Frames
+ * that are not in the {@link BinaryFrames} format are left to the JSON codec.
+ */
+@Singleton
+public class BinaryContentConverter implements TypeConverter<ByteBuf, Content> {
+
+  @Override
+  public Optional<Content> convert(ByteBuf frame, Class<Content> targetType, ConversionContext context) {
+    if (!BinaryFrames.isBinary(frame)) {
+      return Optional.empty();
+    }
+
+    try {
+      return Optional.of(BinaryFrames.decode(frame.duplicate()));
+    } catch (RuntimeException e) {
+      context.reject(frame, e);
+      return Optional.empty();
+    }
+  }
+}
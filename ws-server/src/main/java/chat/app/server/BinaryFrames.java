@@ -0,0 +1,210 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.Content;
+import io.micronaut.websocket.WebSocketSession;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * BinaryFrames
+ *
+ * <p>Binary wire format for message contents, used by sessions that negotiate the {@value
+ * #SUBPROTOCOL} WebSocket subprotocol. A frame carries one or more records:
+ *
+ * <pre>
+ * magic      u8   0xC5
+ * mediaType  u8   index into MEDIA_TYPES, or 0 followed by a u8 length and the ASCII name
+ * sequence   i64  UNSEQUENCED for messages sent by clients
+ * length     u32
+ * data       length bytes
+ * </pre>
+ *
+ * <p>Outgoing frames are composites of a pooled header buffer and the payload arrays wrapped in
+ * place, so contents are never copied on their way to the socket.
+ */
+public final class BinaryFrames {
+
+  public static final String SUBPROTOCOL = "chat.binary.v1";
+
+  static final byte MAGIC = (byte) 0xC5;
+
+  static final List<String> MEDIA_TYPES =
+      List.of(
+          "",
+          "text/plain",
+          "application/octet-stream",
+          "image/png",
+          "image/jpeg",
+          "image/gif",
+          "image/webp",
+          "application/pdf",
+          EphemeralEvents.TYPING_MEDIA_TYPE,
+          EphemeralEvents.PRESENCE_MEDIA_TYPE,
+          ReadReceipts.READ_MEDIA_TYPE,
+          ReadReceipts.RECEIPTS_MEDIA_TYPE,
+          AttachmentController.MEDIA_TYPE,
+          SessionDrain.RECONNECT_MEDIA_TYPE);
+
+  private static final int FIXED_HEADER_SIZE = 1 + 1 + 8 + 4;
+
+  private BinaryFrames() {}
+
+  public static boolean accepts(WebSocketSession session) {
+    return session.getSubprotocol().filter(SUBPROTOCOL::equals).isPresent();
+  }
+
+  /**
+   * Sends a frame, taking ownership of it. The channel is handed a reference of its own, which it
+   * releases once the write succeeds or fails; the caller's is released once the send completes,
+   * fails or is cancelled.
+   */
+  public static <T> Flux<T> send(WebSocketSession session, T frame) {
+    return Flux.defer(
+            () -> {
+              ReferenceCountUtil.retain(frame);
+              try {
+                return Mono.fromFuture(session.sendAsync(frame)).flux();
+              } catch (RuntimeException e) {
+                // Refused before reaching the channel, which never took its reference.
+                ReferenceCountUtil.release(frame);
+                return Flux.<T>error(e);
+              }
+            })
+        .doFinally(signal -> ReferenceCountUtil.release(frame));
+  }
+
+  /** Whether a frame starts with a binary record rather than JSON text. */
+  public static boolean isBinary(ByteBuf frame) {
+    return frame.isReadable() && frame.getByte(frame.readerIndex()) == MAGIC;
+  }
+
+  /** Encodes one message into a frame owned by the caller. */
+  public static ByteBuf encode(ByteBufAllocator allocator, Message message) {
+    return encode(allocator, List.of(message));
+  }
+
+  /**
+   * Encodes stored messages as consecutive records in a single frame owned by the caller, each
+   * with its own sequence, which need not be contiguous.
+   */
+  public static ByteBuf encode(ByteBufAllocator allocator, List<Message> messages) {
+    var headersSize = 0;
+    for (var message : messages) {
+      headersSize += headerSize(message.content().getMediaType());
+    }
+
+    var headers = allocator.buffer(headersSize);
+    CompositeByteBuf frame = allocator.compositeBuffer(messages.size() * 2);
+
+    try {
+      for (var message : messages) {
+        var content = message.content();
+        var start = headers.writerIndex();
+        writeHeader(headers, message.sequence(), content);
+
+        frame.addComponent(true, headers.retainedSlice(start, headers.writerIndex() - start));
+        frame.addComponent(true, Unpooled.wrappedBuffer(content.getData()));
+      }
+      return frame;
+    } catch (RuntimeException e) {
+      frame.release();
+      throw e;
+    } finally {
+      headers.release();
+    }
+  }
+
+  /**
+   * Decodes the record at the reader index of a frame and advances past it. The payload is
+   * copied, since the frame is released once decoding returns.
+   */
+  public static Content decode(ByteBuf frame) {
+    if (frame.readByte() != MAGIC) {
+      throw new IllegalArgumentException("Not a binary chat frame");
+    }
+
+    var mediaType = readMediaType(frame);
+    frame.skipBytes(8);
+    var length = frame.readInt();
+
+    if (length < 0 || length > frame.readableBytes()) {
+      throw new IllegalArgumentException(String.format("Invalid payload length %d", length));
+    }
+
+    var data = new byte[length];
+    frame.readBytes(data);
+    return Content.of(mediaType, data);
+  }
+
+  /** Sequence of the last record of a frame, read without moving its indexes. */
+  public static long lastSequence(ByteBuf frame) {
+    var sequence = Message.UNSEQUENCED;
+    var index = frame.readerIndex();
+
+    while (index < frame.writerIndex()) {
+      var id = frame.getUnsignedByte(index + 1);
+      index += id == 0 ? 3 + frame.getUnsignedByte(index + 2) : 2;
+      sequence = frame.getLong(index);
+      index += 8 + 4 + frame.getInt(index + 8);
+    }
+    return sequence;
+  }
+
+  /** Size of one record holding {@code content}. */
+  static int recordSize(Content content) {
+    return headerSize(content.getMediaType()) + content.getData().length;
+  }
+
+  /** Writes one record at the writer index of {@code target}. */
+  static void writeRecord(ByteBuf target, long sequence, Content content) {
+    writeHeader(target, sequence, content);
+    target.writeBytes(content.getData());
+  }
+
+  private static int headerSize(String mediaType) {
+    return MEDIA_TYPES.indexOf(mediaType) > 0
+        ? FIXED_HEADER_SIZE
+        : FIXED_HEADER_SIZE + 1 + mediaType.length();
+  }
+
+  private static void writeHeader(ByteBuf headers, long sequence, Content content) {
+    var mediaType = content.getMediaType();
+    var id = MEDIA_TYPES.indexOf(mediaType);
+
+    headers.writeByte(MAGIC);
+    if (id > 0) {
+      headers.writeByte(id);
+    } else {
+      var name = mediaType.getBytes(StandardCharsets.US_ASCII);
+      if (name.length > 255) {
+        throw new IllegalArgumentException(String.format("Media type too long %s", mediaType));
+      }
+      headers.writeByte(0);
+      headers.writeByte(name.length);
+      headers.writeBytes(name);
+    }
+    headers.writeLong(sequence);
+    headers.writeInt(content.getData().length);
+  }
+
+  private static String readMediaType(ByteBuf frame) {
+    var id = frame.readUnsignedByte();
+
+    if (id == 0) {
+      return frame.readCharSequence(frame.readUnsignedByte(), StandardCharsets.US_ASCII).toString();
+    }
+
+    if (id >= MEDIA_TYPES.size()) {
+      throw new IllegalArgumentException(String.format("Unknown media type id %d", id));
+    }
+    return MEDIA_TYPES.get(id);
+  }
+}
@@ -0,0 +1,431 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Members;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.BeanProvider;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import io.micronaut.context.event.BeanPreDestroyEvent;
+import io.micronaut.context.event.BeanPreDestroyEventListener;
+import io.micronaut.core.convert.format.ReadableBytes;
+import jakarta.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * CachingConversationStorage
+ *
+ * <p>Keeps the members and the last {@code chat.storage.cache.recent-messages} messages of recently
+ * used conversations in front of another {@link ConversationStorage}. The cache is bounded by an
+ * estimate of the bytes it holds and evicts with Caffeine's W-TinyLFU policy. Concurrent misses on
+ * a conversation share one load of its members and latest messages, and writes go to the backend
+ * first and are then applied to the cached entry, if any.
+ *
+ * <p>Reads reaching further back than the cached messages go to the backend. With {@code
+ * chat.storage.cache.enabled} set, {@link Decorator} wraps whichever storage is configured.
+ */
+public class CachingConversationStorage
+    implements ConversationStorage, Delegating<ConversationStorage> {
+
+  /** Rough per-object overhead used when estimating the size of cached entries. */
+  private static final int OVERHEAD = 48;
+
+  private final ConversationStorage backend;
+
+  private final int recentMessages;
+
+  private final AsyncCache<String, Hot> cache;
+
+  private final Counter hits;
+
+  private final Counter misses;
+
+  private final Counter evictions;
+
+  CachingConversationStorage(
+      ConversationStorage backend, MeterRegistry registry, long maximumWeight, int recentMessages) {
+    this.backend = backend;
+    this.recentMessages = recentMessages;
+    this.evictions = Counter.builder("chat.storage.cache.evictions").register(registry);
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumWeight(maximumWeight)
+            .<String, Hot>weigher((id, hot) -> hot.weight())
+            .removalListener(
+                (id, hot, cause) -> {
+                  if (cause.wasEvicted()) {
+                    evictions.increment();
+                  }
+                })
+            .buildAsync();
+    this.hits = Counter.builder("chat.storage.cache").tag("result", "hit").register(registry);
+    this.misses = Counter.builder("chat.storage.cache").tag("result", "miss").register(registry);
+    Gauge.builder("chat.storage.cache.hit.ratio", this, CachingConversationStorage::hitRatio)
+        .register(registry);
+    Gauge.builder("chat.storage.cache.weight", cache, CachingConversationStorage::weightedSize)
+        .baseUnit("bytes")
+        .register(registry);
+    Gauge.builder("chat.storage.cache.size", cache, c -> c.synchronous().estimatedSize())
+        .register(registry);
+  }
+
+  @Override
+  public ConversationStorage delegate() {
+    return backend;
+  }
+
+  private double hitRatio() {
+    var total = hits.count() + misses.count();
+    return total == 0 ? 0 : hits.count() / total;
+  }
+
+  private static double weightedSize(AsyncCache<String, Hot> cache) {
+    return cache
+        .synchronous()
+        .policy()
+        .eviction()
+        .map(eviction -> eviction.weightedSize().orElse(0))
+        .orElse(0L);
+  }
+
+  @Override
+  public Mono<Conversation> getConversation(String id) {
+    return lookup(id)
+        .flatMap(
+            hot -> {
+              var recent = hot.since(0);
+              if (recent == null) {
+                misses.increment();
+                return backend.getConversation(id);
+              }
+
+              hits.increment();
+              return Mono.just(new Conversation(id, hot.members(), recent));
+            });
+  }
+
+  @Override
+  public Mono<Members> getMembers(String conversationId) {
+    var cached = cache.getIfPresent(conversationId);
+
+    if (cached != null) {
+      hits.increment();
+      return Mono.fromFuture(cached, true).map(Hot::members);
+    }
+
+    misses.increment();
+    return load(conversationId).map(Hot::members);
+  }
+
+  @Override
+  public Mono<Long> getNextSequence(String conversationId) {
+    var cached = cache.getIfPresent(conversationId);
+
+    if (cached != null) {
+      hits.increment();
+      return Mono.fromFuture(cached, true).map(Hot::lastSequence).map(last -> last + 1);
+    }
+
+    misses.increment();
+    return backend.getNextSequence(conversationId);
+  }
+
+  @Override
+  public Flux<Message> getMessages(String conversationId, long fromSequence) {
+    return lookup(conversationId)
+        .flatMapMany(
+            hot -> {
+              var recent = hot.since(fromSequence);
+              if (recent == null) {
+                misses.increment();
+                return backend.getMessages(conversationId, fromSequence);
+              }
+
+              hits.increment();
+              return Flux.fromIterable(recent);
+            });
+  }
+
+  /** Serves a message from the entry of a cached conversation, without loading one on a miss. */
+  @Override
+  public Mono<Message> getMessage(String conversationId, long sequence) {
+    var cached = cache.getIfPresent(conversationId);
+
+    if (cached == null) {
+      misses.increment();
+      return backend.getMessage(conversationId, sequence);
+    }
+
+    return Mono.fromFuture(cached, true)
+        .flatMap(
+            hot -> {
+              var recent = hot.since(sequence);
+              if (recent == null || recent.isEmpty()) {
+                misses.increment();
+                return backend.getMessage(conversationId, sequence);
+              }
+
+              hits.increment();
+              return Mono.just(recent.get(0));
+            });
+  }
+
+  @Override
+  public Mono<Conversation> createConversation(Conversation conversation) {
+    return backend
+        .createConversation(conversation)
+        .doOnNext(
+            created ->
+                cache.put(
+                    created.id(),
+                    CompletableFuture.completedFuture(Hot.of(created, recentMessages))));
+  }
+
+  @Override
+  public Mono<Message> pushMessage(String conversationId, Message message) {
+    return backend
+        .pushMessage(conversationId, message)
+        .doOnNext(
+            stored ->
+                cache
+                    .asMap()
+                    .computeIfPresent(
+                        conversationId,
+                        (id, hot) ->
+                            hot.thenApply(
+                                h -> {
+                                  // The entry changes in place; only its future is new, which
+                                  // has Caffeine weigh it again as an update.
+                                  h.append(stored);
+                                  return h;
+                                })));
+  }
+
+  /** The cached entry of a conversation, loading it on a miss. */
+  private Mono<Hot> lookup(String id) {
+    var cached = cache.getIfPresent(id);
+    return cached != null ? Mono.fromFuture(cached, true) : load(id);
+  }
+
+  /**
+   * Loads a conversation at most once across concurrent callers, reading its members and only the
+   * messages the entry keeps rather than its whole history. Missing ones are not cached.
+   */
+  private Mono<Hot> load(String id) {
+    return Mono.fromFuture(cache.get(id, (key, executor) -> loadTail(key).toFuture()), true);
+  }
+
+  private Mono<Hot> loadTail(String id) {
+    return backend
+        .getMembers(id)
+        .flatMap(
+            members ->
+                backend
+                    .getNextSequence(id)
+                    .flatMap(
+                        next ->
+                            backend
+                                .getMessages(id, Math.max(0, next - recentMessages))
+                                .collectList()
+                                .map(tail -> Hot.of(members, tail, next, recentMessages))));
+  }
+
+  /**
+   * Cached state of a conversation, guarded by its own lock. The last {@code limit} contiguous
+   * messages ending just before {@code nextSequence} are kept in a ring; messages stored out of
+   * order wait in {@code ahead} until the gap before them is filled. The weight is kept up to date
+   * as messages come and go, so appending never copies the entry.
+   */
+  static final class Hot {
+
+    private final Members members;
+
+    private final Message[] ring;
+
+    private final TreeMap<Long, Message> ahead = new TreeMap<>();
+
+    /** Index of the oldest message in {@code ring}. */
+    private int head;
+
+    private int size;
+
+    private long nextSequence;
+
+    private volatile int weight;
+
+    Hot(Members members, int limit, long nextSequence) {
+      this.members = members;
+      this.ring = new Message[limit];
+      this.nextSequence = nextSequence;
+
+      var weight = OVERHEAD;
+      for (var user : members) {
+        weight += OVERHEAD + 2 * user.username().length();
+      }
+      this.weight = weight;
+    }
+
+    static Hot of(Conversation conversation, int limit) {
+      var messages = conversation.messages();
+      var next = messages.isEmpty() ? 0 : messages.get(messages.size() - 1).sequence() + 1;
+      var tail = messages.subList(Math.max(0, messages.size() - limit), messages.size());
+      return of(conversation.members(), tail, next, limit);
+    }
+
+    /**
+     * Caches the last messages of a conversation, from where they no longer skip a sequence, or an
+     * empty entry continuing at {@code nextSequence} if there are none.
+     */
+    static Hot of(Members members, List<Message> tail, long nextSequence, int limit) {
+      if (tail.isEmpty()) {
+        return new Hot(members, limit, nextSequence);
+      }
+
+      var from = tail.size() - 1;
+      while (from > 0 && tail.get(from - 1).sequence() == tail.get(from).sequence() - 1) {
+        from--;
+      }
+
+      var hot = new Hot(members, limit, tail.get(from).sequence());
+      tail.subList(from, tail.size()).forEach(hot::append);
+      return hot;
+    }
+
+    private static int weigh(Message message) {
+      return 3 * OVERHEAD
+          + 2 * message.user().username().length()
+          + message.content().getData().length;
+    }
+
+    Members members() {
+      return members;
+    }
+
+    int weight() {
+      return weight;
+    }
+
+    synchronized long nextSequence() {
+      return nextSequence;
+    }
+
+    synchronized long firstSequence() {
+      return nextSequence - size;
+    }
+
+    /** Highest sequence stored, counting messages still waiting for a gap to fill. */
+    synchronized long lastSequence() {
+      return ahead.isEmpty() ? nextSequence - 1 : ahead.lastKey();
+    }
+
+    synchronized List<Message> recent() {
+      return since(nextSequence - size);
+    }
+
+    /**
+     * Copies the cached messages from {@code sequence} on, or returns {@code null} if some of them
+     * are no longer cached.
+     */
+    synchronized List<Message> since(long sequence) {
+      var first = nextSequence - size;
+      if (sequence < first) {
+        return null;
+      }
+
+      var from = (int) Math.min(sequence - first, size);
+      var messages = new ArrayList<Message>(size - from);
+      for (int i = from; i < size; i++) {
+        messages.add(ring[(head + i) % ring.length]);
+      }
+      return messages;
+    }
+
+    synchronized void append(Message message) {
+      var sequence = message.sequence();
+
+      if (sequence < nextSequence || ahead.containsKey(sequence)) {
+        return;
+      }
+
+      if (sequence > nextSequence) {
+        ahead.put(sequence, message);
+        weight += weigh(message);
+        return;
+      }
+
+      push(message);
+      Message next;
+      while ((next = ahead.remove(nextSequence)) != null) {
+        weight -= weigh(next);
+        push(next);
+      }
+    }
+
+    private void push(Message message) {
+      nextSequence++;
+      if (ring.length == 0) {
+        return;
+      }
+
+      var weight = this.weight + weigh(message);
+      if (size == ring.length) {
+        weight -= weigh(ring[head]);
+        ring[head] = message;
+        head = (head + 1) % ring.length;
+      } else {
+        ring[(head + size) % ring.length] = message;
+        size++;
+      }
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * Wraps the configured {@link ConversationStorage} bean when the cache is enabled, and unwraps it
+   * again on shutdown so the backend's own destroy hooks run against it.
+   */
+  @Singleton
+  @Requires(property = "chat.storage.cache.enabled", value = "true")
+  public static class Decorator
+      implements BeanCreatedEventListener<ConversationStorage>,
+          BeanPreDestroyEventListener<ConversationStorage> {
+
+    private final BeanProvider<MeterRegistry> registry;
+
+    private final long maximumWeight;
+
+    private final int recentMessages;
+
+    public Decorator(
+        BeanProvider<MeterRegistry> registry,
+        @ReadableBytes @Value("${chat.storage.cache.maximum-weight:64MB}") long maximumWeight,
+        @Value("${chat.storage.cache.recent-messages:256}") int recentMessages) {
+      this.registry = registry;
+      this.maximumWeight = maximumWeight;
+      this.recentMessages = recentMessages;
+    }
+
+    @Override
+    public ConversationStorage onCreated(BeanCreatedEvent<ConversationStorage> event) {
+      return new CachingConversationStorage(
+          event.getBean(), registry.get(), maximumWeight, recentMessages);
+    }
+
+    @Override
+    public ConversationStorage onPreDestroy(BeanPreDestroyEvent<ConversationStorage> event) {
+      return Delegating.unwrap(event.getBean());
+    }
+  }
+}
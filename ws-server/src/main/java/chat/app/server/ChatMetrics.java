@@ -0,0 +1,88 @@
+package chat.app.server;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.inject.Singleton;
+import java.util.concurrent.TimeUnit;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * ChatMetrics
+ *
+ * <p>Meters of the WebSocket handler, shared by its per-connection instances: messages received,
+ * messages rejected, messages dropped over a rate limit, and how long opening a connection (joining
+ * and replaying history) and handling a message (storing and fanning it out) take. The timers
+ * publish histogram buckets so percentiles can be aggregated across nodes.
+ */
+@Singleton
+public class ChatMetrics {
+
+  final Counter received;
+
+  final Counter rejected;
+
+  final Counter limited;
+
+  final Timer open;
+
+  final Timer message;
+
+  public ChatMetrics(MeterRegistry registry) {
+    this.received =
+        Counter.builder("chat.messages")
+            .description("Messages received from or queued for WebSocket sessions")
+            .tag("direction", "in")
+            .register(registry);
+    this.rejected =
+        Counter.builder("chat.messages.rejected")
+            .description("Messages from senders outside the conversation")
+            .register(registry);
+    this.limited =
+        Counter.builder("chat.messages.limited")
+            .description("Messages dropped for going over a session or user rate")
+            .register(registry);
+    this.open = handlerTimer(registry, "open");
+    this.message = handlerTimer(registry, "message");
+  }
+
+  private static Timer handlerTimer(MeterRegistry registry, String event) {
+    return Timer.builder("chat.handler")
+        .description("Time from a WebSocket event to the handler completing")
+        .tag("event", event)
+        .publishPercentileHistogram()
+        .register(registry);
+  }
+
+  /** Records from subscription to termination or cancellation of {@code work}. */
+  static <T> Mono<T> timed(Timer timer, Mono<T> work) {
+    return timed(Clock.SYSTEM, timer, work);
+  }
+
+  /** Records from subscription to termination or cancellation of {@code work}. */
+  static <T> Flux<T> timed(Timer timer, Flux<T> work) {
+    return timed(Clock.SYSTEM, timer, work);
+  }
+
+  /** As {@link #timed(Timer, Mono)}, reading the time from {@code clock}. */
+  static <T> Mono<T> timed(Clock clock, Timer timer, Mono<T> work) {
+    return Mono.defer(
+        () -> {
+          var start = clock.monotonicTime();
+          return work.doFinally(
+              signal -> timer.record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS));
+        });
+  }
+
+  /** As {@link #timed(Timer, Flux)}, reading the time from {@code clock}. */
+  static <T> Flux<T> timed(Clock clock, Timer timer, Flux<T> work) {
+    return Flux.defer(
+        () -> {
+          var start = clock.monotonicTime();
+          return work.doFinally(
+              signal -> timer.record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS));
+        });
+  }
+}
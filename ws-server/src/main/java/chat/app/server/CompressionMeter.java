@@ -0,0 +1,58 @@
+package chat.app.server;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CompressionMeter
+ *
+ * <p>Meters of one compression codec: bytes before and after compression in {@code
+ * chat.compression.bytes}, so the ratio is {@code compressed / raw}, the time spent compressing in
+ * {@code chat.compression.time}, and payloads sent as they were in {@code chat.compression.skipped}.
+ */
+final class CompressionMeter {
+
+  private final Counter raw;
+
+  private final Counter compressed;
+
+  private final Counter skipped;
+
+  private final Timer time;
+
+  CompressionMeter(MeterRegistry registry, String codec) {
+    this.raw = bytes(registry, codec, "raw");
+    this.compressed = bytes(registry, codec, "compressed");
+    this.skipped =
+        Counter.builder("chat.compression.skipped")
+            .description("Payloads sent uncompressed, being too small to be worth it")
+            .tag("codec", codec)
+            .register(registry);
+    this.time =
+        Timer.builder("chat.compression.time")
+            .description("Time spent compressing one payload")
+            .tag("codec", codec)
+            .register(registry);
+  }
+
+  private static Counter bytes(MeterRegistry registry, String codec, String stage) {
+    return Counter.builder("chat.compression.bytes")
+        .description("Bytes of compressed payloads before and after compression")
+        .baseUnit("bytes")
+        .tag("codec", codec)
+        .tag("stage", stage)
+        .register(registry);
+  }
+
+  void record(long rawBytes, long compressedBytes, long nanos) {
+    raw.increment(rawBytes);
+    compressed.increment(compressedBytes);
+    time.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  void skipped() {
+    skipped.increment();
+  }
+}
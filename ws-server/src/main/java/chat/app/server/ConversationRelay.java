@@ -0,0 +1,23 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation;
+import reactor.core.publisher.Mono;
+
+/**
+ * ConversationRelay
+ *
+ * <p>Carries messages to the sessions of a conversation connected to other nodes. Local sessions
+ * are served by {@link ConversationSessions} directly.
+ */
+public interface ConversationRelay {
+
+  public Mono<Void> publish(String conversationId, Conversation.Message message);
+
+  /**
+   * Completes once messages other nodes publish to a conversation with local sessions reach this
+   * node, so a joining session reads history only when it can no longer miss one.
+   */
+  public default Mono<Void> subscribed(String conversationId) {
+    return Mono.empty();
+  }
+}
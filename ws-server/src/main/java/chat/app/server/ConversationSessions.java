@@ -0,0 +1,289 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.SequencedContent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.websocket.WebSocketSession;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import jakarta.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * ConversationSessions
+ *
+ * <p>Routing index from conversation id to the WebSocket sessions open on this node, so fan-out
+ * only touches the members of a conversation instead of every connected socket.
+ *
+ * <p>Publishes the open sessions and conversations of the node as gauges, how many local sessions a
+ * conversation has whenever one joins, and the sessions each message is queued for.
+ */
+@Singleton
+public class ConversationSessions {
+
+  private final ConcurrentHashMap<String, Set<WebSocketSession>> sessions =
+      new ConcurrentHashMap<>();
+
+  private final List<Consumer<String>> activityListeners = new CopyOnWriteArrayList<>();
+
+  private final AtomicInteger sessionCount = new AtomicInteger();
+
+  private final OutboundQueues outbound;
+
+  private final DistributionSummary conversationSessions;
+
+  private final DistributionSummary fanOut;
+
+  private final Counter sent;
+
+  public ConversationSessions(OutboundQueues outbound, MeterRegistry registry) {
+    this.outbound = outbound;
+    this.conversationSessions =
+        DistributionSummary.builder("chat.conversation.sessions")
+            .description("Local sessions of a conversation when a session joins it")
+            .register(registry);
+    this.fanOut =
+        DistributionSummary.builder("chat.broadcast.fanout")
+            .description("Sessions a message is queued for")
+            .register(registry);
+    this.sent =
+        Counter.builder("chat.messages")
+            .description("Messages received from or queued for WebSocket sessions")
+            .tag("direction", "out")
+            .register(registry);
+    Gauge.builder("chat.sessions", sessionCount, AtomicInteger::get)
+        .description("Open WebSocket sessions on this node")
+        .register(registry);
+    Gauge.builder("chat.conversations", sessions, ConcurrentHashMap::size)
+        .description("Conversations with open sessions on this node")
+        .register(registry);
+  }
+
+  /**
+   * Registers a callback invoked with the conversation id whenever a conversation gains its first
+   * or loses its last local session.
+   */
+  public void onActivityChange(Consumer<String> listener) {
+    activityListeners.add(listener);
+  }
+
+  /**
+   * Registers a session on a conversation.
+   *
+   * @return {@code true} if it is the first local session of the conversation
+   */
+  public boolean add(String conversationId, WebSocketSession session) {
+    var first = new boolean[1];
+    var size = new int[1];
+    sessions.compute(
+        conversationId,
+        (id, members) -> {
+          if (members == null) {
+            members = ConcurrentHashMap.newKeySet();
+            first[0] = true;
+          }
+          if (members.add(session)) {
+            sessionCount.incrementAndGet();
+          }
+          size[0] = members.size();
+          return members;
+        });
+    conversationSessions.record(size[0]);
+
+    if (first[0]) {
+      activityListeners.forEach(l -> l.accept(conversationId));
+    }
+    return first[0];
+  }
+
+  /**
+   * Unregisters a session, dropping the conversation entry once it has no sessions left.
+   *
+   * @return {@code true} if it was the last local session of the conversation
+   */
+  public boolean remove(String conversationId, WebSocketSession session) {
+    var last = new boolean[1];
+    sessions.computeIfPresent(
+        conversationId,
+        (id, members) -> {
+          if (!members.remove(session)) {
+            return members;
+          }
+          sessionCount.decrementAndGet();
+          if (members.isEmpty()) {
+            last[0] = true;
+            return null;
+          }
+          return members;
+        });
+
+    outbound.remove(session);
+
+    if (last[0]) {
+      activityListeners.forEach(l -> l.accept(conversationId));
+    }
+    return last[0];
+  }
+
+  /**
+   * Registers a session that is about to replay history. Messages delivered meanwhile are held
+   * back until {@link #replayed}, so they neither interleave with history nor go missing between
+   * the history read and the registration.
+   */
+  public boolean addReplaying(String conversationId, WebSocketSession session) {
+    outbound.hold(session);
+    return add(conversationId, session);
+  }
+
+  /**
+   * Writes what was delivered to a session while it replayed history, apart from messages up to
+   * {@code lastReplayed}, which the replay already sent.
+   */
+  public void replayed(WebSocketSession session, long lastReplayed) {
+    outbound.resume(session, lastReplayed);
+  }
+
+  public Set<WebSocketSession> get(String conversationId) {
+    var members = sessions.get(conversationId);
+    return members == null ? Collections.emptySet() : Collections.unmodifiableSet(members);
+  }
+
+  public boolean hasSessions(String conversationId) {
+    return sessions.containsKey(conversationId);
+  }
+
+  int conversationCount() {
+    return sessions.size();
+  }
+
+  int sessionCount() {
+    return sessionCount.get();
+  }
+
+  /** Every session on this node, with the conversation it joined. */
+  List<Map.Entry<String, WebSocketSession>> all() {
+    var all = new ArrayList<Map.Entry<String, WebSocketSession>>(sessionCount.get());
+    sessions.forEach(
+        (conversationId, members) ->
+            members.forEach(session -> all.add(Map.entry(conversationId, session))));
+    return all;
+  }
+
+  /**
+   * Queues a message for every open session of a conversation. Sessions found closed are pruned, so
+   * a socket that dropped without a close callback does not linger in the index.
+   *
+   * @return completes once the message is queued for every session, without waiting for the
+   *     writes
+   */
+  public Mono<Void> broadcast(String conversationId, Object message) {
+    return fanOut(conversationId, session -> message, Message.UNSEQUENCED, false);
+  }
+
+  /**
+   * Queues a stored message for every open session of a conversation, encoding it at most once per
+   * wire format: sessions speaking {@link BinaryFrames#SUBPROTOCOL} share one pooled frame, the
+   * others receive the JSON content, as a {@link SequencedContent} if the message is stored.
+   * Presence is queued as ephemeral, so it never evicts a stored message.
+   */
+  public Mono<Void> deliver(String conversationId, Message message) {
+    return Mono.using(
+        () -> new EncodedMessage(message),
+        encoded ->
+            fanOut(conversationId, encoded::frameFor, message.sequence(), isEphemeral(message)),
+        EncodedMessage::release);
+  }
+
+  /** Queues a message for one session, encoded for its wire format. */
+  public Mono<Void> send(WebSocketSession session, Message message) {
+    return Mono.using(
+        () -> new EncodedMessage(message),
+        encoded ->
+            offer(session, encoded.frameFor(session), message.sequence(), isEphemeral(message)),
+        EncodedMessage::release);
+  }
+
+  private static boolean isEphemeral(Message message) {
+    return message.sequence() == Message.UNSEQUENCED
+        && EphemeralEvents.PRESENCE_MEDIA_TYPE.equals(message.content().getMediaType());
+  }
+
+  private Mono<Void> offer(
+      WebSocketSession session, Object frame, long sequence, boolean ephemeral) {
+    if (ephemeral) {
+      outbound.offerEphemeral(session, frame);
+      return Mono.empty();
+    }
+    return outbound.offer(session, frame, sequence);
+  }
+
+  private Mono<Void> fanOut(
+      String conversationId,
+      Function<WebSocketSession, Object> frameFor,
+      long sequence,
+      boolean ephemeral) {
+    var members = sessions.get(conversationId);
+
+    if (members == null) {
+      return Mono.empty();
+    }
+
+    fanOut.record(members.size());
+    return Flux.fromIterable(members)
+        .flatMap(
+            session -> {
+              if (!session.isOpen()) {
+                remove(conversationId, session);
+                return Mono.empty();
+              }
+
+              sent.increment();
+              return offer(session, frameFor.apply(session), sequence, ephemeral);
+            })
+        .then();
+  }
+
+  private static final class EncodedMessage {
+
+    private final Message message;
+
+    private ByteBuf binary;
+
+    EncodedMessage(Message message) {
+      this.message = message;
+    }
+
+    Object frameFor(WebSocketSession session) {
+      if (!BinaryFrames.accepts(session)) {
+        return message.sequence() == Message.UNSEQUENCED
+            ? message.content()
+            : SequencedContent.of(message);
+      }
+
+      if (binary == null) {
+        binary = BinaryFrames.encode(ByteBufAllocator.DEFAULT, message);
+      }
+      return binary.retainedDuplicate();
+    }
+
+    void release() {
+      if (binary != null) {
+        binary.release();
+      }
+    }
+  }
+}
@@ -1,6 +1,8 @@
 package chat.app.server;
 
 import chat.app.server.models.Conversation;
+import chat.app.server.models.Members;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 /**
@@ -12,5 +14,44 @@ public interface ConversationStorage {
 
     public Mono<Conversation> createConversation(Conversation conversation);
 
-    public Mono<Conversation> pushMessage(String conversationId, Conversation.Message message);
+    /**
+     * Looks up the members of a conversation without loading its messages.
+     */
+    public default Mono<Members> getMembers(String conversationId) {
+        return getConversation(conversationId).map(Conversation::members);
+    }
+
+    /**
+     * Looks up the sequence the next message of a conversation will get, which is also its number
+     * of messages, without loading them.
+     */
+    public default Mono<Long> getNextSequence(String conversationId) {
+        return getConversation(conversationId).map(c -> (long) c.messages().size());
+    }
+
+    /**
+     * Appends a message to a conversation.
+     *
+     * @return the stored message, carrying its sequence within the conversation
+     */
+    public Mono<Conversation.Message> pushMessage(String conversationId, Conversation.Message message);
+
+    /**
+     * Streams the messages of a conversation in sequence order, starting at {@code fromSequence}.
+     */
+    public default Flux<Conversation.Message> getMessages(String conversationId, long fromSequence) {
+        return getConversation(conversationId)
+                .flatMapIterable(c -> {
+                    var messages = c.messages();
+                    var from = (int) Math.min(Math.max(fromSequence, 0), messages.size());
+                    return messages.subList(from, messages.size());
+                });
+    }
+
+    /**
+     * Looks up one message of a conversation by its sequence, without reading those after it.
+     */
+    public default Mono<Conversation.Message> getMessage(String conversationId, long sequence) {
+        return getMessages(conversationId, sequence).next().filter(m -> m.sequence() == sequence);
+    }
 }
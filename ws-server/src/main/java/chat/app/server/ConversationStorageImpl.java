@@ -1,24 +1,27 @@
 package chat.app.server;
 
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Stream;
 
 import chat.app.server.models.Conversation;
 import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Members;
+import io.micronaut.context.annotation.Requires;
 import jakarta.inject.Singleton;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Singleton
+@Requires(property = "chat.storage.type", value = "memory", defaultValue = "memory")
 public class ConversationStorageImpl implements ConversationStorage {
 
-    ConcurrentHashMap<String, Conversation> conversations = new ConcurrentHashMap<>();
+    ConcurrentHashMap<String, StoredConversation> conversations = new ConcurrentHashMap<>();
 
     @Override
     public Mono<Conversation> getConversation(String id) {
+        var stored = conversations.get(id);
 
-        if (conversations.containsKey(id)) {
-            var conversation = conversations.get(id);
-            return Mono.just(conversation);
+        if (stored != null) {
+            return Mono.just(stored.toConversation());
         }
 
         return Mono.empty();
@@ -26,21 +29,76 @@ public class ConversationStorageImpl implements ConversationStorage {
 
     @Override
     public Mono<Conversation> createConversation(Conversation conversation) {
-        if (conversations.containsKey(conversation.id())) {
+        var stored = new StoredConversation(conversation.id(), conversation.members(), new MessageLog());
+        conversation.messages().forEach(stored.log()::append);
+        return put(stored);
+    }
+
+    /**
+     * Creates a conversation from messages stored before, in sequence order, keeping their
+     * sequences rather than numbering them again.
+     */
+    Mono<Conversation> restoreConversation(Conversation conversation) {
+        return put(new StoredConversation(
+                conversation.id(), conversation.members(), new MessageLog(conversation.messages())));
+    }
+
+    private Mono<Conversation> put(StoredConversation stored) {
+        if (conversations.putIfAbsent(stored.id(), stored) != null) {
             return Mono.error(new Throwable("Conversation already exists"));
         }
 
-        conversations.put(conversation.id(), conversation);
+        return Mono.just(stored.toConversation());
+    }
+
+    @Override
+    public Mono<Members> getMembers(String conversationId) {
+        var stored = conversations.get(conversationId);
 
-        return Mono.just(conversation);
+        if (stored != null) {
+            return Mono.just(stored.users());
+        }
+
+        return Mono.empty();
     }
 
     @Override
-    public Mono<Conversation> pushMessage(String conversationId, Message message) {
-        return getConversation(conversationId).map(c -> new Conversation(
-                c.id(),
-                c.users(),
-                Stream.concat(c.messages().stream(), Stream.of(message)).toList()));
+    public Mono<Long> getNextSequence(String conversationId) {
+        var stored = conversations.get(conversationId);
+
+        if (stored != null) {
+            return Mono.just(stored.log().nextSequence());
+        }
+
+        return Mono.empty();
     }
 
+    @Override
+    public Flux<Message> getMessages(String conversationId, long fromSequence) {
+        var stored = conversations.get(conversationId);
+
+        if (stored != null) {
+            return Flux.fromIterable(stored.log().from(fromSequence));
+        }
+
+        return Flux.empty();
+    }
+
+    @Override
+    public Mono<Message> pushMessage(String conversationId, Message message) {
+        var stored = conversations.get(conversationId);
+
+        if (stored == null) {
+            return Mono.empty();
+        }
+
+        return Mono.just(stored.log().append(message));
+    }
+
+    record StoredConversation(String id, Members users, MessageLog log) {
+
+        Conversation toConversation() {
+            return new Conversation(id, users, log.snapshot());
+        }
+    }
 }
@@ -0,0 +1,23 @@
+package chat.app.server;
+
+/**
+ * Delegating
+ *
+ * <p>A bean that wraps another of the same type, such as the storage decorators installed by
+ * {@link io.micronaut.context.event.BeanCreatedEventListener}s. Micronaut runs the matching
+ * destroy listeners in the same order as the create ones, so each unwraps every layer rather than
+ * just its own before the innermost bean's destroy hooks run.
+ */
+interface Delegating<T> {
+
+  T delegate();
+
+  /** The innermost bean under any number of wrappers. */
+  @SuppressWarnings("unchecked")
+  static <T> T unwrap(T bean) {
+    while (bean instanceof Delegating<?> delegating) {
+      bean = (T) delegating.delegate();
+    }
+    return bean;
+  }
+}
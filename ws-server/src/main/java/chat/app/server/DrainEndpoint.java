@@ -0,0 +1,39 @@
+package chat.app.server;
+
+import io.micronaut.management.endpoint.annotation.Endpoint;
+import io.micronaut.management.endpoint.annotation.Read;
+import io.micronaut.management.endpoint.annotation.Write;
+import io.micronaut.serde.annotation.Serdeable;
+import reactor.core.publisher.Mono;
+
+/**
+ * DrainEndpoint
+ *
+ * <p>{@code GET /drain} tells whether the node is draining and how many sessions it still has.
+ * {@code POST /drain} starts the {@link SessionDrain} and answers once every session is closed,
+ * which makes it fit for a pre-stop hook: the server closes every socket at once when it stops, so
+ * draining has to be over by then. {@link DrainTokenRule} answers it only to callers presenting
+ * {@code chat.drain.token}.
+ */
+@Endpoint(id = "drain")
+public class DrainEndpoint {
+
+  private final SessionDrain drain;
+
+  public DrainEndpoint(SessionDrain drain) {
+    this.drain = drain;
+  }
+
+  @Read
+  public Status status() {
+    return new Status(drain.isDraining(), drain.sessions());
+  }
+
+  @Write
+  public Mono<Status> drain() {
+    return drain.drain().then(Mono.fromSupplier(this::status));
+  }
+
+  @Serdeable
+  public record Status(boolean draining, int sessions) {}
+}
@@ -0,0 +1,61 @@
+package chat.app.server;
+
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.HttpAttributes;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.security.authentication.Authentication;
+import io.micronaut.security.rules.SecurityRule;
+import io.micronaut.security.rules.SecurityRuleResult;
+import io.micronaut.security.rules.SensitiveEndpointRule;
+import io.micronaut.web.router.MethodBasedRouteMatch;
+import jakarta.inject.Singleton;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+
+/**
+ * DrainTokenRule
+ *
+ * <p>Answers {@link DrainEndpoint} only to callers sending {@code chat.drain.token} in the {@value
+ * #TOKEN_HEADER} header, like a pre-stop hook given the token through the environment. Users
+ * authenticate with their chat sessions, which carry no roles to tell operators apart by, so being
+ * signed in is not enough. Without a configured token the endpoint is closed to everyone. Other
+ * management endpoints are left to {@link SensitiveEndpointRule}, which runs after this rule.
+ */
+@Singleton
+public class DrainTokenRule implements SecurityRule<HttpRequest<?>> {
+
+  static final String TOKEN_HEADER = "X-Drain-Token";
+
+  private final byte[] token;
+
+  public DrainTokenRule(@Value("${chat.drain.token:}") String token) {
+    this.token = token.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public Publisher<SecurityRuleResult> check(
+      HttpRequest<?> request, @Nullable Authentication authentication) {
+    var routeMatch = request.getAttribute(HttpAttributes.ROUTE_MATCH, MethodBasedRouteMatch.class);
+    if (routeMatch.isEmpty() || routeMatch.get().getDeclaringType() != DrainEndpoint.class) {
+      return Mono.just(SecurityRuleResult.UNKNOWN);
+    }
+    return Mono.just(
+        matches(request.getHeaders().get(TOKEN_HEADER))
+            ? SecurityRuleResult.ALLOWED
+            : SecurityRuleResult.REJECTED);
+  }
+
+  boolean matches(@Nullable String presented) {
+    return token.length > 0
+        && presented != null
+        && MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public int getOrder() {
+    return SensitiveEndpointRule.ORDER - 100;
+  }
+}
@@ -0,0 +1,409 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.Presence;
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.type.Argument;
+import io.micronaut.serde.ObjectMapper;
+import io.micronaut.websocket.WebSocketSession;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * EphemeralEvents
+ *
+ * <p>Presence and typing indicators of conversation members. They are kept in memory, never
+ * stored, and sent to the conversation as {@value #PRESENCE_MEDIA_TYPE} contents holding a JSON
+ * array of {@link Presence}.
+ *
+ * <p>Clients report typing with {@value #TYPING_MEDIA_TYPE} contents: {@code 1} (or an empty
+ * payload) while typing, renewed within {@code chat.ephemeral.typing-timeout}, and {@code 0} when
+ * they stop. Changes are coalesced per conversation: at most one batch is broadcast every {@code
+ * chat.ephemeral.window}, carrying only the members whose state changed, so a room costs one
+ * fan-out per window however many of its members are typing. Each session may send {@code
+ * chat.ephemeral.rate} events a second with bursts of {@code chat.ephemeral.burst}; the rest are
+ * dropped.
+ *
+ * <p>A joining session receives the state of every online member at once. Batches reach other
+ * nodes through the {@link ConversationRelay}. Whether a member is online anywhere is counted by
+ * the {@link PresenceCounter}, so a member leaving one node while connected to another stays
+ * online; typing in join snapshots covers the members connected to this node.
+ */
+@Singleton
+public class EphemeralEvents {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EphemeralEvents.class);
+
+  public static final String TYPING_MEDIA_TYPE = "application/vnd.chat.typing";
+
+  public static final String PRESENCE_MEDIA_TYPE = "application/vnd.chat.presence+json";
+
+  /** Session attribute marking a session counted in the presence of its member. */
+  static final String JOINED_ATTRIBUTE = "chat.ephemeral.joined";
+
+  /** Session attribute holding the rate limiter of a session. */
+  static final String BUCKET_ATTRIBUTE = "chat.ephemeral.bucket";
+
+  private static final User SERVER = new User("");
+
+  private static final Argument<List<Presence>> PRESENCE_LIST = Argument.listOf(Presence.class);
+
+  private final ObjectMapper mapper = ObjectMapper.getDefault();
+
+  private final ConcurrentHashMap<String, Room> rooms = new ConcurrentHashMap<>();
+
+  private final ConversationSessions sessions;
+
+  private final ConversationRelay relay;
+
+  private final PresenceCounter counter;
+
+  private final Scheduler scheduler;
+
+  private final long windowNanos;
+
+  private final long typingTimeoutNanos;
+
+  private final double rate;
+
+  private final int burst;
+
+  private final Counter accepted;
+
+  private final Counter limited;
+
+  private final DistributionSummary batches;
+
+  @Inject
+  public EphemeralEvents(
+      ConversationSessions sessions,
+      ConversationRelay relay,
+      PresenceCounter counter,
+      MeterRegistry registry,
+      @Value("${chat.ephemeral.window:500ms}") Duration window,
+      @Value("${chat.ephemeral.typing-timeout:5s}") Duration typingTimeout,
+      @Value("${chat.ephemeral.rate:5}") double rate,
+      @Value("${chat.ephemeral.burst:10}") int burst) {
+    this(
+        sessions,
+        relay,
+        counter,
+        registry,
+        window,
+        typingTimeout,
+        rate,
+        burst,
+        Schedulers.parallel());
+  }
+
+  EphemeralEvents(
+      ConversationSessions sessions,
+      ConversationRelay relay,
+      PresenceCounter counter,
+      MeterRegistry registry,
+      Duration window,
+      Duration typingTimeout,
+      double rate,
+      int burst,
+      Scheduler scheduler) {
+    this.sessions = sessions;
+    this.relay = relay;
+    this.counter = counter;
+    this.scheduler = scheduler;
+    this.windowNanos = window.toNanos();
+    this.typingTimeoutNanos = typingTimeout.toNanos();
+    this.rate = rate;
+    this.burst = burst;
+    this.accepted =
+        Counter.builder("chat.ephemeral.events").tag("result", "accepted").register(registry);
+    this.limited =
+        Counter.builder("chat.ephemeral.events").tag("result", "limited").register(registry);
+    this.batches =
+        DistributionSummary.builder("chat.ephemeral.batch")
+            .description("Member states carried by one presence broadcast")
+            .register(registry);
+  }
+
+  public static boolean isEphemeral(Content content) {
+    return TYPING_MEDIA_TYPE.equals(content.getMediaType());
+  }
+
+  /**
+   * Marks a member online for one more session and queues the state of every online member for
+   * that session.
+   */
+  public Mono<Void> join(String conversationId, String username, WebSocketSession session) {
+    var first = new boolean[1];
+    rooms.compute(
+        conversationId,
+        (id, room) -> {
+          room = room == null ? new Room(id) : room;
+          var state = room.members.computeIfAbsent(username, u -> new State());
+          if (state.sessions++ == 0) {
+            first[0] = true;
+            room.mark(username);
+          }
+          return room;
+        });
+    session.put(JOINED_ATTRIBUTE, Boolean.TRUE);
+
+    var counted = first[0] ? counter.increment(conversationId, username) : Mono.<Long>empty();
+    return counted.then(
+        Mono.defer(
+            () -> {
+              // A session closed while it was joining was not counted out by its close.
+              if (!session.isOpen()) {
+                leave(conversationId, username, session);
+                return Mono.empty();
+              }
+              return counter
+                  .online(conversationId)
+                  .flatMap(
+                      online -> sessions.send(session, message(snapshot(conversationId, online))));
+            }));
+  }
+
+  /** States of the members online anywhere, typing as far as this node knows. */
+  private List<Presence> snapshot(String conversationId, List<String> online) {
+    var snapshot = new ArrayList<Presence>(online.size());
+    rooms.computeIfPresent(
+        conversationId,
+        (id, room) -> {
+          for (var username : online) {
+            var state = room.members.get(username);
+            snapshot.add(new Presence(username, true, state != null && state.typing));
+          }
+          return room;
+        });
+    return snapshot;
+  }
+
+  /**
+   * Stops counting a member on this node once its last session here has left, marking them offline
+   * unless they are still counted on another node.
+   */
+  public void leave(String conversationId, String username, WebSocketSession session) {
+    if (session.get(JOINED_ATTRIBUTE, Boolean.class).isEmpty()) {
+      return;
+    }
+
+    session.remove(JOINED_ATTRIBUTE);
+    var last = new boolean[1];
+    var wasTyping = new boolean[1];
+    rooms.computeIfPresent(
+        conversationId,
+        (id, room) -> {
+          var state = room.members.get(username);
+          if (state != null && --state.sessions == 0) {
+            last[0] = true;
+            wasTyping[0] = state.typing;
+            state.typing = false;
+          }
+          return room;
+        });
+
+    if (last[0]) {
+      counter
+          .decrement(conversationId, username)
+          .subscribe(
+              remaining -> left(conversationId, username, remaining > 0, wasTyping[0]),
+              error -> LOG.warn("Failed counting {} out of {}", username, conversationId, error));
+    }
+  }
+
+  private void left(String conversationId, String username, boolean elsewhere, boolean wasTyping) {
+    // Still online elsewhere and not typing here: nothing changed for the others.
+    var changed = !elsewhere || wasTyping;
+    rooms.compute(
+        conversationId,
+        (id, room) -> {
+          if (room == null && !changed) {
+            return null;
+          }
+          room = room == null ? new Room(id) : room;
+
+          var state = room.members.get(username);
+          if (state == null && changed) {
+            state = new State();
+            room.members.put(username, state);
+          }
+          // A session that joined meanwhile counted the member again.
+          if (state != null && state.sessions == 0) {
+            state.elsewhere = elsewhere;
+            if (changed) {
+              room.mark(username);
+            } else if (!room.dirty.contains(username)) {
+              room.members.remove(username);
+            }
+          }
+          return room.members.isEmpty() && !room.scheduled ? null : room;
+        });
+  }
+
+  /**
+   * Applies an event sent by a member, unless the session is over its rate.
+   *
+   * @return completes at once; the resulting change is broadcast with the next batch
+   */
+  public Mono<Void> accept(
+      String conversationId, String username, WebSocketSession session, Content content) {
+    var now = scheduler.now(TimeUnit.NANOSECONDS);
+    var bucket = session.get(BUCKET_ATTRIBUTE, RateLimiter.class).orElse(null);
+    if (bucket == null) {
+      bucket = new RateLimiter(rate, burst, now);
+      session.put(BUCKET_ATTRIBUTE, bucket);
+    }
+
+    if (!bucket.tryAcquire(now)) {
+      limited.increment();
+      return Mono.empty();
+    }
+    accepted.increment();
+
+    var typing = content.getData().length == 0 || content.getData()[0] != '0';
+    rooms.computeIfPresent(
+        conversationId,
+        (id, room) -> {
+          var state = room.members.get(username);
+          if (state == null || state.sessions == 0) {
+            return room;
+          }
+
+          if (typing) {
+            state.typingUntil = now + typingTimeoutNanos;
+          }
+          if (state.typing != typing) {
+            state.typing = typing;
+            room.mark(username);
+          }
+          return room;
+        });
+    return Mono.empty();
+  }
+
+  private void flush(String conversationId) {
+    var changes = new ArrayList<Presence>();
+    rooms.computeIfPresent(
+        conversationId,
+        (id, room) -> {
+          room.flush(scheduler.now(TimeUnit.NANOSECONDS), changes);
+          return room.members.isEmpty() && !room.scheduled ? null : room;
+        });
+
+    if (changes.isEmpty()) {
+      return;
+    }
+
+    batches.record(changes.size());
+    var message = message(changes);
+    Mono.when(sessions.deliver(conversationId, message), relay.publish(conversationId, message))
+        .subscribe(
+            null,
+            error ->
+                LOG.warn("Failed sending presence to conversation {}", conversationId, error));
+  }
+
+  private Message message(List<Presence> states) {
+    try {
+      return new Message(
+          SERVER,
+          Content.of(PRESENCE_MEDIA_TYPE, mapper.writeValueAsBytes(PRESENCE_LIST, states)));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  int roomCount() {
+    return rooms.size();
+  }
+
+  /** Member states of a conversation, guarded by its entry in {@link #rooms}. */
+  private final class Room {
+
+    final String id;
+
+    final Map<String, State> members = new LinkedHashMap<>();
+
+    final Set<String> dirty = new LinkedHashSet<>();
+
+    boolean scheduled;
+
+    Room(String id) {
+      this.id = id;
+    }
+
+    void mark(String username) {
+      dirty.add(username);
+      schedule();
+    }
+
+    private void schedule() {
+      if (!scheduled) {
+        scheduled = true;
+        scheduler.schedule(() -> EphemeralEvents.this.flush(id), windowNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+
+    /**
+     * Collects the changed members, expiring typing that was not renewed, and keeps flushing every
+     * window while anyone is typing so the expiry is noticed.
+     */
+    void flush(long now, List<Presence> changes) {
+      scheduled = false;
+      var typing = false;
+
+      for (var entry : members.entrySet()) {
+        var state = entry.getValue();
+        if (state.typing && now - state.typingUntil > 0) {
+          state.typing = false;
+          dirty.add(entry.getKey());
+        }
+        typing |= state.typing;
+      }
+
+      for (var username : dirty) {
+        var state = members.get(username);
+        changes.add(new Presence(username, state.sessions > 0 || state.elsewhere, state.typing));
+      }
+      dirty.clear();
+      members.values().removeIf(state -> state.sessions == 0);
+
+      if (typing) {
+        schedule();
+      }
+    }
+  }
+
+  private static final class State {
+
+    int sessions;
+
+    /** Whether the member was still counted on another node when its last session here left. */
+    boolean elsewhere;
+
+    boolean typing;
+
+    long typingUntil;
+  }
+}
@@ -0,0 +1,87 @@
+package chat.app.server;
+
+import io.micronaut.context.BeanLocator;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.exceptions.ConfigurationException;
+import io.micronaut.inject.qualifiers.Qualifiers;
+import io.micronaut.scheduling.TaskExecutors;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.util.concurrent.ExecutorService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * ExecutionScheduler
+ *
+ * <p>Where handler bodies and work that may block (storage calls, JWT verification) run, chosen by
+ * {@code chat.execution.mode}:
+ *
+ * <ul>
+ *   <li>{@code event_loop}, the default, runs them on the thread that subscribes, normally a Netty
+ *       event loop, so any blocking call stalls every connection on that loop.
+ *   <li>{@code bounded_elastic} offloads them to Reactor's bounded elastic pool.
+ *   <li>{@code virtual_threads} offloads them to Micronaut's {@value TaskExecutors#VIRTUAL}
+ *       executor, one virtual thread per task. It needs Java 21.
+ * </ul>
+ */
+@Singleton
+public class ExecutionScheduler {
+
+  /** How work is scheduled. */
+  public enum Mode {
+    EVENT_LOOP,
+    BOUNDED_ELASTIC,
+    VIRTUAL_THREADS
+  }
+
+  private final Mode mode;
+
+  private final Scheduler scheduler;
+
+  @Inject
+  public ExecutionScheduler(
+      @Value("${chat.execution.mode:event_loop}") Mode mode, BeanLocator beanLocator) {
+    this(mode, mode == Mode.VIRTUAL_THREADS ? virtualThreads(beanLocator) : null);
+  }
+
+  ExecutionScheduler(Mode mode, ExecutorService virtualThreads) {
+    this.mode = mode;
+    this.scheduler =
+        switch (mode) {
+          case EVENT_LOOP -> Schedulers.immediate();
+          case BOUNDED_ELASTIC -> Schedulers.boundedElastic();
+          case VIRTUAL_THREADS -> Schedulers.fromExecutorService(virtualThreads, "chat-virtual");
+        };
+  }
+
+  /** Runs work where it is subscribed to, as the {@code event_loop} mode does. */
+  public static ExecutionScheduler eventLoop() {
+    return new ExecutionScheduler(Mode.EVENT_LOOP, (ExecutorService) null);
+  }
+
+  private static ExecutorService virtualThreads(BeanLocator beanLocator) {
+    return beanLocator
+        .findBean(ExecutorService.class, Qualifiers.byName(TaskExecutors.VIRTUAL))
+        .orElseThrow(
+            () ->
+                new ConfigurationException(
+                    "chat.execution.mode virtual_threads needs Java 21 or newer"));
+  }
+
+  public Mode mode() {
+    return mode;
+  }
+
+  /** Subscribes to {@code work} on the configured scheduler. */
+  public <T> Mono<T> offload(Mono<T> work) {
+    return mode == Mode.EVENT_LOOP ? work : work.subscribeOn(scheduler);
+  }
+
+  /** Subscribes to {@code work} on the configured scheduler. */
+  public <T> Flux<T> offload(Flux<T> work) {
+    return mode == Mode.EVENT_LOOP ? work : work.subscribeOn(scheduler);
+  }
+}
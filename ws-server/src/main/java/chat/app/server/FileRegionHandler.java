@@ -0,0 +1,136 @@
+package chat.app.server;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.core.naming.Named;
+import io.micronaut.http.MutableHttpResponse;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedNioFile;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * FileRegionHandler
+ *
+ * <p>Sends ranges of files without reading them into the heap. Controllers return an empty
+ * response {@link #mark marked} with the file range, which Micronaut writes like any other; this
+ * handler, which Micronaut places between the HTTP codec and its own handlers, turns it into the
+ * response head followed by the range. Over plain TCP the range is a {@link DefaultFileRegion},
+ * handed to the kernel with {@code sendfile}. TLS and HTTP/2 connections cannot carry file regions,
+ * so they get the range in {@value #CHUNK_SIZE}-byte chunks instead.
+ *
+ * <p>Marked responses have no body for Micronaut to compress, so they are never compressed.
+ */
+@Singleton
+@ChannelHandler.Sharable
+public class FileRegionHandler extends ChannelOutboundHandlerAdapter implements Named {
+
+  /** Internal header carrying {@code position,count,path}; never sent to clients. */
+  static final String REGION_HEADER = "X-Chat-File-Region";
+
+  static final int CHUNK_SIZE = 64 * 1024;
+
+  private static final String CHUNKED_WRITER = "chat-chunked-writer";
+
+  private final Counter zeroCopy;
+
+  private final Counter chunked;
+
+  public FileRegionHandler(MeterRegistry registry) {
+    this.zeroCopy = sent(registry, "zero_copy");
+    this.chunked = sent(registry, "chunked");
+  }
+
+  private static Counter sent(MeterRegistry registry, String transfer) {
+    return Counter.builder("chat.attachments.sent")
+        .description("Attachment bytes written to HTTP responses")
+        .baseUnit("bytes")
+        .tag("transfer", transfer)
+        .register(registry);
+  }
+
+  /** Marks a response to carry {@code count} bytes of a file from {@code position}. */
+  public static <T> MutableHttpResponse<T> mark(
+      MutableHttpResponse<T> response, Path file, long position, long count) {
+    return response.header(REGION_HEADER, position + "," + count + "," + file.toAbsolutePath());
+  }
+
+  @Override
+  public String getName() {
+    return "chat-file-region";
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+    if (!(msg instanceof FullHttpResponse response)
+        || !response.headers().contains(REGION_HEADER)) {
+      ctx.write(msg, promise);
+      return;
+    }
+
+    var region = response.headers().get(REGION_HEADER).split(",", 3);
+    var position = Long.parseLong(region[0]);
+    var count = Long.parseLong(region[1]);
+    var file = Path.of(region[2]);
+
+    var head =
+        new DefaultHttpResponse(response.protocolVersion(), response.status(), response.headers());
+    head.headers().remove(REGION_HEADER).set(HttpHeaderNames.CONTENT_LENGTH, count);
+    response.release();
+
+    if (count == 0) {
+      ctx.write(head);
+      ctx.write(LastHttpContent.EMPTY_LAST_CONTENT, promise);
+    } else if (sendsFiles(ctx)) {
+      ctx.write(head);
+      ctx.write(new DefaultFileRegion(file.toFile(), position, count));
+      ctx.write(LastHttpContent.EMPTY_LAST_CONTENT, promise);
+      zeroCopy.increment(count);
+    } else {
+      writeChunked(ctx, head, file, position, count, promise);
+    }
+  }
+
+  /** Whether the connection writes file regions to the socket as they are. */
+  private static boolean sendsFiles(ChannelHandlerContext ctx) {
+    return ctx.channel() instanceof SocketChannel && ctx.pipeline().get(SslHandler.class) == null;
+  }
+
+  private void writeChunked(
+      ChannelHandlerContext ctx,
+      DefaultHttpResponse head,
+      Path file,
+      long position,
+      long count,
+      ChannelPromise promise) {
+    ChunkedNioFile chunks;
+    try {
+      chunks = new ChunkedNioFile(FileChannel.open(file), position, count, CHUNK_SIZE);
+    } catch (IOException e) {
+      promise.setFailure(e);
+      ctx.close();
+      return;
+    }
+
+    if (ctx.pipeline().get(ChunkedWriteHandler.class) == null) {
+      ctx.pipeline().addBefore(ctx.name(), CHUNKED_WRITER, new ChunkedWriteHandler());
+    }
+    ctx.write(head);
+    ctx.write(new HttpChunkedInput(chunks), promise);
+    chunked.increment(count);
+  }
+}
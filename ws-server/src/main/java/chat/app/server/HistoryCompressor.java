@@ -0,0 +1,348 @@
+package chat.app.server;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.convert.format.ReadableBytes;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.websocket.WebSocketSession;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * HistoryCompressor
+ *
+ * <p>Compresses the history frames replayed to binary sessions that connect with {@code
+ * ?compress=deflate}, when {@code chat.compression.history.enabled} is set. Frames of at least
+ * {@code chat.compression.history.min-size} bytes are sent as:
+ *
+ * <pre>
+ * magic      u8   0xC6
+ * length     u32  size of the frame once inflated
+ * data       zlib stream of the {@link BinaryFrames} frame
+ * </pre>
+ *
+ * <p>Batches are compressed independently, so each starts without any context. Chat is short text
+ * with much in common across conversations, which a preset dictionary captures: {@code
+ * chat.compression.history.dictionary} names a file {@linkplain #train trained} on sample frames
+ * and shipped to clients too. The zlib header carries its Adler-32, for clients to check they
+ * inflate with the same dictionary.
+ *
+ * <p>Sessions that negotiated {@code permessage-deflate} get their history uncompressed, as every
+ * frame is deflated on the wire anyway. Deflaters hold native memory until ended, so at most
+ * {@code chat.compression.history.pool-size} idle ones are kept for reuse; the others are ended as
+ * soon as their frame is compressed.
+ */
+@Singleton
+public class HistoryCompressor implements AutoCloseable {
+
+  public static final String PARAMETER = "compress";
+
+  public static final String DEFLATE = "deflate";
+
+  static final byte MAGIC = (byte) 0xC6;
+
+  private static final int HEADER_SIZE = 1 + 4;
+
+  /** Length of the segments a trained dictionary is made of. */
+  static final int SEGMENT_LENGTH = 64;
+
+  /** Length of the substrings segments are scored by. */
+  static final int DMER_LENGTH = 8;
+
+  private static final int DEFAULT_POOL_SIZE = 16;
+
+  private final boolean enabled;
+
+  private final int level;
+
+  private final int minSize;
+
+  @Nullable private final byte[] dictionary;
+
+  private final ArrayBlockingQueue<Deflater> deflaters;
+
+  @Nullable private final WebSocketCompression websocket;
+
+  private final CompressionMeter meter;
+
+  private volatile boolean closed;
+
+  @Inject
+  public HistoryCompressor(
+      @Value("${chat.compression.history.enabled:false}") boolean enabled,
+      @Value("${chat.compression.history.level:6}") int level,
+      @ReadableBytes @Value("${chat.compression.history.min-size:1KB}") int minSize,
+      @Value("${chat.compression.history.dictionary:}") String dictionary,
+      @Value("${chat.compression.history.pool-size:16}") int poolSize,
+      WebSocketCompression websocket,
+      MeterRegistry registry)
+      throws IOException {
+    this(
+        enabled,
+        level,
+        minSize,
+        dictionary.isBlank() ? null : Files.readAllBytes(Path.of(dictionary)),
+        poolSize,
+        websocket,
+        registry);
+  }
+
+  HistoryCompressor(
+      boolean enabled,
+      int level,
+      int minSize,
+      @Nullable byte[] dictionary,
+      MeterRegistry registry) {
+    this(enabled, level, minSize, dictionary, DEFAULT_POOL_SIZE, null, registry);
+  }
+
+  HistoryCompressor(
+      boolean enabled,
+      int level,
+      int minSize,
+      @Nullable byte[] dictionary,
+      int poolSize,
+      @Nullable WebSocketCompression websocket,
+      MeterRegistry registry) {
+    this.enabled = enabled;
+    this.level = level;
+    this.minSize = minSize;
+    this.dictionary = dictionary;
+    this.deflaters = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+    this.websocket = websocket;
+    this.meter = new CompressionMeter(registry, "history");
+  }
+
+  /**
+   * Whether history for a session is to be compressed, given the request that opened it: not
+   * unless asked to, nor if {@code permessage-deflate} was negotiated.
+   */
+  public boolean accepts(WebSocketSession session, HttpRequest<?> upgrade) {
+    return enabled
+        && BinaryFrames.accepts(session)
+        && session
+            .getRequestParameters()
+            .get(PARAMETER, String.class)
+            .filter(DEFLATE::equals)
+            .isPresent()
+        && (websocket == null
+            || !websocket.negotiates(
+                upgrade.getHeaders().get(HttpHeaderNames.SEC_WEBSOCKET_EXTENSIONS)));
+  }
+
+  /** The Adler-32 of the preset dictionary, as found in the zlib header, or 0 without one. */
+  public long dictionaryId() {
+    if (dictionary == null) {
+      return 0;
+    }
+    var adler = new Adler32();
+    adler.update(dictionary);
+    return adler.getValue();
+  }
+
+  /**
+   * Compresses a frame, releasing it, unless it is under {@code min-size} or would not shrink, in
+   * which case it is returned as it is.
+   */
+  public ByteBuf compress(ByteBufAllocator allocator, ByteBuf frame) {
+    var rawBytes = frame.readableBytes();
+    if (rawBytes < minSize) {
+      meter.skipped();
+      return frame;
+    }
+
+    var start = System.nanoTime();
+    var deflater = borrow();
+
+    var out = allocator.directBuffer(HEADER_SIZE + rawBytes / 2 + 64);
+    try {
+      out.writeByte(MAGIC).writeInt(rawBytes);
+      for (var input : frame.nioBuffers()) {
+        deflater.setInput(input);
+        while (!deflater.needsInput()) {
+          deflate(deflater, out);
+        }
+      }
+      deflater.finish();
+      while (!deflater.finished()) {
+        deflate(deflater, out);
+      }
+    } catch (RuntimeException e) {
+      out.release();
+      deflater.end();
+      throw e;
+    }
+    giveBack(deflater);
+
+    if (out.readableBytes() >= rawBytes) {
+      out.release();
+      meter.skipped();
+      return frame;
+    }
+
+    frame.release();
+    meter.record(rawBytes, out.readableBytes(), System.nanoTime() - start);
+    return out;
+  }
+
+  private Deflater borrow() {
+    var deflater = deflaters.poll();
+    if (deflater == null) {
+      deflater = new Deflater(level);
+    }
+    if (dictionary != null) {
+      deflater.setDictionary(dictionary);
+    }
+    return deflater;
+  }
+
+  /** Keeps a deflater for reuse if the pool has room, or ends it. */
+  private void giveBack(Deflater deflater) {
+    deflater.reset();
+    if (closed || !deflaters.offer(deflater)) {
+      deflater.end();
+    } else if (closed && deflaters.remove(deflater)) {
+      deflater.end();
+    }
+  }
+
+  /** Ends the pooled deflaters; those in use are ended as they are given back. */
+  @Override
+  @PreDestroy
+  public void close() {
+    closed = true;
+    for (var deflater = deflaters.poll(); deflater != null; deflater = deflaters.poll()) {
+      deflater.end();
+    }
+  }
+
+  private static void deflate(Deflater deflater, ByteBuf out) {
+    out.ensureWritable(Math.max(256, out.writableBytes()));
+    var written = deflater.deflate(out.internalNioBuffer(out.writerIndex(), out.writableBytes()));
+    out.writerIndex(out.writerIndex() + written);
+  }
+
+  /**
+   * Trains a preset dictionary of about {@code size} bytes on sample payloads, such as history
+   * frames of representative conversations.
+   *
+   * <p>The samples are split into as many epochs as the dictionary has segments. Each epoch gives
+   * the {@value #SEGMENT_LENGTH}-byte segment whose {@value #DMER_LENGTH}-byte substrings occur in
+   * the most samples, not counting substrings already taken. Segments are laid out with the best
+   * last, since deflate finds the end of its window cheapest to refer to.
+   */
+  public static byte[] train(List<byte[]> samples, int size) {
+    var corpus = concatenate(samples);
+    var frequencies = frequencies(samples);
+    var segments = Math.max(1, size / SEGMENT_LENGTH);
+    var epochLength = Math.max(SEGMENT_LENGTH, corpus.length / segments);
+
+    var chosen = new byte[segments][];
+    var scores = new long[segments];
+    var count = 0;
+    for (var epoch = 0; epoch + SEGMENT_LENGTH <= corpus.length && count < segments; ) {
+      var end = Math.min(corpus.length, epoch + epochLength);
+      var best = bestSegment(corpus, epoch, end, frequencies);
+      epoch = end;
+      if (best < 0) {
+        continue;
+      }
+
+      var segment = Arrays.copyOfRange(corpus, best, best + SEGMENT_LENGTH);
+      scores[count] = score(corpus, best, frequencies);
+      chosen[count++] = segment;
+      for (var i = best; i + DMER_LENGTH <= best + SEGMENT_LENGTH; i++) {
+        frequencies.remove(dmer(corpus, i));
+      }
+    }
+
+    var order = new Integer[count];
+    for (var i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(scores[a], scores[b]));
+
+    var trained = new byte[count * SEGMENT_LENGTH];
+    for (var i = 0; i < count; i++) {
+      System.arraycopy(chosen[order[i]], 0, trained, i * SEGMENT_LENGTH, SEGMENT_LENGTH);
+    }
+    return trained;
+  }
+
+  private static byte[] concatenate(List<byte[]> samples) {
+    var total = 0;
+    for (var sample : samples) {
+      total += sample.length;
+    }
+    var corpus = new byte[total];
+    var offset = 0;
+    for (var sample : samples) {
+      System.arraycopy(sample, 0, corpus, offset, sample.length);
+      offset += sample.length;
+    }
+    return corpus;
+  }
+
+  /** How many samples each substring of {@value #DMER_LENGTH} bytes occurs in. */
+  private static HashMap<Long, Integer> frequencies(List<byte[]> samples) {
+    var frequencies = new HashMap<Long, Integer>();
+    for (var sample : samples) {
+      var seen = new HashSet<Long>();
+      for (var i = 0; i + DMER_LENGTH <= sample.length; i++) {
+        var dmer = dmer(sample, i);
+        if (seen.add(dmer)) {
+          frequencies.merge(dmer, 1, Integer::sum);
+        }
+      }
+    }
+    // A substring in a single sample is nothing a dictionary would help with.
+    frequencies.values().removeIf(frequency -> frequency < 2);
+    return frequencies;
+  }
+
+  /** Start of the best scoring segment within {@code [from, to)}, or -1 if none scores. */
+  private static int bestSegment(
+      byte[] corpus, int from, int to, HashMap<Long, Integer> frequencies) {
+    var best = -1;
+    var bestScore = 0L;
+    for (var start = from; start + SEGMENT_LENGTH <= to; start += DMER_LENGTH) {
+      var score = score(corpus, start, frequencies);
+      if (score > bestScore) {
+        best = start;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+
+  private static long score(byte[] corpus, int start, HashMap<Long, Integer> frequencies) {
+    var score = 0L;
+    for (var i = start; i + DMER_LENGTH <= start + SEGMENT_LENGTH; i++) {
+      score += frequencies.getOrDefault(dmer(corpus, i), 0);
+    }
+    return score;
+  }
+
+  private static long dmer(byte[] bytes, int offset) {
+    var dmer = 0L;
+    for (var i = 0; i < DMER_LENGTH; i++) {
+      dmer = dmer << 8 | (bytes[offset + i] & 0xFF);
+    }
+    return dmer;
+  }
+}
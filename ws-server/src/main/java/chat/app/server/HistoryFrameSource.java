@@ -0,0 +1,20 @@
+package chat.app.server;
+
+import io.netty.buffer.ByteBuf;
+import reactor.core.publisher.Flux;
+
+/**
+ * HistoryFrameSource
+ *
+ * <p>A {@link ConversationStorage} that keeps messages in the {@link BinaryFrames} record format and
+ * can hand out history frames over its own buffers instead of having {@link HistoryFrames} encode
+ * them again.
+ */
+interface HistoryFrameSource {
+
+  /**
+   * Streams the messages of a conversation from {@code fromSequence} as frames of up to {@code
+   * batchSize} records, or nothing if the conversation does not exist.
+   */
+  Flux<ByteBuf> frames(String conversationId, long fromSequence, int batchSize);
+}
@@ -0,0 +1,38 @@
+package chat.app.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import jakarta.inject.Singleton;
+import reactor.core.publisher.Flux;
+
+/**
+ * HistoryFrames
+ *
+ * <p>History of a conversation as {@link BinaryFrames}, for binary sessions. Messages read from the
+ * {@link ConversationStorage} are encoded in batches, unless the storage under any decorators is a
+ * {@link HistoryFrameSource}, which serves its own buffers.
+ */
+@Singleton
+public class HistoryFrames {
+
+  private final ConversationStorage storage;
+
+  public HistoryFrames(ConversationStorage storage) {
+    this.storage = storage;
+  }
+
+  /**
+   * Streams the messages of a conversation from {@code fromSequence} in frames of up to {@code
+   * batchSize} messages.
+   */
+  public Flux<ByteBuf> frames(String conversationId, long fromSequence, int batchSize) {
+    if (Delegating.unwrap(storage) instanceof HistoryFrameSource source) {
+      return source.frames(conversationId, fromSequence, batchSize);
+    }
+
+    return storage
+        .getMessages(conversationId, fromSequence)
+        .buffer(batchSize)
+        .map(batch -> BinaryFrames.encode(ByteBufAllocator.DEFAULT, batch));
+  }
+}
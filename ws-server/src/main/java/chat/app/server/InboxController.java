@@ -0,0 +1,93 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.TextContent;
+import chat.app.server.models.InboxEntry;
+import chat.app.server.models.InboxPage;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.QueryValue;
+import io.micronaut.security.annotation.Secured;
+import io.micronaut.security.rules.SecurityRule;
+import java.security.Principal;
+import java.util.Map;
+import reactor.core.publisher.Mono;
+
+/**
+ * InboxController
+ *
+ * <p>Lists the conversations of the authenticated user, most recently active first, {@code limit}
+ * at a time up to {@code chat.inbox.max-page-size}. Unread counts come from the user's {@link
+ * ReadReceipts} watermarks and the sequence of each listed conversation's last message.
+ */
+@Controller("/inbox")
+@Secured(SecurityRule.IS_AUTHENTICATED)
+public class InboxController {
+
+  private final InboxStorage inbox;
+
+  private final ReadReceipts receipts;
+
+  private final int maxPageSize;
+
+  public InboxController(
+      InboxStorage inbox,
+      ReadReceipts receipts,
+      @Value("${chat.inbox.max-page-size:100}") int maxPageSize) {
+    this.inbox = inbox;
+    this.receipts = receipts;
+    this.maxPageSize = maxPageSize;
+  }
+
+  @Get
+  public Mono<InboxPage> list(
+      Principal principal,
+      @QueryValue(defaultValue = "0") int offset,
+      @QueryValue(defaultValue = "20") int limit) {
+    var from = Math.max(offset, 0);
+    var size = Math.min(Math.max(limit, 1), maxPageSize);
+    var username = principal.getName();
+
+    return Mono.zip(
+            inbox.getConversations(username, from, size + 1).collectList(),
+            receipts.readSequences(username))
+        .map(
+            loaded -> {
+              var page = loaded.getT1();
+              var more = page.size() > size;
+              var entries =
+                  page.subList(0, Math.min(size, page.size())).stream()
+                      .map(activity -> entry(activity, loaded.getT2()))
+                      .toList();
+              return new InboxPage(entries, more ? from + size : null);
+            });
+  }
+
+  private static InboxEntry entry(InboxStorage.Activity activity, Map<String, Long> read) {
+    var last = activity.last();
+    if (last == null) {
+      return new InboxEntry(
+          activity.conversationId(),
+          activity.activity(),
+          Message.UNSEQUENCED,
+          null,
+          null,
+          null,
+          0);
+    }
+
+    var content = last.content();
+    var preview =
+        TextContent.MEDIA_TYPE.equals(content.getMediaType()) ? TextContent.from(content) : null;
+    var watermark = read.getOrDefault(activity.conversationId(), Message.UNSEQUENCED);
+    return new InboxEntry(
+        activity.conversationId(),
+        activity.activity(),
+        last.sequence(),
+        last.user().username(),
+        content.getMediaType(),
+        preview,
+        ReadReceipts.unread(last.sequence(), watermark));
+  }
+}
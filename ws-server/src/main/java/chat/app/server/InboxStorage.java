@@ -0,0 +1,32 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.User;
+import io.micronaut.core.annotation.Nullable;
+import java.util.Collection;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * InboxStorage
+ *
+ * <p>Index from each user to their conversations ordered by last activity, next to the last
+ * message of every conversation. Reading a page costs the same however many conversations exist.
+ */
+public interface InboxStorage {
+
+  /**
+   * Moves a conversation up the inboxes of its members and records its last message. Neither the
+   * activity nor the message go back when updates arrive out of order.
+   *
+   * @param last the latest message, with its preview already cut, or null for a new conversation
+   */
+  Mono<Void> record(
+      String conversationId, Collection<User> members, @Nullable Message last, long activity);
+
+  /** Up to {@code limit} conversations of a user after the first {@code offset}, newest first. */
+  Flux<Activity> getConversations(String username, int offset, int limit);
+
+  /** A conversation in an inbox, with the time of its last activity in epoch milliseconds. */
+  record Activity(String conversationId, long activity, @Nullable Message last) {}
+}
@@ -0,0 +1,108 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.User;
+import io.micronaut.context.annotation.Requires;
+import jakarta.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * InboxStorageImpl
+ *
+ * <p>Keeps each inbox as a set sorted by activity next to a map from conversation to its current
+ * activity, so moving a conversation to the top is two logarithmic updates. Used with every
+ * conversation storage but Redis, so inboxes of the journal and segment storages do not survive a
+ * restart.
+ */
+@Singleton
+@Requires(property = "chat.storage.type", notEquals = "redis")
+public class InboxStorageImpl implements InboxStorage {
+
+  private static final Comparator<Ranked> NEWEST_FIRST =
+      Comparator.comparingLong(Ranked::activity)
+          .thenComparing(Ranked::conversationId)
+          .reversed();
+
+  private final ConcurrentHashMap<String, Inbox> inboxes = new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<String, Message> lastMessages = new ConcurrentHashMap<>();
+
+  @Override
+  public Mono<Void> record(
+      String conversationId, Collection<User> members, Message last, long activity) {
+    return Mono.fromRunnable(
+        () -> {
+          if (last != null) {
+            lastMessages.merge(
+                conversationId,
+                last,
+                (current, next) -> next.sequence() > current.sequence() ? next : current);
+          }
+          for (var member : members) {
+            inboxes
+                .computeIfAbsent(member.username(), username -> new Inbox())
+                .touch(conversationId, activity);
+          }
+        });
+  }
+
+  @Override
+  public Flux<Activity> getConversations(String username, int offset, int limit) {
+    var inbox = inboxes.get(username);
+    if (inbox == null) {
+      return Flux.empty();
+    }
+
+    return Flux.fromIterable(inbox.page(offset, limit))
+        .map(
+            ranked ->
+                new Activity(
+                    ranked.conversationId(),
+                    ranked.activity(),
+                    lastMessages.get(ranked.conversationId())));
+  }
+
+  private record Ranked(long activity, String conversationId) {}
+
+  private static final class Inbox {
+
+    private final HashMap<String, Long> activities = new HashMap<>();
+
+    private final TreeSet<Ranked> ranked = new TreeSet<>(NEWEST_FIRST);
+
+    synchronized void touch(String conversationId, long activity) {
+      var current = activities.get(conversationId);
+      if (current != null) {
+        if (current >= activity) {
+          return;
+        }
+        ranked.remove(new Ranked(current, conversationId));
+      }
+
+      activities.put(conversationId, activity);
+      ranked.add(new Ranked(activity, conversationId));
+    }
+
+    synchronized List<Ranked> page(int offset, int limit) {
+      var page = new ArrayList<Ranked>(Math.min(limit, ranked.size()));
+      var skipped = 0;
+      for (var entry : ranked) {
+        if (page.size() == limit) {
+          break;
+        }
+        if (skipped++ >= offset) {
+          page.add(entry);
+        }
+      }
+      return page;
+    }
+  }
+}
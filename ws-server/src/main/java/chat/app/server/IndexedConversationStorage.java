@@ -0,0 +1,254 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.Conversation.Message.TextContent;
+import chat.app.server.models.Members;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.BeanProvider;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import io.micronaut.context.event.BeanPreDestroyEvent;
+import io.micronaut.context.event.BeanPreDestroyEventListener;
+import io.micronaut.core.order.Ordered;
+import jakarta.inject.Singleton;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * IndexedConversationStorage
+ *
+ * <p>Keeps the {@link InboxStorage} and the {@link SearchIndex} in step with another {@link
+ * ConversationStorage}: creating a conversation lists it in every member's inbox, and each stored
+ * message moves it to the top, becomes its preview, cut to {@code chat.inbox.preview-length}
+ * characters, and is made searchable. Indexes are updated after the backend has stored the change;
+ * a failed inbox update is logged rather than failing a write that already happened.
+ *
+ * <p>A stored message is handed back at once and indexed in the background on {@code scheduler},
+ * so reading the members and writing every inbox stay off the send path. At most {@code
+ * chat.inbox.max-pending} messages wait to be indexed; beyond that their inbox update is dropped,
+ * and counted, until the backlog clears, and the next message of the conversation sets its place
+ * and preview again. They are still made searchable right away, as the search index is in memory,
+ * unless their conversation has no text in it yet: starting one needs its members, so those are
+ * dropped from search and counted apart, since no later message brings them back.
+ */
+public class IndexedConversationStorage
+    implements ConversationStorage, Delegating<ConversationStorage> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IndexedConversationStorage.class);
+
+  private static final byte[] NO_DATA = new byte[0];
+
+  private final ConversationStorage backend;
+
+  private final InboxStorage inbox;
+
+  private final SearchIndex search;
+
+  private final int previewLength;
+
+  private final LongSupplier clock;
+
+  private final Scheduler scheduler;
+
+  private final int maxPending;
+
+  private final AtomicInteger pending = new AtomicInteger();
+
+  private final Counter dropped;
+
+  private final Counter searchDropped;
+
+  IndexedConversationStorage(
+      ConversationStorage backend,
+      InboxStorage inbox,
+      SearchIndex search,
+      int previewLength,
+      LongSupplier clock,
+      Scheduler scheduler,
+      int maxPending,
+      MeterRegistry registry) {
+    this.backend = backend;
+    this.inbox = inbox;
+    this.search = search;
+    this.previewLength = previewLength;
+    this.clock = clock;
+    this.scheduler = scheduler;
+    this.maxPending = maxPending;
+    this.dropped =
+        Counter.builder("chat.index.dropped")
+            .description("Stored messages left out of the inbox index")
+            .register(registry);
+    this.searchDropped =
+        Counter.builder("chat.search.dropped")
+            .description("Stored messages left out of the search index")
+            .register(registry);
+    Gauge.builder("chat.index.pending", pending, AtomicInteger::get)
+        .description("Stored messages waiting to be indexed")
+        .register(registry);
+  }
+
+  @Override
+  public ConversationStorage delegate() {
+    return backend;
+  }
+
+  @Override
+  public Mono<Conversation> getConversation(String id) {
+    return backend.getConversation(id);
+  }
+
+  @Override
+  public Mono<Members> getMembers(String conversationId) {
+    return backend.getMembers(conversationId);
+  }
+
+  @Override
+  public Mono<Long> getNextSequence(String conversationId) {
+    return backend.getNextSequence(conversationId);
+  }
+
+  @Override
+  public Flux<Message> getMessages(String conversationId, long fromSequence) {
+    return backend.getMessages(conversationId, fromSequence);
+  }
+
+  @Override
+  public Mono<Message> getMessage(String conversationId, long sequence) {
+    return backend.getMessage(conversationId, sequence);
+  }
+
+  @Override
+  public Mono<Conversation> createConversation(Conversation conversation) {
+    return backend
+        .createConversation(conversation)
+        .flatMap(
+            created -> {
+              var messages = created.messages();
+              messages.forEach(message -> search.add(created.id(), created.members(), message));
+              var last = messages.isEmpty() ? null : preview(messages.get(messages.size() - 1));
+              return index(created.id(), created.members(), last).thenReturn(created);
+            });
+  }
+
+  @Override
+  public Mono<Message> pushMessage(String conversationId, Message message) {
+    return backend
+        .pushMessage(conversationId, message)
+        .doOnNext(stored -> indexLater(conversationId, stored));
+  }
+
+  private void indexLater(String conversationId, Message stored) {
+    if (pending.incrementAndGet() > maxPending) {
+      pending.decrementAndGet();
+      dropped.increment();
+      if (!search.add(conversationId, stored)) {
+        searchDropped.increment();
+      }
+      return;
+    }
+
+    backend
+        .getMembers(conversationId)
+        .doOnNext(members -> search.add(conversationId, members, stored))
+        .flatMap(members -> index(conversationId, members, preview(stored)))
+        .subscribeOn(scheduler)
+        .doFinally(signal -> pending.decrementAndGet())
+        .subscribe(
+            null,
+            error -> LOG.warn("Failed indexing a message of {}", conversationId, error));
+  }
+
+  private Mono<Void> index(String conversationId, Members members, Message last) {
+    return inbox
+        .record(conversationId, members, last, clock.getAsLong())
+        .onErrorResume(
+            error -> {
+              LOG.warn("Failed updating inboxes for conversation {}", conversationId, error);
+              return Mono.empty();
+            });
+  }
+
+  /** The message with text cut to the preview length and any other content left out. */
+  private Message preview(Message message) {
+    var content = message.content();
+    if (!TextContent.MEDIA_TYPE.equals(content.getMediaType())) {
+      return new Message(
+          message.sequence(), message.user(), new Content(content.getMediaType(), NO_DATA));
+    }
+
+    var text = TextContent.from(content);
+    if (text.codePointCount(0, text.length()) <= previewLength) {
+      return message;
+    }
+    var cut = text.substring(0, text.offsetByCodePoints(0, previewLength));
+    return new Message(message.sequence(), message.user(), TextContent.of(cut));
+  }
+
+  /**
+   * Wraps the configured {@link ConversationStorage} bean inside the metered layer, so timings
+   * include the inbox update.
+   */
+  @Singleton
+  public static class Decorator
+      implements BeanCreatedEventListener<ConversationStorage>,
+          BeanPreDestroyEventListener<ConversationStorage>,
+          Ordered {
+
+    private final BeanProvider<InboxStorage> inbox;
+
+    private final BeanProvider<SearchIndex> search;
+
+    private final BeanProvider<MeterRegistry> registry;
+
+    private final int previewLength;
+
+    private final int maxPending;
+
+    public Decorator(
+        BeanProvider<InboxStorage> inbox,
+        BeanProvider<SearchIndex> search,
+        BeanProvider<MeterRegistry> registry,
+        @Value("${chat.inbox.preview-length:80}") int previewLength,
+        @Value("${chat.inbox.max-pending:10000}") int maxPending) {
+      this.inbox = inbox;
+      this.search = search;
+      this.registry = registry;
+      this.previewLength = previewLength;
+      this.maxPending = maxPending;
+    }
+
+    @Override
+    public ConversationStorage onCreated(BeanCreatedEvent<ConversationStorage> event) {
+      return new IndexedConversationStorage(
+          event.getBean(),
+          inbox.get(),
+          search.get(),
+          previewLength,
+          System::currentTimeMillis,
+          Schedulers.boundedElastic(),
+          maxPending,
+          registry.get());
+    }
+
+    @Override
+    public ConversationStorage onPreDestroy(BeanPreDestroyEvent<ConversationStorage> event) {
+      return Delegating.unwrap(event.getBean());
+    }
+
+    @Override
+    public int getOrder() {
+      return LOWEST_PRECEDENCE - 1;
+    }
+  }
+}
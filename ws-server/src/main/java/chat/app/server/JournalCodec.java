@@ -0,0 +1,84 @@
+package chat.app.server;
+
+import chat.app.server.MessageJournal.Appended;
+import chat.app.server.MessageJournal.Created;
+import chat.app.server.MessageJournal.Entry;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.User;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+
+/**
+ * JournalCodec
+ *
+ * <p>Binary encoding of {@link MessageJournal} entries shared by the journal backends.
+ */
+final class JournalCodec {
+
+  private static final byte CREATED = 1;
+
+  private static final byte APPENDED = 2;
+
+  private JournalCodec() {}
+
+  static byte[] encode(Entry entry) {
+    var bytes = new ByteArrayOutputStream(64);
+    var out = new DataOutputStream(bytes);
+
+    try {
+      if (entry instanceof Created created) {
+        out.writeByte(CREATED);
+        out.writeUTF(created.conversationId());
+        out.writeInt(created.users().size());
+        for (var user : created.users()) {
+          out.writeUTF(user.username());
+        }
+      } else if (entry instanceof Appended appended) {
+        var message = appended.message();
+        out.writeByte(APPENDED);
+        out.writeUTF(appended.conversationId());
+        out.writeLong(message.sequence());
+        out.writeUTF(message.user().username());
+        out.writeUTF(message.content().getMediaType());
+        out.writeInt(message.content().getData().length);
+        out.write(message.content().getData());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  static Entry decode(byte[] payload) throws IOException {
+    var in = new DataInputStream(new ByteArrayInputStream(payload));
+    var type = in.readByte();
+
+    switch (type) {
+      case CREATED -> {
+        var conversationId = in.readUTF();
+        var count = in.readInt();
+        var users = new ArrayList<User>(count);
+        for (int i = 0; i < count; i++) {
+          users.add(new User(in.readUTF()));
+        }
+        return new Created(conversationId, users);
+      }
+      case APPENDED -> {
+        var conversationId = in.readUTF();
+        var sequence = in.readLong();
+        var user = new User(in.readUTF());
+        var mediaType = in.readUTF();
+        var data = new byte[in.readInt()];
+        in.readFully(data);
+        return new Appended(conversationId, new Message(sequence, user, Content.of(mediaType, data)));
+      }
+      default -> throw new IOException(String.format("Unknown journal entry type %d", type));
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation;
+import io.micronaut.context.annotation.Requires;
+import jakarta.inject.Singleton;
+import reactor.core.publisher.Mono;
+
+/** LocalConversationRelay: single-node deployments have nobody to relay to. */
+@Singleton
+@Requires(property = "chat.cluster.enabled", notEquals = "true")
+public class LocalConversationRelay implements ConversationRelay {
+
+  @Override
+  public Mono<Void> publish(String conversationId, Conversation.Message message) {
+    return Mono.empty();
+  }
+}
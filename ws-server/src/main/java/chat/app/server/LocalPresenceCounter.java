@@ -0,0 +1,69 @@
+package chat.app.server;
+
+import io.micronaut.context.annotation.Requires;
+import jakarta.inject.Singleton;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import reactor.core.publisher.Mono;
+
+/** LocalPresenceCounter: on a single node, this node's count is the whole count. */
+@Singleton
+@Requires(property = "chat.cluster.enabled", notEquals = "true")
+public class LocalPresenceCounter implements PresenceCounter {
+
+  private final ConcurrentHashMap<String, LinkedHashMap<String, Long>> counts =
+      new ConcurrentHashMap<>();
+
+  @Override
+  public Mono<Long> increment(String conversationId, String username) {
+    return Mono.fromSupplier(() -> add(conversationId, username, 1));
+  }
+
+  @Override
+  public Mono<Long> decrement(String conversationId, String username) {
+    return Mono.fromSupplier(() -> add(conversationId, username, -1));
+  }
+
+  @Override
+  public Mono<List<String>> online(String conversationId) {
+    return Mono.fromSupplier(
+        () -> {
+          var online = new ArrayList<String>();
+          counts.computeIfPresent(
+              conversationId,
+              (id, members) -> {
+                members.forEach(
+                    (username, count) -> {
+                      if (count > 0) {
+                        online.add(username);
+                      }
+                    });
+                return members;
+              });
+          return online;
+        });
+  }
+
+  /** Conversations with members counted, in no particular order. */
+  Set<String> conversations() {
+    return counts.keySet();
+  }
+
+  long add(String conversationId, String username, long delta) {
+    var count = new long[1];
+    counts.compute(
+        conversationId,
+        (id, members) -> {
+          members = members == null ? new LinkedHashMap<>() : members;
+          count[0] = members.merge(username, delta, Long::sum);
+          if (count[0] == 0) {
+            members.remove(username);
+          }
+          return members.isEmpty() ? null : members;
+        });
+    return count[0];
+  }
+}
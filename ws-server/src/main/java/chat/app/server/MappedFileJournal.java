@@ -0,0 +1,199 @@
+package chat.app.server;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.convert.format.ReadableBytes;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * MappedFileJournal
+ *
+ * <p>Journal kept in preallocated, memory-mapped segment files. Records are laid out as a length,
+ * a CRC32C of the payload and the payload; a zero length marks the end of a segment. A group is
+ * made durable by forcing the range it wrote, and replay stops at the first record that fails its
+ * checksum, so a write torn by a crash is discarded and then overwritten.
+ */
+@Singleton
+@Requires(property = "chat.storage.type", value = "journal")
+@Requires(property = "chat.storage.journal.backend", value = "file", defaultValue = "file")
+public class MappedFileJournal implements MessageJournal {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MappedFileJournal.class);
+
+  static final String SEGMENT_SUFFIX = ".journal";
+
+  private static final int RECORD_HEADER = 8;
+
+  private final Path directory;
+
+  private final int segmentSize;
+
+  private final CRC32C crc = new CRC32C();
+
+  private long segmentIndex = -1;
+
+  private FileChannel channel;
+
+  private MappedByteBuffer segment;
+
+  private int forced;
+
+  private boolean recovered;
+
+  @Inject
+  public MappedFileJournal(
+      @Value("${chat.storage.journal.directory:data/journal}") String directory,
+      @ReadableBytes @Value("${chat.storage.journal.segment-size:64MB}") int segmentSize)
+      throws IOException {
+    this(Path.of(directory), segmentSize);
+  }
+
+  MappedFileJournal(Path directory, int segmentSize) throws IOException {
+    this.directory = Files.createDirectories(directory);
+    this.segmentSize = segmentSize;
+  }
+
+  @Override
+  public synchronized void append(List<Entry> entries) throws IOException {
+    if (!recovered) {
+      replay(entry -> {});
+    }
+
+    for (var entry : entries) {
+      var payload = JournalCodec.encode(entry);
+      var size = RECORD_HEADER + payload.length;
+
+      if (segment == null || segment.remaining() < size) {
+        roll(size);
+      }
+
+      crc.reset();
+      crc.update(payload);
+      segment.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+    }
+    force();
+  }
+
+  @Override
+  public synchronized void replay(Consumer<Entry> consumer) throws IOException {
+    var segments = segments();
+
+    for (int i = 0; i < segments.size(); i++) {
+      var file = segments.get(i);
+      var last = i == segments.size() - 1;
+      var fileChannel = FileChannel.open(file, READ, WRITE);
+      var mapped = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, fileChannel.size());
+      var end = replaySegment(mapped, consumer);
+
+      if (last) {
+        channel = fileChannel;
+        segment = mapped;
+        segment.position(end);
+        forced = end;
+        segmentIndex = index(file);
+      } else {
+        fileChannel.close();
+      }
+    }
+    recovered = true;
+  }
+
+  /** Replays the valid records of a segment, returning the position after the last one. */
+  private int replaySegment(MappedByteBuffer mapped, Consumer<Entry> consumer) throws IOException {
+    var position = 0;
+
+    while (mapped.limit() - position >= RECORD_HEADER) {
+      var length = mapped.getInt(position);
+
+      if (length == 0) {
+        return position;
+      }
+
+      var checksum = mapped.getInt(position + 4);
+      if (length < 0 || length > mapped.limit() - position - RECORD_HEADER) {
+        return discardTail(mapped, position);
+      }
+
+      var payload = new byte[length];
+      mapped.get(position + RECORD_HEADER, payload);
+      crc.reset();
+      crc.update(payload);
+
+      if ((int) crc.getValue() != checksum) {
+        return discardTail(mapped, position);
+      }
+
+      consumer.accept(JournalCodec.decode(payload));
+      position += RECORD_HEADER + length;
+    }
+    return position;
+  }
+
+  private int discardTail(MappedByteBuffer mapped, int position) {
+    LOG.warn("Discarding torn journal record at offset {}", position);
+    for (int i = position; i < mapped.limit(); i++) {
+      mapped.put(i, (byte) 0);
+    }
+    mapped.force();
+    return position;
+  }
+
+  private void roll(int minimumSize) throws IOException {
+    force();
+    close();
+
+    segmentIndex++;
+    var file = directory.resolve(String.format("%020d%s", segmentIndex, SEGMENT_SUFFIX));
+    try (var raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.setLength(Math.max(segmentSize, minimumSize));
+    }
+
+    channel = FileChannel.open(file, READ, WRITE);
+    segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+    forced = 0;
+  }
+
+  private void force() {
+    if (segment != null && segment.position() > forced) {
+      segment.force(forced, segment.position() - forced);
+      forced = segment.position();
+    }
+  }
+
+  private List<Path> segments() throws IOException {
+    try (var files = Files.list(directory)) {
+      return files.filter(f -> f.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+    }
+  }
+
+  private static long index(Path segment) {
+    var name = segment.getFileName().toString();
+    return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  @Override
+  @PreDestroy
+  public synchronized void close() throws IOException {
+    force();
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.User;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * MessageJournal
+ *
+ * <p>Durable, append-only record of conversation changes behind {@link
+ * WriteBehindConversationStorage}.
+ */
+public interface MessageJournal extends AutoCloseable {
+
+  /** A journaled change. */
+  sealed interface Entry permits Created, Appended {}
+
+  record Created(String conversationId, List<User> users) implements Entry {}
+
+  record Appended(String conversationId, Message message) implements Entry {}
+
+  /** Writes a group of entries, returning once all of them are durable. */
+  public void append(List<Entry> entries) throws IOException;
+
+  /**
+   * Replays every durable entry in the order it was appended. Called once on startup, before the
+   * first {@link #append}.
+   */
+  public void replay(Consumer<Entry> consumer) throws IOException;
+
+  @Override
+  public void close() throws IOException;
+}
@@ -0,0 +1,172 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * MessageLog
+ *
+ * <p>Append-only, chunked log of the messages of one conversation. Appends reserve a slot with a
+ * single atomic increment and write it without locking; the published size then advances over
+ * every contiguous written slot, with each appender helping, so readers always see a gap-free
+ * prefix in append order. Snapshots are views over the published prefix and never copy.
+ *
+ * <p>A log can start with messages restored from elsewhere, keeping their sequences even where
+ * some are missing; appends then continue after the last of them.
+ */
+public final class MessageLog {
+
+  static final int CHUNK_SHIFT = 10;
+
+  static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private final AtomicReference<AtomicReferenceArray<Message>[]> chunks =
+      new AtomicReference<>(firstChunk());
+
+  private final AtomicLong reserved = new AtomicLong();
+
+  private final AtomicLong published = new AtomicLong();
+
+  /** Sequence of the message at position 0, had none been missing before the appended ones. */
+  private final long offset;
+
+  /** Sequences of the restored messages, which may have gaps. */
+  private final long[] restored;
+
+  public MessageLog() {
+    this(List.of());
+  }
+
+  /**
+   * Creates a log starting with {@code restored}, which must be in sequence order, keeping their
+   * sequences.
+   */
+  public MessageLog(List<Message> restored) {
+    this.restored = new long[restored.size()];
+    for (int i = 0; i < restored.size(); i++) {
+      var message = restored.get(i);
+      if (i > 0 && message.sequence() <= this.restored[i - 1]) {
+        throw new IllegalArgumentException(
+            String.format("Restored sequence %d out of order", message.sequence()));
+      }
+      this.restored[i] = message.sequence();
+      chunk(i).set(i & CHUNK_MASK, message);
+    }
+
+    this.offset =
+        restored.isEmpty() ? 0 : this.restored[restored.size() - 1] + 1 - restored.size();
+    reserved.set(restored.size());
+    published.set(restored.size());
+  }
+
+  /**
+   * Appends a message, sequencing it with its position in the log. It becomes visible to snapshots
+   * once every earlier append has been written as well.
+   *
+   * @return the appended message
+   */
+  public Message append(Message message) {
+    var position = reserved.getAndIncrement();
+    var sequenced = message.withSequence(position + offset);
+    chunk(position).set((int) (position & CHUNK_MASK), sequenced);
+
+    long next;
+    while ((next = published.get()) < reserved.get() && slot(next) != null) {
+      published.compareAndSet(next, next + 1);
+    }
+
+    return sequenced;
+  }
+
+  public long size() {
+    return published.get();
+  }
+
+  /** The sequence following the last published message. */
+  public long nextSequence() {
+    return published.get() + offset;
+  }
+
+  /** Returns a read-only view of the published messages from {@code fromSequence} on. */
+  public List<Message> from(long fromSequence) {
+    var snapshot = snapshot();
+    var position = fromSequence - offset;
+
+    if (position < restored.length) {
+      var found = Arrays.binarySearch(restored, Math.max(fromSequence, 0));
+      position = found >= 0 ? found : -found - 1;
+    }
+    return snapshot.subList((int) Math.min(position, snapshot.size()), snapshot.size());
+  }
+
+  /** Returns a read-only view of the messages published so far. */
+  public List<Message> snapshot() {
+    // Read the size first: every chunk holding a published slot is reachable from any later
+    // directory.
+    var size = (int) published.get();
+    return new Snapshot(chunks.get(), size);
+  }
+
+  private Message slot(long position) {
+    var current = chunks.get();
+    var index = (int) (position >>> CHUNK_SHIFT);
+    return index < current.length ? current[index].get((int) (position & CHUNK_MASK)) : null;
+  }
+
+  private AtomicReferenceArray<Message> chunk(long position) {
+    var index = (int) (position >>> CHUNK_SHIFT);
+
+    while (true) {
+      var current = chunks.get();
+      if (index < current.length) {
+        return current[index];
+      }
+
+      var grown = Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+      for (int i = current.length; i < grown.length; i++) {
+        grown[i] = new AtomicReferenceArray<>(CHUNK_SIZE);
+      }
+      chunks.compareAndSet(current, grown);
+    }
+  }
+
+  /** Generic arrays cannot be created, so the one holding the first chunk starts out raw. */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static AtomicReferenceArray<Message>[] firstChunk() {
+    return new AtomicReferenceArray[] {new AtomicReferenceArray<Message>(CHUNK_SIZE)};
+  }
+
+  private static final class Snapshot extends AbstractList<Message> implements RandomAccess {
+
+    private final AtomicReferenceArray<Message>[] chunks;
+
+    private final int size;
+
+    Snapshot(AtomicReferenceArray<Message>[] chunks, int size) {
+      this.chunks = chunks;
+      this.size = size;
+    }
+
+    @Override
+    public Message get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException(index);
+      }
+
+      return chunks[index >>> CHUNK_SHIFT].get(index & CHUNK_MASK);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+}
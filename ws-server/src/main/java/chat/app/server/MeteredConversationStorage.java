@@ -0,0 +1,144 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Members;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.context.BeanProvider;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import io.micronaut.context.event.BeanPreDestroyEvent;
+import io.micronaut.context.event.BeanPreDestroyEventListener;
+import io.micronaut.core.order.Ordered;
+import jakarta.inject.Singleton;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * MeteredConversationStorage
+ *
+ * <p>Times every operation of another {@link ConversationStorage} into {@code
+ * chat.storage.operation}, tagged with the operation, on the clock of the registry. {@link
+ * Decorator} wraps the configured storage last, so the timings include the cache when it is
+ * enabled.
+ */
+public class MeteredConversationStorage
+    implements ConversationStorage, Delegating<ConversationStorage> {
+
+  private final ConversationStorage backend;
+
+  private final Clock clock;
+
+  private final Timer getConversation;
+
+  private final Timer getMembers;
+
+  private final Timer getNextSequence;
+
+  private final Timer getMessages;
+
+  private final Timer getMessage;
+
+  private final Timer createConversation;
+
+  private final Timer pushMessage;
+
+  MeteredConversationStorage(ConversationStorage backend, MeterRegistry registry) {
+    this.backend = backend;
+    this.clock = registry.config().clock();
+    this.getConversation = timer(registry, "conversation", "get_conversation");
+    this.getMembers = timer(registry, "conversation", "get_members");
+    this.getNextSequence = timer(registry, "conversation", "get_next_sequence");
+    this.getMessages = timer(registry, "conversation", "get_messages");
+    this.getMessage = timer(registry, "conversation", "get_message");
+    this.createConversation = timer(registry, "conversation", "create_conversation");
+    this.pushMessage = timer(registry, "conversation", "push_message");
+  }
+
+  static Timer timer(MeterRegistry registry, String storage, String operation) {
+    return Timer.builder("chat.storage.operation")
+        .description("Time from subscribing to a storage operation to its completion")
+        .tag("storage", storage)
+        .tag("operation", operation)
+        .publishPercentileHistogram()
+        .register(registry);
+  }
+
+  @Override
+  public ConversationStorage delegate() {
+    return backend;
+  }
+
+  @Override
+  public Mono<Conversation> getConversation(String id) {
+    return ChatMetrics.timed(
+        clock, getConversation, Mono.defer(() -> backend.getConversation(id)));
+  }
+
+  @Override
+  public Mono<Members> getMembers(String conversationId) {
+    return ChatMetrics.timed(
+        clock, getMembers, Mono.defer(() -> backend.getMembers(conversationId)));
+  }
+
+  @Override
+  public Mono<Long> getNextSequence(String conversationId) {
+    return ChatMetrics.timed(
+        clock, getNextSequence, Mono.defer(() -> backend.getNextSequence(conversationId)));
+  }
+
+  @Override
+  public Flux<Message> getMessages(String conversationId, long fromSequence) {
+    return ChatMetrics.timed(
+        clock, getMessages, Flux.defer(() -> backend.getMessages(conversationId, fromSequence)));
+  }
+
+  @Override
+  public Mono<Message> getMessage(String conversationId, long sequence) {
+    return ChatMetrics.timed(
+        clock, getMessage, Mono.defer(() -> backend.getMessage(conversationId, sequence)));
+  }
+
+  @Override
+  public Mono<Conversation> createConversation(Conversation conversation) {
+    return ChatMetrics.timed(
+        clock, createConversation, Mono.defer(() -> backend.createConversation(conversation)));
+  }
+
+  @Override
+  public Mono<Message> pushMessage(String conversationId, Message message) {
+    return ChatMetrics.timed(
+        clock, pushMessage, Mono.defer(() -> backend.pushMessage(conversationId, message)));
+  }
+
+  /** Wraps the configured {@link ConversationStorage} bean, after any other decorator. */
+  @Singleton
+  public static class Decorator
+      implements BeanCreatedEventListener<ConversationStorage>,
+          BeanPreDestroyEventListener<ConversationStorage>,
+          Ordered {
+
+    private final BeanProvider<MeterRegistry> registry;
+
+    public Decorator(BeanProvider<MeterRegistry> registry) {
+      this.registry = registry;
+    }
+
+    @Override
+    public ConversationStorage onCreated(BeanCreatedEvent<ConversationStorage> event) {
+      return new MeteredConversationStorage(event.getBean(), registry.get());
+    }
+
+    @Override
+    public ConversationStorage onPreDestroy(BeanPreDestroyEvent<ConversationStorage> event) {
+      return Delegating.unwrap(event.getBean());
+    }
+
+    @Override
+    public int getOrder() {
+      return LOWEST_PRECEDENCE;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package chat.app.server;
+
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.context.BeanProvider;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import io.micronaut.context.event.BeanPreDestroyEvent;
+import io.micronaut.context.event.BeanPreDestroyEventListener;
+import io.micronaut.core.order.Ordered;
+import jakarta.inject.Singleton;
+import reactor.core.publisher.Mono;
+
+/**
+ * MeteredUserStorage
+ *
+ * <p>Times the operations of another {@link UserStorage} into {@code chat.storage.operation}, as
+ * {@link MeteredConversationStorage} does for conversations.
+ */
+public class MeteredUserStorage implements UserStorage, Delegating<UserStorage> {
+
+  private final UserStorage backend;
+
+  private final Timer getUser;
+
+  private final Timer addUser;
+
+  MeteredUserStorage(UserStorage backend, MeterRegistry registry) {
+    this.backend = backend;
+    this.getUser = MeteredConversationStorage.timer(registry, "user", "get_user");
+    this.addUser = MeteredConversationStorage.timer(registry, "user", "add_user");
+  }
+
+  @Override
+  public UserStorage delegate() {
+    return backend;
+  }
+
+  @Override
+  public Mono<User> getUser(String username) {
+    return ChatMetrics.timed(getUser, Mono.defer(() -> backend.getUser(username)));
+  }
+
+  @Override
+  public Mono<User> addUser(String username) {
+    return ChatMetrics.timed(addUser, Mono.defer(() -> backend.addUser(username)));
+  }
+
+  /** Wraps the configured {@link UserStorage} bean, after any other decorator. */
+  @Singleton
+  public static class Decorator
+      implements BeanCreatedEventListener<UserStorage>,
+          BeanPreDestroyEventListener<UserStorage>,
+          Ordered {
+
+    private final BeanProvider<MeterRegistry> registry;
+
+    public Decorator(BeanProvider<MeterRegistry> registry) {
+      this.registry = registry;
+    }
+
+    @Override
+    public UserStorage onCreated(BeanCreatedEvent<UserStorage> event) {
+      return new MeteredUserStorage(event.getBean(), registry.get());
+    }
+
+    @Override
+    public UserStorage onPreDestroy(BeanPreDestroyEvent<UserStorage> event) {
+      return Delegating.unwrap(event.getBean());
+    }
+
+    @Override
+    public int getOrder() {
+      return LOWEST_PRECEDENCE;
+    }
+  }
+}
@@ -0,0 +1,431 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+/**
+ * OutboundQueue
+ *
+ * <p>Frames waiting to be written to one session. A single drain loop keeps at most one write in
+ * flight and, while the socket is writable, coalesces consecutive binary frames into one write;
+ * their records are self-delimiting, so the client reads them as one multi-record frame.
+ *
+ * <p>A queue can be held while its session replays history: frames queue up without being written,
+ * and once resumed those of messages the replay already covered are dropped.
+ *
+ * <p>Ephemeral frames, such as presence, never displace a message: a full queue evicts its oldest
+ * ephemeral frame for a new one before applying the overflow policy, and an ephemeral frame finding
+ * no room is dropped rather than parking or disconnecting the session.
+ *
+ * <p>The queue knows up to which message its session has everything: the highest sequence written
+ * to the channel, short of any message dropped or still waiting before it.
+ */
+final class OutboundQueue {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OutboundQueue.class);
+
+  private static final Duration UNWRITABLE_RETRY = Duration.ofMillis(10);
+
+  private final WebSocketSession session;
+
+  private final OutboundQueues owner;
+
+  private final ConcurrentLinkedQueue<Queued> frames = new ConcurrentLinkedQueue<>();
+
+  private final ConcurrentLinkedQueue<Parked> parked = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger size = new AtomicInteger();
+
+  private final AtomicInteger ephemeral = new AtomicInteger();
+
+  private final AtomicInteger wip = new AtomicInteger();
+
+  private final AtomicLong written = new AtomicLong(Message.UNSEQUENCED);
+
+  private volatile long firstDropped = Long.MAX_VALUE;
+
+  /** Highest sequence in the batch taken last, written once the batch is. */
+  private long batchThrough;
+
+  private volatile boolean writing;
+
+  private volatile boolean retryScheduled;
+
+  private volatile boolean closed;
+
+  private volatile boolean held;
+
+  private volatile long replayedThrough = Message.UNSEQUENCED;
+
+  OutboundQueue(WebSocketSession session, OutboundQueues owner) {
+    this.session = session;
+    this.owner = owner;
+  }
+
+  int size() {
+    return size.get();
+  }
+
+  /** Whether every frame offered so far has been written, as far as can be told without locking. */
+  boolean idle() {
+    return size.get() == 0 && parked.isEmpty() && !writing;
+  }
+
+  Mono<Void> offer(Object frame, long sequence) {
+    if (closed) {
+      ReferenceCountUtil.release(frame);
+      return Mono.empty();
+    }
+
+    var entry = new Queued(frame, sequence, false);
+    var policy = owner.overflowPolicy;
+
+    // Later frames queue up behind parked ones so a session sees messages in order.
+    if (policy == OutboundQueues.OverflowPolicy.PARK && !parked.isEmpty()) {
+      return park(entry);
+    }
+
+    if (size.get() >= owner.capacity && !evictEphemeral()) {
+      switch (policy) {
+        case DROP_OLDEST -> dropOldest();
+        case DISCONNECT -> {
+          ReferenceCountUtil.release(frame);
+          disconnect();
+          return Mono.empty();
+        }
+        case PARK -> {
+          return park(entry);
+        }
+      }
+    }
+
+    enqueue(entry);
+    drain();
+    return Mono.empty();
+  }
+
+  /** Queues an ephemeral frame, dropping it if the queue is full of messages. */
+  void offerEphemeral(Object frame) {
+    if (closed) {
+      ReferenceCountUtil.release(frame);
+      return;
+    }
+
+    if (!parked.isEmpty() || (size.get() >= owner.capacity && !evictEphemeral())) {
+      ReferenceCountUtil.release(frame);
+      owner.ephemeralDropped.increment();
+      return;
+    }
+
+    enqueue(new Queued(frame, Message.UNSEQUENCED, true));
+    drain();
+  }
+
+  void hold() {
+    held = true;
+  }
+
+  /**
+   * Starts writing a held queue, dropping frames of messages up to {@code replayedThrough}, which
+   * the history replay has written.
+   */
+  void resume(long replayedThrough) {
+    this.replayedThrough = replayedThrough;
+    written.accumulateAndGet(replayedThrough, Math::max);
+    held = false;
+    drain();
+  }
+
+  /**
+   * The sequence through which every message was written to the session, or {@link
+   * Message#UNSEQUENCED} if none was.
+   */
+  long writtenThrough() {
+    var through = Math.min(written.get(), firstDropped - 1);
+    for (var entry : frames) {
+      through = before(entry, through);
+    }
+    for (var entry : parked) {
+      through = before(entry.queued, through);
+    }
+    return Math.max(through, Message.UNSEQUENCED);
+  }
+
+  private long before(Queued entry, long through) {
+    return entry.sequence == Message.UNSEQUENCED || entry.replayed(replayedThrough)
+        ? through
+        : Math.min(through, entry.sequence - 1);
+  }
+
+  void close() {
+    closed = true;
+    drain();
+  }
+
+  private void enqueue(Queued entry) {
+    if (entry.ephemeral) {
+      ephemeral.incrementAndGet();
+    }
+    frames.offer(entry);
+    owner.queued.incrementAndGet();
+    owner.depth.record(size.incrementAndGet());
+  }
+
+  private Queued poll() {
+    var entry = frames.poll();
+
+    if (entry != null) {
+      dequeued(entry);
+    }
+    return entry;
+  }
+
+  private void dequeued(Queued entry) {
+    size.decrementAndGet();
+    owner.queued.decrementAndGet();
+    if (entry.ephemeral) {
+      ephemeral.decrementAndGet();
+    }
+  }
+
+  /** Removes the oldest queued ephemeral frame, if there is one. */
+  private boolean evictEphemeral() {
+    if (ephemeral.get() == 0) {
+      return false;
+    }
+
+    for (var entry : frames) {
+      if (entry.ephemeral && frames.remove(entry)) {
+        dequeued(entry);
+        ReferenceCountUtil.release(entry.frame);
+        owner.ephemeralDropped.increment();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Takes the next frame to write, skipping those the history replay already sent. */
+  private Object pollUnreplayed() {
+    Queued entry;
+    while ((entry = poll()) != null && entry.replayed(replayedThrough)) {
+      ReferenceCountUtil.release(entry.frame);
+    }
+    if (entry == null) {
+      return null;
+    }
+    batchThrough = Math.max(batchThrough, entry.sequence);
+    return entry.frame;
+  }
+
+  private void dropOldest() {
+    var oldest = poll();
+
+    if (oldest != null) {
+      if (oldest.sequence != Message.UNSEQUENCED) {
+        firstDropped = Math.min(firstDropped, oldest.sequence);
+      }
+      ReferenceCountUtil.release(oldest.frame);
+      owner.dropped.increment();
+    }
+  }
+
+  private void disconnect() {
+    if (!closed) {
+      LOG.warn("Disconnecting slow consumer session {}", session.getId());
+      owner.disconnected.increment();
+      owner.remove(session);
+      session.close(CloseReason.TRY_AGAIN_LATER);
+    }
+  }
+
+  private Mono<Void> park(Queued queued) {
+    return Mono.<Void>create(
+            sink -> {
+              var entry = new Parked(queued, sink);
+              sink.onCancel(entry::cancel);
+              parked.offer(entry);
+              drain();
+            })
+        .timeout(owner.parkTimeout, Mono.fromRunnable(this::disconnect));
+  }
+
+  private void drain() {
+    if (wip.getAndIncrement() != 0) {
+      return;
+    }
+
+    do {
+      if (closed || !session.isOpen()) {
+        closed = true;
+        discard();
+      } else {
+        admitParked();
+
+        if (!held && !writing && !frames.isEmpty()) {
+          if (session.isWritable()) {
+            // Marked before taking the batch, so the queue never looks idle while it is in hand.
+            writing = true;
+            batchThrough = Message.UNSEQUENCED;
+            var batch = nextBatch();
+            if (batch != null) {
+              write(batch, batchThrough);
+            } else {
+              writing = false;
+            }
+          } else {
+            retryWhenWritable();
+          }
+        }
+
+        // Taking a batch frees room for senders parked behind it.
+        admitParked();
+      }
+    } while (wip.decrementAndGet() != 0);
+  }
+
+  private void admitParked() {
+    Parked entry;
+    while (size.get() < owner.capacity && (entry = parked.poll()) != null) {
+      if (entry.claim()) {
+        enqueue(entry.queued);
+        entry.sink.success();
+      } else {
+        ReferenceCountUtil.release(entry.queued.frame);
+      }
+    }
+  }
+
+  private Object nextBatch() {
+    var first = pollUnreplayed();
+
+    if (first == null) {
+      return null;
+    }
+
+    if (!(first instanceof ByteBuf) || !nextIsBinary()) {
+      owner.batches.record(1);
+      return first;
+    }
+
+    var batch = ByteBufAllocator.DEFAULT.compositeBuffer(owner.maxBatch);
+    batch.addComponent(true, (ByteBuf) first);
+    while (batch.numComponents() < owner.maxBatch && nextIsBinary()) {
+      var next = pollUnreplayed();
+      if (next == null) {
+        break;
+      }
+      batch.addComponent(true, (ByteBuf) next);
+    }
+    owner.batches.record(batch.numComponents());
+    return batch;
+  }
+
+  private boolean nextIsBinary() {
+    var next = frames.peek();
+    return next != null && next.frame instanceof ByteBuf;
+  }
+
+  private void write(Object batch, long through) {
+    BinaryFrames.send(session, batch)
+        .then()
+        .subscribe(
+            null,
+            error -> {
+              LOG.debug("Failed writing to session {}", session.getId(), error);
+              writing = false;
+              close();
+            },
+            () -> {
+              written.accumulateAndGet(through, Math::max);
+              writing = false;
+              drain();
+            });
+  }
+
+  private void retryWhenWritable() {
+    if (!retryScheduled) {
+      retryScheduled = true;
+      Mono.delay(UNWRITABLE_RETRY)
+          .subscribe(
+              tick -> {
+                retryScheduled = false;
+                drain();
+              });
+    }
+  }
+
+  private void discard() {
+    Queued queued;
+    while ((queued = poll()) != null) {
+      ReferenceCountUtil.release(queued.frame);
+    }
+
+    Parked entry;
+    while ((entry = parked.poll()) != null) {
+      ReferenceCountUtil.release(entry.queued.frame);
+      if (entry.claim()) {
+        entry.sink.success();
+      }
+    }
+  }
+
+  /**
+   * A frame, with the sequence of the message it carries or {@link Message#UNSEQUENCED}. Entries
+   * compare by identity, so an evicted one is removed exactly.
+   */
+  private static final class Queued {
+
+    final Object frame;
+
+    final long sequence;
+
+    final boolean ephemeral;
+
+    Queued(Object frame, long sequence, boolean ephemeral) {
+      this.frame = frame;
+      this.sequence = sequence;
+      this.ephemeral = ephemeral;
+    }
+
+    boolean replayed(long replayedThrough) {
+      return sequence != Message.UNSEQUENCED && sequence <= replayedThrough;
+    }
+  }
+
+  private static final class Parked extends AtomicBoolean {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Queued queued;
+
+    private final MonoSink<Void> sink;
+
+    Parked(Queued queued, MonoSink<Void> sink) {
+      this.queued = queued;
+      this.sink = sink;
+    }
+
+    /** Settles the entry once, either by admitting it or on cancellation. */
+    boolean claim() {
+      return compareAndSet(false, true);
+    }
+
+    void cancel() {
+      claim();
+    }
+  }
+}
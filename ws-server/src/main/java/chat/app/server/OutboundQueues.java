@@ -0,0 +1,211 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.websocket.WebSocketSession;
+import io.netty.util.ReferenceCountUtil;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * OutboundQueues
+ *
+ * <p>Bounded outbound queue per WebSocket session, so a slow receiver holds up neither the sender
+ * nor the rest of its conversation. What happens when a queue is full is set by {@code
+ * chat.outbound.overflow-policy}. Ephemeral frames give way to messages whatever the policy.
+ */
+@Singleton
+public class OutboundQueues {
+
+  /** What to do with a frame offered to a full queue. */
+  public enum OverflowPolicy {
+    /** Evict the oldest queued frame to make room. */
+    DROP_OLDEST,
+    /** Close the session as a slow consumer. */
+    DISCONNECT,
+    /** Hold the sender until there is room, disconnecting the session after the park timeout. */
+    PARK
+  }
+
+  private static final Duration FLUSH_POLL = Duration.ofMillis(10);
+
+  final int capacity;
+
+  final int maxBatch;
+
+  final OverflowPolicy overflowPolicy;
+
+  final Duration parkTimeout;
+
+  final AtomicLong queued = new AtomicLong();
+
+  final DistributionSummary depth;
+
+  final DistributionSummary batches;
+
+  final Counter dropped;
+
+  final Counter disconnected;
+
+  final Counter ephemeralDropped;
+
+  private final ConcurrentHashMap<WebSocketSession, OutboundQueue> queues =
+      new ConcurrentHashMap<>();
+
+  @Inject
+  public OutboundQueues(
+      MeterRegistry registry,
+      @Value("${chat.outbound.capacity:256}") int capacity,
+      @Value("${chat.outbound.max-batch:64}") int maxBatch,
+      @Value("${chat.outbound.overflow-policy:drop_oldest}") OverflowPolicy overflowPolicy,
+      @Value("${chat.outbound.park-timeout:5s}") Duration parkTimeout) {
+    this.capacity = capacity;
+    this.maxBatch = maxBatch;
+    this.overflowPolicy = overflowPolicy;
+    this.parkTimeout = parkTimeout;
+    this.depth =
+        DistributionSummary.builder("chat.session.outbound.depth")
+            .description("Frames queued for a session when a frame is enqueued")
+            .register(registry);
+    this.batches =
+        DistributionSummary.builder("chat.session.outbound.batch")
+            .description("Frames coalesced into one socket write")
+            .register(registry);
+    this.dropped =
+        Counter.builder("chat.session.outbound.evictions").tag("reason", "dropped").register(registry);
+    this.disconnected =
+        Counter.builder("chat.session.outbound.evictions")
+            .tag("reason", "disconnected")
+            .register(registry);
+    this.ephemeralDropped =
+        Counter.builder("chat.session.outbound.evictions")
+            .tag("reason", "ephemeral")
+            .register(registry);
+    Gauge.builder("chat.session.outbound.queued", queued, AtomicLong::get).register(registry);
+    Gauge.builder("chat.session.outbound.sessions", queues, ConcurrentHashMap::size)
+        .register(registry);
+  }
+
+  /**
+   * Queues a frame for a session, taking ownership of reference-counted frames.
+   *
+   * @return completes once the frame is queued, which only waits under {@link
+   *     OverflowPolicy#PARK}
+   */
+  public Mono<Void> offer(WebSocketSession session, Object frame) {
+    return offer(session, frame, Message.UNSEQUENCED);
+  }
+
+  /** Queues the frame of a stored message, which a resumed queue skips if it was replayed. */
+  public Mono<Void> offer(WebSocketSession session, Object frame, long sequence) {
+    var queue = queue(session);
+
+    if (queue == null) {
+      ReferenceCountUtil.release(frame);
+      return Mono.empty();
+    }
+    return queue.offer(frame, sequence);
+  }
+
+  /**
+   * Queues a frame that is not stored, such as presence, which is dropped or evicted before any
+   * message is and never waits.
+   */
+  public void offerEphemeral(WebSocketSession session, Object frame) {
+    var queue = queue(session);
+
+    if (queue == null) {
+      ReferenceCountUtil.release(frame);
+      return;
+    }
+    queue.offerEphemeral(frame);
+  }
+
+  /** Queues frames for a session without writing them until it is {@linkplain #resume resumed}. */
+  public void hold(WebSocketSession session) {
+    var queue = queue(session);
+
+    if (queue != null) {
+      queue.hold();
+    }
+  }
+
+  /**
+   * Starts writing what was queued for a held session, skipping messages up to {@code
+   * replayedThrough}, which it received with its history.
+   */
+  public void resume(WebSocketSession session, long replayedThrough) {
+    var queue = queues.get(session);
+
+    if (queue != null) {
+      queue.resume(replayedThrough);
+    }
+  }
+
+  /**
+   * The sequence through which a session was written every message of its conversation it was
+   * offered, or {@link Message#UNSEQUENCED} if none.
+   */
+  public long writtenThrough(WebSocketSession session) {
+    var queue = queues.get(session);
+    return queue == null ? Message.UNSEQUENCED : queue.writtenThrough();
+  }
+
+  /**
+   * The queue of a session, created on first use unless the session is closed: its removal may
+   * already have run, and nothing would drop a queue created after it.
+   */
+  private OutboundQueue queue(WebSocketSession session) {
+    var queue = queues.get(session);
+
+    if (queue != null || !session.isOpen()) {
+      return queue;
+    }
+
+    queue = queues.computeIfAbsent(session, s -> new OutboundQueue(s, this));
+    // Closed meanwhile, possibly before the queue existed to be removed.
+    if (!session.isOpen()) {
+      remove(session);
+    }
+    return queue;
+  }
+
+  /** Drops the queue of a session, releasing frames it still holds. */
+  public void remove(WebSocketSession session) {
+    var queue = queues.remove(session);
+
+    if (queue != null) {
+      queue.close();
+    }
+  }
+
+  /**
+   * Completes once everything queued for a session has been written, or after {@code timeout},
+   * checking every few milliseconds on {@code scheduler}.
+   */
+  public Mono<Void> flush(WebSocketSession session, Duration timeout, Scheduler scheduler) {
+    return Mono.fromSupplier(
+            () -> {
+              var queue = queues.get(session);
+              return queue == null || queue.idle() ? Boolean.TRUE : null;
+            })
+        .repeatWhenEmpty(
+            checks -> checks.concatMap(check -> Mono.delay(FLUSH_POLL, scheduler)))
+        .timeout(timeout, Mono.empty(), scheduler)
+        .then();
+  }
+
+  int depth(WebSocketSession session) {
+    var queue = queues.get(session);
+    return queue == null ? 0 : queue.size();
+  }
+}
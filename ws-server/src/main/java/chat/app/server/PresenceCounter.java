@@ -0,0 +1,26 @@
+package chat.app.server;
+
+import java.util.List;
+import reactor.core.publisher.Mono;
+
+/**
+ * PresenceCounter
+ *
+ * <p>Counts the sessions each member of a conversation has open across every node, so {@link
+ * EphemeralEvents} only reports a member offline once their last session anywhere has left. Each
+ * node counts a member once, however many sessions they have on it.
+ *
+ * <p>Updates commute: a decrement applied before the increment it follows leaves the count below
+ * zero until the increment lands, and a member counts as online only while above zero.
+ */
+public interface PresenceCounter {
+
+  /** Counts one more node the member is connected to, returning how many there are now. */
+  Mono<Long> increment(String conversationId, String username);
+
+  /** Counts one node fewer, returning how many are left. */
+  Mono<Long> decrement(String conversationId, String username);
+
+  /** Members counted above zero, in no particular order. */
+  Mono<List<String>> online(String conversationId);
+}
@@ -1,62 +1,132 @@
 package chat.app.server;
 
-import java.util.List;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import chat.app.server.models.Conversation;
 import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.HistoryBatch;
+import chat.app.server.models.Members;
 import chat.app.server.models.User;
 import io.micronaut.context.annotation.Prototype;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpRequest;
 import io.micronaut.websocket.CloseReason;
-import io.micronaut.websocket.WebSocketBroadcaster;
 import io.micronaut.websocket.WebSocketSession;
 
 import io.micronaut.websocket.annotation.OnClose;
 import io.micronaut.websocket.annotation.OnMessage;
 import io.micronaut.websocket.annotation.OnOpen;
 import io.micronaut.websocket.annotation.ServerWebSocket;
+import io.netty.buffer.ByteBuf;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 /**
  * PrivateChatHandler
+ *
+ * <p>Clients negotiating the {@value BinaryFrames#SUBPROTOCOL} subprotocol exchange
+ * {@link BinaryFrames}, the others JSON.
+ *
+ * <p>Typing events are handed to {@link EphemeralEvents} and never reach storage. Read reports
+ * are handed to {@link ReadReceipts}. History replays may be compressed by the
+ * {@link HistoryCompressor}.
+ *
+ * <p>Sessions are closed with {@code 1013} (try again later) unless {@link AdmissionControl}
+ * admits them, and messages over their rate are dropped.
  */
-@ServerWebSocket("/ws/chat/{id}")
+@ServerWebSocket(value = "/ws/chat/{id}", subprotocols = BinaryFrames.SUBPROTOCOL)
 @Prototype
 public class PrivateChatHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(PrivateChatHandler.class);
 
-    private final WebSocketBroadcaster broadcaster;
+    /**
+     * Query parameter carrying the last message sequence the client has seen, so only newer
+     * messages are replayed.
+     */
+    public static final String CURSOR_PARAMETER = "after";
+
+    private final ConversationSessions sessions;
+
+    private final ConversationRelay relay;
 
     private ConversationStorage conversationStorage;
 
     private UserStorage userStorage;
 
-    public PrivateChatHandler(WebSocketBroadcaster broadcaster, ConversationStorage conversationStorage,
-            UserStorage userStorage) {
-        this.broadcaster = broadcaster;
+    private final HistoryFrames historyFrames;
+
+    /**
+     * Session attribute caching the members of the joined conversation, so sends are checked
+     * without a storage lookup.
+     */
+    static final String MEMBERS_ATTRIBUTE = "chat.members";
+
+    private final int historyBatchSize;
+
+    private final ExecutionScheduler execution;
+
+    private final ChatMetrics metrics;
+
+    private final EphemeralEvents ephemeral;
+
+    private final ReadReceipts receipts;
+
+    private final HistoryCompressor compressor;
+
+    private final AdmissionControl admission;
+
+    public PrivateChatHandler(ConversationSessions sessions, ConversationRelay relay,
+            ConversationStorage conversationStorage, HistoryFrames historyFrames,
+            UserStorage userStorage, @Value("${chat.history.batch-size:100}") int historyBatchSize,
+            ExecutionScheduler execution, ChatMetrics metrics, EphemeralEvents ephemeral,
+            ReadReceipts receipts, HistoryCompressor compressor, AdmissionControl admission) {
+        this.sessions = sessions;
+        this.relay = relay;
         this.conversationStorage = conversationStorage;
+        this.historyFrames = historyFrames;
         this.userStorage = userStorage;
+        this.historyBatchSize = historyBatchSize;
+        this.execution = execution;
+        this.metrics = metrics;
+        this.ephemeral = ephemeral;
+        this.receipts = receipts;
+        this.compressor = compressor;
+        this.admission = admission;
     }
 
     @OnOpen
-    public Mono<List<Message.Content>> onOpen(String id, WebSocketSession session) {
+    public Mono<Void> onOpen(String id, WebSocketSession session, HttpRequest<?> request) {
         log("onOpen", session, id);
         var principal = session.getUserPrincipal();
 
         if (principal.isEmpty()) {
-            LOG.info(String.format("Principal is empty on session %s", session.getId()));
+            LOG.warn("Principal is empty on session {}", session.getId());
             session.close(CloseReason.INTERNAL_ERROR);
             return Mono.empty();
         }
 
         var username = principal.get().getName();
+        var cursor = session.getRequestParameters().get(CURSOR_PARAMETER, Long.class).orElse(Message.UNSEQUENCED);
+        var compressHistory = compressor.accepts(session, request);
 
-        return userStorage
-                .getUser(username)
-                .flatMap(user -> getUserMessages(id, user));
+        return admission.admit(username, session).flatMap(admitted -> {
+            if (!admitted) {
+                session.close(CloseReason.TRY_AGAIN_LATER);
+                return Mono.empty();
+            }
+
+            return ChatMetrics.timed(metrics.open, execution.offload(Mono.defer(() -> userStorage
+                    .getUser(username)
+                    .flatMap(user -> joinConversation(id, user, session))
+                    .flatMap(members -> relay.subscribed(id)
+                            .then(receipts.join(id, members, username, session))
+                            .then(ephemeral.join(id, username, session))
+                            .then(replayHistory(id, cursor, session, compressHistory))))));
+        });
     }
 
     @OnMessage
@@ -67,42 +137,121 @@ public class PrivateChatHandler {
 
         var username = session.getUserPrincipal().get().getName();
 
-        return userStorage
-                .getUser(username)
+        if (EphemeralEvents.isEphemeral(content)) {
+            return ephemeral.accept(id, username, session, content);
+        }
+        if (ReadReceipts.isReceipt(content)) {
+            return receipts.accept(id, username, session, content);
+        }
+        return admission.tryMessage(session).flatMap(allowed -> {
+            if (!allowed) {
+                metrics.limited.increment();
+                return Mono.empty();
+            }
+            metrics.received.increment();
+            return handleMessage(id, username, content, session);
+        });
+    }
+
+    private Mono<Void> handleMessage(
+            String id,
+            String username,
+            Conversation.Message.Content content,
+            WebSocketSession session) {
+        return ChatMetrics.timed(metrics.message, execution.offload(Mono.defer(() -> getMembers(id, session)
+                .filter(members -> members.contains(username))
+                .switchIfEmpty(Mono.fromRunnable(() -> {
+                    metrics.rejected.increment();
+                    LOG.warn("Rejecting message from {} to conversation {} they do not belong to", username, id);
+                    session.close(CloseReason.POLICY_VIOLATION);
+                }))
+                .flatMap(members -> userStorage.getUser(username))
                 .flatMap(user -> {
                     var message = new Conversation.Message(user, content);
                     return conversationStorage
                             .pushMessage(id, message)
-                            .and(broadcaster.broadcast(message.content(),
-                                    s -> s.getUriVariables().get("id", String.class).get().equals(id)));
-                });
+                            .flatMap(stored -> Mono.when(
+                                    sessions.deliver(id, stored),
+                                    relay.publish(id, stored)));
+                }))));
     }
 
     @OnClose
     public void onClose(
             String id,
             WebSocketSession session) {
-        LOG.info(String.format("Closing session %s on conversation %s", session.getId(), id));
+        log("onClose", session, id);
+        sessions.remove(id, session);
+        admission.release(session);
+        session.getUserPrincipal()
+                .ifPresent(principal -> ephemeral.leave(id, principal.getName(), session));
+        receipts.leave(id, session);
     }
 
-    private Mono<List<Message.Content>> getUserMessages(String conversationId, User user) {
+    private Mono<Members> joinConversation(String conversationId, User user, WebSocketSession session) {
         return conversationStorage
-                .getConversation(conversationId)
-                .mapNotNull(c -> {
-                    var index = c.users().indexOf(user);
+                .getMembers(conversationId)
+                .filter(members -> members.contains(user.username()))
+                .switchIfEmpty(Mono.fromRunnable(() -> {
+                    LOG.warn("Rejecting {} from conversation {} they do not belong to", user.username(), conversationId);
+                    session.close(CloseReason.POLICY_VIOLATION);
+                }))
+                .doOnNext(members -> {
+                    session.put(MEMBERS_ATTRIBUTE, members);
+                    sessions.addReplaying(conversationId, session);
+                });
+    }
 
-                    if (index == -1) {
-                        throw new Error(String.format("User %s does not belong to conversation", user.username()));
-                    }
+    private Mono<Members> getMembers(String conversationId, WebSocketSession session) {
+        return Mono.justOrEmpty(session.get(MEMBERS_ATTRIBUTE, Members.class))
+                .switchIfEmpty(Mono.defer(() -> conversationStorage
+                        .getMembers(conversationId)
+                        .doOnNext(members -> session.put(MEMBERS_ATTRIBUTE, members))));
+    }
 
-                    return c.messages().stream().map(m -> m.content());
-                })
-                .map(s -> s.toList());
+    /**
+     * Sends the messages after the client's cursor, then the live messages held back meanwhile.
+     * History is read only once the session is registered, so every message is either replayed or
+     * held back, and those that are both are sent once.
+     */
+    private Mono<Void> replayHistory(String conversationId, long cursor, WebSocketSession session,
+            boolean compress) {
+        var lastReplayed = new AtomicLong(cursor);
+
+        return Flux.defer(() -> getHistory(conversationId, cursor + 1, session, compress,
+                        lastReplayed::set))
+                .concatMap(batch -> BinaryFrames.send(session, batch), 1)
+                .doOnDiscard(ByteBuf.class, ByteBuf::release)
+                .then(Mono.fromRunnable(() -> sessions.replayed(session, lastReplayed.get())));
+    }
+
+    /**
+     * Binary sessions get {@link HistoryFrames}, which may share the buffers of the storage rather
+     * than encode the messages again, compressed if the {@link HistoryCompressor} accepted them.
+     */
+    private Flux<?> getHistory(String conversationId, long fromSequence, WebSocketSession session,
+            boolean compress, LongConsumer replayed) {
+        if (BinaryFrames.accepts(session)) {
+            var frames = historyFrames
+                    .frames(conversationId, fromSequence, historyBatchSize)
+                    .doOnNext(frame -> replayed.accept(BinaryFrames.lastSequence(frame)));
+            return compress
+                    ? frames.map(frame -> compressor.compress(frame.alloc(), frame))
+                    : frames;
+        }
+
+        return conversationStorage
+                .getMessages(conversationId, fromSequence)
+                .buffer(historyBatchSize)
+                .map(HistoryBatch::of)
+                .doOnNext(batch -> replayed.accept(batch.lastSequence()));
     }
 
     private void log(String event, WebSocketSession session, String id) {
-        LOG.info("* WebSocket: {} received for session {} with id {}",
-                event, session.getId(), id);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("* WebSocket: {} received for session {} with id {}",
+                    event, session.getId(), id);
+        }
     }
 
 }
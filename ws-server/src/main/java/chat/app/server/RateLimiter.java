@@ -0,0 +1,39 @@
+package chat.app.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RateLimiter
+ *
+ * <p>Token bucket refilled at {@code rate} tokens a second up to {@code burst}, kept as the time it
+ * will be full again (the generic cell rate algorithm) so a token is taken with one
+ * compare-and-set. Times are in nanoseconds, from whichever clock the caller reads.
+ */
+final class RateLimiter {
+
+  private final long interval;
+
+  private final long tolerance;
+
+  private final AtomicLong full;
+
+  RateLimiter(double rate, int burst, long now) {
+    this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+    this.tolerance = interval * (Math.max(1, burst) - 1);
+    this.full = new AtomicLong(now);
+  }
+
+  boolean tryAcquire(long now) {
+    while (true) {
+      var current = full.get();
+      var start = Math.max(current, now);
+      if (start - now > tolerance) {
+        return false;
+      }
+      if (full.compareAndSet(current, start + interval)) {
+        return true;
+      }
+    }
+  }
+}
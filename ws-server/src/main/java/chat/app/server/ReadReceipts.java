@@ -0,0 +1,394 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.Members;
+import chat.app.server.models.Receipt;
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.type.Argument;
+import io.micronaut.serde.ObjectMapper;
+import io.micronaut.websocket.WebSocketSession;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * ReadReceipts
+ *
+ * <p>Tracks what each member has read as one watermark, the sequence of the last message read,
+ * rather than a flag per message. A conversation with sessions on this node keeps its watermarks
+ * in a primitive array indexed by {@link Members#position(String)}.
+ *
+ * <p>Clients report reading with {@value #READ_MEDIA_TYPE} contents holding the sequence as ASCII
+ * digits, clamped to the last message of the conversation. Watermarks only move forward, so
+ * repeated and reordered reports are absorbed in memory.
+ * Changes are debounced per conversation: at most every {@code chat.receipts.flush-interval} the
+ * members that moved are written to the {@link ReceiptStorage} in one batch and then broadcast as a
+ * {@value #RECEIPTS_MEDIA_TYPE} content holding a JSON array of {@link Receipt}.
+ *
+ * <p>A member joining a conversation for the first time gets a watermark before its first message,
+ * so the conversation is counted by {@link #unreadCounts(String)} from then on.
+ */
+@Singleton
+public class ReadReceipts {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReadReceipts.class);
+
+  public static final String READ_MEDIA_TYPE = "application/vnd.chat.read";
+
+  public static final String RECEIPTS_MEDIA_TYPE = "application/vnd.chat.receipts+json";
+
+  /** Session attribute marking a session counted in the watermarks of its conversation. */
+  static final String JOINED_ATTRIBUTE = "chat.receipts.joined";
+
+  /** Watermark of a member that has none stored yet. */
+  private static final long UNKNOWN = Long.MIN_VALUE;
+
+  private static final User SERVER = new User("");
+
+  private static final Argument<List<Receipt>> RECEIPT_LIST = Argument.listOf(Receipt.class);
+
+  private final ObjectMapper mapper = ObjectMapper.getDefault();
+
+  private final ConcurrentHashMap<String, Watermarks> conversations = new ConcurrentHashMap<>();
+
+  private final ConversationSessions sessions;
+
+  private final ConversationRelay relay;
+
+  private final ReceiptStorage storage;
+
+  private final ConversationStorage conversationStorage;
+
+  private final Scheduler scheduler;
+
+  private final long flushIntervalNanos;
+
+  private final Counter accepted;
+
+  private final Counter ignored;
+
+  private final DistributionSummary batches;
+
+  @Inject
+  public ReadReceipts(
+      ConversationSessions sessions,
+      ConversationRelay relay,
+      ReceiptStorage storage,
+      ConversationStorage conversationStorage,
+      MeterRegistry registry,
+      @Value("${chat.receipts.flush-interval:1s}") Duration flushInterval) {
+    this(
+        sessions,
+        relay,
+        storage,
+        conversationStorage,
+        registry,
+        flushInterval,
+        Schedulers.parallel());
+  }
+
+  ReadReceipts(
+      ConversationSessions sessions,
+      ConversationRelay relay,
+      ReceiptStorage storage,
+      ConversationStorage conversationStorage,
+      MeterRegistry registry,
+      Duration flushInterval,
+      Scheduler scheduler) {
+    this.sessions = sessions;
+    this.relay = relay;
+    this.storage = storage;
+    this.conversationStorage = conversationStorage;
+    this.scheduler = scheduler;
+    this.flushIntervalNanos = flushInterval.toNanos();
+    this.accepted =
+        Counter.builder("chat.receipts.updates").tag("result", "accepted").register(registry);
+    this.ignored =
+        Counter.builder("chat.receipts.updates").tag("result", "ignored").register(registry);
+    this.batches =
+        DistributionSummary.builder("chat.receipts.batch")
+            .description("Watermarks written and broadcast by one receipt flush")
+            .register(registry);
+  }
+
+  public static boolean isReceipt(Content content) {
+    return READ_MEDIA_TYPE.equals(content.getMediaType());
+  }
+
+  /**
+   * Counts a session in the watermarks of its conversation, loading them from storage if it is
+   * the first on this node.
+   */
+  public Mono<Void> join(
+      String conversationId, Members members, String username, WebSocketSession session) {
+    var stored =
+        conversations.containsKey(conversationId)
+            ? Mono.just(Map.<String, Long>of())
+            : storage.getWatermarks(conversationId);
+
+    return stored
+        .doOnNext(
+            watermarks -> {
+              conversations.compute(
+                  conversationId,
+                  (id, conversation) -> {
+                    if (conversation == null) {
+                      conversation = new Watermarks(id, members, watermarks);
+                    }
+                    conversation.sessions++;
+                    var index = conversation.members.position(username);
+                    if (index >= 0 && conversation.read.get(index) == UNKNOWN) {
+                      conversation.read.set(index, Message.UNSEQUENCED);
+                      conversation.mark(index);
+                    }
+                    return conversation;
+                  });
+              session.put(JOINED_ATTRIBUTE, Boolean.TRUE);
+              // A session closed while it was joining was not counted out by its close.
+              if (!session.isOpen()) {
+                leave(conversationId, session);
+              }
+            })
+        .then();
+  }
+
+  /** Stops counting a session, dropping the watermarks once the last one has been flushed. */
+  public void leave(String conversationId, WebSocketSession session) {
+    if (session.get(JOINED_ATTRIBUTE, Boolean.class).isEmpty()) {
+      return;
+    }
+
+    session.remove(JOINED_ATTRIBUTE);
+    conversations.computeIfPresent(
+        conversationId,
+        (id, conversation) ->
+            --conversation.sessions == 0 && !conversation.scheduled ? null : conversation);
+  }
+
+  /**
+   * Moves the watermark of a member forward, no further than the last message of the conversation.
+   * Reports from non-members, unjoined sessions or behind the current watermark are ignored.
+   *
+   * @return completes at once; the change is stored and broadcast with the next flush
+   */
+  public Mono<Void> accept(
+      String conversationId, String username, WebSocketSession session, Content content) {
+    var sequence = parse(content.getData());
+    if (sequence < 0
+        || session.get(JOINED_ATTRIBUTE, Boolean.class).isEmpty()
+        || sequence <= pending(conversationId, username)) {
+      ignored.increment();
+      return Mono.empty();
+    }
+
+    conversationStorage
+        .getNextSequence(conversationId)
+        .defaultIfEmpty(0L)
+        .subscribe(
+            next -> raise(conversationId, username, Math.min(sequence, next - 1)),
+            error -> LOG.warn("Failed reading the next sequence of {}", conversationId, error));
+    return Mono.empty();
+  }
+
+  private void raise(String conversationId, String username, long sequence) {
+    var moved = new boolean[1];
+    conversations.computeIfPresent(
+        conversationId,
+        (id, conversation) -> {
+          var index = conversation.members.position(username);
+          if (index >= 0 && conversation.read.get(index) < sequence) {
+            conversation.read.set(index, sequence);
+            conversation.mark(index);
+            moved[0] = true;
+          }
+          return conversation;
+        });
+
+    (moved[0] ? accepted : ignored).increment();
+  }
+
+  /**
+   * Watermarks of a user by conversation id. Stored watermarks are raised by reports accepted on
+   * this node and not flushed yet, so reading shows at once in the user's own counts.
+   */
+  public Mono<Map<String, Long>> readSequences(String username) {
+    return storage
+        .getReadSequences(username)
+        .map(
+            stored -> {
+              var read = new HashMap<>(stored);
+              read.replaceAll((id, sequence) -> Math.max(sequence, pending(id, username)));
+              return read;
+            });
+  }
+
+  /**
+   * Counts the unread messages of a user in each conversation they have a watermark in, from the
+   * watermark and the next sequence of the conversation, so no message is read.
+   */
+  public Mono<Map<String, Long>> unreadCounts(String username) {
+    return readSequences(username)
+        .flatMapMany(read -> Flux.fromIterable(read.entrySet()))
+        .flatMap(
+            entry ->
+                conversationStorage
+                    .getNextSequence(entry.getKey())
+                    .map(next -> Map.entry(entry.getKey(), unread(next - 1, entry.getValue()))))
+        .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+  }
+
+  /** Messages after {@code read} up to and including {@code lastSequence}. */
+  public static long unread(long lastSequence, long read) {
+    return Math.max(0, lastSequence - Math.max(read, Message.UNSEQUENCED));
+  }
+
+  /** The watermark of a member not flushed yet, if its conversation is held on this node. */
+  private long pending(String conversationId, String username) {
+    var conversation = conversations.get(conversationId);
+    if (conversation == null) {
+      return Message.UNSEQUENCED;
+    }
+
+    var index = conversation.members.position(username);
+    return index < 0 ? Message.UNSEQUENCED : conversation.read.get(index);
+  }
+
+  /** Parses a non-negative decimal sequence, or returns -1. */
+  private static long parse(byte[] data) {
+    if (data.length == 0 || data.length > 18) {
+      return -1;
+    }
+
+    long sequence = 0;
+    for (var b : data) {
+      if (b < '0' || b > '9') {
+        return -1;
+      }
+      sequence = sequence * 10 + (b - '0');
+    }
+    return sequence;
+  }
+
+  private void flush(String conversationId) {
+    var changes = new LinkedHashMap<String, Long>();
+    conversations.computeIfPresent(
+        conversationId,
+        (id, conversation) -> {
+          conversation.scheduled = false;
+          for (var i = conversation.dirty.nextSetBit(0);
+              i >= 0;
+              i = conversation.dirty.nextSetBit(i + 1)) {
+            changes.put(conversation.members.get(i).username(), conversation.read.get(i));
+          }
+          conversation.dirty.clear();
+          return conversation.sessions == 0 ? null : conversation;
+        });
+
+    if (changes.isEmpty()) {
+      return;
+    }
+
+    batches.record(changes.size());
+    storage
+        .saveWatermarks(conversationId, changes)
+        .then(Mono.defer(() -> broadcast(conversationId, changes)))
+        .subscribe(
+            null,
+            error ->
+                LOG.warn("Failed flushing receipts of conversation {}", conversationId, error));
+  }
+
+  /** Sends the watermarks that point at a message; fresh ones seeded on join are not news. */
+  private Mono<Void> broadcast(String conversationId, Map<String, Long> changes) {
+    var receipts = new ArrayList<Receipt>(changes.size());
+    changes.forEach(
+        (username, sequence) -> {
+          if (sequence >= 0) {
+            receipts.add(new Receipt(username, sequence));
+          }
+        });
+
+    if (receipts.isEmpty()) {
+      return Mono.empty();
+    }
+
+    var message = message(receipts);
+    return Mono.when(
+        sessions.deliver(conversationId, message), relay.publish(conversationId, message));
+  }
+
+  private Message message(List<Receipt> receipts) {
+    try {
+      return new Message(
+          SERVER,
+          Content.of(RECEIPTS_MEDIA_TYPE, mapper.writeValueAsBytes(RECEIPT_LIST, receipts)));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  int conversationCount() {
+    return conversations.size();
+  }
+
+  /**
+   * Watermarks of a conversation by member index, guarded by its entry in {@link
+   * #conversations}. Single watermarks may be read outside it.
+   */
+  private final class Watermarks {
+
+    final String id;
+
+    final Members members;
+
+    final AtomicLongArray read;
+
+    final BitSet dirty;
+
+    int sessions;
+
+    boolean scheduled;
+
+    Watermarks(String id, Members members, Map<String, Long> stored) {
+      this.id = id;
+      this.members = members;
+      this.read = new AtomicLongArray(members.size());
+      this.dirty = new BitSet(members.size());
+
+      for (int i = 0; i < members.size(); i++) {
+        read.set(i, stored.getOrDefault(members.get(i).username(), UNKNOWN));
+      }
+    }
+
+    void mark(int index) {
+      dirty.set(index);
+      if (!scheduled) {
+        scheduled = true;
+        scheduler.schedule(
+            () -> ReadReceipts.this.flush(id), flushIntervalNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package chat.app.server;
+
+import java.util.Map;
+import reactor.core.publisher.Mono;
+
+/**
+ * ReceiptStorage
+ *
+ * <p>Read watermarks, indexed both by conversation (to load a conversation's members at once) and
+ * by user (to count a user's unread messages without touching conversations they did not read).
+ */
+public interface ReceiptStorage {
+
+  /** Watermarks of a conversation by username. Members that never read it are absent. */
+  Mono<Map<String, Long>> getWatermarks(String conversationId);
+
+  /** Watermarks of a user by conversation id. */
+  Mono<Map<String, Long>> getReadSequences(String username);
+
+  /**
+   * Stores a batch of watermarks of one conversation. A stored watermark only ever moves forward,
+   * so batches written concurrently by several nodes cannot roll one back.
+   */
+  Mono<Void> saveWatermarks(String conversationId, Map<String, Long> watermarks);
+}
@@ -0,0 +1,52 @@
+package chat.app.server;
+
+import io.micronaut.context.annotation.Requires;
+import jakarta.inject.Singleton;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import reactor.core.publisher.Mono;
+
+/**
+ * ReceiptStorageImpl
+ *
+ * <p>Keeps watermarks in memory. Used with every conversation storage but Redis, so receipts of the
+ * journal and segment storages do not survive a restart.
+ */
+@Singleton
+@Requires(property = "chat.storage.type", notEquals = "redis")
+public class ReceiptStorageImpl implements ReceiptStorage {
+
+  private static final ConcurrentHashMap<String, Long> EMPTY = new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<String, ConcurrentHashMap<String, Long>> byConversation =
+      new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<String, ConcurrentHashMap<String, Long>> byUser =
+      new ConcurrentHashMap<>();
+
+  @Override
+  public Mono<Map<String, Long>> getWatermarks(String conversationId) {
+    return Mono.just(Map.copyOf(byConversation.getOrDefault(conversationId, EMPTY)));
+  }
+
+  @Override
+  public Mono<Map<String, Long>> getReadSequences(String username) {
+    return Mono.just(Map.copyOf(byUser.getOrDefault(username, EMPTY)));
+  }
+
+  @Override
+  public Mono<Void> saveWatermarks(String conversationId, Map<String, Long> watermarks) {
+    return Mono.fromRunnable(
+        () -> {
+          var conversation =
+              byConversation.computeIfAbsent(conversationId, id -> new ConcurrentHashMap<>());
+          watermarks.forEach(
+              (username, sequence) -> {
+                conversation.merge(username, sequence, Math::max);
+                byUser
+                    .computeIfAbsent(username, u -> new ConcurrentHashMap<>())
+                    .merge(conversationId, sequence, Math::max);
+              });
+        });
+  }
+}
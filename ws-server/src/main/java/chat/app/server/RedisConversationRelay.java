@@ -0,0 +1,175 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.User;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micronaut.context.annotation.Requires;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+/**
+ * RedisConversationRelay
+ *
+ * <p>Publishes each message once to a per-conversation Redis channel and subscribes only to the
+ * channels of conversations with sessions on this node. Messages carry the id of the publishing
+ * node, which skips its own messages since it already delivered them locally.
+ *
+ * <p>Redis only forwards messages published once a subscription is acknowledged, which {@link
+ * #subscribed} waits for.
+ */
+@Singleton
+@Requires(property = "chat.cluster.enabled", value = "true")
+public class RedisConversationRelay implements ConversationRelay, AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RedisConversationRelay.class);
+
+  static final String CHANNEL_PREFIX = "chat:relay:";
+
+  private final UUID nodeId = UUID.randomUUID();
+
+  private final ConversationSessions sessions;
+
+  private final StatefulRedisConnection<String, byte[]> connection;
+
+  private final StatefulRedisPubSubConnection<String, byte[]> subscriptions;
+
+  private final ConcurrentHashMap<String, CompletableFuture<Void>> subscribed =
+      new ConcurrentHashMap<>();
+
+  public RedisConversationRelay(RedisClient client, ConversationSessions sessions) {
+    this.sessions = sessions;
+    this.connection = client.connect(RedisConversationStorage.CODEC);
+    this.subscriptions = client.connectPubSub(RedisConversationStorage.CODEC);
+    this.subscriptions.addListener(
+        new RedisPubSubAdapter<>() {
+          @Override
+          public void message(String channel, byte[] payload) {
+            deliver(channel.substring(CHANNEL_PREFIX.length()), payload);
+          }
+        });
+    sessions.onActivityChange(this::refresh);
+  }
+
+  @Override
+  public Mono<Void> publish(String conversationId, Message message) {
+    return connection
+        .reactive()
+        .publish(CHANNEL_PREFIX + conversationId, encode(message))
+        .then();
+  }
+
+  @Override
+  public Mono<Void> subscribed(String conversationId) {
+    refresh(conversationId);
+    var subscription = subscribed.get(conversationId);
+    return subscription == null ? Mono.empty() : Mono.fromCompletionStage(subscription);
+  }
+
+  /**
+   * Brings the channel subscription of a conversation in line with its local sessions. Commands
+   * are issued inside the map update, so concurrent changes for one conversation reach Redis in
+   * the order they were decided. A subscription that fails is forgotten, so the next session
+   * opening on the conversation subscribes again.
+   */
+  void refresh(String conversationId) {
+    var subscribing = new CompletableFuture<?>[1];
+    subscribed.compute(
+        conversationId,
+        (id, current) -> {
+          var wanted = sessions.hasSessions(id);
+
+          if (wanted && current == null) {
+            var subscription =
+                subscriptions.async().subscribe(CHANNEL_PREFIX + id).toCompletableFuture();
+            subscribing[0] = subscription;
+            return subscription;
+          }
+
+          if (!wanted && current != null) {
+            subscriptions.async().unsubscribe(CHANNEL_PREFIX + id);
+            return null;
+          }
+
+          return current;
+        });
+
+    if (subscribing[0] != null) {
+      var subscription = subscribing[0];
+      subscription.whenComplete(
+          (ignored, error) -> {
+            if (error != null) {
+              LOG.warn("Failed subscribing to conversation {}", conversationId, error);
+              subscribed.remove(conversationId, subscription);
+            }
+          });
+    }
+  }
+
+  private void deliver(String conversationId, byte[] payload) {
+    var buffer = ByteBuffer.wrap(payload);
+    var origin = new UUID(buffer.getLong(), buffer.getLong());
+
+    if (origin.equals(nodeId)) {
+      return;
+    }
+
+    var message = decode(buffer);
+    sessions
+        .deliver(conversationId, message)
+        .subscribe(
+            null,
+            error -> LOG.warn("Failed relaying message to conversation {}", conversationId, error));
+  }
+
+  private byte[] encode(Message message) {
+    var user = message.user().username().getBytes(StandardCharsets.UTF_8);
+    var mediaType = message.content().getMediaType().getBytes(StandardCharsets.UTF_8);
+    var data = message.content().getData();
+
+    return ByteBuffer.allocate(16 + 8 + 2 + user.length + 2 + mediaType.length + data.length)
+        .putLong(nodeId.getMostSignificantBits())
+        .putLong(nodeId.getLeastSignificantBits())
+        .putLong(message.sequence())
+        .putShort((short) user.length)
+        .put(user)
+        .putShort((short) mediaType.length)
+        .put(mediaType)
+        .put(data)
+        .array();
+  }
+
+  private static Message decode(ByteBuffer buffer) {
+    var sequence = buffer.getLong();
+    var user = readString(buffer);
+    var mediaType = readString(buffer);
+    var data = new byte[buffer.remaining()];
+    buffer.get(data);
+
+    return new Message(sequence, new User(user), Conversation.Message.Content.of(mediaType, data));
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    var bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  @PreDestroy
+  public void close() {
+    subscriptions.close();
+    connection.close();
+  }
+}
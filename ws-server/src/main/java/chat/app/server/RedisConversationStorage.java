@@ -0,0 +1,307 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Members;
+import chat.app.server.models.User;
+import io.lettuce.core.Limit;
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.StreamMessage;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.type.Argument;
+import io.micronaut.serde.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * RedisConversationStorage
+ *
+ * <p>Keeps each conversation in a Redis hash (members and next sequence) and a Redis stream
+ * (messages). Stream entry ids are {@code 0-(sequence + 1)}, so history ranges map directly onto
+ * XRANGE. Appends go through a dedicated connection with auto-flush disabled and are written in
+ * pipelined batches.
+ */
+@Singleton
+@Requires(property = "chat.storage.type", value = "redis")
+public class RedisConversationStorage implements ConversationStorage, AutoCloseable {
+
+  static final RedisCodec<String, byte[]> CODEC =
+      RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE);
+
+  private static final String USERS_FIELD = "users";
+
+  private static final String NEXT_FIELD = "next";
+
+  private static final RedisScript<Long> APPEND_SCRIPT =
+      new RedisScript<>(
+          """
+          if redis.call('HEXISTS', KEYS[1], 'users') == 0 then return -1 end
+          local sequence = redis.call('HINCRBY', KEYS[1], 'next', 1) - 1
+          redis.call('XADD', KEYS[2], '0-' .. (sequence + 1),
+              'user', ARGV[1], 'type', ARGV[2], 'data', ARGV[3])
+          return sequence
+          """,
+          ScriptOutputType.INTEGER);
+
+  private static final Argument<List<String>> USERNAMES = Argument.listOf(String.class);
+
+  private final ObjectMapper mapper = ObjectMapper.getDefault();
+
+  private final StatefulRedisConnection<String, byte[]> connection;
+
+  private final StatefulRedisConnection<String, byte[]> appendConnection;
+
+  private final int maxBatchSize;
+
+  private final int historyPageSize;
+
+  private final ConcurrentLinkedQueue<PendingAppend> pendingAppends = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger drainRequests = new AtomicInteger();
+
+  public RedisConversationStorage(
+      RedisClient client,
+      @Value("${chat.storage.redis.max-batch-size:128}") int maxBatchSize,
+      @Value("${chat.storage.redis.history-page-size:256}") int historyPageSize) {
+    this.connection = client.connect(CODEC);
+    this.appendConnection = client.connect(CODEC);
+    this.appendConnection.setAutoFlushCommands(false);
+    this.maxBatchSize = maxBatchSize;
+    this.historyPageSize = historyPageSize;
+  }
+
+  static String conversationKey(String id) {
+    return "chat:conversation:{" + id + "}";
+  }
+
+  static String messagesKey(String id) {
+    return conversationKey(id) + ":messages";
+  }
+
+  private static String streamId(long sequence) {
+    return "0-" + (sequence + 1);
+  }
+
+  private static long sequence(StreamMessage<String, byte[]> entry) {
+    var id = entry.getId();
+    return Long.parseLong(id.substring(id.indexOf('-') + 1)) - 1;
+  }
+
+  @Override
+  public Mono<Conversation> getConversation(String id) {
+    return getUsers(id)
+        .flatMap(
+            users -> getMessages(id, 0).collectList().map(m -> new Conversation(id, users, m)));
+  }
+
+  @Override
+  public Mono<Members> getMembers(String conversationId) {
+    return getUsers(conversationId);
+  }
+
+  /** Reads the counter appends increment, so conversations without messages yet have none. */
+  @Override
+  public Mono<Long> getNextSequence(String conversationId) {
+    var key = conversationKey(conversationId);
+    var commands = connection.reactive();
+    return commands
+        .hmget(key, USERS_FIELD, NEXT_FIELD)
+        .collectList()
+        .filter(values -> values.get(0).hasValue())
+        .map(
+            values ->
+                values
+                    .get(1)
+                    .map(next -> Long.parseLong(new String(next, StandardCharsets.US_ASCII)))
+                    .getValueOrElse(0L));
+  }
+
+  @Override
+  public Mono<Conversation> createConversation(Conversation conversation) {
+    byte[] users;
+    try {
+      users =
+          mapper.writeValueAsBytes(
+              USERNAMES, conversation.users().stream().map(User::username).toList());
+    } catch (IOException e) {
+      return Mono.error(e);
+    }
+
+    return connection
+        .reactive()
+        .hsetnx(conversationKey(conversation.id()), USERS_FIELD, users)
+        .flatMap(
+            created -> {
+              if (!created) {
+                return Mono.error(new Throwable("Conversation already exists"));
+              }
+
+              return Flux.fromIterable(conversation.messages())
+                  .concatMap(m -> pushMessage(conversation.id(), m))
+                  .collectList()
+                  .map(m -> new Conversation(conversation.id(), conversation.users(), m));
+            });
+  }
+
+  @Override
+  public Mono<Message> pushMessage(String conversationId, Message message) {
+    return Mono.defer(
+        () -> {
+          var pending = new PendingAppend(conversationId, message, new CompletableFuture<>());
+          pendingAppends.add(pending);
+          drainAppends();
+          return Mono.fromCompletionStage(pending.result());
+        })
+        .onErrorResume(RedisNoScriptException.class, e -> evalAppend(conversationId, message))
+        .flatMap(sequence -> sequence < 0 ? Mono.empty() : Mono.just(message.withSequence(sequence)));
+  }
+
+  @Override
+  public Flux<Message> getMessages(String conversationId, long fromSequence) {
+    var from = Math.max(fromSequence, 0);
+
+    return connection
+        .reactive()
+        .xrange(
+            messagesKey(conversationId),
+            Range.create(streamId(from), "+"),
+            Limit.from(historyPageSize))
+        .map(RedisConversationStorage::toMessage)
+        .collectList()
+        .flatMapMany(
+            page -> {
+              if (page.size() < historyPageSize) {
+                return Flux.fromIterable(page);
+              }
+
+              var next = page.get(page.size() - 1).sequence() + 1;
+              return Flux.fromIterable(page).concatWith(getMessages(conversationId, next));
+            });
+  }
+
+  @Override
+  public Mono<Message> getMessage(String conversationId, long sequence) {
+    var id = streamId(sequence);
+
+    return connection
+        .reactive()
+        .xrange(messagesKey(conversationId), Range.create(id, id))
+        .next()
+        .map(RedisConversationStorage::toMessage);
+  }
+
+  private Mono<Members> getUsers(String id) {
+    return connection
+        .reactive()
+        .hget(conversationKey(id), USERS_FIELD)
+        .flatMap(
+            value -> {
+              try {
+                return Mono.just(
+                    Members.of(mapper.readValue(value, USERNAMES).stream().map(User::new).toList()));
+              } catch (IOException e) {
+                return Mono.error(e);
+              }
+            });
+  }
+
+  private static Message toMessage(StreamMessage<String, byte[]> entry) {
+    var body = entry.getBody();
+    var user = new User(new String(body.get("user"), StandardCharsets.UTF_8));
+    var content =
+        Message.Content.of(new String(body.get("type"), StandardCharsets.UTF_8), body.get("data"));
+    return new Message(sequence(entry), user, content);
+  }
+
+  private static byte[][] appendArguments(Message message) {
+    return new byte[][] {
+      message.user().username().getBytes(StandardCharsets.UTF_8),
+      message.content().getMediaType().getBytes(StandardCharsets.UTF_8),
+      message.content().getData()
+    };
+  }
+
+  private static String[] appendKeys(String conversationId) {
+    return new String[] {conversationKey(conversationId), messagesKey(conversationId)};
+  }
+
+  /** Fallback for when the script cache was flushed: EVAL loads the script again. */
+  private Mono<Long> evalAppend(String conversationId, Message message) {
+    return APPEND_SCRIPT.eval(
+        connection.reactive(), appendKeys(conversationId), appendArguments(message));
+  }
+
+  /**
+   * Writes every queued append on the pipelined connection, flushing once per batch. Appends
+   * queued while a batch is being written are picked up by the same drain, so batches grow with
+   * load while a lone append is flushed immediately.
+   */
+  private void drainAppends() {
+    if (drainRequests.getAndIncrement() != 0) {
+      return;
+    }
+
+    var commands = appendConnection.async();
+    var missed = 1;
+
+    do {
+      var batched = 0;
+      PendingAppend pending;
+
+      while ((pending = pendingAppends.poll()) != null) {
+        var result = pending.result();
+        commands
+            .<Long>evalsha(
+                APPEND_SCRIPT.digest(),
+                APPEND_SCRIPT.type(),
+                appendKeys(pending.conversationId()),
+                appendArguments(pending.message()))
+            .whenComplete(
+                (sequence, error) -> {
+                  if (error != null) {
+                    result.completeExceptionally(error);
+                  } else {
+                    result.complete(sequence);
+                  }
+                });
+
+        if (++batched == maxBatchSize) {
+          appendConnection.flushCommands();
+          batched = 0;
+        }
+      }
+
+      if (batched > 0) {
+        appendConnection.flushCommands();
+      }
+
+      missed = drainRequests.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  @Override
+  @PreDestroy
+  public void close() {
+    appendConnection.close();
+    connection.close();
+  }
+
+  private record PendingAppend(
+      String conversationId, Message message, CompletableFuture<Long> result) {}
+}
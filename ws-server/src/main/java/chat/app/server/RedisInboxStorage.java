@@ -0,0 +1,122 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.User;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.ZAddArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.micronaut.context.annotation.Requires;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * RedisInboxStorage
+ *
+ * <p>Keeps each inbox in a sorted set scored by activity, raised with {@code ZADD GT}, and the last
+ * message of a conversation in a hash next to it, replaced by a script only when the sequence is
+ * newer. A page is one ZREVRANGE plus a hash read per listed conversation.
+ */
+@Singleton
+@Requires(property = "chat.storage.type", value = "redis")
+public class RedisInboxStorage implements InboxStorage, AutoCloseable {
+
+  private static final RedisScript<Long> REPLACE_SCRIPT =
+      new RedisScript<>(
+          """
+          local current = tonumber(redis.call('HGET', KEYS[1], 'sequence'))
+          if current and current >= tonumber(ARGV[1]) then return 0 end
+          redis.call('HSET', KEYS[1], 'sequence', ARGV[1], 'user', ARGV[2], 'type', ARGV[3],
+              'data', ARGV[4])
+          return 1
+          """,
+          ScriptOutputType.INTEGER);
+
+  private static final ZAddArgs RAISE = ZAddArgs.Builder.gt();
+
+  private final StatefulRedisConnection<String, byte[]> connection;
+
+  public RedisInboxStorage(RedisClient client) {
+    this.connection = client.connect(RedisConversationStorage.CODEC);
+  }
+
+  static String inboxKey(String username) {
+    return "chat:inbox:{" + username + "}";
+  }
+
+  static String lastMessageKey(String conversationId) {
+    return RedisConversationStorage.conversationKey(conversationId) + ":last";
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String string(byte[] value) {
+    return new String(value, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public Mono<Void> record(
+      String conversationId, Collection<User> members, Message last, long activity) {
+    var commands = connection.reactive();
+    var member = bytes(conversationId);
+    var replace =
+        last == null
+            ? Mono.<Long>empty()
+            : REPLACE_SCRIPT.run(
+                commands,
+                new String[] {lastMessageKey(conversationId)},
+                bytes(Long.toString(last.sequence())),
+                bytes(last.user().username()),
+                bytes(last.content().getMediaType()),
+                last.content().getData());
+
+    return replace
+        .thenMany(
+            Flux.fromIterable(members)
+                .flatMap(
+                    user ->
+                        commands.zadd(
+                            inboxKey(user.username()), RAISE, (double) activity, member)))
+        .then();
+  }
+
+  @Override
+  public Flux<Activity> getConversations(String username, int offset, int limit) {
+    var commands = connection.reactive();
+    return commands
+        .zrevrangeWithScores(inboxKey(username), offset, (long) offset + limit - 1)
+        .flatMapSequential(
+            ranked -> {
+              var id = string(ranked.getValue());
+              return commands
+                  .hgetall(lastMessageKey(id))
+                  .collectMap(KeyValue::getKey, KeyValue::getValue)
+                  .map(fields -> new Activity(id, (long) ranked.getScore(), toMessage(fields)));
+            });
+  }
+
+  private static Message toMessage(Map<String, byte[]> fields) {
+    if (fields.isEmpty()) {
+      return null;
+    }
+
+    return new Message(
+        Long.parseLong(string(fields.get("sequence"))),
+        new User(string(fields.get("user"))),
+        Message.Content.of(string(fields.get("type")), fields.get("data")));
+  }
+
+  @Override
+  @PreDestroy
+  public void close() {
+    connection.close();
+  }
+}
@@ -0,0 +1,93 @@
+package chat.app.server;
+
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.Limit;
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * RedisMessageJournal
+ *
+ * <p>Journal kept in a single Redis stream. A group is written as pipelined XADDs and is as
+ * durable as the server's AOF settings make it.
+ */
+@Singleton
+@Requires(property = "chat.storage.type", value = "journal")
+@Requires(property = "chat.storage.journal.backend", value = "redis")
+public class RedisMessageJournal implements MessageJournal {
+
+  static final String STREAM_KEY = "chat:journal";
+
+  private static final String ENTRY_FIELD = "entry";
+
+  private static final int REPLAY_PAGE_SIZE = 1024;
+
+  private final StatefulRedisConnection<String, byte[]> connection;
+
+  private final Duration timeout;
+
+  public RedisMessageJournal(
+      RedisClient client, @Value("${chat.storage.journal.redis-timeout:10s}") Duration timeout) {
+    this.connection = client.connect(RedisConversationStorage.CODEC);
+    this.timeout = timeout;
+  }
+
+  @Override
+  public void append(List<Entry> entries) throws IOException {
+    var commands = connection.async();
+    var writes = new ArrayList<RedisFuture<String>>(entries.size());
+
+    for (var entry : entries) {
+      writes.add(commands.xadd(STREAM_KEY, Map.of(ENTRY_FIELD, JournalCodec.encode(entry))));
+    }
+
+    try {
+      if (!LettuceFutures.awaitAll(timeout, writes.toArray(RedisFuture[]::new))) {
+        throw new IOException("Timed out writing journal entries to Redis");
+      }
+    } catch (RuntimeException e) {
+      throw new IOException("Failed writing journal entries to Redis", e);
+    }
+  }
+
+  @Override
+  public void replay(Consumer<Entry> consumer) throws IOException {
+    var commands = connection.sync();
+    var from = Range.Boundary.<String>unbounded();
+
+    while (true) {
+      var page =
+          commands.xrange(
+              STREAM_KEY,
+              Range.from(from, Range.Boundary.unbounded()),
+              Limit.from(REPLAY_PAGE_SIZE));
+
+      for (var entry : page) {
+        consumer.accept(JournalCodec.decode(entry.getBody().get(ENTRY_FIELD)));
+      }
+
+      if (page.size() < REPLAY_PAGE_SIZE) {
+        return;
+      }
+      from = Range.Boundary.excluding(page.get(page.size() - 1).getId());
+    }
+  }
+
+  @Override
+  @PreDestroy
+  public void close() {
+    connection.close();
+  }
+}
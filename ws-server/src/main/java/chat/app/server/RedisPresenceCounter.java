@@ -0,0 +1,177 @@
+package chat.app.server;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * RedisPresenceCounter
+ *
+ * <p>Keeps the members of a conversation counted on each node in a sorted set next to it, one
+ * entry per node and member scored with the time it expires. Nodes renew their entries every third
+ * of {@code chat.ephemeral.presence-ttl}, so the members of a node that stopped without their
+ * sessions leaving go offline once it has passed. Scripts read the time from Redis, so node
+ * clocks do not need to agree, and are sent with EVALSHA, falling back to EVAL when Redis no
+ * longer has them cached.
+ *
+ * <p>Entries are written from the counts of this node, which a {@link LocalPresenceCounter}
+ * keeps. Should updates reach Redis out of order, an entry the node no longer counts ages out and
+ * one it still counts comes back with the next renewal.
+ */
+@Singleton
+@Requires(property = "chat.cluster.enabled", value = "true")
+public class RedisPresenceCounter implements PresenceCounter, AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RedisPresenceCounter.class);
+
+  private static final RedisScript<Long> ADJUST_SCRIPT =
+      new RedisScript<>(
+          """
+          local time = redis.call('TIME')
+          local now = time[1] * 1000 + math.floor(time[2] / 1000)
+          redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now)
+          if ARGV[3] == '1' then
+            redis.call('ZADD', KEYS[1], now + tonumber(ARGV[4]), ARGV[1] .. ARGV[2])
+            redis.call('PEXPIRE', KEYS[1], ARGV[4])
+          else
+            redis.call('ZREM', KEYS[1], ARGV[1] .. ARGV[2])
+          end
+          local count = 0
+          for _, entry in ipairs(redis.call('ZRANGE', KEYS[1], 0, -1)) do
+            if string.sub(entry, #ARGV[1] + 1) == ARGV[2] then
+              count = count + 1
+            end
+          end
+          return count
+          """,
+          ScriptOutputType.INTEGER);
+
+  private static final RedisScript<Long> RENEW_SCRIPT =
+      new RedisScript<>(
+          """
+          local time = redis.call('TIME')
+          local expires = time[1] * 1000 + math.floor(time[2] / 1000) + tonumber(ARGV[1])
+          for i = 2, #ARGV do
+            redis.call('ZADD', KEYS[1], expires, ARGV[i])
+          end
+          redis.call('PEXPIRE', KEYS[1], ARGV[1])
+          return 0
+          """,
+          ScriptOutputType.INTEGER);
+
+  private static final RedisScript<List<String>> ONLINE_SCRIPT =
+      new RedisScript<>(
+          """
+          local time = redis.call('TIME')
+          local now = time[1] * 1000 + math.floor(time[2] / 1000)
+          return redis.call('ZRANGEBYSCORE', KEYS[1], '(' .. now, '+inf')
+          """,
+          ScriptOutputType.MULTI);
+
+  /** Prefix of the entries of this node, of the same length for every node. */
+  private final String node = UUID.randomUUID() + ":";
+
+  private final LocalPresenceCounter local = new LocalPresenceCounter();
+
+  private final StatefulRedisConnection<String, String> connection;
+
+  private final String ttl;
+
+  private final Disposable renewal;
+
+  @Inject
+  public RedisPresenceCounter(
+      RedisClient client, @Value("${chat.ephemeral.presence-ttl:30s}") Duration ttl) {
+    this(client, ttl, Schedulers.parallel());
+  }
+
+  RedisPresenceCounter(RedisClient client, Duration ttl, Scheduler scheduler) {
+    this.connection = client.connect();
+    this.ttl = Long.toString(ttl.toMillis());
+    var period = Math.max(1, ttl.toMillis() / 3);
+    this.renewal =
+        scheduler.schedulePeriodically(this::renew, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  static String presenceKey(String conversationId) {
+    return RedisConversationStorage.conversationKey(conversationId) + ":presence";
+  }
+
+  @Override
+  public Mono<Long> increment(String conversationId, String username) {
+    return adjust(conversationId, username, 1);
+  }
+
+  @Override
+  public Mono<Long> decrement(String conversationId, String username) {
+    return adjust(conversationId, username, -1);
+  }
+
+  @Override
+  public Mono<List<String>> online(String conversationId) {
+    return ONLINE_SCRIPT
+        .run(connection.reactive(), new String[] {presenceKey(conversationId)})
+        .flatMapIterable(entries -> entries)
+        .map(entry -> entry.substring(node.length()))
+        .distinct()
+        .collectList();
+  }
+
+  private Mono<Long> adjust(String conversationId, String username, long delta) {
+    return Mono.defer(
+            () -> {
+              var counted = local.add(conversationId, username, delta) > 0 ? "1" : "0";
+              return ADJUST_SCRIPT.run(
+                  connection.reactive(),
+                  new String[] {presenceKey(conversationId)},
+                  node,
+                  username,
+                  counted,
+                  ttl);
+            });
+  }
+
+  /** Pushes back the expiry of the entries of every member counted on this node. */
+  private void renew() {
+    for (var conversationId : local.conversations()) {
+      local
+          .online(conversationId)
+          .filter(members -> !members.isEmpty())
+          .flatMap(
+              members -> {
+                var args = new String[members.size() + 1];
+                args[0] = ttl;
+                for (int i = 0; i < members.size(); i++) {
+                  args[i + 1] = node + members.get(i);
+                }
+                return RENEW_SCRIPT.run(
+                    connection.reactive(), new String[] {presenceKey(conversationId)}, args);
+              })
+          .subscribe(
+              null,
+              error -> LOG.warn("Failed renewing the presence of {}", conversationId, error));
+    }
+  }
+
+  @Override
+  @PreDestroy
+  public void close() {
+    renewal.dispose();
+    connection.close();
+  }
+}
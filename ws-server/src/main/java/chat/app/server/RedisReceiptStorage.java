@@ -0,0 +1,100 @@
+package chat.app.server;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.micronaut.context.annotation.Requires;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import java.util.HashMap;
+import java.util.Map;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * RedisReceiptStorage
+ *
+ * <p>Keeps the watermarks of a conversation in a hash next to it, and those of a user in a hash of
+ * their own. Both are raised with a script that only writes fields moving forward, which is
+ * sent with EVALSHA, falling back to EVAL when Redis no longer has it cached.
+ */
+@Singleton
+@Requires(property = "chat.storage.type", value = "redis")
+public class RedisReceiptStorage implements ReceiptStorage, AutoCloseable {
+
+  private static final RedisScript<Long> RAISE_SCRIPT =
+      new RedisScript<>(
+          """
+          for i = 1, #ARGV, 2 do
+            local current = tonumber(redis.call('HGET', KEYS[1], ARGV[i]))
+            if not current or current < tonumber(ARGV[i + 1]) then
+              redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+            end
+          end
+          return 0
+          """,
+          ScriptOutputType.INTEGER);
+
+  private final StatefulRedisConnection<String, String> connection;
+
+  public RedisReceiptStorage(RedisClient client) {
+    this.connection = client.connect();
+  }
+
+  static String conversationKey(String conversationId) {
+    return RedisConversationStorage.conversationKey(conversationId) + ":receipts";
+  }
+
+  static String userKey(String username) {
+    return "chat:receipts:{" + username + "}";
+  }
+
+  @Override
+  public Mono<Map<String, Long>> getWatermarks(String conversationId) {
+    return read(conversationKey(conversationId));
+  }
+
+  @Override
+  public Mono<Map<String, Long>> getReadSequences(String username) {
+    return read(userKey(username));
+  }
+
+  @Override
+  public Mono<Void> saveWatermarks(String conversationId, Map<String, Long> watermarks) {
+    var fields = new String[watermarks.size() * 2];
+    var i = 0;
+    for (var entry : watermarks.entrySet()) {
+      fields[i++] = entry.getKey();
+      fields[i++] = Long.toString(entry.getValue());
+    }
+
+    return Flux.fromIterable(watermarks.entrySet())
+        .flatMap(
+            entry ->
+                raise(
+                    userKey(entry.getKey()),
+                    conversationId,
+                    Long.toString(entry.getValue())))
+        .mergeWith(raise(conversationKey(conversationId), fields))
+        .then();
+  }
+
+  private Mono<Map<String, Long>> read(String key) {
+    return connection
+        .reactive()
+        .hgetall(key)
+        .collect(
+            HashMap::new,
+            (map, entry) -> map.put(entry.getKey(), Long.parseLong(entry.getValue())));
+  }
+
+  private Mono<Long> raise(String key, String... fields) {
+    return RAISE_SCRIPT.run(connection.reactive(), new String[] {key}, fields);
+  }
+
+  @Override
+  @PreDestroy
+  public void close() {
+    connection.close();
+  }
+}
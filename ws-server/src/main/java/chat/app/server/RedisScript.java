@@ -0,0 +1,65 @@
+package chat.app.server;
+
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.reactive.RedisReactiveCommands;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import reactor.core.publisher.Mono;
+
+/**
+ * RedisScript
+ *
+ * <p>A Lua script run by its SHA1 digest with EVALSHA, and sent whole with EVAL, which caches it
+ * again, only when Redis does not have it, as after a restart or a SCRIPT FLUSH. The digest is
+ * computed here, so defining a script takes no round trip.
+ *
+ * @param <T> what the script returns, as its {@link ScriptOutputType} decodes it
+ */
+final class RedisScript<T> {
+
+  private final String body;
+
+  private final ScriptOutputType type;
+
+  private final String digest;
+
+  RedisScript(String body, ScriptOutputType type) {
+    this.body = body;
+    this.type = type;
+    try {
+      var sha1 = MessageDigest.getInstance("SHA-1").digest(body.getBytes(StandardCharsets.UTF_8));
+      this.digest = HexFormat.of().formatHex(sha1);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is required of every Java platform", e);
+    }
+  }
+
+  /** The digest, for callers pipelining EVALSHA on their own connection. */
+  String digest() {
+    return digest;
+  }
+
+  ScriptOutputType type() {
+    return type;
+  }
+
+  /** Runs the script by its digest, sending it whole if Redis has not cached it. */
+  @SafeVarargs
+  @SuppressWarnings("varargs")
+  final <K, V> Mono<T> run(RedisReactiveCommands<K, V> commands, K[] keys, V... values) {
+    return commands
+        .<T>evalsha(digest, type, keys, values)
+        .next()
+        .onErrorResume(RedisNoScriptException.class, e -> eval(commands, keys, values));
+  }
+
+  /** Sends the script whole, which caches it again. */
+  @SafeVarargs
+  @SuppressWarnings("varargs")
+  final <K, V> Mono<T> eval(RedisReactiveCommands<K, V> commands, K[] keys, V... values) {
+    return commands.<T>eval(body, type, keys, values).next();
+  }
+}
@@ -0,0 +1,185 @@
+package chat.app.server;
+
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import io.micronaut.core.convert.format.ReadableBytes;
+import io.micronaut.http.netty.channel.ChannelPipelineCustomizer;
+import io.micronaut.http.server.netty.NettyServerCustomizer;
+import io.micronaut.http.server.netty.configuration.NettyHttpServerConfiguration;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.ReferenceCountUtil;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.util.regex.Pattern;
+
+/**
+ * RequestSizeLimits
+ *
+ * <p>Lets attachment uploads reach {@code chat.attachments.max-size} while every other request
+ * stays within {@code micronaut.server.max-request-size}. Micronaut has a single limit for the
+ * whole server, so {@link Ceiling} raises it to the larger of the two and this handler, ahead of
+ * Micronaut's own, holds the other routes to the configured one.
+ *
+ * <p>A request declaring a larger {@code Content-Length} is answered 413 without reaching a
+ * controller. A chunked body growing past its limit closes the connection, as its head has already
+ * been passed on.
+ */
+@Singleton
+public class RequestSizeLimits
+    implements NettyServerCustomizer, BeanCreatedEventListener<NettyServerCustomizer.Registry> {
+
+  static final String HANDLER_NAME = "chat-request-size";
+
+  private static final Pattern UPLOAD_PATH = Pattern.compile("/conversations/[^/]+/attachments/?");
+
+  private final long maxRequestSize;
+
+  private final long maxUploadSize;
+
+  @Inject
+  public RequestSizeLimits(
+      @ReadableBytes @Value("${micronaut.server.max-request-size:10MB}") long maxRequestSize,
+      @ReadableBytes @Value("${chat.attachments.max-size:64MB}") long maxUploadSize) {
+    this.maxRequestSize = maxRequestSize;
+    this.maxUploadSize = maxUploadSize;
+  }
+
+  @Override
+  public NettyServerCustomizer.Registry onCreated(
+      BeanCreatedEvent<NettyServerCustomizer.Registry> event) {
+    event.getBean().register(this);
+    return event.getBean();
+  }
+
+  @Override
+  public NettyServerCustomizer specializeForChannel(Channel channel, ChannelRole role) {
+    return role == ChannelRole.LISTENER ? this : new ChannelCustomizer(channel);
+  }
+
+  /** Adds the limit to a stream pipeline, in front of Micronaut's request handler. */
+  void customize(Channel channel) {
+    var pipeline = channel.pipeline();
+    if (pipeline.get(ChannelPipelineCustomizer.HANDLER_MICRONAUT_INBOUND) == null) {
+      return;
+    }
+    pipeline.addBefore(
+        ChannelPipelineCustomizer.HANDLER_MICRONAUT_INBOUND, HANDLER_NAME, new Limiter());
+  }
+
+  /** The largest body accepted for a request. */
+  long limitFor(HttpRequest request) {
+    if (request.method().equals(HttpMethod.POST)
+        && UPLOAD_PATH.matcher(new QueryStringDecoder(request.uri()).path()).matches()) {
+      return Math.max(maxRequestSize, maxUploadSize);
+    }
+    return maxRequestSize;
+  }
+
+  private final class ChannelCustomizer implements NettyServerCustomizer {
+
+    private final Channel channel;
+
+    ChannelCustomizer(Channel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public NettyServerCustomizer specializeForChannel(Channel channel, ChannelRole role) {
+      return new ChannelCustomizer(channel);
+    }
+
+    @Override
+    public void onStreamPipelineBuilt() {
+      customize(channel);
+    }
+  }
+
+  /** Counts the body of each request on one connection against the limit of its route. */
+  private final class Limiter extends ChannelInboundHandlerAdapter {
+
+    private long limit;
+
+    private long received;
+
+    private boolean discarding;
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+      if (msg instanceof HttpRequest request) {
+        limit = limitFor(request);
+        received = 0;
+        discarding = HttpUtil.getContentLength(request, -1L) > limit;
+
+        if (discarding) {
+          ReferenceCountUtil.release(msg);
+          reject(ctx, request);
+          return;
+        }
+      }
+
+      if (msg instanceof HttpContent content) {
+        if (discarding) {
+          content.release();
+          return;
+        }
+
+        received += content.content().readableBytes();
+        if (received > limit) {
+          content.release();
+          discarding = true;
+          ctx.close();
+          return;
+        }
+      }
+
+      ctx.fireChannelRead(msg);
+    }
+
+    private void reject(ChannelHandlerContext ctx, HttpRequest request) {
+      var response =
+          new DefaultFullHttpResponse(
+              request.protocolVersion(), HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+      response
+          .headers()
+          .set(HttpHeaderNames.CONTENT_LENGTH, 0)
+          .set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+      ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    }
+  }
+
+  /**
+   * Raises Micronaut's request size limit to {@code chat.attachments.max-size}, which {@link
+   * RequestSizeLimits} then applies to uploads only.
+   */
+  @Singleton
+  public static class Ceiling implements BeanCreatedEventListener<NettyHttpServerConfiguration> {
+
+    private final long maxUploadSize;
+
+    public Ceiling(@ReadableBytes @Value("${chat.attachments.max-size:64MB}") long maxUploadSize) {
+      this.maxUploadSize = maxUploadSize;
+    }
+
+    @Override
+    public NettyHttpServerConfiguration onCreated(
+        BeanCreatedEvent<NettyHttpServerConfiguration> event) {
+      var configuration = event.getBean();
+      configuration.setMaxRequestSize(
+          Math.max(configuration.getMaxRequestSize(), maxUploadSize));
+      return configuration;
+    }
+  }
+}
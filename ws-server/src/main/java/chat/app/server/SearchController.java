@@ -0,0 +1,73 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message.TextContent;
+import chat.app.server.models.SearchHit;
+import chat.app.server.models.SearchPage;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.QueryValue;
+import io.micronaut.security.annotation.Secured;
+import io.micronaut.security.rules.SecurityRule;
+import java.security.Principal;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * SearchController
+ *
+ * <p>Searches the text messages of the authenticated user's conversations through the {@link
+ * SearchIndex}, {@code limit} hits at a time up to {@code chat.search.max-page-size}. Pass the
+ * {@code next} of a page as {@code before} to get the following one. Each hit reads its one
+ * message; a hit whose message is no longer stored is left out.
+ */
+@Controller("/search")
+@Secured(SecurityRule.IS_AUTHENTICATED)
+public class SearchController {
+
+  private final SearchIndex index;
+
+  private final ConversationStorage conversationStorage;
+
+  private final int maxPageSize;
+
+  public SearchController(
+      SearchIndex index,
+      ConversationStorage conversationStorage,
+      @Value("${chat.search.max-page-size:50}") int maxPageSize) {
+    this.index = index;
+    this.conversationStorage = conversationStorage;
+    this.maxPageSize = maxPageSize;
+  }
+
+  @Get
+  public Mono<SearchPage> search(
+      Principal principal,
+      @QueryValue String q,
+      @Nullable @QueryValue Integer before,
+      @QueryValue(defaultValue = "20") int limit) {
+    var result =
+        index.search(
+            principal.getName(),
+            q,
+            before == null ? Integer.MAX_VALUE : before,
+            Math.min(Math.max(limit, 1), maxPageSize));
+
+    return Flux.fromIterable(result.hits())
+        .flatMapSequential(
+            hit ->
+                conversationStorage
+                    .getMessage(hit.conversationId(), hit.sequence())
+                    .filter(message -> message.sequence() == hit.sequence())
+                    .map(
+                        message ->
+                            new SearchHit(
+                                hit.conversationId(),
+                                message.sequence(),
+                                message.user().username(),
+                                TextContent.from(message.content()))))
+        .collectList()
+        .map(hits -> new SearchPage(hits, result.next()));
+  }
+}
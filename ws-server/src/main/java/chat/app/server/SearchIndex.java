@@ -0,0 +1,349 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.TextContent;
+import chat.app.server.models.Members;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * SearchIndex
+ *
+ * <p>In-process inverted index over the text messages stored since startup. Every indexed message
+ * becomes a document numbered in arrival order; each term maps to the documents containing it as a
+ * posting list of varint-encoded gaps, which takes one or two bytes per posting for common terms.
+ *
+ * <p>Each conversation is a shard of its own, with its terms, its documents and its lock, so
+ * messages of different conversations are indexed without waiting for each other. Within a shard
+ * postings number documents locally, next to two primitive columns holding their global number and
+ * their sequence.
+ *
+ * <p>Text is split into runs of letters and digits, lower-cased per code point, so any script is
+ * searchable. A query matches the documents containing all of its terms, newest first, and only
+ * in conversations the searching user belongs to. Posting lists are intersected by stepping
+ * through them together, so a search keeps no more than a page of hits per shard.
+ */
+@Singleton
+public class SearchIndex {
+
+  /** Longer runs are cut, so a pasted blob cannot create huge terms. */
+  static final int MAX_TERM_LENGTH = 32;
+
+  private final ConcurrentHashMap<String, Shard> shards = new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<String, Set<Shard>> userShards = new ConcurrentHashMap<>();
+
+  private final AtomicInteger documents = new AtomicInteger();
+
+  private final AtomicLong postingBytes = new AtomicLong();
+
+  public SearchIndex(MeterRegistry registry) {
+    Gauge.builder("chat.search.documents", this, SearchIndex::documentCount)
+        .description("Messages in the search index")
+        .register(registry);
+    Gauge.builder("chat.search.postings", this, SearchIndex::postingBytes)
+        .description("Bytes taken by the posting lists of the search index")
+        .baseUnit("bytes")
+        .register(registry);
+  }
+
+  /** Indexes a stored text message; other media types are skipped. */
+  public void add(String conversationId, Members members, Message message) {
+    if (!TextContent.MEDIA_TYPE.equals(message.content().getMediaType())) {
+      return;
+    }
+
+    var tokens = tokens(TextContent.from(message.content()));
+    if (tokens.isEmpty()) {
+      return;
+    }
+
+    var shard = shards.computeIfAbsent(conversationId, id -> shard(id, members));
+    shard.add(tokens, message.sequence());
+  }
+
+  /**
+   * Indexes a stored text message of a conversation the index already holds, without its members.
+   *
+   * @return false, leaving the message out, when the conversation has no text indexed yet, as
+   *     starting it needs the members
+   */
+  public boolean add(String conversationId, Message message) {
+    if (!TextContent.MEDIA_TYPE.equals(message.content().getMediaType())) {
+      return true;
+    }
+
+    var shard = shards.get(conversationId);
+    if (shard == null) {
+      return false;
+    }
+    var tokens = tokens(TextContent.from(message.content()));
+    if (!tokens.isEmpty()) {
+      shard.add(tokens, message.sequence());
+    }
+    return true;
+  }
+
+  private Shard shard(String conversationId, Members members) {
+    var shard = new Shard(conversationId);
+    for (var member : members) {
+      userShards
+          .computeIfAbsent(member.username(), username -> ConcurrentHashMap.newKeySet())
+          .add(shard);
+    }
+    return shard;
+  }
+
+  /**
+   * Finds up to {@code limit} messages containing every term of {@code query}, in conversations
+   * {@code username} belongs to, newest first.
+   *
+   * @param before only documents numbered below it are returned; {@link Integer#MAX_VALUE} for the
+   *     first page and {@link Result#next()} for the following ones
+   */
+  public Result search(String username, String query, int before, int limit) {
+    var tokens = tokens(query);
+    var searched = userShards.get(username);
+    if (tokens.isEmpty() || limit <= 0 || searched == null) {
+      return new Result(List.of(), null);
+    }
+
+    // One more than a page tells whether another page follows.
+    var found = new ArrayList<Hit>();
+    for (var shard : searched) {
+      shard.search(tokens, before, limit + 1, found);
+    }
+    found.sort(Comparator.comparingInt(Hit::document).reversed());
+
+    if (found.size() > limit) {
+      var hits = List.copyOf(found.subList(0, limit));
+      return new Result(hits, hits.get(limit - 1).document());
+    }
+    return new Result(found, null);
+  }
+
+  /** Distinct terms of a text, in order of first appearance. */
+  static Set<String> tokens(String text) {
+    var tokens = new LinkedHashSet<String>();
+    var term = new StringBuilder(MAX_TERM_LENGTH);
+    var length = 0;
+
+    for (int i = 0; i < text.length(); ) {
+      var codePoint = text.codePointAt(i);
+      i += Character.charCount(codePoint);
+
+      if (Character.isLetterOrDigit(codePoint)) {
+        if (length++ < MAX_TERM_LENGTH) {
+          term.appendCodePoint(Character.toLowerCase(codePoint));
+        }
+      } else if (length > 0) {
+        tokens.add(term.toString());
+        term.setLength(0);
+        length = 0;
+      }
+    }
+    if (length > 0) {
+      tokens.add(term.toString());
+    }
+    return tokens;
+  }
+
+  long documentCount() {
+    return documents.get();
+  }
+
+  long postingBytes() {
+    return postingBytes.get();
+  }
+
+  /** A matching message, with the document number that pages continue from. */
+  public record Hit(int document, String conversationId, long sequence) {}
+
+  /** One page of hits; {@code next} is the {@code before} of the following page, if any. */
+  public record Result(List<Hit> hits, Integer next) {}
+
+  /** The terms and documents of one conversation, guarded by its own lock. */
+  private final class Shard {
+
+    final String conversationId;
+
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    final HashMap<String, PostingList> terms = new HashMap<>();
+
+    /** Global number of each local document, ascending. */
+    int[] documentNumbers = new int[8];
+
+    long[] sequences = new long[8];
+
+    int size;
+
+    Shard(String conversationId) {
+      this.conversationId = conversationId;
+    }
+
+    void add(Set<String> tokens, long sequence) {
+      lock.writeLock().lock();
+      try {
+        var local = size++;
+        if (local == documentNumbers.length) {
+          documentNumbers = Arrays.copyOf(documentNumbers, local * 2);
+          sequences = Arrays.copyOf(sequences, local * 2);
+        }
+        // Numbered under the lock, so numbers only grow within the shard.
+        documentNumbers[local] = documents.getAndIncrement();
+        sequences[local] = sequence;
+
+        for (var token : tokens) {
+          var postings = terms.computeIfAbsent(token, t -> new PostingList());
+          var length = postings.length;
+          postings.add(local);
+          postingBytes.addAndGet(postings.length - length);
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    /** Adds the newest {@code keep} documents below {@code before} matching every term. */
+    void search(Set<String> tokens, int before, int keep, List<Hit> found) {
+      lock.readLock().lock();
+      try {
+        var cursors = new ArrayList<PostingList.Cursor>(tokens.size());
+        for (var token : tokens) {
+          var postings = terms.get(token);
+          if (postings == null) {
+            return;
+          }
+          cursors.add(postings.cursor());
+        }
+        cursors.sort(Comparator.comparingInt(PostingList.Cursor::count));
+
+        var lead = cursors.get(0);
+        var newest = new int[keep];
+        var matched = 0;
+        var target = 0;
+
+        candidates:
+        while (lead.advance(target)) {
+          var local = lead.document;
+          if (documentNumbers[local] >= before) {
+            break;
+          }
+
+          for (int i = 1; i < cursors.size(); i++) {
+            var cursor = cursors.get(i);
+            if (!cursor.advance(local)) {
+              break candidates;
+            }
+            if (cursor.document > local) {
+              target = cursor.document;
+              continue candidates;
+            }
+          }
+
+          newest[matched++ % keep] = local;
+          target = local + 1;
+        }
+
+        for (int i = matched - 1; i >= Math.max(0, matched - keep); i--) {
+          var local = newest[i % keep];
+          found.add(new Hit(documentNumbers[local], conversationId, sequences[local]));
+        }
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * Ascending document numbers stored as gaps from the previous one, seven bits per byte with the
+   * high bit marking that more bytes follow.
+   */
+  static final class PostingList {
+
+    byte[] bytes = new byte[4];
+
+    int length;
+
+    int count;
+
+    private int last = -1;
+
+    void add(int document) {
+      if (length + 5 > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(length + 5, bytes.length + (bytes.length >> 1)));
+      }
+
+      var gap = document - last;
+      while ((gap & ~0x7F) != 0) {
+        bytes[length++] = (byte) ((gap & 0x7F) | 0x80);
+        gap >>>= 7;
+      }
+      bytes[length++] = (byte) gap;
+      last = document;
+      count++;
+    }
+
+    Cursor cursor() {
+      return new Cursor(bytes, count);
+    }
+
+    /** Steps through the documents of a list as it was when the cursor was taken. */
+    static final class Cursor {
+
+      private final byte[] bytes;
+
+      private final int count;
+
+      private int position;
+
+      private int decoded;
+
+      /** The current document, -1 before the first. */
+      int document = -1;
+
+      Cursor(byte[] bytes, int count) {
+        this.bytes = bytes;
+        this.count = count;
+      }
+
+      int count() {
+        return count;
+      }
+
+      /** Moves to the first document at or after {@code target}, if there is one. */
+      boolean advance(int target) {
+        while (document < target) {
+          if (decoded == count) {
+            return false;
+          }
+
+          int gap = 0;
+          int shift = 0;
+          byte b;
+          do {
+            b = bytes[position++];
+            gap |= (b & 0x7F) << shift;
+            shift += 7;
+          } while (b < 0);
+          document += gap;
+          decoded++;
+        }
+        return true;
+      }
+    }
+  }
+}
@@ -0,0 +1,251 @@
+package chat.app.server;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.User;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.CRC32C;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Segment
+ *
+ * <p>Memory-mapped file holding consecutive messages of one conversation, starting at {@code
+ * baseSequence}. Records are laid out as:
+ *
+ * <pre>
+ * length     i32  size of what follows the checksum
+ * crc        i32  CRC32C of what follows the checksum
+ * user       u16 length and UTF-8 username
+ * record     a {@link BinaryFrames} record
+ * </pre>
+ *
+ * <p>so history can be sent to binary sessions as slices of the mapping. Every {@code
+ * indexInterval}-th record offset is kept in a sparse index. A single writer appends; readers see
+ * records up to the published count.
+ */
+final class Segment {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Segment.class);
+
+  static final String SUFFIX = ".segment";
+
+  private static final int RECORD_HEADER = 8;
+
+  final long baseSequence;
+
+  private final Path file;
+
+  private final int indexInterval;
+
+  private final CRC32C crc = new CRC32C();
+
+  private volatile MappedByteBuffer buffer;
+
+  private volatile int[] index;
+
+  private volatile int count;
+
+  private int end;
+
+  private Segment(Path file, long baseSequence, int indexInterval, MappedByteBuffer buffer) {
+    this.file = file;
+    this.baseSequence = baseSequence;
+    this.indexInterval = indexInterval;
+    this.buffer = buffer;
+    this.index = new int[16];
+  }
+
+  static Segment create(Path directory, long baseSequence, int capacity, int indexInterval)
+      throws IOException {
+    var file = directory.resolve(String.format("%020d%s", baseSequence, SUFFIX));
+    try (var raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.setLength(capacity);
+    }
+    return new Segment(file, baseSequence, indexInterval, map(file, FileChannel.MapMode.READ_WRITE));
+  }
+
+  /** Maps an existing segment and rebuilds its index, stopping at the first invalid record. */
+  static Segment open(Path file, int indexInterval, boolean writable) throws IOException {
+    var name = file.getFileName().toString();
+    var baseSequence = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    var mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+    var segment = new Segment(file, baseSequence, indexInterval, map(file, mode));
+    segment.recover();
+
+    if (writable) {
+      segment.discardTail();
+    }
+    return segment;
+  }
+
+  private static MappedByteBuffer map(Path file, FileChannel.MapMode mode) throws IOException {
+    var options = mode == FileChannel.MapMode.READ_ONLY ? Set.of(READ) : Set.of(READ, WRITE);
+    try (var channel = FileChannel.open(file, options)) {
+      return channel.map(mode, 0, channel.size());
+    }
+  }
+
+  private void recover() {
+    var position = 0;
+
+    while (buffer.limit() - position >= RECORD_HEADER) {
+      var length = buffer.getInt(position);
+
+      if (length <= 0 || length > buffer.limit() - position - RECORD_HEADER) {
+        break;
+      }
+
+      crc.reset();
+      crc.update(buffer.slice(position + RECORD_HEADER, length));
+      if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+        break;
+      }
+
+      indexRecord(count, position);
+      position += RECORD_HEADER + length;
+      count++;
+    }
+    end = position;
+  }
+
+  /** Zeroes whatever follows the last valid record, so a torn write is not mistaken for one. */
+  private void discardTail() {
+    for (int i = end; i < buffer.limit() && i < end + RECORD_HEADER; i++) {
+      if (buffer.get(i) != 0) {
+        LOG.warn("Discarding torn segment record at offset {} of {}", end, file);
+        for (int j = end; j < buffer.limit(); j++) {
+          buffer.put(j, (byte) 0);
+        }
+        buffer.force();
+        return;
+      }
+    }
+  }
+
+  int count() {
+    return count;
+  }
+
+  long nextSequence() {
+    return baseSequence + count;
+  }
+
+  int size() {
+    return end;
+  }
+
+  /**
+   * Appends a message with the next sequence of this segment.
+   *
+   * @return {@code false} if the segment has no room left for it
+   */
+  boolean append(Message message) {
+    var user = message.user().username().getBytes(StandardCharsets.UTF_8);
+    var length = 2 + user.length + BinaryFrames.recordSize(message.content());
+
+    if (buffer.limit() - end < RECORD_HEADER + length) {
+      return false;
+    }
+
+    var record = Unpooled.wrappedBuffer(buffer.slice(end + RECORD_HEADER, length)).clear();
+    record.writeShort(user.length).writeBytes(user);
+    BinaryFrames.writeRecord(record, nextSequence(), message.content());
+
+    crc.reset();
+    crc.update(buffer.slice(end + RECORD_HEADER, length));
+    buffer.putInt(end, length).putInt(end + 4, (int) crc.getValue());
+
+    indexRecord(count, end);
+    end += RECORD_HEADER + length;
+    count++;
+    return true;
+  }
+
+  private void indexRecord(int record, int offset) {
+    if (record % indexInterval != 0) {
+      return;
+    }
+
+    var slot = record / indexInterval;
+    var current = index;
+    if (slot == current.length) {
+      current = Arrays.copyOf(current, current.length * 2);
+    }
+    current[slot] = offset;
+    index = current;
+  }
+
+  /** Offset of the record holding {@code sequence}, found from the nearest indexed record. */
+  int offsetOf(long sequence) {
+    var record = (int) (sequence - baseSequence);
+    var offset = index[record / indexInterval];
+
+    for (int i = record - record % indexInterval; i < record; i++) {
+      offset = next(offset);
+    }
+    return offset;
+  }
+
+  int next(int offset) {
+    return offset + RECORD_HEADER + buffer.getInt(offset);
+  }
+
+  Message read(int offset) {
+    var userLength = Short.toUnsignedInt(buffer.getShort(offset + RECORD_HEADER));
+    var user = new byte[userLength];
+    buffer.get(offset + RECORD_HEADER + 2, user);
+
+    var record = wireRecord(offset);
+    var sequence = sequenceOf(record);
+    var content = BinaryFrames.decode(record);
+    return new Message(sequence, new User(new String(user, StandardCharsets.UTF_8)), content);
+  }
+
+  /** The {@link BinaryFrames} record at an offset, sharing the mapped memory. */
+  ByteBuf wireRecord(int offset) {
+    var length = buffer.getInt(offset);
+    var userLength = Short.toUnsignedInt(buffer.getShort(offset + RECORD_HEADER));
+    var start = offset + RECORD_HEADER + 2 + userLength;
+    return Unpooled.wrappedBuffer(buffer.slice(start, length - 2 - userLength));
+  }
+
+  private static long sequenceOf(ByteBuf record) {
+    var mediaTypeId = record.getUnsignedByte(1);
+    var sequenceOffset = mediaTypeId == 0 ? 3 + record.getUnsignedByte(2) : 2;
+    return record.getLong(sequenceOffset);
+  }
+
+  /**
+   * Flushes the segment, trims the preallocated tail off the file and maps it read-only once no
+   * more records will be appended.
+   */
+  void seal() throws IOException {
+    buffer.force();
+    try (var raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.setLength(end);
+    }
+    buffer = map(file, FileChannel.MapMode.READ_ONLY);
+  }
+
+  void force() {
+    buffer.force();
+  }
+
+  void delete() throws IOException {
+    Files.deleteIfExists(file);
+  }
+}
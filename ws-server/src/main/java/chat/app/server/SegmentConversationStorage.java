@@ -0,0 +1,278 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Members;
+import chat.app.server.models.User;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.convert.format.ReadableBytes;
+import io.netty.buffer.ByteBuf;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * SegmentConversationStorage
+ *
+ * <p>Keeps each conversation in its own directory of memory-mapped {@link Segment}s, managed by a
+ * {@link SegmentLog}, next to a {@code members} file. Logs are opened on first use and kept open.
+ * History for binary sessions is served as slices of the mapped segments.
+ *
+ * <p>File work runs on the {@link ExecutionScheduler}. When appended messages reach the disk,
+ * rather than only the page cache, is set by {@code chat.storage.segment.force}.
+ */
+@Singleton
+@Requires(property = "chat.storage.type", value = "segment")
+public class SegmentConversationStorage
+    implements ConversationStorage, HistoryFrameSource, AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SegmentConversationStorage.class);
+
+  private static final String MEMBERS_FILE = "members";
+
+  /** When appended messages are forced to disk. */
+  public enum ForcePolicy {
+    /**
+     * Only when a segment is sealed and on shutdown; a crash of the machine loses whatever the
+     * operating system had not written back yet.
+     */
+    NONE,
+    /** Every {@code chat.storage.segment.force-interval}, for conversations written to since. */
+    INTERVAL,
+    /** Before each message is acknowledged. */
+    EVERY_MESSAGE
+  }
+
+  private final Path directory;
+
+  private final int segmentSize;
+
+  private final int indexInterval;
+
+  private final int retainedSegments;
+
+  private final ConcurrentHashMap<String, SegmentLog> logs = new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<String, Members> members = new ConcurrentHashMap<>();
+
+  private final ForcePolicy force;
+
+  private final ExecutionScheduler execution;
+
+  private final ScheduledExecutorService forcer;
+
+  @Inject
+  public SegmentConversationStorage(
+      @Value("${chat.storage.segment.directory:data/segments}") String directory,
+      @ReadableBytes @Value("${chat.storage.segment.segment-size:8MB}") int segmentSize,
+      @Value("${chat.storage.segment.index-interval:32}") int indexInterval,
+      @Value("${chat.storage.segment.retained-segments:0}") int retainedSegments,
+      @Value("${chat.storage.segment.force:interval}") ForcePolicy force,
+      @Value("${chat.storage.segment.force-interval:1s}") Duration forceInterval,
+      ExecutionScheduler execution)
+      throws IOException {
+    this(
+        Path.of(directory),
+        segmentSize,
+        indexInterval,
+        retainedSegments,
+        force,
+        forceInterval,
+        execution);
+  }
+
+  SegmentConversationStorage(
+      Path directory,
+      int segmentSize,
+      int indexInterval,
+      int retainedSegments,
+      ForcePolicy force,
+      Duration forceInterval,
+      ExecutionScheduler execution)
+      throws IOException {
+    this.directory = Files.createDirectories(directory);
+    this.segmentSize = segmentSize;
+    this.indexInterval = indexInterval;
+    this.retainedSegments = retainedSegments;
+    this.force = force;
+    this.execution = execution;
+
+    if (force == ForcePolicy.INTERVAL) {
+      this.forcer =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                var thread = new Thread(runnable, "chat-segment-force");
+                thread.setDaemon(true);
+                return thread;
+              });
+      var nanos = forceInterval.toNanos();
+      forcer.scheduleWithFixedDelay(this::forceAll, nanos, nanos, TimeUnit.NANOSECONDS);
+    } else {
+      this.forcer = null;
+    }
+  }
+
+  private Path conversationDirectory(String id) {
+    var name = Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    return directory.resolve(name);
+  }
+
+  @Override
+  public Mono<Conversation> getConversation(String id) {
+    return execution.offload(
+        members(id)
+            .flatMap(
+                users -> log(id).read(0).collectList().map(m -> new Conversation(id, users, m))));
+  }
+
+  @Override
+  public Mono<Members> getMembers(String conversationId) {
+    return execution.offload(members(conversationId));
+  }
+
+  @Override
+  public Mono<Long> getNextSequence(String conversationId) {
+    return execution.offload(members(conversationId).map(m -> log(conversationId).nextSequence()));
+  }
+
+  @Override
+  public Flux<Message> getMessages(String conversationId, long fromSequence) {
+    return execution.offload(
+        members(conversationId).flatMapMany(m -> log(conversationId).read(fromSequence)));
+  }
+
+  @Override
+  public Flux<ByteBuf> frames(String conversationId, long fromSequence, int batchSize) {
+    return execution.offload(
+        members(conversationId)
+            .flatMapMany(m -> log(conversationId).frames(fromSequence, batchSize)));
+  }
+
+  @Override
+  public Mono<Conversation> createConversation(Conversation conversation) {
+    var id = conversation.id();
+    var path = conversationDirectory(id);
+
+    return execution.offload(
+        Mono.defer(
+            () -> {
+              try {
+                Files.createDirectory(path);
+              } catch (FileAlreadyExistsException e) {
+                return Mono.error(new Throwable("Conversation already exists"));
+              } catch (IOException e) {
+                return Mono.error(e);
+              }
+
+              return Mono.fromCallable(
+                  () -> {
+                    var usernames = conversation.users().stream().map(User::username).toList();
+                    var temporary = path.resolve(MEMBERS_FILE + ".tmp");
+                    Files.write(temporary, usernames, StandardCharsets.UTF_8);
+                    Files.move(
+                        temporary, path.resolve(MEMBERS_FILE), StandardCopyOption.ATOMIC_MOVE);
+
+                    var log = log(id);
+                    var messages =
+                        conversation.messages().stream().map(m -> append(log, m)).toList();
+                    log.force();
+                    return new Conversation(id, conversation.users(), messages);
+                  });
+            }));
+  }
+
+  @Override
+  public Mono<Message> pushMessage(String conversationId, Message message) {
+    return execution.offload(
+        members(conversationId)
+            .map(
+                m -> {
+                  var log = log(conversationId);
+                  var stored = append(log, message);
+                  if (force == ForcePolicy.EVERY_MESSAGE) {
+                    log.force();
+                  }
+                  return stored;
+                }));
+  }
+
+  private static Message append(SegmentLog log, Message message) {
+    try {
+      return log.append(message);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Mono<Members> members(String conversationId) {
+    return Mono.fromCallable(() -> loadMembers(conversationId));
+  }
+
+  /** Members of a conversation, or {@code null} if it does not exist. */
+  private Members loadMembers(String id) throws IOException {
+    var cached = members.get(id);
+    if (cached != null) {
+      return cached;
+    }
+
+    try {
+      var usernames = Files.readAllLines(conversationDirectory(id).resolve(MEMBERS_FILE));
+      var loaded = Members.of(usernames.stream().map(User::new).toList());
+      members.putIfAbsent(id, loaded);
+      return loaded;
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  private SegmentLog log(String id) {
+    return logs.computeIfAbsent(
+        id,
+        key -> {
+          try {
+            return new SegmentLog(
+                conversationDirectory(key), segmentSize, indexInterval, retainedSegments);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+  }
+
+  private void forceAll() {
+    for (var log : logs.values()) {
+      try {
+        log.force();
+      } catch (RuntimeException e) {
+        LOG.warn("Failed to force a conversation log to disk", e);
+      }
+    }
+  }
+
+  @Override
+  @PreDestroy
+  public void close() {
+    if (forcer != null) {
+      forcer.shutdown();
+    }
+    forceAll();
+  }
+}
@@ -0,0 +1,211 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+/**
+ * SegmentLog
+ *
+ * <p>Messages of one conversation spread over {@link Segment}s in a directory. Appends go to the
+ * last segment and roll over to a new one when it is full; the full one is sealed. When {@code
+ * retainedSegments} is set, the oldest sealed segments beyond it are deleted.
+ */
+final class SegmentLog {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SegmentLog.class);
+
+  private final Path directory;
+
+  private final int segmentSize;
+
+  private final int indexInterval;
+
+  private final int retainedSegments;
+
+  private volatile List<Segment> segments;
+
+  /** Whether anything was appended since the last {@link #force}. */
+  private final AtomicBoolean written = new AtomicBoolean();
+
+  SegmentLog(Path directory, int segmentSize, int indexInterval, int retainedSegments)
+      throws IOException {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.indexInterval = indexInterval;
+    this.retainedSegments = retainedSegments;
+
+    List<Path> files;
+    try (var list = Files.list(directory)) {
+      files = list.filter(f -> f.getFileName().toString().endsWith(Segment.SUFFIX)).sorted().toList();
+    }
+
+    var opened = new ArrayList<Segment>(files.size());
+    for (int i = 0; i < files.size(); i++) {
+      opened.add(Segment.open(files.get(i), indexInterval, i == files.size() - 1));
+    }
+    if (opened.isEmpty()) {
+      opened.add(Segment.create(directory, 0, segmentSize, indexInterval));
+    }
+    this.segments = List.copyOf(opened);
+  }
+
+  long nextSequence() {
+    return last().nextSequence();
+  }
+
+  private Segment last() {
+    var current = segments;
+    return current.get(current.size() - 1);
+  }
+
+  /** Appends a message, returning it with its sequence. */
+  synchronized Message append(Message message) throws IOException {
+    var segment = last();
+
+    if (!segment.append(message)) {
+      segment = roll(message);
+    }
+    written.set(true);
+    return message.withSequence(segment.nextSequence() - 1);
+  }
+
+  private Segment roll(Message message) throws IOException {
+    var full = last();
+    var capacity = Math.max(segmentSize, 64 + BinaryFrames.recordSize(message.content()) * 2);
+    var next = Segment.create(directory, full.nextSequence(), capacity, indexInterval);
+
+    if (!next.append(message)) {
+      throw new IOException("Message does not fit in a segment");
+    }
+
+    full.seal();
+    var rolled = new ArrayList<>(segments);
+    rolled.add(next);
+
+    while (retainedSegments > 0 && rolled.size() > retainedSegments) {
+      var oldest = rolled.remove(0);
+      LOG.info("Deleting segment {} of {} past retention", oldest.baseSequence, directory);
+      oldest.delete();
+    }
+    segments = List.copyOf(rolled);
+    return next;
+  }
+
+  /** Forces the last segment to disk, if anything was appended to the log since it last was. */
+  void force() {
+    if (written.getAndSet(false)) {
+      last().force();
+    }
+  }
+
+  /** Streams messages from {@code fromSequence} up to those appended when reading starts. */
+  Flux<Message> read(long fromSequence) {
+    return Flux.defer(
+        () -> {
+          var cursor = new Cursor(segments, fromSequence);
+          return Flux.<Message>generate(
+              sink -> {
+                if (cursor.advance()) {
+                  sink.next(cursor.segment.read(cursor.offset));
+                } else {
+                  sink.complete();
+                }
+              });
+        });
+  }
+
+  /**
+   * Streams messages from {@code fromSequence} as {@link BinaryFrames} of up to {@code batchSize}
+   * records. Records are slices of the mapped segments, so nothing is copied.
+   */
+  Flux<ByteBuf> frames(long fromSequence, int batchSize) {
+    return Flux.defer(
+        () -> {
+          var cursor = new Cursor(segments, fromSequence);
+          return Flux.<ByteBuf>generate(
+              sink -> {
+                var frame = ByteBufAllocator.DEFAULT.compositeBuffer(batchSize);
+                while (frame.numComponents() < batchSize && cursor.advance()) {
+                  frame.addComponent(true, cursor.segment.wireRecord(cursor.offset));
+                }
+
+                if (frame.numComponents() == 0) {
+                  frame.release();
+                  sink.complete();
+                } else {
+                  sink.next(frame);
+                }
+              });
+        });
+  }
+
+  /** Walks records in sequence order across a snapshot of the segments. */
+  private static final class Cursor {
+
+    private final List<Segment> segments;
+
+    private final long end;
+
+    private long sequence;
+
+    private int segmentIndex;
+
+    private Segment segment;
+
+    private int offset = -1;
+
+    Cursor(List<Segment> segments, long fromSequence) {
+      this.segments = segments;
+      this.end = segments.get(segments.size() - 1).nextSequence();
+      this.sequence = Math.max(fromSequence, segments.get(0).baseSequence);
+      this.segmentIndex = find(segments, sequence);
+    }
+
+    private static int find(List<Segment> segments, long sequence) {
+      var low = 0;
+      var high = segments.size() - 1;
+
+      while (low < high) {
+        var mid = (low + high + 1) >>> 1;
+        if (segments.get(mid).baseSequence <= sequence) {
+          low = mid;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return low;
+    }
+
+    /** Moves to the next record, returning {@code false} past the end. */
+    boolean advance() {
+      if (sequence >= end) {
+        return false;
+      }
+
+      while (sequence >= segments.get(segmentIndex).nextSequence()) {
+        segmentIndex++;
+        segment = null;
+      }
+
+      if (segment == null) {
+        segment = segments.get(segmentIndex);
+        offset = segment.offsetOf(sequence);
+      } else {
+        offset = segment.next(offset);
+      }
+
+      sequence++;
+      return true;
+    }
+  }
+}
@@ -3,6 +3,9 @@ package chat.app.server;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.nimbusds.jwt.SignedJWT;
 import io.lettuce.core.api.StatefulRedisConnection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.micronaut.core.annotation.NonNull;
 import io.micronaut.core.annotation.Nullable;
 import io.micronaut.http.HttpRequest;
@@ -13,8 +16,13 @@ import io.micronaut.security.authentication.provider.HttpRequestReactiveAuthenti
 import io.micronaut.security.token.jwt.signature.jwks.JwksSignature;
 import io.micronaut.serde.ObjectMapper;
 import io.micronaut.serde.annotation.Serdeable;
+import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import java.io.IOException;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
 import javax.security.sasl.AuthenticationException;
 import org.reactivestreams.Publisher;
 import reactor.core.publisher.Mono;
@@ -32,10 +40,48 @@ public class SessionAuthenticationProvider<A>
 
   private StatefulRedisConnection<String, String> connection;
 
+  private SessionCache sessionCache;
+
+  private Timer verifyTimer;
+
+  private Counter succeeded;
+
+  private Counter missing;
+
+  private Counter invalid;
+
+  private ExecutionScheduler execution;
+
+  @Inject
   public SessionAuthenticationProvider(
-      StatefulRedisConnection<String, String> connection, JwksSignature jwksSignature) {
+      StatefulRedisConnection<String, String> connection,
+      JwksSignature jwksSignature,
+      SessionCache sessionCache,
+      MeterRegistry registry,
+      ExecutionScheduler execution) {
     this.connection = connection;
     this.jwksSignature = jwksSignature;
+    this.sessionCache = sessionCache;
+    this.verifyTimer = Timer.builder("chat.auth.jwt.verify").register(registry);
+    this.succeeded = outcome(registry, "success");
+    this.missing = outcome(registry, "missing_session");
+    this.invalid = outcome(registry, "invalid");
+    this.execution = execution;
+  }
+
+  SessionAuthenticationProvider(
+      StatefulRedisConnection<String, String> connection,
+      JwksSignature jwksSignature,
+      SessionCache sessionCache,
+      MeterRegistry registry) {
+    this(connection, jwksSignature, sessionCache, registry, ExecutionScheduler.eventLoop());
+  }
+
+  private static Counter outcome(MeterRegistry registry, String outcome) {
+    return Counter.builder("chat.auth")
+        .description("Session authentication attempts by outcome")
+        .tag("outcome", outcome)
+        .register(registry);
   }
 
   @Override
@@ -46,22 +92,44 @@ public class SessionAuthenticationProvider<A>
     Cookie cookie = requestContext.getCookies().get(COOKIE_KEY);
 
     if (cookie == null) {
+      missing.increment();
       return Mono.just(AuthenticationResponse.failure());
     }
 
-    return getSessionValue(cookie)
+    return sessionCache
+        .get(cookie.getValue(), this::resolveSession)
+        .map(
+            entry -> {
+              succeeded.increment();
+              return AuthenticationResponse.success(entry.username());
+            })
+        .onErrorResume(
+            e -> {
+              invalid.increment();
+              return Mono.just(AuthenticationResponse.failure());
+            })
+        .switchIfEmpty(
+            Mono.fromSupplier(
+                () -> {
+                  missing.increment();
+                  return AuthenticationResponse.failure();
+                }));
+  }
+
+  private Mono<SessionCache.Entry> resolveSession(String sessionId) {
+    return getSessionValue(sessionId)
         .map(Session::accessToken)
-        .flatMap(this::validateToken)
-        .flatMap(this::getUsername)
-        .log()
-        .map(AuthenticationResponse::success)
-        .or(Mono.just(AuthenticationResponse.failure()));
+        // Verification may fetch the key set over HTTP.
+        .flatMap(token -> execution.offload(Mono.defer(() -> validateToken(token))))
+        .flatMap(
+            jwt ->
+                getUsername(jwt).map(username -> new SessionCache.Entry(username, getExpiry(jwt))));
   }
 
-  private Mono<Session> getSessionValue(Cookie cookie) {
+  private Mono<Session> getSessionValue(String sessionId) {
     var commands = connection.async();
 
-    return Mono.fromCompletionStage(() -> commands.get(cookie.getValue()))
+    return Mono.fromCompletionStage(() -> commands.get(sessionId))
         .flatMap(
             value ->
                 Mono.deferContextual(
@@ -77,7 +145,9 @@ public class SessionAuthenticationProvider<A>
   private Mono<SignedJWT> validateToken(String accessToken) {
     try {
       var signedJWT = SignedJWT.parse(accessToken);
+      var start = System.nanoTime();
       var isValid = jwksSignature.verify(signedJWT);
+      verifyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
       if (isValid) {
         return Mono.just(signedJWT);
       }
@@ -88,9 +158,18 @@ public class SessionAuthenticationProvider<A>
     }
   }
 
+  private Instant getExpiry(SignedJWT jwt) {
+    try {
+      var expiration = jwt.getJWTClaimsSet().getExpirationTime();
+      return expiration == null ? null : expiration.toInstant();
+    } catch (ParseException e) {
+      return null;
+    }
+  }
+
   private Mono<String> getUsername(SignedJWT jwt) {
     try {
-      return Mono.just((String) jwt.getPayload().toJSONObject().get("email")).log();
+      return Mono.just((String) jwt.getPayload().toJSONObject().get("email"));
     } catch (Exception e) {
       return Mono.error(AuthenticationResponse.exception(e.getMessage()));
     }
@@ -0,0 +1,161 @@
+package chat.app.server;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+/**
+ * SessionCache
+ *
+ * <p>Bounded local cache of resolved sessions keyed by session id. Entries live until the JWT
+ * expires (capped by {@code chat.auth.session-cache.max-ttl}), concurrent lookups of the same
+ * session share one load, and entries are dropped when Redis reports the session key deleted or
+ * expired through keyspace notifications.
+ */
+@Singleton
+public class SessionCache implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SessionCache.class);
+
+  static final String[] INVALIDATION_PATTERNS = {
+    "__keyevent@*__:del", "__keyevent@*__:unlink", "__keyevent@*__:expired"
+  };
+
+  private final AsyncCache<String, Entry> cache;
+
+  private final Counter hits;
+
+  private final Counter misses;
+
+  private StatefulRedisPubSubConnection<String, String> notifications;
+
+  SessionCache(long maximumSize, Duration maxTtl, MeterRegistry registry) {
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfter(new UntilExpiry(maxTtl))
+            .buildAsync();
+    this.hits = Counter.builder("chat.auth.session.cache").tag("result", "hit").register(registry);
+    this.misses =
+        Counter.builder("chat.auth.session.cache").tag("result", "miss").register(registry);
+    Gauge.builder("chat.auth.session.cache.size", cache, c -> c.synchronous().estimatedSize())
+        .register(registry);
+  }
+
+  @Inject
+  public SessionCache(
+      RedisClient client,
+      MeterRegistry registry,
+      @Value("${chat.auth.session-cache.maximum-size:10000}") long maximumSize,
+      @Value("${chat.auth.session-cache.max-ttl:15m}") Duration maxTtl,
+      @Value("${chat.auth.session-cache.configure-notifications:false}")
+          boolean configureNotifications) {
+    this(maximumSize, maxTtl, registry);
+    this.notifications = client.connectPubSub();
+
+    if (configureNotifications) {
+      try (var connection = client.connect()) {
+        connection.sync().configSet("notify-keyspace-events", "Egx");
+      } catch (Exception e) {
+        LOG.warn("Could not enable keyspace notifications, sessions expire by TTL only", e);
+      }
+    }
+
+    this.notifications.addListener(
+        new RedisPubSubAdapter<>() {
+          @Override
+          public void message(String pattern, String channel, String key) {
+            invalidate(key);
+          }
+        });
+    this.notifications.async().psubscribe(INVALIDATION_PATTERNS);
+  }
+
+  /**
+   * Returns the cached entry for a session, loading it at most once across concurrent callers.
+   * Empty or failed loads are not cached.
+   */
+  public Mono<Entry> get(String sessionId, Function<String, Mono<Entry>> loader) {
+    var cached = cache.getIfPresent(sessionId);
+
+    if (cached != null) {
+      hits.increment();
+      return Mono.fromFuture(cached, true);
+    }
+
+    misses.increment();
+    return Mono.fromFuture(cache.get(sessionId, (id, executor) -> loader.apply(id).toFuture()), true);
+  }
+
+  /** Returns the entry of a session already resolved, without loading it or counting a lookup. */
+  @Nullable
+  public Entry peek(String sessionId) {
+    var cached = cache.getIfPresent(sessionId);
+
+    if (cached == null || !cached.isDone() || cached.isCompletedExceptionally()) {
+      return null;
+    }
+    return cached.join();
+  }
+
+  public void invalidate(String sessionId) {
+    cache.synchronous().invalidate(sessionId);
+  }
+
+  @Override
+  @PreDestroy
+  public void close() {
+    if (notifications != null) {
+      notifications.close();
+    }
+  }
+
+  /** Resolved session: the authenticated username and when its token expires. */
+  public record Entry(String username, Instant expiresAt) {}
+
+  private static final class UntilExpiry implements Expiry<String, Entry> {
+
+    private final long maxTtlNanos;
+
+    UntilExpiry(Duration maxTtl) {
+      this.maxTtlNanos = maxTtl.toNanos();
+    }
+
+    @Override
+    public long expireAfterCreate(String key, Entry value, long currentTime) {
+      if (value.expiresAt() == null) {
+        return maxTtlNanos;
+      }
+
+      var remaining = Duration.between(Instant.now(), value.expiresAt()).toNanos();
+      return Math.max(0, Math.min(remaining, maxTtlNanos));
+    }
+
+    @Override
+    public long expireAfterUpdate(String key, Entry value, long currentTime, long currentDuration) {
+      return expireAfterCreate(key, value, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(String key, Entry value, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
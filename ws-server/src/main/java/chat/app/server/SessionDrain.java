@@ -0,0 +1,194 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.Reconnect;
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.serde.ObjectMapper;
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * SessionDrain
+ *
+ * <p>Takes a node out of service without cutting every socket at once, as a rolling deploy would.
+ * Draining stops {@link AdmissionControl} admitting sessions, then closes the open ones one at a
+ * time, spread evenly over {@code chat.drain.window}, so their reconnects reach the other nodes at
+ * a steady pace rather than all together.
+ *
+ * <p>Each session first has its outbound queue flushed, waiting up to {@code
+ * chat.drain.flush-timeout}. It is then sent a {@value #RECONNECT_MEDIA_TYPE} content holding a
+ * {@link Reconnect}: a delay, jittered up to {@code chat.drain.reconnect-delay}, and the sequence
+ * through which its outbound queue wrote it every message, so only newer messages are replayed
+ * when it reconnects with {@value PrivateChatHandler#CURSOR_PARAMETER}. Finally it is closed with
+ * {@code 1012} (service restart). Sessions that open while the node drains are closed at the end
+ * of the window.
+ */
+@Singleton
+public class SessionDrain {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SessionDrain.class);
+
+  public static final String RECONNECT_MEDIA_TYPE = "application/vnd.chat.reconnect+json";
+
+  private static final User SERVER = new User("");
+
+  private final ObjectMapper mapper = ObjectMapper.getDefault();
+
+  private final AtomicReference<Mono<Void>> drain = new AtomicReference<>();
+
+  private final ConversationSessions sessions;
+
+  private final OutboundQueues outbound;
+
+  private final AdmissionControl admission;
+
+  private final Duration window;
+
+  private final Duration reconnectDelay;
+
+  private final Duration flushTimeout;
+
+  private final Scheduler scheduler;
+
+  private final Counter migrated;
+
+  @Inject
+  public SessionDrain(
+      ConversationSessions sessions,
+      OutboundQueues outbound,
+      AdmissionControl admission,
+      MeterRegistry registry,
+      @Value("${chat.drain.window:30s}") Duration window,
+      @Value("${chat.drain.reconnect-delay:5s}") Duration reconnectDelay,
+      @Value("${chat.drain.flush-timeout:2s}") Duration flushTimeout) {
+    this(
+        sessions,
+        outbound,
+        admission,
+        registry,
+        window,
+        reconnectDelay,
+        flushTimeout,
+        Schedulers.parallel());
+  }
+
+  SessionDrain(
+      ConversationSessions sessions,
+      OutboundQueues outbound,
+      AdmissionControl admission,
+      MeterRegistry registry,
+      Duration window,
+      Duration reconnectDelay,
+      Duration flushTimeout,
+      Scheduler scheduler) {
+    this.sessions = sessions;
+    this.outbound = outbound;
+    this.admission = admission;
+    this.window = window;
+    this.reconnectDelay = reconnectDelay;
+    this.flushTimeout = flushTimeout;
+    this.scheduler = scheduler;
+    this.migrated =
+        Counter.builder("chat.drain.sessions")
+            .description("Sessions closed with a reconnect hint while draining")
+            .register(registry);
+  }
+
+  /**
+   * Starts draining the node, unless it already is.
+   *
+   * @return completes once every session is closed; the drain goes on without subscribers
+   */
+  public Mono<Void> drain() {
+    var started = drain.get();
+    if (started != null) {
+      return started;
+    }
+
+    var drained = Mono.defer(this::closeAll).cache();
+    if (!drain.compareAndSet(null, drained)) {
+      return drain.get();
+    }
+
+    admission.drain();
+    drained.subscribe(null, error -> LOG.error("Failed draining sessions", error));
+    return drained;
+  }
+
+  public boolean isDraining() {
+    return drain.get() != null;
+  }
+
+  /** Sessions still open on this node. */
+  public int sessions() {
+    return sessions.sessionCount();
+  }
+
+  private Mono<Void> closeAll() {
+    var open = sessions.all();
+    LOG.info("Draining {} sessions over {}", open.size(), window);
+
+    var spacing = open.isEmpty() ? Duration.ZERO : window.dividedBy(open.size());
+    return Flux.fromIterable(open)
+        .delayElements(spacing, scheduler)
+        .flatMap(entry -> migrate(entry.getKey(), entry.getValue()))
+        .thenMany(
+            Flux.defer(() -> Flux.fromIterable(sessions.all()))
+                .flatMap(entry -> migrate(entry.getKey(), entry.getValue())))
+        .then(Mono.fromRunnable(() -> LOG.info("Drained, {} sessions left", sessions())));
+  }
+
+  /** Flushes a session, hints it where to resume and closes it. */
+  private Mono<Void> migrate(String conversationId, WebSocketSession session) {
+    if (!session.isOpen()) {
+      return Mono.empty();
+    }
+
+    return outbound
+        .flush(session, flushTimeout, scheduler)
+        .then(Mono.defer(() -> sessions.send(session, reconnect(session))))
+        .then(Mono.defer(() -> outbound.flush(session, flushTimeout, scheduler)))
+        .onErrorResume(
+            error -> {
+              LOG.debug("Failed sending a reconnect hint to session {}", session.getId(), error);
+              return Mono.empty();
+            })
+        .then(
+            Mono.fromRunnable(
+                () -> {
+                  migrated.increment();
+                  session.close(CloseReason.SERVICE_RESTART);
+                }));
+  }
+
+  private Message reconnect(WebSocketSession session) {
+    // Until history is replayed, the queue is held and has written nothing.
+    var after = outbound.writtenThrough(session);
+    var delay = ThreadLocalRandom.current().nextLong(reconnectDelay.toMillis() + 1);
+
+    try {
+      return new Message(
+          SERVER,
+          Content.of(RECONNECT_MEDIA_TYPE, mapper.writeValueAsBytes(new Reconnect(delay, after))));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,245 @@
+package chat.app.server;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.convert.format.ReadableBytes;
+import io.micronaut.http.server.netty.NettyServerCustomizer;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionUtil;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * WebSocketCompression
+ *
+ * <p>Configures the {@code permessage-deflate} extension Micronaut offers WebSocket clients, which
+ * it otherwise installs with fixed settings, or removes it when {@code
+ * chat.compression.websocket.enabled} is false. Under {@code chat.compression.websocket}:
+ *
+ * <ul>
+ *   <li>{@code level}: deflate level, 0 to 9.
+ *   <li>{@code min-size}: frames smaller than this are sent uncompressed.
+ *   <li>{@code client-window-size}: window the client is asked to compress with, 8 to 15 bits.
+ *   <li>{@code allow-server-window-size}: whether clients may ask for a smaller server window.
+ *       Windows below 15 bits need JZlib on the classpath.
+ *   <li>{@code allow-server-no-context}: whether clients may ask the server to compress every
+ *       message on its own, trading ratio for the memory of the per-connection context. Offers
+ *       asking for it are declined otherwise.
+ *   <li>{@code client-no-context}: whether clients offering to compress every message on their
+ *       own are told to.
+ * </ul>
+ *
+ * <p>Compressed frames are metered as the {@code permessage_deflate} codec of {@link
+ * CompressionMeter}, timed around the extension encoder.
+ */
+@Singleton
+public class WebSocketCompression
+    implements NettyServerCustomizer, BeanCreatedEventListener<NettyServerCustomizer.Registry> {
+
+  /** Name of the handler Micronaut adds to stream pipelines that may upgrade to WebSocket. */
+  static final String HANDLER_NAME = "WebSocketServerCompressionHandler";
+
+  private final boolean enabled;
+
+  private final int level;
+
+  private final int minSize;
+
+  private final int clientWindowSize;
+
+  private final boolean allowServerWindowSize;
+
+  private final boolean allowServerNoContext;
+
+  private final boolean clientNoContext;
+
+  private final CompressionMeter meter;
+
+  @Inject
+  public WebSocketCompression(
+      @Value("${chat.compression.websocket.enabled:true}") boolean enabled,
+      @Value("${chat.compression.websocket.level:6}") int level,
+      @ReadableBytes @Value("${chat.compression.websocket.min-size:0}") int minSize,
+      @Value("${chat.compression.websocket.client-window-size:15}") int clientWindowSize,
+      @Value("${chat.compression.websocket.allow-server-window-size:false}")
+          boolean allowServerWindowSize,
+      @Value("${chat.compression.websocket.allow-server-no-context:false}")
+          boolean allowServerNoContext,
+      @Value("${chat.compression.websocket.client-no-context:false}") boolean clientNoContext,
+      MeterRegistry registry) {
+    this.enabled = enabled;
+    this.level = level;
+    this.minSize = minSize;
+    this.clientWindowSize = clientWindowSize;
+    this.allowServerWindowSize = allowServerWindowSize;
+    this.allowServerNoContext = allowServerNoContext;
+    this.clientNoContext = clientNoContext;
+    this.meter = new CompressionMeter(registry, "permessage_deflate");
+  }
+
+  @Override
+  public NettyServerCustomizer.Registry onCreated(
+      BeanCreatedEvent<NettyServerCustomizer.Registry> event) {
+    event.getBean().register(this);
+    return event.getBean();
+  }
+
+  @Override
+  public NettyServerCustomizer specializeForChannel(Channel channel, ChannelRole role) {
+    return role == ChannelRole.LISTENER ? this : new ChannelCustomizer(channel);
+  }
+
+  /** Swaps Micronaut's compression handler of a stream pipeline for the configured one. */
+  void customize(Channel channel) {
+    var pipeline = channel.pipeline();
+    if (pipeline.get(HANDLER_NAME) == null) {
+      return;
+    }
+
+    if (!enabled) {
+      pipeline.remove(HANDLER_NAME);
+      return;
+    }
+
+    pipeline.replace(
+        HANDLER_NAME, HANDLER_NAME, new WebSocketServerExtensionHandler(handshaker()));
+
+    // The extension encoder is added right after the extension handler once negotiated.
+    var probe = new Probe();
+    pipeline.addBefore(HANDLER_NAME, "chat-deflate-compressed", probe.compressed);
+    pipeline.addAfter(HANDLER_NAME, "chat-deflate-raw", probe.raw);
+  }
+
+  /**
+   * Whether {@code permessage-deflate} is negotiated with a client offering {@code extensions}, the
+   * value of the {@code Sec-WebSocket-Extensions} header of its handshake.
+   */
+  public boolean negotiates(@Nullable String extensions) {
+    if (!enabled || extensions == null) {
+      return false;
+    }
+    var handshaker = handshaker();
+    return WebSocketExtensionUtil.extractExtensions(extensions).stream()
+        .anyMatch(offer -> handshaker.handshakeExtension(offer) != null);
+  }
+
+  private PerMessageDeflateServerExtensionHandshaker handshaker() {
+    return new PerMessageDeflateServerExtensionHandshaker(
+        level,
+        allowServerWindowSize,
+        clientWindowSize,
+        allowServerNoContext,
+        clientNoContext,
+        new SizeFilter(minSize));
+  }
+
+  private final class ChannelCustomizer implements NettyServerCustomizer {
+
+    private final Channel channel;
+
+    ChannelCustomizer(Channel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public NettyServerCustomizer specializeForChannel(Channel channel, ChannelRole role) {
+      return new ChannelCustomizer(channel);
+    }
+
+    @Override
+    public void onStreamPipelineBuilt() {
+      customize(channel);
+    }
+  }
+
+  /**
+   * Skips whole data frames under {@code min-size}. Continuation frames are never skipped, as the
+   * encoder cannot leave a message it started compressing.
+   */
+  private record SizeFilter(int minSize)
+      implements WebSocketExtensionFilterProvider, WebSocketExtensionFilter {
+
+    @Override
+    public boolean mustSkip(WebSocketFrame frame) {
+      return (frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame)
+          && frame.isFinalFragment()
+          && frame.content().readableBytes() < minSize;
+    }
+
+    @Override
+    public WebSocketExtensionFilter encoderFilter() {
+      return this;
+    }
+
+    @Override
+    public WebSocketExtensionFilter decoderFilter() {
+      return WebSocketExtensionFilter.NEVER_SKIP;
+    }
+  }
+
+  /**
+   * Handlers on both sides of the extension encoder of one connection. Frames are encoded
+   * synchronously as they are written, so the compressed frame reaches {@link #compressed} before
+   * the write of the raw one returns.
+   */
+  private final class Probe {
+
+    long rawBytes;
+
+    long start;
+
+    boolean compressing;
+
+    final ChannelOutboundHandlerAdapter raw =
+        new ChannelOutboundHandlerAdapter() {
+          @Override
+          public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            if (msg instanceof WebSocketFrame frame && isData(frame)) {
+              rawBytes = frame.content().readableBytes();
+              start = System.nanoTime();
+            }
+            ctx.write(msg, promise);
+          }
+        };
+
+    final ChannelOutboundHandlerAdapter compressed =
+        new ChannelOutboundHandlerAdapter() {
+          @Override
+          public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            if (msg instanceof WebSocketFrame frame && isData(frame)) {
+              if (!(frame instanceof ContinuationWebSocketFrame)) {
+                compressing = (frame.rsv() & WebSocketExtension.RSV1) != 0;
+              }
+              if (compressing) {
+                meter.record(
+                    rawBytes, frame.content().readableBytes(), System.nanoTime() - start);
+              } else {
+                meter.skipped();
+              }
+            }
+            ctx.write(msg, promise);
+          }
+        };
+
+    private static boolean isData(WebSocketFrame frame) {
+      return frame instanceof TextWebSocketFrame
+          || frame instanceof BinaryWebSocketFrame
+          || frame instanceof ContinuationWebSocketFrame;
+    }
+  }
+}
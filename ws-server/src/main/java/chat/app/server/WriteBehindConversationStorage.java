@@ -0,0 +1,276 @@
+package chat.app.server;
+
+import chat.app.server.MessageJournal.Appended;
+import chat.app.server.MessageJournal.Created;
+import chat.app.server.MessageJournal.Entry;
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Members;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * WriteBehindConversationStorage
+ *
+ * <p>Serves conversations from the in-memory log and persists changes to a {@link MessageJournal}
+ * in the background. A single flusher thread groups pending entries into commits of at most
+ * {@code chat.storage.journal.max-batch} entries, lingering up to {@code
+ * chat.storage.journal.flush-interval} for a group to fill. On startup the journal is replayed to
+ * rebuild the log.
+ *
+ * <p>Under {@link Durability#ACK_ON_MEMORY} writes complete once they are in memory, so a crash
+ * loses whatever had not been flushed yet; under {@link Durability#ACK_ON_FLUSH} they complete once
+ * their group is durable.
+ */
+@Singleton
+@Requires(property = "chat.storage.type", value = "journal")
+public class WriteBehindConversationStorage implements ConversationStorage, AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WriteBehindConversationStorage.class);
+
+  private static final Duration RETRY_DELAY = Duration.ofMillis(100);
+
+  /** When a write is acknowledged. */
+  public enum Durability {
+    ACK_ON_MEMORY,
+    ACK_ON_FLUSH
+  }
+
+  private final ConversationStorageImpl memory = new ConversationStorageImpl();
+
+  private final MessageJournal journal;
+
+  private final Durability durability;
+
+  private final int maxBatch;
+
+  private final long flushIntervalNanos;
+
+  private final LinkedBlockingQueue<Pending> pending = new LinkedBlockingQueue<>();
+
+  private final Thread flusher;
+
+  private final DistributionSummary batches;
+
+  private final Timer flushes;
+
+  private final Counter failures;
+
+  private volatile boolean running = true;
+
+  public WriteBehindConversationStorage(
+      MessageJournal journal,
+      MeterRegistry registry,
+      @Value("${chat.storage.journal.durability:ack_on_memory}") Durability durability,
+      @Value("${chat.storage.journal.max-batch:512}") int maxBatch,
+      @Value("${chat.storage.journal.flush-interval:5ms}") Duration flushInterval)
+      throws IOException {
+    this.journal = journal;
+    this.durability = durability;
+    this.maxBatch = maxBatch;
+    this.flushIntervalNanos = flushInterval.toNanos();
+    this.batches =
+        DistributionSummary.builder("chat.storage.journal.batch")
+            .description("Entries written per group commit")
+            .register(registry);
+    this.flushes = Timer.builder("chat.storage.journal.flush").register(registry);
+    this.failures = Counter.builder("chat.storage.journal.failures").register(registry);
+    Gauge.builder("chat.storage.journal.pending", pending, LinkedBlockingQueue::size)
+        .register(registry);
+
+    recover();
+    this.flusher = new Thread(this::flushLoop, "chat-journal-flusher");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  @Override
+  public Mono<Conversation> getConversation(String id) {
+    return memory.getConversation(id);
+  }
+
+  @Override
+  public Mono<Members> getMembers(String conversationId) {
+    return memory.getMembers(conversationId);
+  }
+
+  @Override
+  public Mono<Long> getNextSequence(String conversationId) {
+    return memory.getNextSequence(conversationId);
+  }
+
+  @Override
+  public Flux<Message> getMessages(String conversationId, long fromSequence) {
+    return memory.getMessages(conversationId, fromSequence);
+  }
+
+  @Override
+  public Mono<Conversation> createConversation(Conversation conversation) {
+    return memory
+        .createConversation(conversation)
+        .flatMap(
+            created -> {
+              var entries = new ArrayList<Entry>(created.messages().size() + 1);
+              entries.add(new Created(created.id(), created.users()));
+              created.messages().forEach(m -> entries.add(new Appended(created.id(), m)));
+
+              return acknowledge(entries.stream().map(this::enqueue).toList(), created);
+            });
+  }
+
+  @Override
+  public Mono<Message> pushMessage(String conversationId, Message message) {
+    return memory
+        .pushMessage(conversationId, message)
+        .flatMap(
+            stored -> acknowledge(List.of(enqueue(new Appended(conversationId, stored))), stored));
+  }
+
+  private <T> Mono<T> acknowledge(List<CompletableFuture<Void>> flushed, T value) {
+    if (durability == Durability.ACK_ON_MEMORY) {
+      return Mono.just(value);
+    }
+
+    return Mono.fromFuture(CompletableFuture.allOf(flushed.toArray(CompletableFuture[]::new)))
+        .thenReturn(value);
+  }
+
+  private CompletableFuture<Void> enqueue(Entry entry) {
+    var flushed = new CompletableFuture<Void>();
+
+    if (!running) {
+      flushed.completeExceptionally(new IllegalStateException("Storage is closed"));
+      return flushed;
+    }
+
+    pending.add(new Pending(entry, flushed));
+    return flushed;
+  }
+
+  /**
+   * Rebuilds the in-memory log from the journal. Entries are written in the order they were
+   * queued, which for concurrent senders can differ from sequence order, so messages are sorted
+   * per conversation. They keep the sequences clients hold as cursors, even where an entry is
+   * missing.
+   */
+  private void recover() throws IOException {
+    var created = new LinkedHashMap<String, Created>();
+    var appended = new HashMap<String, List<Message>>();
+
+    journal.replay(
+        entry -> {
+          if (entry instanceof Created c) {
+            created.put(c.conversationId(), c);
+          } else if (entry instanceof Appended a) {
+            appended.computeIfAbsent(a.conversationId(), id -> new ArrayList<>()).add(a.message());
+          }
+        });
+
+    var messages = 0;
+    for (var conversation : created.values()) {
+      var id = conversation.conversationId();
+      var log = appended.getOrDefault(id, new ArrayList<>());
+      log.sort(Comparator.comparingLong(Message::sequence));
+      memory.restoreConversation(new Conversation(id, conversation.users(), log)).block();
+      messages += log.size();
+    }
+
+    LOG.info("Recovered {} conversations and {} messages from the journal", created.size(), messages);
+  }
+
+  private void flushLoop() {
+    var batch = new ArrayList<Pending>(maxBatch);
+
+    while (running || !pending.isEmpty()) {
+      try {
+        var first = pending.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+
+        batch.add(first);
+        var deadline = System.nanoTime() + flushIntervalNanos;
+
+        while (batch.size() < maxBatch) {
+          pending.drainTo(batch, maxBatch - batch.size());
+          var remaining = deadline - System.nanoTime();
+
+          if (batch.size() >= maxBatch || remaining <= 0 || !running) {
+            break;
+          }
+
+          var next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+
+        commit(batch);
+        batch.clear();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private void commit(List<Pending> batch) throws InterruptedException {
+    var entries = batch.stream().map(Pending::entry).toList();
+
+    while (true) {
+      try {
+        flushes.recordCallable(
+            () -> {
+              journal.append(entries);
+              return null;
+            });
+        batches.record(entries.size());
+        batch.forEach(p -> p.flushed().complete(null));
+        return;
+      } catch (Exception e) {
+        failures.increment();
+
+        if (!running) {
+          LOG.error("Dropping {} journal entries after failed flush on shutdown", entries.size(), e);
+          batch.forEach(p -> p.flushed().completeExceptionally(e));
+          return;
+        }
+
+        LOG.warn("Journal flush failed, retrying in {}", RETRY_DELAY, e);
+        Thread.sleep(RETRY_DELAY.toMillis());
+      }
+    }
+  }
+
+  @Override
+  @PreDestroy
+  public void close() throws IOException, InterruptedException {
+    running = false;
+    flusher.join();
+    journal.close();
+  }
+
+  private record Pending(Entry entry, CompletableFuture<Void> flushed) {}
+}
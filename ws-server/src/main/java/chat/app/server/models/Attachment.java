@@ -0,0 +1,13 @@
+package chat.app.server.models;
+
+import io.micronaut.serde.annotation.Serdeable;
+
+/**
+ * Attachment
+ *
+ * <p>A file uploaded to a conversation and kept on disk. Messages refer to it by carrying this
+ * record as {@code application/vnd.chat.attachment+json} content instead of the file itself.
+ */
+@Serdeable
+public record Attachment(
+    String id, String conversationId, String name, String mediaType, long size) {}
@@ -1,14 +1,34 @@
 package chat.app.server.models;
 
+import io.micronaut.core.annotation.Creator;
 import io.micronaut.serde.annotation.Serdeable;
-import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 /** Conversation */
 public record Conversation(String id, List<User> users, List<Message> messages) {
 
-  public record Message(User user, Content content) {
+  public Conversation {
+    users = Members.of(users);
+  }
+
+  /** The users of the conversation, indexed for constant-time membership checks. */
+  public Members members() {
+    return (Members) users;
+  }
+
+  public record Message(long sequence, User user, Content content) {
+
+    /** Sequence of a message not yet appended to a conversation. */
+    public static final long UNSEQUENCED = -1;
+
+    public Message(User user, Content content) {
+      this(UNSEQUENCED, user, content);
+    }
+
+    public Message withSequence(long sequence) {
+      return new Message(sequence, user, content);
+    }
 
     @Serdeable
     public static class Content {
@@ -20,6 +40,14 @@ public record Conversation(String id, List<User> users, List<Message> messages)
         this.data = data;
       }
 
+      /** Creates content from stored or received bytes, keeping text as {@link TextContent}. */
+      @Creator
+      public static Content of(String mediaType, byte[] data) {
+        return TextContent.MEDIA_TYPE.equals(mediaType)
+            ? TextContent.ofUtf8(data)
+            : new Content(mediaType, data);
+      }
+
       public String getMediaType() {
         return mediaType;
       }
@@ -29,18 +57,50 @@ public record Conversation(String id, List<User> users, List<Message> messages)
       }
     }
 
-    public static class TextContent {
-      public static Content of(String data) {
-        return new Content("text/plain", Charset.defaultCharset().encode(data).array());
+    /**
+     * Text content, held as UTF-8 bytes exactly once. The string is decoded on first use and kept,
+     * while the bytes are what gets stored and written to the socket.
+     */
+    @Serdeable.Serializable
+    public static final class TextContent extends Content {
+
+      public static final String MEDIA_TYPE = "text/plain";
+
+      private volatile String text;
+
+      private TextContent(String text, byte[] utf8) {
+        super(MEDIA_TYPE, utf8);
+        this.text = text;
+      }
+
+      public static TextContent of(String data) {
+        return new TextContent(data, data.getBytes(StandardCharsets.UTF_8));
+      }
+
+      public static TextContent ofUtf8(byte[] utf8) {
+        return new TextContent(null, utf8);
       }
 
       public static String from(Content content) {
-        if (!content.getMediaType().equals("text/plain")) {
+        if (content instanceof TextContent text) {
+          return text.text();
+        }
+
+        if (!content.getMediaType().equals(MEDIA_TYPE)) {
           throw new IllegalArgumentException(
               String.format("Invalid text media type %s", content.getMediaType()));
         }
 
-        return Charset.defaultCharset().decode(ByteBuffer.wrap(content.getData())).toString();
+        return new String(content.getData(), StandardCharsets.UTF_8);
+      }
+
+      public String text() {
+        var decoded = text;
+        if (decoded == null) {
+          decoded = new String(getData(), StandardCharsets.UTF_8);
+          text = decoded;
+        }
+        return decoded;
       }
     }
   }
@@ -0,0 +1,22 @@
+package chat.app.server.models;
+
+import io.micronaut.serde.annotation.Serdeable;
+import java.util.List;
+
+/**
+ * HistoryBatch
+ *
+ * <p>Frame replaying stored messages to a client, each with its own sequence. Sequences ascend but
+ * may have gaps, as a log recovered from its journal keeps those of the messages it restored.
+ */
+@Serdeable
+public record HistoryBatch(List<SequencedContent> messages) {
+
+  public static HistoryBatch of(List<Conversation.Message> messages) {
+    return new HistoryBatch(messages.stream().map(SequencedContent::of).toList());
+  }
+
+  public long lastSequence() {
+    return messages.get(messages.size() - 1).sequence();
+  }
+}
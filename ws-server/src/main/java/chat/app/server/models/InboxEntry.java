@@ -0,0 +1,21 @@
+package chat.app.server.models;
+
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.serde.annotation.Serdeable;
+
+/**
+ * InboxEntry
+ *
+ * <p>A conversation as listed in a user's inbox. The last message fields are null until the
+ * conversation has a message; {@code preview} holds the start of a text message and is null for
+ * other media types.
+ */
+@Serdeable
+public record InboxEntry(
+    String conversationId,
+    long lastActivity,
+    long lastSequence,
+    @Nullable String lastSender,
+    @Nullable String mediaType,
+    @Nullable String preview,
+    long unread) {}
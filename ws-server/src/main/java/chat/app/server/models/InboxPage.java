@@ -0,0 +1,14 @@
+package chat.app.server.models;
+
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.serde.annotation.Serdeable;
+import java.util.List;
+
+/**
+ * InboxPage
+ *
+ * <p>One page of an inbox, most recently active conversation first. {@code next} is the offset of
+ * the following page, or null on the last one.
+ */
+@Serdeable
+public record InboxPage(List<InboxEntry> conversations, @Nullable Integer next) {}
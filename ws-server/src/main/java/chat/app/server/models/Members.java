@@ -0,0 +1,68 @@
+package chat.app.server.models;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.RandomAccess;
+
+/**
+ * Members
+ *
+ * <p>Immutable member list of a conversation, indexed by username so {@code contains} and {@code
+ * indexOf} take constant time however large the room is.
+ */
+public final class Members extends AbstractList<User> implements RandomAccess {
+
+  private final User[] users;
+
+  private final HashMap<String, Integer> index;
+
+  private Members(User[] users) {
+    this.users = users;
+    this.index = new HashMap<>((int) (users.length / 0.75f) + 1);
+
+    for (int i = 0; i < users.length; i++) {
+      index.putIfAbsent(users[i].username(), i);
+    }
+  }
+
+  public static Members of(Collection<User> users) {
+    if (users instanceof Members members) {
+      return members;
+    }
+    return new Members(users.toArray(User[]::new));
+  }
+
+  public boolean contains(String username) {
+    return index.containsKey(username);
+  }
+
+  /** Position of a member, stable for the life of the conversation, or -1. */
+  public int position(String username) {
+    return index.getOrDefault(username, -1);
+  }
+
+  /** Also takes a username, so it agrees with {@link #contains(String)} on a widened reference. */
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof String username ? contains(username) : indexOf(o) >= 0;
+  }
+
+  @Override
+  public int indexOf(Object o) {
+    if (o instanceof User user) {
+      return index.getOrDefault(user.username(), -1);
+    }
+    return -1;
+  }
+
+  @Override
+  public User get(int i) {
+    return users[i];
+  }
+
+  @Override
+  public int size() {
+    return users.length;
+  }
+}
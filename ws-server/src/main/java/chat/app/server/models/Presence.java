@@ -0,0 +1,11 @@
+package chat.app.server.models;
+
+import io.micronaut.serde.annotation.Serdeable;
+
+/**
+ * Presence
+ *
+ * <p>Ephemeral state of a conversation member, sent to clients in batches and never stored.
+ */
+@Serdeable
+public record Presence(String user, boolean online, boolean typing) {}
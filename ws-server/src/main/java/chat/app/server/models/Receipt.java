@@ -0,0 +1,12 @@
+package chat.app.server.models;
+
+import io.micronaut.serde.annotation.Serdeable;
+
+/**
+ * Receipt
+ *
+ * <p>Sequence of the last message a conversation member has read. Everything up to it counts as
+ * read, so one watermark per member replaces a flag per message.
+ */
+@Serdeable
+public record Receipt(String user, long sequence) {}
@@ -0,0 +1,13 @@
+package chat.app.server.models;
+
+import io.micronaut.serde.annotation.Serdeable;
+
+/**
+ * Reconnect
+ *
+ * <p>Hint sent to a session before a draining node closes it: reconnect after {@code delay}
+ * milliseconds, asking for the messages after sequence {@code after}, or for the ones after the
+ * client's own cursor when it is {@code -1}.
+ */
+@Serdeable
+public record Reconnect(long delay, long after) {}
@@ -0,0 +1,12 @@
+package chat.app.server.models;
+
+import io.micronaut.serde.annotation.Serdeable;
+
+/**
+ * SearchHit
+ *
+ * <p>A text message matching a search, with its position so clients can open the conversation
+ * around it.
+ */
+@Serdeable
+public record SearchHit(String conversationId, long sequence, String sender, String text) {}
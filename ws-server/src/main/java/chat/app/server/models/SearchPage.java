@@ -0,0 +1,14 @@
+package chat.app.server.models;
+
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.serde.annotation.Serdeable;
+import java.util.List;
+
+/**
+ * SearchPage
+ *
+ * <p>One page of search results, newest first. {@code next} is the cursor of the following page,
+ * or null on the last one.
+ */
+@Serdeable
+public record SearchPage(List<SearchHit> hits, @Nullable Integer next) {}
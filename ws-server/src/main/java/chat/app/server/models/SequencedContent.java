@@ -0,0 +1,18 @@
+package chat.app.server.models;
+
+import io.micronaut.serde.annotation.Serdeable;
+
+/**
+ * SequencedContent
+ *
+ * <p>Frame delivering a stored message to a JSON client: its content, with the sequence the client
+ * keeps as its cursor. Clients reading it as a plain content simply ignore {@code sequence}.
+ */
+@Serdeable
+public record SequencedContent(long sequence, String mediaType, byte[] data) {
+
+  public static SequencedContent of(Conversation.Message message) {
+    var content = message.content();
+    return new SequencedContent(message.sequence(), content.getMediaType(), content.getData());
+  }
+}
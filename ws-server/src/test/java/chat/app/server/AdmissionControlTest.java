@@ -0,0 +1,115 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import chat.app.server.AdmissionControl.Reason;
+import chat.app.server.EphemeralEventsTest.ManualScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.websocket.WebSocketSession;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/** AdmissionControlTest */
+class AdmissionControlTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private final ManualScheduler scheduler = new ManualScheduler();
+
+  private final AdmissionControl admission =
+      new AdmissionControl(
+          registry, 3, 2, 1, 2, 1, 2, 1, 3, Duration.ofSeconds(5), null, Duration.ofMinutes(10),
+          scheduler);
+
+  private boolean admit(String username, WebSocketSession session) {
+    return admission.admit(username, session).block();
+  }
+
+  private boolean message(WebSocketSession session) {
+    return admission.tryMessage(session).block();
+  }
+
+  private double rejected(Reason reason) {
+    return registry
+        .get("chat.admission.rejected")
+        .tag("reason", reason.name().toLowerCase())
+        .counter()
+        .count();
+  }
+
+  private double connections() {
+    return registry.get("chat.admission.connections").gauge().value();
+  }
+
+  @Test
+  void should_cap_connections_per_user_and_node() {
+    var alice = EphemeralEventsTest.openSession();
+    assertTrue(admit("alice", alice));
+    assertTrue(admit("alice", EphemeralEventsTest.openSession()));
+    assertFalse(admit("alice", EphemeralEventsTest.openSession()));
+    assertEquals(
+        Reason.USER_CONNECTIONS,
+        admission.checkHandshake(new SessionCache.Entry("alice", null)));
+
+    assertTrue(admit("bob", EphemeralEventsTest.openSession()));
+    assertFalse(admit("carol", EphemeralEventsTest.openSession()));
+    assertEquals(Reason.NODE_CONNECTIONS, admission.checkHandshake(null));
+    assertEquals(2, rejected(Reason.USER_CONNECTIONS));
+    assertEquals(2, rejected(Reason.NODE_CONNECTIONS));
+
+    admission.release(alice);
+    admission.release(alice);
+    assertEquals(2, connections());
+    assertNull(admission.checkHandshake(new SessionCache.Entry("alice", null)));
+    assertTrue(admit("carol", EphemeralEventsTest.openSession()));
+  }
+
+  @Test
+  void should_spread_handshakes_over_time() {
+    assertNull(admission.checkHandshake(null));
+    assertNull(admission.checkHandshake(null));
+    assertEquals(Reason.HANDSHAKE_RATE, admission.checkHandshake(null));
+
+    scheduler.advanceTimeBy(Duration.ofSeconds(1));
+    assertNull(admission.checkHandshake(null));
+    assertEquals(Reason.HANDSHAKE_RATE, admission.checkHandshake(null));
+
+    var retryAfter = admission.retryAfterSeconds();
+    assertTrue(retryAfter >= 5 && retryAfter <= 10, Long.toString(retryAfter));
+  }
+
+  @Test
+  void should_limit_messages_per_session_and_user() {
+    var first = EphemeralEventsTest.openSession();
+    var second = EphemeralEventsTest.openSession();
+    admit("alice", first);
+    admit("alice", second);
+
+    assertTrue(message(first));
+    assertTrue(message(first));
+    assertFalse(message(first));
+    assertEquals(1, rejected(Reason.SESSION_RATE));
+
+    assertTrue(message(second));
+    assertFalse(message(second));
+    assertEquals(1, rejected(Reason.USER_RATE));
+
+    scheduler.advanceTimeBy(Duration.ofSeconds(1));
+    assertTrue(message(second));
+  }
+
+  @Test
+  void should_release_sessions_closed_while_being_admitted() {
+    var session = EphemeralEventsTest.openSession();
+    when(session.isOpen()).thenReturn(false);
+
+    assertTrue(admit("alice", session));
+    assertEquals(0, connections());
+    admission.release(session);
+    assertEquals(0, connections());
+  }
+}
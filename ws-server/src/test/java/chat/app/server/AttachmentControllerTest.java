@@ -0,0 +1,138 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import chat.app.server.AttachmentController.ByteRange;
+import chat.app.server.models.Attachment;
+import chat.app.server.models.Conversation;
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.exceptions.HttpStatusException;
+import io.micronaut.serde.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/** AttachmentControllerTest */
+class AttachmentControllerTest {
+
+  private static final User ALICE = new User("Alice");
+
+  private static final User BOB = new User("Bob");
+
+  @TempDir Path directory;
+
+  private final ConversationStorage storage = new ConversationStorageImpl();
+
+  private final UserStorage users = new UserStorageImpl();
+
+  private AttachmentStore store;
+
+  private AttachmentController controller;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    store = new AttachmentStore(directory, 1000, new SimpleMeterRegistry());
+    controller =
+        new AttachmentController(
+            store,
+            storage,
+            users,
+            ConversationSessionsTest.newSessions(),
+            (id, message) -> Mono.empty());
+    users.addUser("Alice").block();
+    users.addUser("Bob").block();
+    storage.createConversation(new Conversation("AB", List.of(ALICE, BOB), List.of())).block();
+  }
+
+  private Attachment upload(User user, byte[]... chunks) {
+    return controller
+        .upload(
+            "AB",
+            user::username,
+            "notes.bin",
+            "application/octet-stream",
+            null,
+            Flux.just(chunks))
+        .block()
+        .body();
+  }
+
+  @Test
+  void should_announce_uploads_by_reference() throws IOException {
+    var attachment = upload(ALICE, new byte[] {1, 2, 3}, new byte[] {4, 5});
+
+    assertEquals(
+        new Attachment(attachment.id(), "AB", "notes.bin", "application/octet-stream", 5),
+        attachment);
+    assertArrayEquals(new byte[] {1, 2, 3, 4, 5}, Files.readAllBytes(store.path(attachment)));
+
+    var message = storage.getConversation("AB").block().messages().get(0);
+    assertEquals(AttachmentController.MEDIA_TYPE, message.content().getMediaType());
+    assertEquals(
+        attachment,
+        ObjectMapper.getDefault().readValue(message.content().getData(), Attachment.class));
+  }
+
+  @Test
+  void should_reject_uploads_over_the_limit_and_keep_nothing() throws IOException {
+    var error =
+        assertThrows(HttpStatusException.class, () -> upload(ALICE, new byte[600], new byte[600]));
+
+    assertEquals(HttpStatus.REQUEST_ENTITY_TOO_LARGE, error.getStatus());
+    try (var files = Files.list(directory)) {
+      assertEquals(0, files.count());
+    }
+    assertEquals(0, storage.getConversation("AB").block().messages().size());
+  }
+
+  @Test
+  void should_serve_attachments_to_members_only() {
+    var attachment = upload(ALICE, new byte[10]);
+
+    var response = controller.download("AB", attachment.id(), BOB::username, "bytes=2-5").block();
+    assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatus());
+    assertEquals("bytes 2-5/10", response.getHeaders().get(HttpHeaders.CONTENT_RANGE));
+    assertEquals(
+        "2,4," + store.path(attachment).toAbsolutePath(),
+        response.getHeaders().get(FileRegionHandler.REGION_HEADER));
+
+    var error =
+        assertThrows(
+            HttpStatusException.class,
+            () -> controller.download("AB", attachment.id(), () -> "Carol", null).block());
+    assertEquals(HttpStatus.FORBIDDEN, error.getStatus());
+
+    error =
+        assertThrows(
+            HttpStatusException.class,
+            () -> controller.download("AB", "../AB", BOB::username, null).block());
+    assertEquals(HttpStatus.NOT_FOUND, error.getStatus());
+  }
+
+  @Test
+  void should_parse_single_byte_ranges() {
+    assertEquals(new ByteRange(0, 10), ByteRange.parse(null, 10));
+    assertEquals(new ByteRange(3, 7), ByteRange.parse("bytes=3-", 10));
+    assertEquals(new ByteRange(3, 7), ByteRange.parse("bytes=3-99", 10));
+    assertEquals(new ByteRange(6, 4), ByteRange.parse("bytes=-4", 10));
+    assertEquals(new ByteRange(0, 10), ByteRange.parse("bytes=-40", 10));
+    assertEquals(new ByteRange(0, 10), ByteRange.parse("bytes=0-1,4-5", 10));
+    assertEquals(new ByteRange(0, 10), ByteRange.parse("bytes=5-2", 10));
+    assertEquals(new ByteRange(0, 10), ByteRange.parse("items=0-1", 10));
+    assertNull(ByteRange.parse("bytes=10-", 10));
+    assertNull(ByteRange.parse("bytes=-0", 10));
+    assertEquals("bytes 3-9/10", ByteRange.parse("bytes=3-", 10).contentRange(10));
+  }
+}
@@ -0,0 +1,117 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.User;
+import io.micronaut.websocket.WebSocketSession;
+import io.micronaut.websocket.exceptions.WebSocketSessionException;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+/** BinaryFramesTest */
+class BinaryFramesTest {
+
+  @Test
+  void should_round_trip_a_message() {
+    var data = new byte[] {0, 1, 2, (byte) 0xFF};
+    var frame =
+        BinaryFrames.encode(
+            ByteBufAllocator.DEFAULT, new Message(42, new User("Alice"), new Content("image/png", data)));
+
+    try {
+      assertTrue(BinaryFrames.isBinary(frame));
+      assertEquals(1 + 1 + 8 + 4 + data.length, frame.readableBytes());
+      assertEquals(42, frame.getLong(2));
+
+      var decoded = BinaryFrames.decode(frame);
+      assertEquals("image/png", decoded.getMediaType());
+      assertArrayEquals(data, decoded.getData());
+      assertFalse(frame.isReadable());
+    } finally {
+      frame.release();
+    }
+  }
+
+  @Test
+  void should_wrap_payloads_without_copying() {
+    var data = "hello".getBytes(StandardCharsets.UTF_8);
+    var frame =
+        (CompositeByteBuf)
+            BinaryFrames.encode(
+                ByteBufAllocator.DEFAULT, new Message(0, new User("Alice"), new Content("text/plain", data)));
+
+    try {
+      assertSame(data, frame.component(1).array());
+    } finally {
+      frame.release();
+    }
+  }
+
+  @Test
+  void should_encode_history_batches_as_consecutive_records() {
+    var batch =
+        List.of(
+            new Message(7, new User("Alice"), new Content("text/plain", new byte[] {1})),
+            new Message(
+                9, new User("Bob"), new Content("application/x-custom", new byte[] {2, 3})));
+    var frame = BinaryFrames.encode(ByteBufAllocator.DEFAULT, batch);
+
+    try {
+      assertEquals(9, BinaryFrames.lastSequence(frame));
+
+      var first = BinaryFrames.decode(frame);
+      assertEquals(9, frame.getLong(frame.readerIndex() + 2 + 1 + "application/x-custom".length()));
+      var second = BinaryFrames.decode(frame);
+
+      assertEquals("text/plain", first.getMediaType());
+      assertEquals("application/x-custom", second.getMediaType());
+      assertArrayEquals(new byte[] {2, 3}, second.getData());
+      assertFalse(frame.isReadable());
+    } finally {
+      frame.release();
+    }
+  }
+
+  @Test
+  void should_release_the_callers_reference_once_whatever_the_outcome() {
+    var session = mock(WebSocketSession.class);
+    var write = new CompletableFuture<Object>();
+    when(session.sendAsync(any())).thenReturn(write);
+
+    var sent = Unpooled.buffer(1).writeByte(1);
+    var sending = BinaryFrames.send(session, sent).then().toFuture();
+    write.complete(null);
+    assertTrue(sending.isDone());
+    // What is left is the channel's reference, released by the write.
+    assertEquals(1, sent.refCnt());
+
+    when(session.sendAsync(any())).thenThrow(new WebSocketSessionException("Session closed"));
+    var refused = Unpooled.buffer(1).writeByte(1);
+    assertThrows(
+        WebSocketSessionException.class, () -> BinaryFrames.send(session, refused).blockLast());
+    assertEquals(0, refused.refCnt());
+  }
+
+  @Test
+  void should_leave_json_frames_to_the_codec() {
+    var json = Unpooled.copiedBuffer("{\"mediaType\":\"text/plain\"}", StandardCharsets.UTF_8);
+
+    assertFalse(BinaryFrames.isBinary(json));
+    assertThrows(IllegalArgumentException.class, () -> BinaryFrames.decode(json));
+  }
+}
@@ -0,0 +1,155 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Members;
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/** CachingConversationStorageTest */
+class CachingConversationStorageTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private final AtomicInteger backendReads = new AtomicInteger();
+
+  private final AtomicInteger fullReads = new AtomicInteger();
+
+  private final ConversationStorageImpl backend =
+      new ConversationStorageImpl() {
+        @Override
+        public Mono<Conversation> getConversation(String id) {
+          fullReads.incrementAndGet();
+          return super.getConversation(id);
+        }
+
+        @Override
+        public Mono<Members> getMembers(String conversationId) {
+          return super.getMembers(conversationId)
+              .doOnSubscribe(s -> loads.incrementAndGet())
+              .delayElement(Duration.ofMillis(50));
+        }
+
+        @Override
+        public Flux<Message> getMessages(String conversationId, long fromSequence) {
+          backendReads.incrementAndGet();
+          return super.getMessages(conversationId, fromSequence);
+        }
+      };
+
+  private static Message message(String user, String text) {
+    return new Message(new User(user), Message.TextContent.of(text));
+  }
+
+  private static Conversation conversation(String id) {
+    return new Conversation(id, List.of(new User("Alice"), new User("Bob")), List.of());
+  }
+
+  private static List<String> texts(Flux<Message> messages) {
+    return messages.map(m -> Message.TextContent.from(m.content())).collectList().block();
+  }
+
+  @Test
+  void should_load_conversation_once_for_concurrent_misses() {
+    backend.createConversation(conversation("AB")).block();
+    var storage = new CachingConversationStorage(backend, registry, 1 << 20, 16);
+
+    var members = Flux.range(0, 10).flatMap(i -> storage.getMembers("AB")).collectList().block();
+
+    assertEquals(10, members.size());
+    assertEquals(1, loads.get());
+    assertTrue(storage.getMembers("AB").block().contains("Bob"));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void should_serve_recent_messages_and_delegate_older_ones() {
+    var storage = new CachingConversationStorage(backend, registry, 1 << 20, 5);
+    storage.createConversation(conversation("AB")).block();
+    var weight = registry.get("chat.storage.cache.weight").gauge();
+    var created = weight.value();
+    Flux.range(0, 10)
+        .concatMap(i -> storage.pushMessage("AB", message("Bob", "message " + i)))
+        .blockLast();
+    assertTrue(weight.value() > created);
+
+    assertEquals(
+        List.of("message 7", "message 8", "message 9"), texts(storage.getMessages("AB", 7)));
+    assertEquals(0, backendReads.get());
+    assertEquals(0, loads.get());
+
+    assertEquals(8, texts(storage.getMessages("AB", 2)).size());
+    assertEquals(1, backendReads.get());
+    assertEquals(1, registry.get("chat.storage.cache").tag("result", "miss").counter().count());
+  }
+
+  @Test
+  void should_load_only_the_latest_messages_on_a_miss() {
+    backend.createConversation(conversation("AB")).block();
+    Flux.range(0, 20)
+        .concatMap(i -> backend.pushMessage("AB", message("Bob", "message " + i)))
+        .blockLast();
+    var storage = new CachingConversationStorage(backend, registry, 1 << 20, 5);
+
+    assertEquals(List.of("message 18", "message 19"), texts(storage.getMessages("AB", 18)));
+    assertEquals(List.of("message 15"), texts(storage.getMessages("AB", 15).take(1)));
+    assertEquals(20, storage.getNextSequence("AB").block());
+    assertEquals(1, loads.get());
+    assertEquals(1, backendReads.get());
+    assertEquals(0, fullReads.get());
+  }
+
+  @Test
+  void should_evict_by_weight() {
+    var storage = new CachingConversationStorage(backend, registry, 16 * 1024, 64);
+
+    for (int i = 0; i < 20; i++) {
+      var id = "conversation-" + i;
+      storage.createConversation(conversation(id)).block();
+      storage.pushMessage(id, message("Bob", "x".repeat(2048))).block();
+    }
+    loads.set(0);
+
+    assertEquals(1, texts(storage.getMessages("conversation-0", 0)).size());
+    assertEquals(1, loads.get());
+    assertTrue(registry.get("chat.storage.cache.evictions").counter().count() > 0);
+    assertTrue(registry.get("chat.storage.cache.weight").gauge().value() <= 16 * 1024);
+  }
+
+  @Test
+  void should_keep_messages_contiguous_when_stored_out_of_order() {
+    var hot = CachingConversationStorage.Hot.of(conversation("AB"), 4);
+    var empty = hot.weight();
+
+    hot.append(message("Bob", "1").withSequence(1));
+    assertEquals(0, hot.recent().size());
+    assertEquals(0, hot.nextSequence());
+    assertEquals(1, hot.lastSequence());
+
+    hot.append(message("Bob", "0").withSequence(0));
+    hot.append(message("Bob", "0").withSequence(0));
+    assertEquals(2, hot.nextSequence());
+    assertEquals(List.of("0", "1"), texts(Flux.fromIterable(hot.recent())));
+    var two = hot.weight();
+
+    for (int i = 2; i < 6; i++) {
+      hot.append(message("Bob", Integer.toString(i)).withSequence(i));
+    }
+    assertEquals(2, hot.firstSequence());
+    assertEquals(List.of("4", "5"), texts(Flux.fromIterable(hot.since(4))));
+    assertNull(hot.since(1));
+    assertEquals(2 * (two - empty), hot.weight() - empty);
+  }
+}
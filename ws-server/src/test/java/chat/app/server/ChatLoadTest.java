@@ -0,0 +1,330 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.User;
+import com.redis.testcontainers.RedisContainer;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.MutableHttpRequest;
+import io.micronaut.http.uri.UriBuilder;
+import io.micronaut.runtime.server.EmbeddedServer;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import io.micronaut.test.support.TestPropertyProvider;
+import io.micronaut.websocket.WebSocketClient;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * ChatLoadTest
+ *
+ * <p>Load harness run by the {@code loadTest} task rather than with the unit tests. It opens
+ * {@code load.connections} authenticated connections to the embedded server, grouped into
+ * conversations of {@code load.conversation-size} members, and sends {@code load.rate} messages a
+ * second round-robin across them for {@code load.warmup-seconds} plus {@code
+ * load.duration-seconds}.
+ *
+ * <p>Each message carries the time it was due to be sent, so latency is measured from then to its
+ * receipt and a stalled sender shows up as latency rather than as fewer samples. Send-to-receive
+ * latency and connection setup time are recorded in HdrHistograms and written under {@code
+ * load.report-directory}, together with heap and GC figures of the JVM, which hosts both the
+ * server and the clients.
+ *
+ * <p>Redis is started with Testcontainers unless {@code load.redis-uri} points at one. The {@code
+ * chat.admission} limits are raised to the connections and rate of the run. Tens of thousands of
+ * connections need a raised open files limit ({@code ulimit -n}).
+ */
+@Tag("load")
+@MicronautTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ChatLoadTest implements TestPropertyProvider {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ChatLoadTest.class);
+
+  private final int connections = Integer.getInteger("load.connections", 1_000);
+
+  private final int conversationSize = Integer.getInteger("load.conversation-size", 10);
+
+  private final int rate = Integer.getInteger("load.rate", 1_000);
+
+  private final Duration warmup = Duration.ofSeconds(Integer.getInteger("load.warmup-seconds", 5));
+
+  private final Duration duration =
+      Duration.ofSeconds(Integer.getInteger("load.duration-seconds", 30));
+
+  private final int connectConcurrency = Integer.getInteger("load.connect-concurrency", 256);
+
+  private final Path reportDirectory =
+      Path.of(System.getProperty("load.report-directory", "build/load-test"));
+
+  @Inject UserStorage userStorage;
+
+  @Inject ConversationStorage conversationStorage;
+
+  @Inject EmbeddedServer server;
+
+  @Inject WebSocketClient webSocketClient;
+
+  private RedisContainer redis;
+
+  private final Histogram connectTimes = new ConcurrentHistogram(3);
+
+  private final Histogram latencies = new ConcurrentHistogram(3);
+
+  private final LongAdder delivered = new LongAdder();
+
+  private final LongAdder sendFailures = new LongAdder();
+
+  private final AtomicLong peakHeap = new AtomicLong();
+
+  @Override
+  public Map<String, String> getProperties() {
+    var uri = System.getProperty("load.redis-uri");
+
+    if (uri == null) {
+      redis =
+          new RedisContainer(RedisContainer.DEFAULT_IMAGE_NAME.withTag(RedisContainer.DEFAULT_TAG));
+      redis.start();
+      uri = redis.getRedisURI();
+    }
+
+    // The test configuration logs client traffic, which would swamp the run, so it goes to TRACE,
+    // below the level logged. Micronaut does not accept OFF as a client log level. Admission is
+    // opened up to the load, which the default limits would turn away in part.
+    var admitted = Integer.toString(Math.max(connections, rate));
+    return Map.of(
+        "spec.name", "ChatLoadTest",
+        "redis.uri", uri,
+        "micronaut.http.client.log-level", "TRACE",
+        "chat.admission.max-connections", admitted,
+        "chat.admission.handshake-rate", admitted,
+        "chat.admission.handshake-burst", admitted,
+        "chat.admission.message-rate", admitted,
+        "chat.admission.message-burst", admitted,
+        "chat.admission.user-message-rate", admitted,
+        "chat.admission.user-message-burst", admitted);
+  }
+
+  @AfterAll
+  void stopRedis() {
+    if (redis != null) {
+      redis.stop();
+    }
+  }
+
+  @Test
+  void should_deliver_messages_under_load() throws IOException {
+    createConversations();
+    var clients = connect();
+    assertEquals(connections, clients.size());
+
+    var heapSampler =
+        Flux.interval(Duration.ofMillis(100))
+            .subscribe(
+                tick ->
+                    peakHeap.accumulateAndGet(
+                        ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(),
+                        Math::max));
+    var gcBefore = gcTotals();
+
+    var measuredFrom = System.nanoTime() + warmup.toNanos();
+    clients.forEach(client -> client.onReceive(content -> receive(content, measuredFrom)));
+    var sent = send(clients, measuredFrom - warmup.toNanos());
+
+    var expected = sent * conversationSize;
+    var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (delivered.sum() < expected && System.nanoTime() < deadline) {
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    var gcAfter = gcTotals();
+    heapSampler.dispose();
+    report(sent, expected, gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+
+    for (var client : clients) {
+      try {
+        client.close();
+      } catch (Exception e) {
+        LOG.debug("Failed closing load client", e);
+      }
+    }
+
+    assertTrue(delivered.sum() > 0);
+  }
+
+  private void createConversations() {
+    var members = new ArrayList<User>(conversationSize);
+
+    for (int i = 0; i < connections; i++) {
+      members.add(userStorage.addUser(username(i)).block());
+
+      if (members.size() == conversationSize || i == connections - 1) {
+        conversationStorage
+            .createConversation(
+                new Conversation(conversationId(i), List.copyOf(members), List.of()))
+            .block();
+        members.clear();
+      }
+    }
+  }
+
+  private String username(int i) {
+    return "load-user-" + i;
+  }
+
+  private String conversationId(int i) {
+    return "load-" + (i / conversationSize);
+  }
+
+  private List<LoadClient> connect() {
+    var started = System.nanoTime();
+    var clients =
+        Flux.range(0, connections)
+            .flatMap(
+                i -> {
+                  var start = System.nanoTime();
+                  return Mono.from(webSocketClient.connect(LoadClient.class, request(i)))
+                      .doOnNext(c -> connectTimes.recordValue(micros(System.nanoTime() - start)));
+                },
+                connectConcurrency)
+            .collectList()
+            .block();
+
+    LOG.info(
+        "Opened {} connections in {} ms",
+        clients.size(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    return clients;
+  }
+
+  private MutableHttpRequest<?> request(int i) {
+    var uri =
+        UriBuilder.of("ws://localhost")
+            .port(server.getPort())
+            .path("ws")
+            .path("chat")
+            .path("{id}")
+            .expand(Map.of("id", conversationId(i)));
+
+    return HttpRequest.GET(uri)
+        .header(
+            "Authorization",
+            new PrivateChatHandlerTest.BasicAuthCredentials(username(i), "password")
+                .toHeaderValue());
+  }
+
+  /**
+   * Sends messages at the target rate until the warmup and the measurement are over.
+   *
+   * @return the number of messages sent
+   */
+  private long send(List<LoadClient> clients, long start) {
+    var intervalNanos = TimeUnit.SECONDS.toNanos(1) / (double) rate;
+    var end = start + warmup.toNanos() + duration.toNanos();
+    var sent = 0L;
+    long now;
+
+    while ((now = System.nanoTime()) < end) {
+      var due = (long) ((now - start) / intervalNanos);
+
+      for (; sent < due; sent++) {
+        var dueAt = start + (long) (sent * intervalNanos);
+        var client = clients.get((int) (sent % clients.size()));
+
+        Mono.from(client.send(Message.TextContent.of(Long.toString(dueAt))))
+            .subscribe(null, error -> sendFailures.increment());
+      }
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+    return sent;
+  }
+
+  private void receive(Message.Content content, long measuredFrom) {
+    var received = System.nanoTime();
+    // Presence and other ephemeral frames are not deliveries of what was sent.
+    if (!(content instanceof Message.TextContent text)) {
+      return;
+    }
+    delivered.increment();
+
+    var dueAt = Long.parseLong(text.text());
+    if (dueAt >= measuredFrom) {
+      latencies.recordValue(micros(received - dueAt));
+    }
+  }
+
+  /** Total collection count and time, in milliseconds, across collectors. */
+  private static long[] gcTotals() {
+    var totals = new long[2];
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      totals[0] += Math.max(gc.getCollectionCount(), 0);
+      totals[1] += Math.max(gc.getCollectionTime(), 0);
+    }
+    return totals;
+  }
+
+  private void report(long sent, long expected, long gcCount, long gcMillis) throws IOException {
+    LOG.info(
+        "Sent {} messages at {}/s to conversations of {}: {} of {} deliveries, {} send failures",
+        sent,
+        rate,
+        conversationSize,
+        delivered.sum(),
+        expected,
+        sendFailures.sum());
+    LOG.info("Connect {}", percentiles(connectTimes));
+    LOG.info("Latency {}", percentiles(latencies));
+    LOG.info(
+        "Peak heap {} MB, {} collections taking {} ms",
+        peakHeap.get() / (1024 * 1024),
+        gcCount,
+        gcMillis);
+
+    Files.createDirectories(reportDirectory);
+    try (var out = new PrintStream(reportDirectory.resolve("latency.hgrm").toFile())) {
+      latencies.outputPercentileDistribution(out, 1000.0);
+    }
+    try (var out = new PrintStream(reportDirectory.resolve("connect.hgrm").toFile())) {
+      connectTimes.outputPercentileDistribution(out, 1000.0);
+    }
+  }
+
+  private static String percentiles(Histogram histogram) {
+    return String.format(
+        "p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms (%d samples)",
+        histogram.getValueAtPercentile(50) / 1000.0,
+        histogram.getValueAtPercentile(99) / 1000.0,
+        histogram.getValueAtPercentile(99.9) / 1000.0,
+        histogram.getMaxValue() / 1000.0,
+        histogram.getTotalCount());
+  }
+
+  private static long micros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+}
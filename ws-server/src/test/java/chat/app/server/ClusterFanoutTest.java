@@ -0,0 +1,110 @@
+package chat.app.server;
+
+import chat.app.server.PrivateChatHandlerTest.BasicAuthCredentials;
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import com.redis.testcontainers.RedisContainer;
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.uri.UriBuilder;
+import io.micronaut.runtime.server.EmbeddedServer;
+import io.micronaut.websocket.WebSocketClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
+
+/** ClusterFanoutTest: two nodes sharing one Redis deliver each other's messages. */
+@Testcontainers
+class ClusterFanoutTest {
+
+  @Container
+  private static RedisContainer container =
+      new RedisContainer(RedisContainer.DEFAULT_IMAGE_NAME.withTag(RedisContainer.DEFAULT_TAG));
+
+  private EmbeddedServer nodeA;
+
+  private EmbeddedServer nodeB;
+
+  private EmbeddedServer startNode() {
+    return ApplicationContext.run(
+        EmbeddedServer.class,
+        Map.of(
+            "spec.name", "ClusterFanoutTest",
+            "micronaut.server.port", -1,
+            "redis.uri", container.getRedisURI(),
+            "chat.storage.type", "redis",
+            "chat.cluster.enabled", true));
+  }
+
+  @BeforeEach
+  void beforeEach() {
+    nodeA = startNode();
+    nodeB = startNode();
+  }
+
+  @AfterEach
+  void afterEach() {
+    nodeA.close();
+    nodeB.close();
+  }
+
+  private UserClient connect(EmbeddedServer node, String conversationId, String username) {
+    var credentials = new BasicAuthCredentials(username, "password");
+    var uri =
+        UriBuilder.of("ws://localhost")
+            .port(node.getPort())
+            .path("ws")
+            .path("chat")
+            .path("{id}")
+            .expand(Map.of("id", conversationId));
+    var request = HttpRequest.GET(uri).header("Authorization", credentials.toHeaderValue());
+    var client = node.getApplicationContext().getBean(WebSocketClient.class);
+
+    return Flux.from(client.connect(UserClient.class, request)).blockFirst();
+  }
+
+  @Test
+  void should_deliver_messages_across_nodes() {
+    for (var node : List.of(nodeA, nodeB)) {
+      var users = node.getApplicationContext().getBean(UserStorage.class);
+      users.addUser("Alice").block();
+      users.addUser("Bob").block();
+    }
+
+    var conversations = nodeA.getApplicationContext().getBean(ConversationStorage.class);
+    var users = nodeA.getApplicationContext().getBean(UserStorage.class);
+    conversations
+        .createConversation(
+            new Conversation(
+                "AB",
+                List.of(users.getUser("Alice").block(), users.getUser("Bob").block()),
+                List.of()))
+        .block();
+
+    var alice = connect(nodeA, "AB", "Alice");
+    var bob = connect(nodeB, "AB", "Bob");
+
+    // Sessions hear nothing, their presence included, until their node is subscribed.
+    Awaitility.waitAtMost(Duration.ofSeconds(30))
+        .until(() -> alice.getLatestMessage() != null && bob.getLatestMessage() != null);
+
+    alice.send(Message.TextContent.of("Hello Bob!"));
+    bob.send(Message.TextContent.of("Hello Alice!"));
+
+    Awaitility.waitAtMost(Duration.ofSeconds(30))
+        .until(() -> texts(alice) == 2 && texts(bob) == 2);
+  }
+
+  private static long texts(UserClient client) {
+    return client.getMessagesChronologically().stream()
+        .filter(content -> Message.TextContent.MEDIA_TYPE.equals(content.getMediaType()))
+        .count();
+  }
+}
@@ -0,0 +1,221 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.SequencedContent;
+import chat.app.server.models.User;
+import io.micronaut.websocket.WebSocketSession;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+/** ConversationSessionsTest */
+class ConversationSessionsTest {
+
+  private static final int MEMBERS = 8;
+
+  static ConversationSessions newSessions() {
+    var registry = new SimpleMeterRegistry();
+    return new ConversationSessions(
+        new OutboundQueues(
+            registry, 256, 64, OutboundQueues.OverflowPolicy.DROP_OLDEST, Duration.ofSeconds(5)),
+        registry);
+  }
+
+  static WebSocketSession openSession() {
+    var session = mock(WebSocketSession.class);
+    when(session.isOpen()).thenReturn(true);
+    when(session.isWritable()).thenReturn(true);
+    when(session.sendAsync(Mockito.any()))
+        .thenAnswer(invocation -> CompletableFuture.completedFuture(invocation.getArgument(0)));
+    return session;
+  }
+
+  private static List<WebSocketSession> addMembers(ConversationSessions sessions, String id) {
+    var members = new ArrayList<WebSocketSession>();
+    for (int i = 0; i < MEMBERS; i++) {
+      var session = openSession();
+      sessions.add(id, session);
+      members.add(session);
+    }
+    return members;
+  }
+
+  private static List<WebSocketSession> addUnrelated(ConversationSessions sessions, int count) {
+    var unrelated = new ArrayList<WebSocketSession>(count);
+    for (int i = 0; i < count; i++) {
+      var session = mock(WebSocketSession.class);
+      sessions.add("other-" + (i % 1024), session);
+      unrelated.add(session);
+    }
+    return unrelated;
+  }
+
+  @Test
+  void should_only_send_to_conversation_members() {
+    var sessions = newSessions();
+    var members = addMembers(sessions, "room");
+    var unrelated = addUnrelated(sessions, 1_000);
+    clearInvocations(unrelated.toArray());
+
+    sessions.broadcast("room", "hello").block();
+
+    members.forEach(s -> verify(s, times(1)).sendAsync("hello"));
+    // Routing goes through the conversation index alone, never past other sockets.
+    unrelated.forEach(s -> verifyNoInteractions(s));
+  }
+
+  @Test
+  void should_share_one_binary_frame_across_binary_sessions() {
+    var sessions = newSessions();
+    var json = openSession();
+    var binary = List.of(openSession(), openSession());
+    binary.forEach(s -> when(s.getSubprotocol()).thenReturn(Optional.of(BinaryFrames.SUBPROTOCOL)));
+    sessions.add("room", json);
+    binary.forEach(s -> sessions.add("room", s));
+
+    var content = new Content("text/plain", new byte[] {1, 2, 3});
+    sessions.deliver("room", new Message(5, new User("Alice"), content)).block();
+
+    verify(json).sendAsync(new SequencedContent(5, "text/plain", content.getData()));
+    var frames = new ArrayList<ByteBuf>();
+    for (var session : binary) {
+      var frame = ArgumentCaptor.forClass(Object.class);
+      verify(session).sendAsync(frame.capture());
+      frames.add((ByteBuf) frame.getValue());
+    }
+    assertEquals(2, frames.size());
+    assertEquals(2, frames.get(0).refCnt());
+    assertTrue(frames.get(0).unwrap() == frames.get(1).unwrap());
+    frames.forEach(ByteBuf::release);
+    assertEquals(0, frames.get(0).refCnt());
+  }
+
+  @Test
+  void should_hold_deliveries_back_until_history_is_replayed() {
+    var sessions = newSessions();
+    var session = openSession();
+    sessions.addReplaying("room", session);
+
+    var alice = new User("Alice");
+    for (var sequence = 3; sequence <= 5; sequence++) {
+      sessions.deliver("room", new Message(sequence, alice, Content.of("text/plain", new byte[0])))
+          .block();
+    }
+    verify(session, never()).sendAsync(Mockito.any());
+
+    sessions.replayed(session, 4);
+
+    var frame = ArgumentCaptor.forClass(Object.class);
+    verify(session).sendAsync(frame.capture());
+    assertEquals(5, ((SequencedContent) frame.getValue()).sequence());
+  }
+
+  @Test
+  void should_drop_conversation_when_last_session_leaves() {
+    var sessions = newSessions();
+    var alice = openSession();
+    var bob = openSession();
+
+    assertTrue(sessions.add("room", alice));
+    assertFalse(sessions.add("room", bob));
+    assertFalse(sessions.remove("room", alice));
+    assertTrue(sessions.remove("room", bob));
+
+    assertFalse(sessions.hasSessions("room"));
+    assertEquals(0, sessions.conversationCount());
+  }
+
+  @Test
+  void should_publish_session_and_fan_out_metrics() {
+    var registry = new SimpleMeterRegistry();
+    var sessions =
+        new ConversationSessions(
+            new OutboundQueues(
+                registry, 256, 64, OutboundQueues.OverflowPolicy.DROP_OLDEST, Duration.ofSeconds(5)),
+            registry);
+    var members = addMembers(sessions, "room");
+    sessions.add("other", openSession());
+
+    sessions.broadcast("room", "hello").block();
+    sessions.remove("room", members.get(0));
+
+    assertEquals(MEMBERS, registry.get("chat.sessions").gauge().value());
+    assertEquals(2, registry.get("chat.conversations").gauge().value());
+    assertEquals(MEMBERS, registry.get("chat.conversation.sessions").summary().max());
+    assertEquals(MEMBERS, registry.get("chat.broadcast.fanout").summary().totalAmount());
+    assertEquals(
+        MEMBERS, registry.get("chat.messages").tag("direction", "out").counter().count());
+  }
+
+  @Test
+  void should_prune_sessions_closed_without_close_callback() {
+    var sessions = newSessions();
+    var alive = openSession();
+    var dropped = openSession();
+    sessions.add("room", alive);
+    sessions.add("room", dropped);
+
+    when(dropped.isOpen()).thenReturn(false);
+    sessions.broadcast("room", "hello").block();
+
+    assertEquals(1, sessions.get("room").size());
+    verify(dropped, never()).sendAsync(Mockito.any());
+  }
+
+  /** A wall-clock comparison, so it runs with the load tests rather than the build. */
+  @Tag("load")
+  @Test
+  void fan_out_latency_should_not_grow_with_unrelated_connections() {
+    var medians = new long[2];
+    var sizes = new int[] {1_000, 50_000};
+
+    for (int i = 0; i < sizes.length; i++) {
+      var sessions = newSessions();
+      addMembers(sessions, "room");
+      addUnrelated(sessions, sizes[i]);
+      medians[i] = medianBroadcastNanos(sessions);
+    }
+
+    // A filter over every open socket would be ~50x slower at 50k; allow generous noise.
+    assertTrue(
+        medians[1] < medians[0] * 5 + 50_000,
+        String.format("1k median %dns, 50k median %dns", medians[0], medians[1]));
+  }
+
+  private static long medianBroadcastNanos(ConversationSessions sessions) {
+    for (int i = 0; i < 2_000; i++) {
+      sessions.broadcast("room", "warmup").block();
+    }
+
+    var samples = new long[2_000];
+    for (int i = 0; i < samples.length; i++) {
+      var start = System.nanoTime();
+      sessions.broadcast("room", "hello").block();
+      samples[i] = System.nanoTime() - start;
+    }
+
+    Arrays.sort(samples);
+    return samples[samples.length / 2];
+  }
+}
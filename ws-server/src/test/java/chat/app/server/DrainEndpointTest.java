@@ -0,0 +1,77 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.redis.testcontainers.RedisContainer;
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import io.micronaut.runtime.server.EmbeddedServer;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/** DrainEndpointTest */
+@Testcontainers
+class DrainEndpointTest {
+
+  @Container
+  private static RedisContainer container =
+      new RedisContainer(RedisContainer.DEFAULT_IMAGE_NAME.withTag(RedisContainer.DEFAULT_TAG));
+
+  private static EmbeddedServer run(Map<String, Object> properties) {
+    var configuration =
+        new HashMap<String, Object>(
+            Map.of("micronaut.server.port", -1, "redis.uri", container.getRedisURI()));
+    configuration.putAll(properties);
+    return ApplicationContext.run(EmbeddedServer.class, configuration);
+  }
+
+  private static HttpStatus status(HttpClient client, HttpRequest<?> request) {
+    var e =
+        assertThrows(
+            HttpClientResponseException.class,
+            () -> client.toBlocking().exchange(request, DrainEndpoint.Status.class));
+    return e.getStatus();
+  }
+
+  @Test
+  void should_drain_for_callers_with_the_token_only() {
+    try (var server = run(Map.of("chat.drain.token", "s3cret"));
+        var client = HttpClient.create(server.getURL())) {
+      server.getApplicationContext().getBean(UserStorage.class).addUser("Alice").block();
+
+      assertEquals(HttpStatus.UNAUTHORIZED, status(client, HttpRequest.POST("/drain", "")));
+      assertEquals(
+          HttpStatus.FORBIDDEN,
+          status(client, HttpRequest.POST("/drain", "").basicAuth("Alice", "password")));
+      assertEquals(
+          HttpStatus.UNAUTHORIZED,
+          status(client, HttpRequest.GET("/drain").header(DrainTokenRule.TOKEN_HEADER, "guess")));
+
+      var status =
+          client
+              .toBlocking()
+              .retrieve(
+                  HttpRequest.POST("/drain", "").header(DrainTokenRule.TOKEN_HEADER, "s3cret"),
+                  DrainEndpoint.Status.class);
+
+      assertEquals(new DrainEndpoint.Status(true, 0), status);
+    }
+  }
+
+  @Test
+  void should_refuse_everyone_without_a_configured_token() {
+    try (var server = run(Map.of());
+        var client = HttpClient.create(server.getURL())) {
+      assertEquals(
+          HttpStatus.UNAUTHORIZED,
+          status(client, HttpRequest.POST("/drain", "").header(DrainTokenRule.TOKEN_HEADER, "")));
+    }
+  }
+}
@@ -0,0 +1,270 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.Presence;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.core.convert.value.MutableConvertibleValuesMap;
+import io.micronaut.core.type.Argument;
+import io.micronaut.serde.ObjectMapper;
+import io.micronaut.websocket.WebSocketSession;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/** EphemeralEventsTest */
+class EphemeralEventsTest {
+
+  private static final Duration WINDOW = Duration.ofMillis(500);
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private final ManualScheduler scheduler = new ManualScheduler();
+
+  private final ConversationSessions sessions = ConversationSessionsTest.newSessions();
+
+  private final LocalPresenceCounter counter = new LocalPresenceCounter();
+
+  private final EphemeralEvents events =
+      new EphemeralEvents(
+          sessions,
+          (id, message) -> Mono.empty(),
+          counter,
+          registry,
+          WINDOW,
+          Duration.ofSeconds(5),
+          5,
+          3,
+          scheduler);
+
+  /** An open session whose attributes are kept. */
+  @SuppressWarnings("unchecked")
+  static WebSocketSession openSession() {
+    var session = ConversationSessionsTest.openSession();
+    var attributes = new MutableConvertibleValuesMap<Object>();
+    when(session.put(anyString(), any()))
+        .thenAnswer(
+            invocation -> {
+              attributes.put(invocation.getArgument(0), invocation.getArgument(1));
+              return session;
+            });
+    when(session.get(anyString(), any(Class.class)))
+        .thenAnswer(
+            invocation -> {
+              Class<Object> type = invocation.getArgument(1);
+              return attributes.get(invocation.getArgument(0), type);
+            });
+    when(session.remove(anyString()))
+        .thenAnswer(
+            invocation -> {
+              attributes.remove(invocation.getArgument(0));
+              return session;
+            });
+    return session;
+  }
+
+  private WebSocketSession join(String username) {
+    var session = openSession();
+    sessions.add("room", session);
+    events.join("room", username, session).block();
+    return session;
+  }
+
+  private static Content typing(boolean typing) {
+    return new Content(EphemeralEvents.TYPING_MEDIA_TYPE, new byte[] {(byte) (typing ? '1' : '0')});
+  }
+
+  /** Presence batches sent to a session, oldest first. */
+  private static List<List<Presence>> received(WebSocketSession session) throws IOException {
+    var frames = ArgumentCaptor.forClass(Object.class);
+    verify(session, atLeastOnce()).sendAsync(frames.capture());
+
+    var batches = new ArrayList<List<Presence>>();
+    for (var frame : frames.getAllValues()) {
+      var content = (Content) frame;
+      assertEquals(EphemeralEvents.PRESENCE_MEDIA_TYPE, content.getMediaType());
+      batches.add(
+          ObjectMapper.getDefault()
+              .readValue(
+                  new String(content.getData(), StandardCharsets.UTF_8),
+                  Argument.listOf(Presence.class)));
+    }
+    return batches;
+  }
+
+  @Test
+  void should_send_online_members_on_join() throws IOException {
+    join("Alice");
+    events.accept("room", "Alice", openSession(), typing(true));
+
+    var bob = join("Bob");
+
+    var snapshot = received(bob).get(0);
+    assertEquals(2, snapshot.size());
+    assertEquals(new Presence("Alice", true, true), snapshot.get(0));
+    assertEquals(new Presence("Bob", true, false), snapshot.get(1));
+  }
+
+  @Test
+  void should_coalesce_typing_into_one_batch_per_window() throws IOException {
+    var alice = join("Alice");
+    var bob = join("Bob");
+    var carol = join("Carol");
+    scheduler.advanceTimeBy(WINDOW);
+    clearInvocations(alice, bob, carol);
+
+    for (int i = 0; i < 3; i++) {
+      events.accept("room", "Alice", alice, typing(true));
+    }
+    events.accept("room", "Bob", bob, typing(true));
+    scheduler.advanceTimeBy(WINDOW);
+
+    var batches = received(carol);
+    assertEquals(1, batches.size());
+    assertEquals(
+        List.of(new Presence("Alice", true, true), new Presence("Bob", true, true)),
+        batches.get(0));
+  }
+
+  @Test
+  void should_expire_typing_without_renewal() throws IOException {
+    var alice = join("Alice");
+    var bob = join("Bob");
+    events.accept("room", "Alice", alice, typing(true));
+    scheduler.advanceTimeBy(WINDOW);
+    clearInvocations(bob);
+
+    scheduler.advanceTimeBy(Duration.ofSeconds(6));
+
+    assertEquals(List.of(List.of(new Presence("Alice", true, false))), received(bob));
+  }
+
+  @Test
+  void should_rate_limit_each_session() {
+    var alice = join("Alice");
+
+    for (int i = 0; i < 5; i++) {
+      events.accept("room", "Alice", alice, typing(i % 2 == 0));
+    }
+
+    assertEquals(
+        3, registry.get("chat.ephemeral.events").tag("result", "accepted").counter().count());
+    assertEquals(
+        2, registry.get("chat.ephemeral.events").tag("result", "limited").counter().count());
+  }
+
+  @Test
+  void should_announce_offline_once_last_session_leaves() throws IOException {
+    var alice = join("Alice");
+    var aliceAgain = join("Alice");
+    var bob = join("Bob");
+    scheduler.advanceTimeBy(WINDOW);
+    clearInvocations(bob);
+
+    events.leave("room", "Alice", alice);
+    events.leave("room", "Alice", alice);
+    scheduler.advanceTimeBy(WINDOW);
+    verify(bob, never()).sendAsync(Mockito.any());
+
+    events.leave("room", "Alice", aliceAgain);
+    scheduler.advanceTimeBy(WINDOW);
+    assertEquals(List.of(List.of(new Presence("Alice", false, false))), received(bob));
+
+    events.leave("room", "Bob", bob);
+    scheduler.advanceTimeBy(WINDOW);
+    assertEquals(0, events.roomCount());
+  }
+
+  @Test
+  void should_count_out_a_session_closed_while_joining() {
+    var alice = openSession();
+    sessions.add("room", alice);
+    // Its close ran before it had joined.
+    events.leave("room", "Alice", alice);
+    when(alice.isOpen()).thenReturn(false);
+
+    events.join("room", "Alice", alice).block();
+    scheduler.advanceTimeBy(WINDOW);
+
+    assertEquals(List.of(), counter.online("room").block());
+    assertEquals(0, events.roomCount());
+  }
+
+  @Test
+  void should_stay_online_while_connected_to_another_node() {
+    counter.increment("room", "Alice").block();
+    var alice = join("Alice");
+    var bob = join("Bob");
+    scheduler.advanceTimeBy(WINDOW);
+    clearInvocations(bob);
+
+    events.leave("room", "Alice", alice);
+    scheduler.advanceTimeBy(WINDOW);
+
+    verify(bob, never()).sendAsync(Mockito.any());
+    assertEquals(List.of("Alice", "Bob"), counter.online("room").block());
+  }
+
+  /** Runs delayed tasks on the calling thread as a manual clock is advanced. */
+  static final class ManualScheduler implements Scheduler {
+
+    private record Task(long at, long order, Runnable task) {}
+
+    private final PriorityQueue<Task> tasks =
+        new PriorityQueue<>(Comparator.comparingLong(Task::at).thenComparingLong(Task::order));
+
+    private long now;
+
+    private long order;
+
+    @Override
+    public Disposable schedule(Runnable task) {
+      return schedule(task, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Disposable schedule(Runnable task, long delay, TimeUnit unit) {
+      tasks.add(new Task(now + unit.toNanos(delay), order++, task));
+      return () -> {};
+    }
+
+    @Override
+    public long now(TimeUnit unit) {
+      return unit.convert(now, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Worker createWorker() {
+      throw new UnsupportedOperationException();
+    }
+
+    void advanceTimeBy(Duration duration) {
+      var until = now + duration.toNanos();
+      while (!tasks.isEmpty() && tasks.peek().at() <= until) {
+        var task = tasks.poll();
+        now = task.at();
+        task.task().run();
+      }
+      now = until;
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import io.micronaut.context.BeanLocator;
+import io.micronaut.context.exceptions.ConfigurationException;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/** ExecutionSchedulerTest */
+class ExecutionSchedulerTest {
+
+  private static String thread(ExecutionScheduler execution) {
+    return execution.offload(Mono.fromCallable(() -> Thread.currentThread().getName())).block();
+  }
+
+  @Test
+  void should_run_in_place_on_event_loop() {
+    assertEquals(Thread.currentThread().getName(), thread(ExecutionScheduler.eventLoop()));
+  }
+
+  @Test
+  void should_offload_to_bounded_elastic() {
+    var execution =
+        new ExecutionScheduler(ExecutionScheduler.Mode.BOUNDED_ELASTIC, mock(BeanLocator.class));
+
+    assertTrue(thread(execution).startsWith("boundedElastic"));
+    assertEquals(3, execution.offload(Flux.range(0, 3)).collectList().block().size());
+  }
+
+  @Test
+  void should_offload_to_virtual_thread_executor() {
+    var executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "virtual-stand-in"));
+    try {
+      var execution = new ExecutionScheduler(ExecutionScheduler.Mode.VIRTUAL_THREADS, executor);
+      assertEquals("virtual-stand-in", thread(execution));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void should_reject_virtual_threads_without_executor() {
+    assertThrows(
+        ConfigurationException.class,
+        () ->
+            new ExecutionScheduler(
+                ExecutionScheduler.Mode.VIRTUAL_THREADS, mock(BeanLocator.class)));
+  }
+}
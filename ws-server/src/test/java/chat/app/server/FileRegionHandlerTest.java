@@ -0,0 +1,92 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import chat.app.server.models.Attachment;
+import chat.app.server.models.Conversation;
+import com.redis.testcontainers.RedisContainer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.runtime.server.EmbeddedServer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/** FileRegionHandlerTest: attachments uploaded and downloaded over HTTP. */
+@Testcontainers
+class FileRegionHandlerTest {
+
+  @Container
+  private static RedisContainer container =
+      new RedisContainer(RedisContainer.DEFAULT_IMAGE_NAME.withTag(RedisContainer.DEFAULT_TAG));
+
+  @TempDir Path directory;
+
+  @Test
+  void should_send_a_range_of_an_upload_over_the_request_size_limit() {
+    try (var server =
+            ApplicationContext.run(
+                EmbeddedServer.class,
+                Map.of(
+                    "micronaut.server.port", -1,
+                    "redis.uri", container.getRedisURI(),
+                    "micronaut.server.max-request-size", "1MB",
+                    "chat.attachments.directory", directory.toString(),
+                    "chat.attachments.max-size", "4MB"));
+        var client = HttpClient.create(server.getURL())) {
+      var context = server.getApplicationContext();
+      var users = context.getBean(UserStorage.class);
+      var alice = users.addUser("Alice").block();
+      var bob = users.addUser("Bob").block();
+      context
+          .getBean(ConversationStorage.class)
+          .createConversation(new Conversation("AB", List.of(alice, bob), List.of()))
+          .block();
+
+      var data = new byte[3_000_000];
+      new Random(1).nextBytes(data);
+      var attachment =
+          client
+              .toBlocking()
+              .retrieve(
+                  HttpRequest.POST("/conversations/AB/attachments?name=photo.png", data)
+                      .contentType(MediaType.IMAGE_PNG_TYPE)
+                      .basicAuth("Alice", "password"),
+                  Attachment.class);
+
+      var response =
+          client
+              .toBlocking()
+              .exchange(
+                  HttpRequest.GET("/conversations/AB/attachments/" + attachment.id())
+                      .header(HttpHeaders.RANGE, "bytes=1000000-1999999")
+                      .basicAuth("Bob", "password"),
+                  byte[].class);
+
+      assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatus());
+      assertArrayEquals(Arrays.copyOfRange(data, 1_000_000, 2_000_000), response.body());
+      assertFalse(response.getHeaders().contains(FileRegionHandler.REGION_HEADER));
+      assertEquals(
+          1_000_000,
+          context
+              .getBean(MeterRegistry.class)
+              .get("chat.attachments.sent")
+              .tag("transfer", "zero_copy")
+              .counter()
+              .count());
+    }
+  }
+}
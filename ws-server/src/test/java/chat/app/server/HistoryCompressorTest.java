@@ -0,0 +1,187 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.TextContent;
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.core.convert.value.ConvertibleMultiValues;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.websocket.WebSocketSession;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import org.junit.jupiter.api.Test;
+
+/** HistoryCompressorTest */
+class HistoryCompressorTest {
+
+  private static final ByteBufAllocator ALLOCATOR = ByteBufAllocator.DEFAULT;
+
+  private static final User USER = new User("Alice");
+
+  private static final String[] WORDS = {
+    "hey", "are", "we", "still", "on", "for", "lunch", "tomorrow", "sure", "see", "you", "at",
+    "noon", "thanks", "great", "meeting", "later", "ok", "sounds", "good"
+  };
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  /** A history frame of {@code size} chat-like text messages. */
+  private static ByteBuf frame(Random random, int size) {
+    var first = random.nextInt(1000);
+    var messages = new ArrayList<Message>();
+    for (var i = 0; i < size; i++) {
+      var text = new StringBuilder();
+      for (var words = 3 + random.nextInt(8); words > 0; words--) {
+        text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      }
+      messages.add(new Message(first + i, USER, TextContent.of(text.toString())));
+    }
+    return BinaryFrames.encode(ALLOCATOR, messages);
+  }
+
+  private static byte[] inflate(ByteBuf compressed, byte[] dictionary, long dictionaryId)
+      throws DataFormatException {
+    assertEquals(HistoryCompressor.MAGIC, compressed.readByte());
+    var inflated = new byte[compressed.readInt()];
+    var inflater = new Inflater();
+    inflater.setInput(ByteBufUtil.getBytes(compressed));
+
+    var length = inflater.inflate(inflated);
+    if (inflater.needsDictionary()) {
+      assertEquals(dictionaryId, Integer.toUnsignedLong(inflater.getAdler()));
+      inflater.setDictionary(dictionary);
+      length += inflater.inflate(inflated, length, inflated.length - length);
+    }
+    assertTrue(inflater.finished());
+    assertEquals(inflated.length, length);
+    return inflated;
+  }
+
+  @Test
+  void should_compress_frames_that_inflate_back() throws DataFormatException {
+    var compressor = new HistoryCompressor(true, 6, 256, (byte[]) null, registry);
+    var frame = frame(new Random(1), 100);
+    var raw = ByteBufUtil.getBytes(frame);
+
+    var compressed = compressor.compress(ALLOCATOR, frame);
+
+    assertEquals(0, frame.refCnt());
+    assertTrue(compressed.readableBytes() < raw.length / 2, compressed.toString());
+    assertArrayEquals(raw, inflate(compressed, null, 0));
+    assertEquals(
+        raw.length,
+        registry.get("chat.compression.bytes").tag("stage", "raw").counter().count());
+    compressed.release();
+  }
+
+  @Test
+  void should_send_small_frames_as_they_are() {
+    var compressor = new HistoryCompressor(true, 6, 4096, (byte[]) null, registry);
+    var frame = frame(new Random(2), 3);
+
+    assertSame(frame, compressor.compress(ALLOCATOR, frame));
+    assertEquals(1, frame.refCnt());
+    assertEquals(1, registry.get("chat.compression.skipped").counter().count());
+    frame.release();
+  }
+
+  @Test
+  void should_train_a_dictionary_that_shrinks_small_batches() throws DataFormatException {
+    var random = new Random(3);
+    var samples = new ArrayList<byte[]>();
+    for (var i = 0; i < 200; i++) {
+      var sample = frame(random, 10);
+      samples.add(ByteBufUtil.getBytes(sample));
+      sample.release();
+    }
+    var dictionary = HistoryCompressor.train(samples, 4096);
+    assertTrue(dictionary.length > 0 && dictionary.length <= 4096);
+
+    var plain = new HistoryCompressor(true, 6, 0, (byte[]) null, registry);
+    var trained = new HistoryCompressor(true, 6, 0, dictionary, registry);
+    var frame = frame(random, 10);
+    var raw = ByteBufUtil.getBytes(frame);
+
+    var withoutDictionary = plain.compress(ALLOCATOR, frame.retainedDuplicate());
+    var withDictionary = trained.compress(ALLOCATOR, frame);
+
+    assertTrue(
+        withDictionary.readableBytes() < withoutDictionary.readableBytes(),
+        withDictionary.readableBytes() + " >= " + withoutDictionary.readableBytes());
+    assertArrayEquals(raw, inflate(withDictionary, dictionary, trained.dictionaryId()));
+    withoutDictionary.release();
+    withDictionary.release();
+  }
+
+  @Test
+  void should_leave_history_to_permessage_deflate_once_negotiated() {
+    var session = mock(WebSocketSession.class);
+    when(session.getSubprotocol()).thenReturn(Optional.of(BinaryFrames.SUBPROTOCOL));
+    when(session.getRequestParameters())
+        .thenReturn(
+            ConvertibleMultiValues.of(
+                Map.of(HistoryCompressor.PARAMETER, List.of(HistoryCompressor.DEFLATE))));
+    var plain = HttpRequest.GET("/ws/chat/AB");
+    var offering =
+        HttpRequest.GET("/ws/chat/AB")
+            .header(HttpHeaderNames.SEC_WEBSOCKET_EXTENSIONS, "permessage-deflate");
+
+    var negotiating =
+        new HistoryCompressor(
+            true,
+            6,
+            0,
+            (byte[]) null,
+            1,
+            new WebSocketCompression(true, 6, 0, 15, false, false, false, registry),
+            registry);
+    var declining =
+        new HistoryCompressor(
+            true,
+            6,
+            0,
+            (byte[]) null,
+            1,
+            new WebSocketCompression(false, 6, 0, 15, false, false, false, registry),
+            registry);
+
+    assertTrue(negotiating.accepts(session, plain));
+    assertFalse(negotiating.accepts(session, offering));
+    assertTrue(declining.accepts(session, offering));
+  }
+
+  @Test
+  void should_compress_with_more_deflaters_than_pooled_and_after_close()
+      throws DataFormatException {
+    var compressor = new HistoryCompressor(true, 6, 0, (byte[]) null, 1, null, registry);
+    var random = new Random(4);
+
+    for (var round = 0; round < 2; round++) {
+      var frames = List.of(frame(random, 20), frame(random, 20), frame(random, 20));
+      for (var frame : frames) {
+        var raw = ByteBufUtil.getBytes(frame);
+        var compressed = compressor.compress(ALLOCATOR, frame);
+        assertArrayEquals(raw, inflate(compressed, null, 0));
+        compressed.release();
+      }
+      compressor.close();
+    }
+  }
+}
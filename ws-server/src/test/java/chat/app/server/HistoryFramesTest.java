@@ -0,0 +1,114 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.HistoryBatch;
+import chat.app.server.models.SequencedContent;
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+/** HistoryFramesTest */
+class HistoryFramesTest {
+
+  private static Message message(String user, String text) {
+    return new Message(new User(user), Message.TextContent.of(text));
+  }
+
+  @Test
+  void should_encode_stored_messages_in_batches() {
+    var storage = new ConversationStorageImpl();
+    var messages = new ArrayList<Message>();
+    for (int i = 0; i < 5; i++) {
+      messages.add(message("Alice", "message " + i));
+    }
+    storage
+        .createConversation(
+            new Conversation("AB", List.of(new User("Alice"), new User("Bob")), messages))
+        .block();
+
+    var frames = new HistoryFrames(storage).frames("AB", 1, 3).collectList().block();
+    var decoded = new ArrayList<String>();
+    var last = new ArrayList<Long>();
+    for (var frame : frames) {
+      last.add(BinaryFrames.lastSequence(frame));
+      while (frame.isReadable()) {
+        decoded.add(Message.TextContent.from(BinaryFrames.decode(frame)));
+      }
+      frame.release();
+    }
+
+    assertEquals(List.of(3L, 4L), last);
+    assertEquals(List.of("message 1", "message 2", "message 3", "message 4"), decoded);
+  }
+
+  @Test
+  void should_replay_a_restored_log_with_the_sequences_of_its_messages() {
+    var storage = new ConversationStorageImpl();
+    var restored = new ArrayList<Message>();
+    for (long sequence : new long[] {0, 1, 4, 5, 9}) {
+      restored.add(message("Alice", "message " + sequence).withSequence(sequence));
+    }
+    storage
+        .restoreConversation(
+            new Conversation("AB", List.of(new User("Alice"), new User("Bob")), restored))
+        .block();
+
+    var frames = new HistoryFrames(storage).frames("AB", 1, 3).collectList().block();
+    var sequences = new ArrayList<Long>();
+    var last = new ArrayList<Long>();
+    for (var frame : frames) {
+      last.add(BinaryFrames.lastSequence(frame));
+      while (frame.isReadable()) {
+        sequences.add(frame.getLong(frame.readerIndex() + 2));
+        BinaryFrames.decode(frame);
+      }
+      frame.release();
+    }
+    var batches =
+        storage
+            .getMessages("AB", 1)
+            .buffer(3)
+            .map(HistoryBatch::of)
+            .collectList()
+            .block();
+
+    assertEquals(List.of(1L, 4L, 5L, 9L), sequences);
+    assertEquals(List.of(5L, 9L), last);
+    assertEquals(
+        List.of(1L, 4L, 5L, 9L),
+        batches.stream()
+            .flatMap(batch -> batch.messages().stream())
+            .map(SequencedContent::sequence)
+            .toList());
+    assertEquals(List.of(5L, 9L), batches.stream().map(HistoryBatch::lastSequence).toList());
+  }
+
+  @Test
+  void should_take_frames_from_a_decorated_frame_source() {
+    var source = mock(SegmentConversationStorage.class);
+    var frame = Unpooled.buffer();
+    when(source.frames(anyString(), anyLong(), anyInt()))
+        .thenReturn(Flux.just(frame));
+    var storage = new MeteredConversationStorage(source, new SimpleMeterRegistry());
+
+    var frames = new HistoryFrames(storage).frames("AB", 0, 10).collectList().block();
+
+    assertEquals(List.of(frame), frames);
+    verify(source).frames("AB", 0, 10);
+    verify(source, never()).getMessages(anyString(), anyLong());
+  }
+}
@@ -0,0 +1,211 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import chat.app.server.EphemeralEventsTest.ManualScheduler;
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.Conversation.Message.TextContent;
+import chat.app.server.models.InboxEntry;
+import chat.app.server.models.InboxPage;
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/** InboxControllerTest */
+class InboxControllerTest {
+
+  private static final User ALICE = new User("Alice");
+
+  private static final User BOB = new User("Bob");
+
+  private static final User CAROL = new User("Carol");
+
+  private final AtomicLong clock = new AtomicLong();
+
+  private final InboxStorage inbox = new InboxStorageImpl();
+
+  private final ConversationStorage storage =
+      new IndexedConversationStorage(
+          new ConversationStorageImpl(),
+          inbox,
+          new SearchIndex(new SimpleMeterRegistry()),
+          10,
+          clock::get,
+          Schedulers.immediate(),
+          100,
+          new SimpleMeterRegistry());
+
+  private final ManualScheduler scheduler = new ManualScheduler();
+
+  private final ConversationSessions sessions = ConversationSessionsTest.newSessions();
+
+  private final ReadReceipts receipts =
+      new ReadReceipts(
+          sessions,
+          (id, message) -> Mono.empty(),
+          new ReceiptStorageImpl(),
+          storage,
+          new SimpleMeterRegistry(),
+          Duration.ofSeconds(1),
+          scheduler);
+
+  private final InboxController controller = new InboxController(inbox, receipts, 2);
+
+  private void create(String id, User... members) {
+    clock.incrementAndGet();
+    storage.createConversation(new Conversation(id, List.of(members), List.of())).block();
+  }
+
+  private void push(String id, User user, Content content) {
+    clock.incrementAndGet();
+    storage.pushMessage(id, new Message(user, content)).block();
+  }
+
+  private InboxPage list(User user, int offset, int limit) {
+    return controller.list(user::username, offset, limit).block();
+  }
+
+  private static List<String> ids(InboxPage page) {
+    return page.conversations().stream().map(InboxEntry::conversationId).toList();
+  }
+
+  @Test
+  void should_list_conversations_by_last_activity() {
+    create("AB", ALICE, BOB);
+    create("AC", ALICE, CAROL);
+    create("BC", BOB, CAROL);
+    push("AB", BOB, TextContent.of("Hi"));
+
+    assertEquals(List.of("AB", "AC"), ids(list(ALICE, 0, 20)));
+    assertEquals(List.of("AB", "BC"), ids(list(BOB, 0, 20)));
+    assertEquals(List.of("BC", "AC"), ids(list(CAROL, 0, 20)));
+    assertEquals(4, list(ALICE, 0, 20).conversations().get(0).lastActivity());
+  }
+
+  @Test
+  void should_page_with_offsets() {
+    create("AB", ALICE, BOB);
+    create("AC", ALICE, CAROL);
+    create("ABC", ALICE, BOB, CAROL);
+
+    var first = list(ALICE, 0, 1);
+    assertEquals(List.of("ABC"), ids(first));
+    assertEquals(1, first.next());
+
+    var capped = list(ALICE, first.next(), 20);
+    assertEquals(List.of("AC", "AB"), ids(capped));
+    assertNull(capped.next());
+  }
+
+  @Test
+  void should_preview_last_message_and_count_unread() {
+    create("AB", ALICE, BOB);
+    for (int i = 0; i < 3; i++) {
+      push("AB", ALICE, TextContent.of("message number " + i));
+    }
+
+    var session = EphemeralEventsTest.openSession();
+    var members = storage.getMembers("AB").block();
+    receipts.join("AB", members, "Bob", session).block();
+    scheduler.advanceTimeBy(Duration.ofSeconds(1));
+    receipts
+        .accept(
+            "AB",
+            "Bob",
+            session,
+            new Content(ReadReceipts.READ_MEDIA_TYPE, "0".getBytes(StandardCharsets.US_ASCII)))
+        .block();
+
+    var bob = list(BOB, 0, 20).conversations().get(0);
+    assertEquals(new InboxEntry("AB", 4, 2, "Alice", "text/plain", "message nu", 2), bob);
+    assertEquals(3, list(ALICE, 0, 20).conversations().get(0).unread());
+
+    push("AB", BOB, new Content("image/png", new byte[] {1, 2, 3}));
+    var image = list(ALICE, 0, 20).conversations().get(0);
+    assertEquals("image/png", image.mediaType());
+    assertNull(image.preview());
+  }
+
+  @Test
+  void should_index_in_the_background_and_drop_beyond_max_pending() {
+    var registry = new SimpleMeterRegistry();
+    var tasks = new ArrayList<Runnable>();
+    var background =
+        new IndexedConversationStorage(
+            new ConversationStorageImpl(),
+            inbox,
+            new SearchIndex(registry),
+            10,
+            clock::get,
+            Schedulers.fromExecutor(tasks::add),
+            2,
+            registry);
+    background.createConversation(new Conversation("AB", List.of(ALICE, BOB), List.of())).block();
+
+    for (int i = 0; i < 3; i++) {
+      var stored = background.pushMessage("AB", new Message(ALICE, TextContent.of("m" + i)));
+      assertEquals(i, stored.block().sequence());
+    }
+    assertNull(list(BOB, 0, 20).conversations().get(0).preview());
+    assertEquals(2, registry.get("chat.index.pending").gauge().value());
+    assertEquals(1, registry.get("chat.index.dropped").counter().count());
+
+    tasks.forEach(Runnable::run);
+
+    assertEquals("m1", list(BOB, 0, 20).conversations().get(0).preview());
+    assertEquals(0, registry.get("chat.index.pending").gauge().value());
+  }
+
+  @Test
+  void should_keep_messages_beyond_max_pending_searchable() {
+    var registry = new SimpleMeterRegistry();
+    var search = new SearchIndex(registry);
+    var background =
+        new IndexedConversationStorage(
+            new ConversationStorageImpl(),
+            inbox,
+            search,
+            10,
+            clock::get,
+            Schedulers.fromExecutor(task -> {}),
+            1,
+            registry);
+    var hello = new Message(ALICE, TextContent.of("hello"));
+    background
+        .createConversation(new Conversation("AB", List.of(ALICE, BOB), List.of(hello)))
+        .block();
+    background.createConversation(new Conversation("AC", List.of(ALICE, CAROL), List.of())).block();
+
+    background.pushMessage("AB", new Message(BOB, TextContent.of("queued"))).block();
+    background.pushMessage("AB", new Message(BOB, TextContent.of("shed"))).block();
+    background.pushMessage("AC", new Message(CAROL, TextContent.of("unknown"))).block();
+
+    var hits = search.search("Alice", "shed", Integer.MAX_VALUE, 10).hits();
+    assertEquals(List.of(2L), hits.stream().map(SearchIndex.Hit::sequence).toList());
+    assertEquals(List.of(), search.search("Alice", "unknown", Integer.MAX_VALUE, 10).hits());
+    assertEquals(2, registry.get("chat.index.dropped").counter().count());
+    assertEquals(1, registry.get("chat.search.dropped").counter().count());
+  }
+
+  @Test
+  void should_ignore_updates_arriving_out_of_order() {
+    var newer = new Message(5, ALICE, TextContent.of("newer"));
+    var older = new Message(3, BOB, TextContent.of("older"));
+    inbox.record("AB", List.of(ALICE, BOB), newer, 20).block();
+    inbox.record("AB", List.of(ALICE, BOB), older, 10).block();
+
+    var entry = inbox.getConversations("Bob", 0, 10).blockFirst();
+    assertEquals(20, entry.activity());
+    assertEquals(newer, entry.last());
+  }
+}
@@ -0,0 +1,33 @@
+package chat.app.server;
+
+import chat.app.server.models.Conversation;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.websocket.annotation.ClientWebSocket;
+import io.micronaut.websocket.annotation.OnMessage;
+import java.util.function.Consumer;
+import org.reactivestreams.Publisher;
+
+/**
+ * LoadClient
+ *
+ * <p>Connection opened by {@link ChatLoadTest}. Unlike {@link UserClient} it keeps no history and
+ * hands every received message to a listener, and sends without blocking.
+ */
+@Requires(property = "spec.name", value = "ChatLoadTest")
+@ClientWebSocket("/ws/chat/{id}")
+public abstract class LoadClient implements AutoCloseable {
+
+    private volatile Consumer<Conversation.Message.Content> listener = content -> {};
+
+    void onReceive(Consumer<Conversation.Message.Content> listener) {
+        this.listener = listener;
+    }
+
+    @OnMessage
+    void onMessage(Conversation.Message.Content content) {
+        listener.accept(content);
+    }
+
+    abstract Publisher<Conversation.Message.Content> send(@NonNull Conversation.Message.Content message);
+}
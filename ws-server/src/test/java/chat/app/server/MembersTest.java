@@ -0,0 +1,58 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Members;
+import chat.app.server.models.User;
+import java.util.Collection;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/** MembersTest */
+class MembersTest {
+
+  private final List<User> users = List.of(new User("Alice"), new User("Bob"), new User("Carol"));
+
+  @Test
+  void should_behave_like_the_list_it_indexes() {
+    var members = Members.of(users);
+
+    assertEquals(users, members);
+    assertEquals(users.hashCode(), members.hashCode());
+    assertEquals(2, members.indexOf(new User("Carol")));
+    assertEquals(-1, members.indexOf(new User("Mallory")));
+    assertEquals(-1, members.indexOf("Carol"));
+  }
+
+  @Test
+  void should_check_membership_by_username() {
+    var members = Members.of(users);
+
+    assertTrue(members.contains("Bob"));
+    assertTrue(members.contains(new User("Bob")));
+    assertTrue(((Collection<?>) members).contains("Bob"));
+    assertFalse(members.contains("Mallory"));
+    assertFalse(((Collection<?>) members).contains("Mallory"));
+  }
+
+  @Test
+  void should_index_conversation_users_once() {
+    var conversation = new Conversation("ABC", users, List.of());
+    var copy = new Conversation("ABC", conversation.users(), List.of());
+
+    assertSame(conversation.members(), copy.members());
+  }
+
+  @Test
+  void should_look_up_members_without_messages() {
+    var storage = new ConversationStorageImpl();
+    storage.createConversation(new Conversation("ABC", users, List.of())).block();
+
+    assertTrue(storage.getMembers("ABC").block().contains("Carol"));
+    assertTrue(storage.getMembers("missing").blockOptional().isEmpty());
+  }
+}
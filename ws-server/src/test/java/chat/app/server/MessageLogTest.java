@@ -0,0 +1,112 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.User;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/** MessageLogTest */
+class MessageLogTest {
+
+  private static Message message(String user, String text) {
+    return new Message(new User(user), Message.TextContent.of(text));
+  }
+
+  @Test
+  void should_keep_snapshot_stable_after_appends() {
+    var log = new MessageLog();
+    log.append(message("alice", "one"));
+
+    var snapshot = log.snapshot();
+    for (int i = 0; i < MessageLog.CHUNK_SIZE * 3; i++) {
+      log.append(message("bob", "more"));
+    }
+
+    assertEquals(1, snapshot.size());
+    assertEquals(MessageLog.CHUNK_SIZE * 3 + 1, log.snapshot().size());
+  }
+
+  @Test
+  void should_keep_restored_sequences_and_continue_after_them() {
+    var log =
+        new MessageLog(
+            List.of(
+                message("alice", "one").withSequence(0),
+                message("bob", "three").withSequence(2),
+                message("alice", "four").withSequence(3)));
+
+    assertEquals(4, log.nextSequence());
+    assertEquals(4, log.append(message("bob", "five")).sequence());
+    assertEquals(List.of(2L, 3L, 4L), sequences(log.from(1)));
+    assertEquals(List.of(3L, 4L), sequences(log.from(3)));
+    assertEquals(List.of(4L), sequences(log.from(4)));
+    assertEquals(List.of(), sequences(log.from(5)));
+    assertEquals(List.of(0L, 2L, 3L, 4L), sequences(log.from(0)));
+  }
+
+  @Test
+  void should_reject_restored_messages_out_of_order() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new MessageLog(
+                List.of(
+                    message("alice", "one").withSequence(1),
+                    message("bob", "two").withSequence(0))));
+  }
+
+  private static List<Long> sequences(List<Message> messages) {
+    return messages.stream().map(Message::sequence).toList();
+  }
+
+  @Test
+  void should_publish_gap_free_prefix_under_concurrent_appends()
+      throws InterruptedException, ExecutionException {
+    var log = new MessageLog();
+    var threads = 8;
+    var perThread = MessageLog.CHUNK_SIZE * 4;
+    var executor = Executors.newFixedThreadPool(threads);
+    var start = new CountDownLatch(1);
+    var appenders = new ArrayList<Future<?>>();
+
+    for (int t = 0; t < threads; t++) {
+      var user = "user-" + t;
+      appenders.add(
+          executor.submit(
+              () -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                  log.append(message(user, Integer.toString(i)));
+                  if (i % 256 == 0) {
+                    log.snapshot().forEach(m -> assertNotNull(m));
+                  }
+                }
+                return null;
+              }));
+    }
+
+    start.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    // Rethrows what failed in an appender, assertions included.
+    for (var appender : appenders) {
+      appender.get();
+    }
+
+    var snapshot = log.snapshot();
+    assertEquals(threads * perThread, snapshot.size());
+    assertEquals(threads * perThread, new HashSet<>(snapshot).size());
+  }
+}
@@ -0,0 +1,75 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+/** MeteredConversationStorageTest */
+class MeteredConversationStorageTest {
+
+  private final MockClock clock = new MockClock();
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock);
+
+  private final ConversationStorageImpl backend =
+      new ConversationStorageImpl() {
+        @Override
+        public Mono<Message> pushMessage(String conversationId, Message message) {
+          return super.pushMessage(conversationId, message)
+              .doOnNext(stored -> clock.add(Duration.ofMillis(20)));
+        }
+      };
+
+  private double seconds(String operation) {
+    return registry
+        .get("chat.storage.operation")
+        .tag("storage", "conversation")
+        .tag("operation", operation)
+        .timer()
+        .totalTime(TimeUnit.SECONDS);
+  }
+
+  @Test
+  void should_time_operations_from_subscription() {
+    var storage = new MeteredConversationStorage(backend, registry);
+    storage
+        .createConversation(new Conversation("AB", List.of(new User("Alice")), List.of()))
+        .block();
+
+    var push = storage.pushMessage("AB", new Message(new User("Alice"), Message.TextContent.of("Hi")));
+    clock.add(Duration.ofMillis(50));
+    assertEquals(0, seconds("push_message"));
+
+    push.block();
+    assertEquals(0.02, seconds("push_message"));
+    assertEquals(1, storage.getMessages("AB", 0).count().block());
+    assertEquals(
+        1,
+        registry
+            .get("chat.storage.operation")
+            .tag("operation", "get_messages")
+            .timer()
+            .count());
+  }
+
+  @Test
+  void should_unwrap_every_decorator_layer() {
+    var cached = new CachingConversationStorage(backend, registry, 1 << 20, 16);
+    var metered = new MeteredConversationStorage(cached, registry);
+
+    assertSame(backend, Delegating.unwrap(metered));
+    assertSame(backend, Delegating.unwrap(cached));
+    assertSame(backend, Delegating.unwrap(backend));
+  }
+}
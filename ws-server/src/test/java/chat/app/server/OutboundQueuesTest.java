@@ -0,0 +1,202 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import chat.app.server.models.Conversation.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/** OutboundQueuesTest */
+class OutboundQueuesTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private final List<Object> written = new ArrayList<>();
+
+  private final List<CompletableFuture<Object>> pending = new ArrayList<>();
+
+  private OutboundQueues queues(int capacity, OutboundQueues.OverflowPolicy policy) {
+    return new OutboundQueues(registry, capacity, 64, policy, Duration.ofMillis(200));
+  }
+
+  /** A session whose writes only complete when the test says so. */
+  private WebSocketSession stalledSession() {
+    var session = mock(WebSocketSession.class);
+    when(session.isOpen()).thenReturn(true);
+    when(session.isWritable()).thenReturn(true);
+    when(session.sendAsync(Mockito.any()))
+        .thenAnswer(
+            invocation -> {
+              written.add(invocation.getArgument(0));
+              var write = new CompletableFuture<Object>();
+              pending.add(write);
+              return write;
+            });
+    return session;
+  }
+
+  private void completeWrite() {
+    pending.remove(0).complete(null);
+  }
+
+  private static ByteBuf frame(int value) {
+    return Unpooled.buffer(1).writeByte(value);
+  }
+
+  private double evictions(String reason) {
+    return registry.counter("chat.session.outbound.evictions", "reason", reason).count();
+  }
+
+  @Test
+  void should_coalesce_binary_frames_queued_behind_a_write() {
+    var queues = queues(16, OutboundQueues.OverflowPolicy.DROP_OLDEST);
+    var session = stalledSession();
+
+    for (int i = 0; i < 4; i++) {
+      queues.offer(session, frame(i)).block();
+    }
+    assertEquals(1, written.size());
+    assertEquals(3, queues.depth(session));
+
+    completeWrite();
+
+    assertEquals(2, written.size());
+    var batch = assertInstanceOf(CompositeByteBuf.class, written.get(1));
+    assertEquals(3, batch.numComponents());
+    assertEquals(1, batch.getByte(0));
+    assertEquals(0, queues.depth(session));
+  }
+
+  @Test
+  void should_drop_oldest_frame_when_full() {
+    var queues = queues(2, OutboundQueues.OverflowPolicy.DROP_OLDEST);
+    var session = stalledSession();
+    var frames = List.of(frame(0), frame(1), frame(2), frame(3));
+
+    frames.forEach(f -> queues.offer(session, f).block());
+
+    assertEquals(2, queues.depth(session));
+    assertEquals(0, frames.get(1).refCnt());
+    assertEquals(1, evictions("dropped"));
+    verify(session, never()).close(Mockito.any());
+  }
+
+  @Test
+  void should_report_messages_written_through_short_of_a_dropped_one() {
+    var queues = queues(2, OutboundQueues.OverflowPolicy.DROP_OLDEST);
+    var session = stalledSession();
+
+    queues.offer(session, frame(1), 1).block();
+    assertEquals(Message.UNSEQUENCED, queues.writtenThrough(session));
+    completeWrite();
+    assertEquals(1, queues.writtenThrough(session));
+
+    for (var sequence = 2; sequence <= 5; sequence++) {
+      queues.offer(session, frame(sequence), sequence).block();
+    }
+    assertEquals(1, evictions("dropped"));
+    completeWrite();
+    assertEquals(2, queues.writtenThrough(session));
+    completeWrite();
+    assertEquals(2, queues.writtenThrough(session));
+  }
+
+  @Test
+  void should_not_queue_for_a_session_once_removed() {
+    var queues = queues(16, OutboundQueues.OverflowPolicy.DROP_OLDEST);
+    var session = stalledSession();
+    queues.offer(session, frame(0)).block();
+    queues.remove(session);
+    when(session.isOpen()).thenReturn(false);
+
+    var message = frame(1);
+    var ephemeral = frame(2);
+    queues.hold(session);
+    queues.offer(session, message).block();
+    queues.offerEphemeral(session, ephemeral);
+
+    assertEquals(0, message.refCnt());
+    assertEquals(0, ephemeral.refCnt());
+    assertEquals(0, registry.get("chat.session.outbound.sessions").gauge().value());
+  }
+
+  @Test
+  void should_evict_ephemeral_frames_before_messages() {
+    var queues = queues(2, OutboundQueues.OverflowPolicy.DISCONNECT);
+    var session = stalledSession();
+    var presence = List.of(frame(10), frame(11));
+
+    queues.offer(session, frame(0), 0).block();
+    queues.offerEphemeral(session, presence.get(0));
+    queues.offer(session, frame(1), 1).block();
+    queues.offer(session, frame(2), 2).block();
+    queues.offerEphemeral(session, presence.get(1));
+
+    assertEquals(2, queues.depth(session));
+    assertEquals(0, presence.get(0).refCnt());
+    assertEquals(0, presence.get(1).refCnt());
+    assertEquals(2, evictions("ephemeral"));
+    verify(session, never()).close(Mockito.any());
+  }
+
+  @Test
+  void should_disconnect_slow_consumer_when_full() {
+    var queues = queues(1, OutboundQueues.OverflowPolicy.DISCONNECT);
+    var session = stalledSession();
+
+    for (int i = 0; i < 3; i++) {
+      queues.offer(session, frame(i)).block();
+    }
+
+    verify(session).close(CloseReason.TRY_AGAIN_LATER);
+    assertEquals(1, evictions("disconnected"));
+    assertEquals(0, queues.depth(session));
+  }
+
+  @Test
+  void should_park_sender_until_there_is_room() {
+    var queues = queues(1, OutboundQueues.OverflowPolicy.PARK);
+    var session = stalledSession();
+    queues.offer(session, frame(0)).block();
+    queues.offer(session, frame(1)).block();
+
+    var parked = queues.offer(session, frame(2)).toFuture();
+    assertFalse(parked.isDone());
+
+    completeWrite();
+
+    assertTrue(parked.isDone());
+    assertEquals(2, written.size());
+    verify(session, never()).close(Mockito.any());
+  }
+
+  @Test
+  void should_disconnect_when_parked_too_long() {
+    var queues = queues(1, OutboundQueues.OverflowPolicy.PARK);
+    var session = stalledSession();
+    queues.offer(session, frame(0)).block();
+    queues.offer(session, frame(1)).block();
+
+    queues.offer(session, frame(2)).block(Duration.ofSeconds(5));
+
+    verify(session).close(CloseReason.TRY_AGAIN_LATER);
+    assertEquals(1, evictions("disconnected"));
+  }
+}
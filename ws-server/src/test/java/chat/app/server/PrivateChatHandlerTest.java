@@ -1,8 +1,11 @@
 package chat.app.server;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 import chat.app.server.models.Conversation;
 import chat.app.server.models.Conversation.Message;
 import com.redis.testcontainers.RedisContainer;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.micronaut.context.annotation.Property;
 import io.micronaut.http.HttpRequest;
 import io.micronaut.http.uri.UriBuilder;
@@ -22,6 +25,8 @@ import reactor.core.publisher.Flux;
 
 /** PrivateChatHandlerTest */
 @Property(name = "spec.name", value = "PrivateChatHandlerTest")
+@Property(name = "chat.admission.message-rate", value = "0.1")
+@Property(name = "chat.admission.message-burst", value = "2")
 @MicronautTest
 public class PrivateChatHandlerTest {
 
@@ -33,6 +38,8 @@ public class PrivateChatHandlerTest {
 
   @Inject WebSocketClient webSocketClient;
 
+  @Inject MeterRegistry registry;
+
   @Container
   public RedisContainer redis =
       new RedisContainer(RedisContainer.DEFAULT_IMAGE_NAME.withTag(RedisContainer.DEFAULT_TAG))
@@ -86,10 +93,43 @@ public class PrivateChatHandlerTest {
     bobClient.send(Message.TextContent.of("Hello Alice!"));
 
     Awaitility.waitAtMost(Duration.ofSeconds(60))
-        .until(
-            () -> {
-              return bobClient.getMessagesChronologically().size() == 2
-                  && aliceClient.getMessagesChronologically().size() == 2;
-            });
+        .until(() -> texts(bobClient) == 2 && texts(aliceClient) == 2);
+  }
+
+  /** Messages a client received, leaving out presence. */
+  static long texts(UserClient client) {
+    return client.getMessagesChronologically().stream()
+        .filter(content -> Message.TextContent.MEDIA_TYPE.equals(content.getMediaType()))
+        .count();
+  }
+
+  @Test
+  void should_count_messages_over_the_rate_apart_from_those_received() {
+    var carolCredentials = new BasicAuthCredentials("Carol", "password");
+    var daveCredentials = new BasicAuthCredentials("Dave", "password");
+
+    var carol = userStorage.addUser(carolCredentials.username()).block();
+    var dave = userStorage.addUser(daveCredentials.username()).block();
+
+    var conversation =
+        conversationStorage
+            .createConversation(new Conversation("CD", List.of(carol, dave), List.of()))
+            .block();
+
+    var received = registry.get("chat.messages").tag("direction", "in").counter();
+    var limited = registry.get("chat.messages.limited").counter();
+    var receivedBefore = received.count();
+    var limitedBefore = limited.count();
+
+    var carolClient = getUserClient(conversation.id(), carolCredentials);
+    for (var i = 0; i < 4; i++) {
+      carolClient.send(Message.TextContent.of("Message " + i));
+    }
+
+    Awaitility.waitAtMost(Duration.ofSeconds(60))
+        .until(() -> limited.count() - limitedBefore == 2);
+    Awaitility.waitAtMost(Duration.ofSeconds(60))
+        .until(() -> conversationStorage.getConversation("CD").block().messages().size() == 2);
+    assertEquals(2, received.count() - receivedBefore);
   }
 }
@@ -0,0 +1,41 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.redis.testcontainers.RedisContainer;
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.runtime.server.EmbeddedServer;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/** PrometheusEndpointTest */
+@Testcontainers
+class PrometheusEndpointTest {
+
+  @Container
+  private static RedisContainer container =
+      new RedisContainer(RedisContainer.DEFAULT_IMAGE_NAME.withTag(RedisContainer.DEFAULT_TAG));
+
+  @Test
+  void should_scrape_chat_metrics_without_authentication() {
+    try (var server =
+            ApplicationContext.run(
+                EmbeddedServer.class,
+                Map.of(
+                    "micronaut.server.port", -1,
+                    "redis.uri", container.getRedisURI(),
+                    "endpoints.prometheus.sensitive", false));
+        var client = HttpClient.create(server.getURL())) {
+      server.getApplicationContext().getBean(UserStorage.class).addUser("prometheus").block();
+
+      var body = client.toBlocking().retrieve("/prometheus");
+
+      assertTrue(body.contains("chat_storage_operation_seconds_bucket"));
+      assertTrue(body.contains("chat_storage_operation_seconds_count{operation=\"add_user\""));
+      assertTrue(body.contains("chat_auth_total"));
+    }
+  }
+}
@@ -0,0 +1,207 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import chat.app.server.EphemeralEventsTest.ManualScheduler;
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.Conversation.Message.TextContent;
+import chat.app.server.models.Members;
+import chat.app.server.models.Receipt;
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.core.type.Argument;
+import io.micronaut.serde.ObjectMapper;
+import io.micronaut.websocket.WebSocketSession;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import reactor.core.publisher.Mono;
+
+/** ReadReceiptsTest */
+class ReadReceiptsTest {
+
+  private static final Duration INTERVAL = Duration.ofSeconds(1);
+
+  private static final Members MEMBERS =
+      Members.of(List.of(new User("Alice"), new User("Bob"), new User("Carol")));
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private final ManualScheduler scheduler = new ManualScheduler();
+
+  private final ConversationSessions sessions = ConversationSessionsTest.newSessions();
+
+  private final ReceiptStorage storage = new ReceiptStorageImpl();
+
+  private final ConversationStorage conversations = spy(new ConversationStorageImpl());
+
+  private final ReadReceipts receipts =
+      new ReadReceipts(
+          sessions,
+          (id, message) -> Mono.empty(),
+          storage,
+          conversations,
+          registry,
+          INTERVAL,
+          scheduler);
+
+  @BeforeEach
+  void createConversation() {
+    var messages =
+        IntStream.range(0, 10)
+            .mapToObj(i -> new Message(MEMBERS.get(0), TextContent.of("message " + i)))
+            .toList();
+    conversations.createConversation(new Conversation("room", MEMBERS, messages)).block();
+  }
+
+  private WebSocketSession join(String username) {
+    var session = EphemeralEventsTest.openSession();
+    sessions.add("room", session);
+    receipts.join("room", MEMBERS, username, session).block();
+    return session;
+  }
+
+  private static Content read(long sequence) {
+    return new Content(
+        ReadReceipts.READ_MEDIA_TYPE, Long.toString(sequence).getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /** Receipt batches sent to a session, oldest first. */
+  private static List<List<Receipt>> received(WebSocketSession session) throws IOException {
+    var frames = ArgumentCaptor.forClass(Object.class);
+    verify(session, atLeastOnce()).sendAsync(frames.capture());
+
+    var batches = new ArrayList<List<Receipt>>();
+    for (var frame : frames.getAllValues()) {
+      var content = (Content) frame;
+      assertEquals(ReadReceipts.RECEIPTS_MEDIA_TYPE, content.getMediaType());
+      batches.add(
+          ObjectMapper.getDefault()
+              .readValue(
+                  new String(content.getData(), StandardCharsets.UTF_8),
+                  Argument.listOf(Receipt.class)));
+    }
+    return batches;
+  }
+
+  @Test
+  void should_debounce_watermarks_into_one_batch() throws IOException {
+    var alice = join("Alice");
+    var bob = join("Bob");
+    scheduler.advanceTimeBy(INTERVAL);
+    verify(bob, never()).sendAsync(Mockito.any());
+
+    receipts.accept("room", "Alice", alice, read(3));
+    receipts.accept("room", "Alice", alice, read(5));
+    receipts.accept("room", "Alice", alice, read(4));
+    receipts.accept("room", "Bob", bob, read(2));
+    scheduler.advanceTimeBy(INTERVAL);
+
+    assertEquals(
+        List.of(List.of(new Receipt("Alice", 5), new Receipt("Bob", 2))), received(bob));
+    assertEquals(Map.of("Alice", 5L, "Bob", 2L), storage.getWatermarks("room").block());
+    assertEquals(2, registry.get("chat.receipts.batch").summary().count());
+  }
+
+  @Test
+  void should_count_unread_without_reading_messages() {
+    var alice = join("Alice");
+    join("Bob");
+    receipts.accept("room", "Alice", alice, read(6));
+    scheduler.advanceTimeBy(INTERVAL);
+
+    assertEquals(Map.of("room", 3L), receipts.unreadCounts("Alice").block());
+    assertEquals(Map.of("room", 10L), receipts.unreadCounts("Bob").block());
+    assertEquals(Map.of(), receipts.unreadCounts("Carol").block());
+
+    receipts.accept("room", "Alice", alice, read(9));
+    assertEquals(Map.of("room", 0L), receipts.unreadCounts("Alice").block());
+
+    verify(conversations, never()).getConversation(anyString());
+    verify(conversations, never()).getMessages(anyString(), anyLong());
+  }
+
+  @Test
+  void should_ignore_stale_and_foreign_reports() {
+    var alice = join("Alice");
+    receipts.accept("room", "Alice", alice, read(4));
+    receipts.accept("room", "Alice", alice, read(4));
+    receipts.accept("room", "Alice", alice, read(1));
+    receipts.accept("room", "Mallory", alice, read(8));
+    receipts.accept("room", "Alice", EphemeralEventsTest.openSession(), read(8));
+    receipts.accept(
+        "room", "Alice", alice, new Content(ReadReceipts.READ_MEDIA_TYPE, "x".getBytes()));
+    scheduler.advanceTimeBy(INTERVAL);
+
+    assertEquals(
+        1, registry.get("chat.receipts.updates").tag("result", "accepted").counter().count());
+    assertEquals(
+        5, registry.get("chat.receipts.updates").tag("result", "ignored").counter().count());
+    assertEquals(Map.of("Alice", 4L), storage.getWatermarks("room").block());
+  }
+
+  @Test
+  void should_clamp_watermarks_to_the_last_message() {
+    var alice = join("Alice");
+    receipts.accept("room", "Alice", alice, read(999_999_999));
+    scheduler.advanceTimeBy(INTERVAL);
+
+    assertEquals(Map.of("Alice", 9L), storage.getWatermarks("room").block());
+
+    conversations.pushMessage("room", new Message(MEMBERS.get(1), TextContent.of("later"))).block();
+    receipts.accept("room", "Alice", alice, read(10));
+    scheduler.advanceTimeBy(INTERVAL);
+
+    assertEquals(Map.of("Alice", 10L), storage.getWatermarks("room").block());
+  }
+
+  @Test
+  void should_reload_watermarks_after_last_session_leaves() {
+    var alice = join("Alice");
+    receipts.accept("room", "Alice", alice, read(7));
+    receipts.leave("room", alice);
+    receipts.leave("room", alice);
+    scheduler.advanceTimeBy(INTERVAL);
+    assertEquals(0, receipts.conversationCount());
+
+    var again = join("Alice");
+    clearInvocations(again);
+    receipts.accept("room", "Alice", again, read(7));
+    scheduler.advanceTimeBy(INTERVAL);
+
+    verify(again, never()).sendAsync(Mockito.any());
+    assertEquals(Map.of("room", 2L), receipts.unreadCounts("Alice").block());
+  }
+
+  @Test
+  void should_drop_the_watermarks_of_a_session_closed_while_joining() {
+    var alice = EphemeralEventsTest.openSession();
+    sessions.add("room", alice);
+    // Its close ran before it had joined.
+    receipts.leave("room", alice);
+    when(alice.isOpen()).thenReturn(false);
+
+    receipts.join("room", MEMBERS, "Alice", alice).block();
+    scheduler.advanceTimeBy(INTERVAL);
+
+    assertEquals(0, receipts.conversationCount());
+  }
+}
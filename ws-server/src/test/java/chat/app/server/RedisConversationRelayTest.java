@@ -0,0 +1,64 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.lettuce.core.pubsub.api.async.RedisPubSubAsyncCommands;
+import io.micronaut.websocket.WebSocketSession;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+/** RedisConversationRelayTest */
+class RedisConversationRelayTest {
+
+  private static final String CHANNEL = RedisConversationRelay.CHANNEL_PREFIX + "AB";
+
+  @SuppressWarnings("unchecked")
+  private final RedisPubSubAsyncCommands<String, byte[]> commands =
+      mock(RedisPubSubAsyncCommands.class);
+
+  @SuppressWarnings("unchecked")
+  private RedisConversationRelay relay(ConversationSessions sessions) {
+    var client = mock(RedisClient.class);
+    var subscriptions = mock(StatefulRedisPubSubConnection.class);
+    when(client.connect(RedisConversationStorage.CODEC))
+        .thenReturn(mock(StatefulRedisConnection.class));
+    when(client.connectPubSub(RedisConversationStorage.CODEC)).thenReturn(subscriptions);
+    when(subscriptions.async()).thenReturn(commands);
+    return new RedisConversationRelay(client, sessions);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static RedisFuture<Void> future(CompletableFuture<Void> outcome) {
+    var future = mock(RedisFuture.class);
+    when(future.toCompletableFuture()).thenReturn(outcome);
+    return future;
+  }
+
+  @Test
+  void should_subscribe_again_once_a_subscription_failed() {
+    var sessions = ConversationSessionsTest.newSessions();
+    var relay = relay(sessions);
+    var first = new CompletableFuture<Void>();
+    var failing = future(first);
+    var succeeding = future(CompletableFuture.completedFuture(null));
+    when(commands.subscribe(CHANNEL)).thenReturn(failing).thenReturn(succeeding);
+
+    sessions.add("AB", mock(WebSocketSession.class));
+    var opening = relay.subscribed("AB");
+    first.completeExceptionally(new RedisException("Connection reset"));
+    assertThrows(RedisException.class, opening::block);
+
+    relay.subscribed("AB").block();
+    relay.subscribed("AB").block();
+    verify(commands, times(2)).subscribe(CHANNEL);
+  }
+}
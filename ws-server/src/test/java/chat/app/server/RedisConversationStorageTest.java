@@ -0,0 +1,120 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.User;
+import com.redis.testcontainers.RedisContainer;
+import io.lettuce.core.RedisClient;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
+
+/** RedisConversationStorageTest */
+@Testcontainers
+class RedisConversationStorageTest {
+
+  @Container
+  private static RedisContainer container =
+      new RedisContainer(RedisContainer.DEFAULT_IMAGE_NAME.withTag(RedisContainer.DEFAULT_TAG));
+
+  private RedisClient client;
+
+  private RedisConversationStorage storage;
+
+  private final User alice = new User("alice");
+
+  private final User bob = new User("bob");
+
+  @BeforeEach
+  void beforeEach() {
+    client = RedisClient.create(container.getRedisURI());
+    client.connect().sync().flushall();
+    storage = new RedisConversationStorage(client, 8, 5);
+  }
+
+  @AfterEach
+  void afterEach() {
+    storage.close();
+    client.shutdown();
+  }
+
+  private Message message(User user, String text) {
+    return new Message(user, Message.TextContent.of(text));
+  }
+
+  @Test
+  void should_store_conversation_and_assign_sequences() {
+    storage
+        .createConversation(
+            new Conversation("AB", List.of(alice, bob), List.of(message(alice, "Hello Bob!"))))
+        .block();
+
+    var stored = storage.pushMessage("AB", message(bob, "Hello Alice!")).block();
+    var conversation = storage.getConversation("AB").block();
+
+    assertEquals(1, stored.sequence());
+    assertEquals(List.of(alice, bob), conversation.users());
+    assertEquals(2, conversation.messages().size());
+    assertEquals(
+        "Hello Alice!", Message.TextContent.from(conversation.messages().get(1).content()));
+    assertEquals(bob, conversation.messages().get(1).user());
+  }
+
+  @Test
+  void should_keep_order_under_concurrent_appends() {
+    storage.createConversation(new Conversation("AB", List.of(alice, bob), List.of())).block();
+
+    Flux.range(0, 100)
+        .flatMap(i -> storage.pushMessage("AB", message(i % 2 == 0 ? alice : bob, "m" + i)))
+        .blockLast();
+
+    var sequences = storage.getMessages("AB", 0).map(Message::sequence).collectList().block();
+    assertEquals(IntStream.range(0, 100).mapToObj(i -> (long) i).toList(), sequences);
+  }
+
+  @Test
+  void should_read_history_from_cursor_across_pages() {
+    storage.createConversation(new Conversation("AB", List.of(alice, bob), List.of())).block();
+    Flux.range(0, 12).concatMap(i -> storage.pushMessage("AB", message(alice, "m" + i))).blockLast();
+
+    var texts =
+        storage
+            .getMessages("AB", 7)
+            .map(m -> Message.TextContent.from(m.content()))
+            .collectList()
+            .block();
+
+    assertEquals(List.of("m7", "m8", "m9", "m10", "m11"), texts);
+  }
+
+  @Test
+  void should_read_one_message_by_sequence() {
+    storage.createConversation(new Conversation("AB", List.of(alice, bob), List.of())).block();
+    Flux.range(0, 3).concatMap(i -> storage.pushMessage("AB", message(alice, "m" + i))).blockLast();
+
+    var message = storage.getMessage("AB", 1).block();
+
+    assertEquals(1, message.sequence());
+    assertEquals("m1", Message.TextContent.from(message.content()));
+    assertNull(storage.getMessage("AB", 3).block());
+  }
+
+  @Test
+  void should_reject_duplicates_and_unknown_conversations() {
+    var conversation = new Conversation("AB", List.of(alice, bob), List.of());
+    storage.createConversation(conversation).block();
+
+    assertThrows(Exception.class, () -> storage.createConversation(conversation).block());
+    assertNull(storage.pushMessage("missing", message(alice, "hi")).block());
+    assertNull(storage.getConversation("missing").block());
+  }
+}
@@ -0,0 +1,75 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.redis.testcontainers.RedisContainer;
+import io.lettuce.core.RedisClient;
+import java.time.Duration;
+import java.util.List;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/** RedisPresenceCounterTest */
+@Testcontainers
+class RedisPresenceCounterTest {
+
+  @Container
+  private static RedisContainer container =
+      new RedisContainer(RedisContainer.DEFAULT_IMAGE_NAME.withTag(RedisContainer.DEFAULT_TAG));
+
+  private static final Duration TTL = Duration.ofMillis(600);
+
+  private RedisClient client;
+
+  private RedisPresenceCounter first;
+
+  private RedisPresenceCounter second;
+
+  @BeforeEach
+  void beforeEach() {
+    client = RedisClient.create(container.getRedisURI());
+    client.connect().sync().flushall();
+    first = new RedisPresenceCounter(client, TTL);
+    second = new RedisPresenceCounter(client, TTL);
+  }
+
+  @AfterEach
+  void afterEach() {
+    first.close();
+    second.close();
+    client.shutdown();
+  }
+
+  @Test
+  void should_count_each_node_a_member_is_connected_to() {
+    assertEquals(1, first.increment("AB", "alice").block());
+    assertEquals(2, second.increment("AB", "alice").block());
+    assertEquals(1, second.increment("AB", "bob").block());
+
+    assertEquals(1, first.decrement("AB", "alice").block());
+    assertEquals(List.of("alice", "bob"), second.online("AB").block().stream().sorted().toList());
+
+    assertEquals(0, second.decrement("AB", "alice").block());
+    assertEquals(List.of("bob"), first.online("AB").block());
+  }
+
+  @Test
+  void should_age_out_the_members_of_a_node_that_stopped() throws InterruptedException {
+    first.increment("AB", "alice").block();
+    first.increment("AB", "bob").block();
+    second.increment("AB", "alice").block();
+
+    // Stops renewing without its members leaving.
+    first.close();
+
+    Awaitility.waitAtMost(TTL.multipliedBy(3))
+        .until(() -> second.online("AB").block().equals(List.of("alice")));
+    Thread.sleep(TTL.multipliedBy(2).toMillis());
+    assertEquals(List.of("alice"), second.online("AB").block());
+    assertEquals(0, second.decrement("AB", "alice").block());
+  }
+}
@@ -0,0 +1,51 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.reactive.RedisReactiveCommands;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+/** RedisScriptTest */
+class RedisScriptTest {
+
+  private static final String BODY = "return 1";
+
+  private static final String[] KEYS = {"key"};
+
+  private final RedisScript<Long> script = new RedisScript<>(BODY, ScriptOutputType.INTEGER);
+
+  @SuppressWarnings("unchecked")
+  private final RedisReactiveCommands<String, String> commands =
+      mock(RedisReactiveCommands.class);
+
+  @Test
+  void should_compute_the_digest_redis_uses() {
+    assertEquals("e0e1f9fabfc9d4800c877a703b823ac0578ff8db", script.digest());
+  }
+
+  @Test
+  void should_run_a_cached_script_by_its_digest() {
+    when(commands.<Long>evalsha(script.digest(), ScriptOutputType.INTEGER, KEYS, "a"))
+        .thenReturn(Flux.just(1L));
+
+    assertEquals(1L, script.run(commands, KEYS, "a").block());
+    verify(commands, never()).eval(BODY, ScriptOutputType.INTEGER, KEYS, "a");
+  }
+
+  @Test
+  void should_send_the_script_whole_when_redis_has_not_cached_it() {
+    when(commands.<Long>evalsha(script.digest(), ScriptOutputType.INTEGER, KEYS, "a"))
+        .thenReturn(Flux.error(new RedisNoScriptException("NOSCRIPT No matching script")));
+    when(commands.<Long>eval(BODY, ScriptOutputType.INTEGER, KEYS, "a"))
+        .thenReturn(Flux.just(1L));
+
+    assertEquals(1L, script.run(commands, KEYS, "a").block());
+  }
+}
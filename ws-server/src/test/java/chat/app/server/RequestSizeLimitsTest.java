@@ -0,0 +1,103 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micronaut.http.netty.channel.ChannelPipelineCustomizer;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.jupiter.api.Test;
+
+/** RequestSizeLimitsTest */
+class RequestSizeLimitsTest {
+
+  private final RequestSizeLimits limits = new RequestSizeLimits(10, 100);
+
+  private EmbeddedChannel channel() {
+    var channel = new EmbeddedChannel();
+    channel
+        .pipeline()
+        .addLast(
+            ChannelPipelineCustomizer.HANDLER_MICRONAUT_INBOUND, new ChannelInboundHandlerAdapter());
+    limits.customize(channel);
+    return channel;
+  }
+
+  private static HttpRequest request(HttpMethod method, String uri, long contentLength) {
+    var request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, method, uri);
+    if (contentLength >= 0) {
+      request.headers().set(HttpHeaderNames.CONTENT_LENGTH, contentLength);
+    }
+    return request;
+  }
+
+  private static HttpContent content(int size) {
+    return new DefaultHttpContent(Unpooled.wrappedBuffer(new byte[size]));
+  }
+
+  @Test
+  void should_apply_the_upload_limit_to_uploads_only() {
+    var upload = request(HttpMethod.POST, "/conversations/AB/attachments?name=a.png", 50);
+    var download = request(HttpMethod.POST, "/conversations/AB/attachments/x", 50);
+    var other = request(HttpMethod.POST, "/conversations", 50);
+
+    assertEquals(100, limits.limitFor(upload));
+    assertEquals(10, limits.limitFor(download));
+    assertEquals(10, limits.limitFor(other));
+  }
+
+  @Test
+  void should_answer_413_to_a_declared_length_over_the_limit() {
+    var channel = channel();
+
+    channel.writeInbound(request(HttpMethod.POST, "/conversations", 50));
+
+    FullHttpResponse response = channel.readOutbound();
+    assertEquals(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE, response.status());
+    assertNull(channel.readInbound());
+    assertFalse(channel.isOpen());
+  }
+
+  @Test
+  void should_pass_uploads_within_the_upload_limit() {
+    var channel = channel();
+    var request = request(HttpMethod.POST, "/conversations/AB/attachments", 50);
+    var body = content(50);
+
+    channel.writeInbound(request, body);
+
+    assertSame(request, channel.readInbound());
+    assertSame(body, channel.readInbound());
+    assertNull(channel.readOutbound());
+    assertTrue(channel.isOpen());
+    body.release();
+  }
+
+  @Test
+  void should_close_chunked_bodies_growing_over_the_limit() {
+    var channel = channel();
+    var request = request(HttpMethod.POST, "/conversations", -1);
+    var first = content(8);
+
+    channel.writeInbound(request, first, content(8));
+
+    assertSame(request, channel.readInbound());
+    assertSame(first, channel.readInbound());
+    assertNull(channel.readInbound());
+    assertFalse(channel.isOpen());
+    first.release();
+  }
+}
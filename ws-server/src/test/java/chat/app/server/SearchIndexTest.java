@@ -0,0 +1,178 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.Conversation.Message.TextContent;
+import chat.app.server.models.Members;
+import chat.app.server.models.SearchHit;
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import reactor.core.scheduler.Schedulers;
+
+/** SearchIndexTest */
+class SearchIndexTest {
+
+  private static final Members AB = Members.of(List.of(new User("Alice"), new User("Bob")));
+
+  private static final Members BC = Members.of(List.of(new User("Bob"), new User("Carol")));
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private final SearchIndex index = new SearchIndex(registry);
+
+  private long sequence;
+
+  private void add(String conversationId, Members members, String text) {
+    index.add(
+        conversationId,
+        members,
+        new Message(sequence++, members.get(0), TextContent.of(text)));
+  }
+
+  private List<Long> sequences(String username, String query) {
+    return index.search(username, query, Integer.MAX_VALUE, 10).hits().stream()
+        .map(SearchIndex.Hit::sequence)
+        .toList();
+  }
+
+  @Test
+  void should_split_any_script_into_lower_case_terms() {
+    assertEquals(
+        List.of("hello", "world", "ça", "va", "東京", "123"),
+        List.copyOf(SearchIndex.tokens("Hello, WORLD! Ça va? 東京 123 hello")));
+    assertEquals(
+        SearchIndex.MAX_TERM_LENGTH,
+        SearchIndex.tokens("a".repeat(100)).iterator().next().length());
+  }
+
+  @Test
+  void should_match_every_term_newest_first() {
+    add("AB", AB, "lunch at noon?");
+    add("AB", AB, "Noon works");
+    add("AB", AB, "lunch tomorrow then");
+    add("AB", AB, "LUNCH at noon it is");
+
+    assertEquals(List.of(3L, 0L), sequences("Alice", "noon lunch"));
+    assertEquals(List.of(3L, 1L, 0L), sequences("Alice", "NOON"));
+    assertEquals(List.of(), sequences("Alice", "noon dinner"));
+    assertEquals(List.of(), sequences("Alice", "?!"));
+  }
+
+  @Test
+  void should_only_search_conversations_of_the_caller() {
+    add("AB", AB, "the secret plan");
+    add("BC", BC, "another secret");
+
+    assertEquals(List.of(0L), sequences("Alice", "secret"));
+    assertEquals(List.of(1L, 0L), sequences("Bob", "secret"));
+    assertEquals(List.of(1L), sequences("Carol", "secret"));
+    assertEquals(List.of(), sequences("Mallory", "secret"));
+  }
+
+  @Test
+  void should_page_with_a_cursor() {
+    for (int i = 0; i < 5; i++) {
+      add(i % 2 == 0 ? "AB" : "BC", i % 2 == 0 ? AB : BC, "ping " + i);
+    }
+
+    var first = index.search("Alice", "ping", Integer.MAX_VALUE, 2);
+    assertEquals(List.of(4L, 2L), first.hits().stream().map(SearchIndex.Hit::sequence).toList());
+
+    var second = index.search("Alice", "ping", first.next(), 2);
+    assertEquals(List.of(0L), second.hits().stream().map(SearchIndex.Hit::sequence).toList());
+    assertNull(second.next());
+  }
+
+  @Test
+  void should_page_through_one_conversation_skipping_partial_matches() {
+    for (int i = 0; i < 10; i++) {
+      add("AB", AB, i % 3 == 0 ? "ping" : "ping pong");
+    }
+
+    var pages = new ArrayList<List<Long>>();
+    var before = Integer.MAX_VALUE;
+    SearchIndex.Result page;
+    do {
+      page = index.search("Alice", "pong ping", before, 3);
+      pages.add(page.hits().stream().map(SearchIndex.Hit::sequence).toList());
+      before = page.next() == null ? 0 : page.next();
+    } while (page.next() != null);
+
+    assertEquals(List.of(List.of(8L, 7L, 5L), List.of(4L, 2L, 1L)), pages);
+  }
+
+  @Test
+  void should_encode_gaps_of_any_size() {
+    var postings = new SearchIndex.PostingList();
+    var documents = new int[] {0, 1, 200, 70_000, 70_001, Integer.MAX_VALUE - 1};
+    for (var document : documents) {
+      postings.add(document);
+    }
+
+    var decoded = new int[documents.length];
+    var all = postings.cursor();
+    for (int i = 0; i < documents.length; i++) {
+      assertTrue(all.advance(all.document + 1));
+      decoded[i] = all.document;
+    }
+    assertFalse(all.advance(all.document + 1));
+    assertArrayEquals(documents, decoded);
+    assertEquals(1 + 1 + 2 + 3 + 1 + 5, postings.length);
+
+    var cursor = postings.cursor();
+    assertTrue(cursor.advance(2));
+    assertEquals(200, cursor.document);
+    assertTrue(cursor.advance(70_001));
+    assertEquals(70_001, cursor.document);
+    assertTrue(cursor.advance(80_000));
+    assertEquals(Integer.MAX_VALUE - 1, cursor.document);
+    assertFalse(cursor.advance(Integer.MAX_VALUE));
+  }
+
+  @Test
+  void should_index_stored_text_messages_and_serve_pages() {
+    var storage =
+        new IndexedConversationStorage(
+            new ConversationStorageImpl(),
+            new InboxStorageImpl(),
+            index,
+            80,
+            () -> 0,
+            Schedulers.immediate(),
+            100,
+            registry);
+    storage.createConversation(new Conversation("AB", AB, List.of())).block();
+    storage.pushMessage("AB", new Message(new User("Bob"), TextContent.of("See you at 6"))).block();
+    storage.pushMessage("AB", new Message(new User("Bob"), new Content("image/png", new byte[1])))
+        .block();
+
+    var controller = new SearchController(index, storage, 50);
+    var page = controller.search(() -> "Alice", "you", null, 20).block();
+
+    assertEquals(List.of(new SearchHit("AB", 0, "Bob", "See you at 6")), page.hits());
+    assertEquals(1, registry.get("chat.search.documents").gauge().value());
+  }
+
+  @Test
+  void should_leave_out_hits_whose_message_is_not_stored() {
+    var storage = new ConversationStorageImpl();
+    storage.createConversation(new Conversation("AB", AB, List.of())).block();
+    storage.pushMessage("AB", new Message(new User("Bob"), TextContent.of("stored hello"))).block();
+    index.add("AB", AB, new Message(0, new User("Bob"), TextContent.of("stored hello")));
+    index.add("AB", AB, new Message(7, new User("Bob"), TextContent.of("lost hello")));
+
+    var page = new SearchController(index, storage, 50).search(() -> "Bob", "hello", null, 20);
+
+    assertEquals(List.of(new SearchHit("AB", 0, "Bob", "stored hello")), page.block().hits());
+  }
+}
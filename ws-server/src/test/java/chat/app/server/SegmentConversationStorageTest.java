@@ -0,0 +1,198 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chat.app.server.ExecutionScheduler.Mode;
+import chat.app.server.SegmentConversationStorage.ForcePolicy;
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.User;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+
+/** SegmentConversationStorageTest */
+class SegmentConversationStorageTest {
+
+  private static final int SEGMENT_SIZE = 4096;
+
+  @TempDir Path directory;
+
+  private SegmentConversationStorage open(int retainedSegments) throws Exception {
+    return open(retainedSegments, ForcePolicy.INTERVAL, ExecutionScheduler.eventLoop());
+  }
+
+  private SegmentConversationStorage open(
+      int retainedSegments, ForcePolicy force, ExecutionScheduler execution) throws Exception {
+    return new SegmentConversationStorage(
+        directory, SEGMENT_SIZE, 8, retainedSegments, force, Duration.ofMillis(10), execution);
+  }
+
+  private static Message message(String user, String text) {
+    return new Message(new User(user), Message.TextContent.of(text));
+  }
+
+  private static List<String> texts(ConversationStorage storage, String id, long from) {
+    return storage
+        .getMessages(id, from)
+        .map(m -> Message.TextContent.from(m.content()))
+        .collectList()
+        .block();
+  }
+
+  private static List<String> fill(ConversationStorage storage, int count) {
+    storage
+        .createConversation(
+            new Conversation(
+                "AB", List.of(new User("Alice"), new User("Bob")), List.of(message("Alice", "Hi"))))
+        .block();
+
+    var expected = new ArrayList<String>(List.of("Hi"));
+    Flux.range(0, count)
+        .concatMap(i -> storage.pushMessage("AB", message("Bob", "message " + i)))
+        .blockLast();
+    for (int i = 0; i < count; i++) {
+      expected.add("message " + i);
+    }
+    return expected;
+  }
+
+  private Path conversationDirectory() throws Exception {
+    try (var files = Files.list(directory)) {
+      return files.findFirst().orElseThrow();
+    }
+  }
+
+  private long segmentCount() throws Exception {
+    try (var files = Files.list(conversationDirectory())) {
+      return files.filter(f -> f.toString().endsWith(Segment.SUFFIX)).count();
+    }
+  }
+
+  @Test
+  void should_read_messages_across_segments_from_any_sequence() throws Exception {
+    try (var storage = open(0)) {
+      var expected = fill(storage, 300);
+
+      assertTrue(segmentCount() > 1);
+      assertEquals(expected, texts(storage, "AB", 0));
+      assertEquals(expected.subList(123, expected.size()), texts(storage, "AB", 123));
+      assertEquals(List.of(), texts(storage, "AB", expected.size()));
+      assertEquals(301, storage.pushMessage("AB", message("Alice", "Bye")).block().sequence());
+    }
+  }
+
+  @Test
+  void should_recover_messages_after_restart() throws Exception {
+    List<String> expected;
+    try (var storage = open(0)) {
+      expected = fill(storage, 200);
+    }
+
+    try (var storage = open(0)) {
+      assertEquals(expected, texts(storage, "AB", 0));
+      assertTrue(storage.getMembers("AB").block().contains("Bob"));
+      assertEquals(201, storage.pushMessage("AB", message("Alice", "Bye")).block().sequence());
+    }
+  }
+
+  @Test
+  void should_discard_torn_record_on_restart() throws Exception {
+    try (var storage = open(0)) {
+      fill(storage, 3);
+    }
+
+    try (var files = Files.list(conversationDirectory())) {
+      var segment = files.filter(f -> f.toString().endsWith(Segment.SUFFIX)).findFirst().get();
+      try (var raf = new RandomAccessFile(segment.toFile(), "rw")) {
+        // Corrupt the checksum of the last record.
+        var offset = 0;
+        for (int i = 0; i < 3; i++) {
+          raf.seek(offset);
+          offset += 8 + raf.readInt();
+        }
+        raf.seek(offset + 4);
+        raf.writeInt(0);
+      }
+    }
+
+    try (var storage = open(0)) {
+      assertEquals(List.of("Hi", "message 0", "message 1"), texts(storage, "AB", 0));
+      assertEquals(3, storage.pushMessage("AB", message("Alice", "Bye")).block().sequence());
+    }
+  }
+
+  @Test
+  void should_serve_history_frames_from_segments() throws Exception {
+    try (var storage = open(0)) {
+      var expected = fill(storage, 100);
+
+      var frames = storage.frames("AB", 10, 32).collectList().block();
+      var decoded = new ArrayList<String>();
+      for (var frame : frames) {
+        while (frame.isReadable()) {
+          decoded.add(Message.TextContent.from(BinaryFrames.decode(frame)));
+        }
+        frame.release();
+      }
+
+      assertEquals(3, frames.size());
+      assertEquals(expected.subList(10, expected.size()), decoded);
+    }
+  }
+
+  @Test
+  void should_force_and_do_file_work_on_the_execution_scheduler() throws Exception {
+    var execution = new ExecutionScheduler(Mode.BOUNDED_ELASTIC, (ExecutorService) null);
+    List<String> expected;
+
+    try (var storage = open(0, ForcePolicy.EVERY_MESSAGE, execution)) {
+      expected = fill(storage, 50);
+      var thread =
+          storage
+              .pushMessage("AB", message("Alice", "Bye"))
+              .map(m -> Thread.currentThread().getName())
+              .block();
+      expected.add("Bye");
+
+      assertTrue(thread.startsWith("boundedElastic"), thread);
+    }
+
+    try (var storage = open(0, ForcePolicy.NONE, execution)) {
+      assertEquals(expected, texts(storage, "AB", 0));
+    }
+  }
+
+  @Test
+  void should_delete_segments_past_retention() throws Exception {
+    try (var storage = open(2)) {
+      var expected = fill(storage, 300);
+
+      assertEquals(2, segmentCount());
+      var retained = texts(storage, "AB", 0);
+      assertEquals(expected.subList(expected.size() - retained.size(), expected.size()), retained);
+    }
+  }
+
+  @Test
+  void should_reject_unknown_and_duplicate_conversations() throws Exception {
+    try (var storage = open(0)) {
+      fill(storage, 0);
+
+      assertNull(storage.pushMessage("CD", message("Bob", "Hi")).block());
+      assertThrows(
+          Throwable.class,
+          () -> storage.createConversation(new Conversation("AB", List.of(), List.of())).block());
+    }
+  }
+}
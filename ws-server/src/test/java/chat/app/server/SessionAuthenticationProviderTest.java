@@ -14,6 +14,7 @@ import com.redis.testcontainers.RedisContainer;
 import io.lettuce.core.RedisClient;
 import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.api.sync.RedisCommands;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.micronaut.http.HttpMethod;
 import io.micronaut.http.HttpRequest;
 import io.micronaut.http.cookie.Cookie;
@@ -126,7 +127,13 @@ class SessionAuthenticationProviderTest {
     JwksSignature jwksSignature = mock(JwksSignature.class);
     when(jwksSignature.verify(Mockito.any())).then(invovation -> true);
 
-    var provider = new SessionAuthenticationProvider<String>(connection, jwksSignature);
+    var registry = new SimpleMeterRegistry();
+    var provider =
+        new SessionAuthenticationProvider<String>(
+            connection,
+            jwksSignature,
+            new SessionCache(1_000, Duration.ofMinutes(15), registry),
+            registry);
     var result = Mono.from(provider.authenticate(request, authRequest)).block();
     var actual = result.getAuthentication().map(i -> i.getName()).get();
 
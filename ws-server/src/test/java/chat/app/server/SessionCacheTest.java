@@ -0,0 +1,90 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/** SessionCacheTest */
+class SessionCacheTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private final SessionCache cache = new SessionCache(100, Duration.ofMinutes(5), registry);
+
+  private double count(String result) {
+    return registry.counter("chat.auth.session.cache", "result", result).count();
+  }
+
+  @Test
+  void should_collapse_concurrent_lookups_into_one_load() {
+    var loads = new AtomicInteger();
+    var pending = Sinks.<SessionCache.Entry>one();
+
+    var lookups =
+        Flux.range(0, 10)
+            .flatMap(
+                i ->
+                    cache.get(
+                        "sid",
+                        id -> {
+                          loads.incrementAndGet();
+                          return pending.asMono();
+                        }))
+            .collectList()
+            .toFuture();
+
+    pending.tryEmitValue(new SessionCache.Entry("alice", Instant.now().plusSeconds(60)));
+
+    assertEquals(10, lookups.join().size());
+    assertEquals(1, loads.get());
+    assertEquals("alice", cache.get("sid", id -> Mono.empty()).block().username());
+    // Lookups joining the in-flight load count as hits.
+    assertEquals(1, count("miss"));
+    assertEquals(10, count("hit"));
+  }
+
+  @Test
+  void should_not_cache_empty_or_expired_sessions() {
+    var loads = new AtomicInteger();
+
+    assertNull(cache.get("missing", id -> Mono.<SessionCache.Entry>empty()).block());
+    cache
+        .get(
+            "expired",
+            id -> {
+              loads.incrementAndGet();
+              return Mono.just(new SessionCache.Entry("bob", Instant.now().minusSeconds(1)));
+            })
+        .block();
+    cache
+        .get(
+            "expired",
+            id -> {
+              loads.incrementAndGet();
+              return Mono.just(new SessionCache.Entry("bob", Instant.now().plusSeconds(60)));
+            })
+        .block();
+
+    assertNull(cache.get("missing", id -> Mono.empty()).block());
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void should_reload_after_invalidation() {
+    cache.get("sid", id -> Mono.just(new SessionCache.Entry("alice", null))).block();
+    cache.invalidate("sid");
+
+    var reloaded = cache.get("sid", id -> Mono.just(new SessionCache.Entry("carol", null))).block();
+
+    assertEquals("carol", reloaded.username());
+    assertEquals(2, count("miss"));
+  }
+}
@@ -0,0 +1,152 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import chat.app.server.EphemeralEventsTest.ManualScheduler;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.Conversation.Message.TextContent;
+import chat.app.server.models.Reconnect;
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.serde.ObjectMapper;
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+/** SessionDrainTest */
+class SessionDrainTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private final ManualScheduler scheduler = new ManualScheduler();
+
+  private final OutboundQueues outbound =
+      new OutboundQueues(
+          registry, 256, 64, OutboundQueues.OverflowPolicy.DROP_OLDEST, Duration.ofSeconds(5));
+
+  private final ConversationSessions sessions = new ConversationSessions(outbound, registry);
+
+  private final AdmissionControl admission =
+      new AdmissionControl(
+          registry, 100, 10, 100, 100, 10, 10, 10, 10, Duration.ofSeconds(5), null,
+          Duration.ofMinutes(10), scheduler);
+
+  private final SessionDrain drain =
+      new SessionDrain(
+          sessions,
+          outbound,
+          admission,
+          registry,
+          Duration.ofSeconds(3),
+          Duration.ofSeconds(5),
+          Duration.ofSeconds(1),
+          scheduler);
+
+  /**
+   * A session that is closed once told to, and joined to conversation {@code AB}, either done with
+   * its history or still replaying it.
+   */
+  private WebSocketSession join(boolean replayed) {
+    var session = EphemeralEventsTest.openSession();
+    var open = new AtomicBoolean(true);
+    when(session.isOpen()).thenAnswer(invocation -> open.get());
+    doAnswer(
+            invocation -> {
+              open.set(false);
+              sessions.remove("AB", session);
+              return null;
+            })
+        .when(session)
+        .close(any(CloseReason.class));
+
+    if (replayed) {
+      sessions.add("AB", session);
+    } else {
+      sessions.addReplaying("AB", session);
+    }
+    return session;
+  }
+
+  private static Reconnect hint(WebSocketSession session) throws IOException {
+    var frames = ArgumentCaptor.forClass(Object.class);
+    verify(session, atLeastOnce()).sendAsync(frames.capture());
+
+    var hints = new ArrayList<Content>();
+    for (var frame : frames.getAllValues()) {
+      if (frame instanceof Content content
+          && SessionDrain.RECONNECT_MEDIA_TYPE.equals(content.getMediaType())) {
+        hints.add(content);
+      }
+    }
+    assertEquals(1, hints.size());
+    return ObjectMapper.getDefault().readValue(hints.get(0).getData(), Reconnect.class);
+  }
+
+  @Test
+  void should_close_sessions_over_the_window_with_a_reconnect_hint() throws IOException {
+    var replayed = join(true);
+    var replaying = join(false);
+    var third = join(true);
+    var alice = new User("Alice");
+    sessions.deliver("AB", new Message(7, alice, TextContent.of("Hi"))).block();
+
+    // Held while replaying, the message is not written, nor is anything before it.
+    assertEquals(Message.UNSEQUENCED, outbound.writtenThrough(replaying));
+    sessions.replayed(replaying, 5);
+    assertEquals(7, outbound.writtenThrough(replaying));
+
+    drain.drain();
+    assertTrue(drain.isDraining());
+    assertEquals(AdmissionControl.Reason.DRAINING, admission.checkHandshake(null));
+
+    var closed = new ArrayList<WebSocketSession>();
+    for (var second = 1; second <= 3; second++) {
+      scheduler.advanceTimeBy(Duration.ofSeconds(1));
+      for (var session : List.of(replayed, replaying, third)) {
+        if (!session.isOpen() && !closed.contains(session)) {
+          closed.add(session);
+        }
+      }
+      assertEquals(second, closed.size());
+    }
+
+    for (var session : closed) {
+      verify(session).close(CloseReason.SERVICE_RESTART);
+      var hint = hint(session);
+      assertTrue(hint.delay() >= 0 && hint.delay() <= 5_000, Long.toString(hint.delay()));
+      assertEquals(7, hint.after());
+    }
+    assertEquals(0, drain.sessions());
+    assertEquals(3, registry.get("chat.drain.sessions").counter().count());
+  }
+
+  @Test
+  void should_drain_once() {
+    var session = join(true);
+
+    var first = drain.drain();
+    assertSame(first, drain.drain());
+    verify(session, never()).close(any(CloseReason.class));
+
+    scheduler.advanceTimeBy(Duration.ofSeconds(3));
+    verify(session, times(1)).close(CloseReason.SERVICE_RESTART);
+    assertFalse(session.isOpen());
+  }
+}
@@ -0,0 +1,52 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import chat.app.server.models.Conversation.Message.Content;
+import chat.app.server.models.Conversation.Message.TextContent;
+import io.micronaut.serde.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+/** TextContentTest */
+class TextContentTest {
+
+  @Test
+  void should_store_exactly_the_utf8_bytes() {
+    var text = "Olá, 世界 👋";
+    var content = TextContent.of(text);
+
+    assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), content.getData());
+    assertSame(text, TextContent.from(content));
+  }
+
+  @Test
+  void should_decode_lazily_once() {
+    var content = TextContent.ofUtf8("Hello Bob!".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals("Hello Bob!", content.text());
+    assertSame(content.text(), content.text());
+  }
+
+  @Test
+  void should_read_text_from_plain_content() {
+    var content = new Content("text/plain", "Hello Alice!".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals("Hello Alice!", TextContent.from(content));
+  }
+
+  @Test
+  void should_round_trip_through_json_as_text_content() throws IOException {
+    var mapper = ObjectMapper.getDefault();
+    var json = mapper.writeValueAsString(TextContent.of("Hello Bob!"));
+
+    var decoded = mapper.readValue(json, Content.class);
+
+    assertInstanceOf(TextContent.class, decoded);
+    assertEquals("Hello Bob!", TextContent.from(decoded));
+  }
+}
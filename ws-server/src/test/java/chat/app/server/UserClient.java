@@ -11,7 +11,7 @@ import io.micronaut.core.annotation.NonNull;
 import io.micronaut.websocket.annotation.ClientWebSocket;
 import io.micronaut.websocket.annotation.OnMessage;
 
-@Requires(property = "spec.name", value = "PrivateChatHandlerTest")
+@Requires(property = "spec.name", pattern = "PrivateChatHandlerTest|ClusterFanoutTest")
 @ClientWebSocket("/ws/chat/{id}")
 public abstract class UserClient implements AutoCloseable {
     private final Deque<Conversation.Message.Content> messageHistory = new ConcurrentLinkedDeque<>();
@@ -0,0 +1,105 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketServerCompressionHandler;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+/** WebSocketCompressionTest */
+class WebSocketCompressionTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private EmbeddedChannel channel(boolean enabled) {
+    var channel = new EmbeddedChannel();
+    channel
+        .pipeline()
+        .addLast(WebSocketCompression.HANDLER_NAME, new WebSocketServerCompressionHandler());
+    new WebSocketCompression(enabled, 9, 64, 12, false, false, true, registry).customize(channel);
+    return channel;
+  }
+
+  /** Runs the extension handshake, returning the extensions the server answered with. */
+  private static String upgrade(EmbeddedChannel channel) {
+    var request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/ws/chat/AB");
+    request
+        .headers()
+        .set(HttpHeaderNames.CONNECTION, HttpHeaderValues.UPGRADE)
+        .set(HttpHeaderNames.UPGRADE, HttpHeaderValues.WEBSOCKET)
+        .set(
+            HttpHeaderNames.SEC_WEBSOCKET_EXTENSIONS,
+            "permessage-deflate; client_max_window_bits; client_no_context_takeover");
+    channel.writeInbound(request);
+    channel.readInbound();
+
+    var response =
+        new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.SWITCHING_PROTOCOLS);
+    response
+        .headers()
+        .set(HttpHeaderNames.CONNECTION, HttpHeaderValues.UPGRADE)
+        .set(HttpHeaderNames.UPGRADE, HttpHeaderValues.WEBSOCKET);
+    channel.writeOutbound(response);
+    HttpResponse written = channel.readOutbound();
+    return written.headers().get(HttpHeaderNames.SEC_WEBSOCKET_EXTENSIONS);
+  }
+
+  private static WebSocketFrame send(EmbeddedChannel channel, String text) {
+    channel.writeOutbound(
+        new TextWebSocketFrame(Unpooled.copiedBuffer(text, StandardCharsets.UTF_8)));
+    return channel.readOutbound();
+  }
+
+  @Test
+  void should_negotiate_configured_parameters() {
+    var extensions = upgrade(channel(true));
+
+    assertTrue(extensions.startsWith("permessage-deflate"), extensions);
+    assertTrue(extensions.contains("client_max_window_bits=12"), extensions);
+    assertTrue(extensions.contains("client_no_context_takeover"), extensions);
+  }
+
+  @Test
+  void should_compress_and_meter_frames_over_min_size() {
+    var channel = channel(true);
+    upgrade(channel);
+
+    var large = send(channel, "Are we still on for lunch tomorrow? ".repeat(10));
+    assertEquals(WebSocketExtension.RSV1, large.rsv() & WebSocketExtension.RSV1);
+    var small = send(channel, "Sure!");
+    assertEquals(0, small.rsv());
+
+    var raw = registry.get("chat.compression.bytes").tag("stage", "raw").counter().count();
+    var compressed =
+        registry.get("chat.compression.bytes").tag("stage", "compressed").counter().count();
+    assertEquals(360, raw);
+    assertEquals(large.content().readableBytes(), compressed);
+    assertEquals(1, registry.get("chat.compression.time").timer().count());
+    assertEquals(1, registry.get("chat.compression.skipped").counter().count());
+    large.release();
+    small.release();
+  }
+
+  @Test
+  void should_remove_compression_when_disabled() {
+    var channel = channel(false);
+
+    assertNull(channel.pipeline().get(WebSocketCompression.HANDLER_NAME));
+  }
+}
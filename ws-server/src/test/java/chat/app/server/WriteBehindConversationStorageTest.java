@@ -0,0 +1,157 @@
+package chat.app.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chat.app.server.MessageJournal.Appended;
+import chat.app.server.MessageJournal.Created;
+import chat.app.server.WriteBehindConversationStorage.Durability;
+import chat.app.server.models.Conversation;
+import chat.app.server.models.Conversation.Message;
+import chat.app.server.models.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+
+/** WriteBehindConversationStorageTest */
+class WriteBehindConversationStorageTest {
+
+  private static final int SEGMENT_SIZE = 4096;
+
+  @TempDir Path directory;
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private WriteBehindConversationStorage open(Durability durability) throws Exception {
+    return new WriteBehindConversationStorage(
+        new MappedFileJournal(directory, SEGMENT_SIZE),
+        registry,
+        durability,
+        64,
+        Duration.ofMillis(2));
+  }
+
+  private static Message message(String user, String text) {
+    return new Message(new User(user), Message.TextContent.of(text));
+  }
+
+  private static List<String> texts(ConversationStorage storage, String id) {
+    return texts(storage, id, 0);
+  }
+
+  private static List<String> texts(ConversationStorage storage, String id, long fromSequence) {
+    return storage
+        .getMessages(id, fromSequence)
+        .map(m -> Message.TextContent.from(m.content()))
+        .collectList()
+        .block();
+  }
+
+  private static void createConversation(ConversationStorage storage) {
+    storage
+        .createConversation(
+            new Conversation(
+                "AB", List.of(new User("Alice"), new User("Bob")), List.of(message("Alice", "Hi"))))
+        .block();
+  }
+
+  @Test
+  void should_recover_messages_after_restart() throws Exception {
+    var expected = new ArrayList<String>(List.of("Hi"));
+
+    try (var storage = open(Durability.ACK_ON_FLUSH)) {
+      createConversation(storage);
+      // Enough messages to roll over several small segments.
+      Flux.range(0, 200)
+          .concatMap(i -> storage.pushMessage("AB", message("Bob", "message " + i)))
+          .blockLast();
+      for (int i = 0; i < 200; i++) {
+        expected.add("message " + i);
+      }
+    }
+
+    try (var storage = open(Durability.ACK_ON_FLUSH)) {
+      assertEquals(expected, texts(storage, "AB"));
+      assertTrue(storage.getMembers("AB").block().contains("Bob"));
+      assertEquals(200, storage.pushMessage("AB", message("Alice", "Bye")).block().sequence() - 1);
+    }
+    assertTrue(Files.list(directory).count() > 1);
+  }
+
+  @Test
+  void should_restore_messages_with_their_original_sequences() throws Exception {
+    // Under ack-on-memory a crash can lose an entry queued before ones that did reach the disk.
+    try (var journal = new MappedFileJournal(directory, SEGMENT_SIZE)) {
+      journal.append(
+          List.of(
+              new Created("AB", List.of(new User("Alice"), new User("Bob"))),
+              new Appended("AB", message("Alice", "Hi").withSequence(0)),
+              new Appended("AB", message("Bob", "Hello").withSequence(2))));
+    }
+
+    try (var storage = open(Durability.ACK_ON_FLUSH)) {
+      assertEquals(
+          List.of(0L, 2L), storage.getMessages("AB", 0).map(Message::sequence).collectList().block());
+      assertEquals(List.of("Hello"), texts(storage, "AB", 1));
+      assertEquals(3, storage.getNextSequence("AB").block());
+      assertEquals(3, storage.pushMessage("AB", message("Alice", "Bye")).block().sequence());
+      assertEquals(List.of("Bye"), texts(storage, "AB", 3));
+    }
+  }
+
+  @Test
+  void should_group_concurrent_writes_into_commits() throws Exception {
+    try (var storage = open(Durability.ACK_ON_FLUSH)) {
+      createConversation(storage);
+      Flux.range(0, 500)
+          .flatMap(i -> storage.pushMessage("AB", message("Bob", "message " + i)), 64)
+          .blockLast();
+    }
+
+    var batches = registry.summary("chat.storage.journal.batch");
+    assertEquals(502, (long) batches.totalAmount());
+    assertTrue(batches.count() < 502, "expected entries to share commits");
+  }
+
+  @Test
+  void should_discard_torn_tail_on_recovery() throws Exception {
+    try (var storage = open(Durability.ACK_ON_FLUSH)) {
+      createConversation(storage);
+      storage.pushMessage("AB", message("Bob", "Hello")).block();
+    }
+
+    // Simulate a crash midway through writing the next record.
+    Path segment;
+    try (var files = Files.list(directory)) {
+      segment = files.sorted().reduce((a, b) -> b).orElseThrow();
+    }
+    try (var file = new RandomAccessFile(segment.toFile(), "rw")) {
+      var end = 0L;
+      int length;
+      while ((length = file.readInt()) != 0) {
+        end += 8 + length;
+        file.seek(end);
+      }
+      file.seek(end);
+      file.writeInt(40);
+      file.writeInt(0xdeadbeef);
+      file.write(new byte[] {2, 0, 2});
+    }
+
+    try (var storage = open(Durability.ACK_ON_FLUSH)) {
+      assertEquals(List.of("Hi", "Hello"), texts(storage, "AB"));
+      storage.pushMessage("AB", message("Alice", "Again")).block();
+    }
+
+    try (var storage = open(Durability.ACK_ON_MEMORY)) {
+      assertEquals(List.of("Hi", "Hello", "Again"), texts(storage, "AB"));
+    }
+  }
+}